@@ -0,0 +1,46 @@
+package com.mangst.gameoflife;
+
+import java.util.Random;
+
+/**
+ * Helper methods for setting up the grids used in the benchmarks.
+ * @author mangst
+ */
+public class BenchmarkGrids {
+	/**
+	 * Creates an empty grid.
+	 * @param storage how the grid stores its cells ("grid", "bit", or
+	 * "vector")
+	 * @param size the number of rows and columns
+	 * @return the grid
+	 */
+	public static Grid newGrid(String storage, int size) {
+		if ("grid".equals(storage)) {
+			return new Grid(size, size);
+		}
+		if ("bit".equals(storage)) {
+			return new BitGrid(size, size);
+		}
+		if ("vector".equals(storage)) {
+			BitGrid grid = new BitGrid(size, size);
+			grid.setKernel(RowKernel.vector());
+			return grid;
+		}
+		throw new IllegalArgumentException("Unknown storage: " + storage);
+	}
+
+	/**
+	 * Randomly populates a grid. The same seed is always used so that every
+	 * run starts from the same state.
+	 * @param grid the grid
+	 * @param density the percent chance that each cell is alive
+	 */
+	public static void populate(Grid grid, double density) {
+		Random random = new Random(42);
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				grid.setAlive(i, j, random.nextDouble() < density);
+			}
+		}
+	}
+}
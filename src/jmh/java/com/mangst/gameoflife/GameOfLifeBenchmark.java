@@ -0,0 +1,118 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many generations per second the game can calculate. The
+ * "cellUpdates" counter reports the number of cells calculated per second.
+ * @author mangst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameOfLifeBenchmark {
+	/**
+	 * The number of rows and columns in the grid.
+	 */
+	@Param({ "64", "512", "2048" })
+	public int size;
+
+	/**
+	 * The percent chance that each cell starts out alive.
+	 */
+	@Param({ "0.1", "0.5" })
+	public double density;
+
+	/**
+	 * The number of threads the game uses.
+	 */
+	@Param({ "1", "4" })
+	public int threads;
+
+	/**
+	 * How the grid stores its cells ("grid" or "bit").
+	 */
+	@Param({ "grid", "bit" })
+	public String storage;
+
+	/**
+	 * How the rows are divided up amongst the threads.
+	 */
+	@Param({ "bands", "interleaved" })
+	public String partitioning;
+
+	/**
+	 * The number of generations that each tile is moved ahead at once by
+	 * {@link #iterateMany} (1 turns temporal blocking off).
+	 */
+	@Param({ "8" })
+	public int temporalBlocking;
+
+	/**
+	 * The game.
+	 */
+	private GameOfLife gameOfLife;
+
+	/**
+	 * Counts the number of cells that have been calculated.
+	 * @author mangst
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		/**
+		 * The number of cells that have been calculated.
+		 */
+		public long cellUpdates;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Grid start = BenchmarkGrids.newGrid(storage, size);
+		gameOfLife = new GameOfLife(start, density);
+		gameOfLife.setThreads(threads);
+		gameOfLife.setPartitioning(GameOfLife.Partitioning.valueOf(partitioning.toUpperCase()));
+		gameOfLife.setTemporalBlocking(temporalBlocking);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		gameOfLife.close();
+	}
+
+	@Benchmark
+	public Grid iterate(Counters counters) {
+		counters.cellUpdates += (long) size * size;
+		return gameOfLife.iterate();
+	}
+
+	/**
+	 * Calculates 8 generations per operation, so that bit-packed grids can be
+	 * moved ahead with temporal blocking.
+	 * @param counters the counters
+	 * @return the grid
+	 */
+	@Benchmark
+	public Grid iterateMany(Counters counters) {
+		counters.cellUpdates += 8L * size * size;
+		return gameOfLife.iterate(8);
+	}
+}
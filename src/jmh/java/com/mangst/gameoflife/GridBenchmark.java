@@ -0,0 +1,104 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the single-threaded hot paths of the grid. Each operation
+ * processes the whole grid once. The "cellUpdates" counter reports the
+ * number of cells processed per second.
+ * @author mangst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+	/**
+	 * The number of rows and columns in the grid.
+	 */
+	@Param({ "64", "512", "2048" })
+	public int size;
+
+	/**
+	 * The percent chance that each cell is alive.
+	 */
+	@Param({ "0.1", "0.5" })
+	public double density;
+
+	/**
+	 * How the grid stores its cells ("grid" or "bit"), or "vector" for the
+	 * bit-packed grid calculated with the Vector API.
+	 */
+	@Param({ "grid", "bit", "vector" })
+	public String storage;
+
+	/**
+	 * The rule the grid is played by.
+	 */
+	@Param({ "B3/S23", "B36/S23" })
+	public String rule;
+
+	/**
+	 * The grid.
+	 */
+	private Grid grid;
+
+	/**
+	 * The grid that the next state is written to.
+	 */
+	private Grid next;
+
+	/**
+	 * Counts the number of cells that have been processed.
+	 * @author mangst
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		/**
+		 * The number of cells that have been processed.
+		 */
+		public long cellUpdates;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		grid = BenchmarkGrids.newGrid(storage, size);
+		grid.setRule(Rule.parse(rule));
+		BenchmarkGrids.populate(grid, density);
+		next = grid.newGrid(size, size);
+	}
+
+	@Benchmark
+	public void getAliveSurrounding(Counters counters, Blackhole blackhole) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				blackhole.consume(grid.getAliveSurrounding(i, j));
+			}
+		}
+		counters.cellUpdates += (long) size * size;
+	}
+
+	@Benchmark
+	public boolean computeNext(Counters counters) {
+		counters.cellUpdates += (long) size * size;
+		return grid.computeNext(next, 0, size, 0, size);
+	}
+}
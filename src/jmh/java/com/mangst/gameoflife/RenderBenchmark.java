@@ -0,0 +1,92 @@
+package com.mangst.gameoflife;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many times per second the grid can be converted to text.
+ * @author mangst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+	/**
+	 * The number of rows and columns in the grid.
+	 */
+	@Param({ "64", "512", "2048" })
+	public int size;
+
+	/**
+	 * How the grid stores its cells ("grid" or "bit").
+	 */
+	@Param({ "grid", "bit" })
+	public String storage;
+
+	/**
+	 * How the grid is rendered ("serial" or "concurrent" to build a string,
+	 * or "bytes" to write it to a channel with {@link GridRenderer}).
+	 */
+	@Param({ "serial", "concurrent", "bytes" })
+	public String render;
+
+	/**
+	 * The grid.
+	 */
+	private Grid grid;
+
+	/**
+	 * Writes the grid to a channel that throws the bytes away.
+	 */
+	private GridRenderer renderer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		grid = BenchmarkGrids.newGrid(storage, size);
+		BenchmarkGrids.populate(grid, 0.25);
+		renderer = new GridRenderer(new WritableByteChannel() {
+			@Override
+			public int write(ByteBuffer src) {
+				int written = src.remaining();
+				src.position(src.limit());
+				return written;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+	}
+
+	@Benchmark
+	public Object render() throws IOException {
+		if ("bytes".equals(render)) {
+			renderer.render(grid);
+			return renderer;
+		}
+		return "concurrent".equals(render) ? grid.toStringConcurrent() : grid.toStringSerial();
+	}
+}
@@ -0,0 +1,129 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many random soups per second can be played until they settle,
+ * either one game at a time or 64 at a time with {@link SoupSearch}.
+ * @author mangst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoupBenchmark {
+	/**
+	 * The number of soups played by each call.
+	 */
+	private static final int SOUPS = 1024;
+
+	/**
+	 * The number of generations a soup is played for if it doesn't settle.
+	 */
+	private static final long MAX_GENERATIONS = 10000;
+
+	/**
+	 * The longest period of the cycles to detect.
+	 */
+	private static final int MAX_PERIOD = 16;
+
+	/**
+	 * The number of rows and columns in each soup.
+	 */
+	@Param({ "16", "32" })
+	public int size;
+
+	/**
+	 * How the soups are played ("grid" or "bit" for a {@link GameOfLife} per
+	 * soup with that kind of grid, or "ensemble" for a {@link SoupSearch}).
+	 */
+	@Param({ "grid", "bit", "ensemble" })
+	public String mode;
+
+	/**
+	 * Makes the soups that are played one game at a time, so they are the
+	 * same soups that the search plays.
+	 */
+	private Ensemble soups;
+
+	/**
+	 * Plays the soups 64 at a time.
+	 */
+	private SoupSearch search;
+
+	/**
+	 * The seed of the next soup.
+	 */
+	private long seed;
+
+	/**
+	 * The sum of the periods of the soups, so the work isn't optimized away.
+	 */
+	private long periods;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		soups = new Ensemble(size, size, MAX_PERIOD);
+		search = new SoupSearch(size, size, 1);
+		search.setMaxGenerations(MAX_GENERATIONS);
+		search.setMaxPeriod(MAX_PERIOD);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		search.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SOUPS)
+	public long play() {
+		if ("ensemble".equals(mode)) {
+			search.search(seed, SOUPS, new SoupListener() {
+				@Override
+				public void soupFinished(long seed, Ensemble ensemble, int lane) {
+					periods += ensemble.getPeriod(lane);
+				}
+			});
+			seed += SOUPS;
+			return periods;
+		}
+
+		for (int i = 0; i < SOUPS; i++) {
+			soups.populate(0, seed++, 0.5);
+			Grid grid = "bit".equals(mode) ? new BitGrid(size, size) : new Grid(size, size);
+			Grid board = soups.getBoard(0);
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					grid.setAlive(row, col, board.isAlive(row, col));
+				}
+			}
+
+			GameOfLife gameOfLife = new GameOfLife(grid);
+			gameOfLife.setThreads(1);
+			gameOfLife.setMaxCyclePeriod(MAX_PERIOD);
+			for (long generation = 0; generation < MAX_GENERATIONS && gameOfLife.getCyclePeriod() == 0; generation++) {
+				gameOfLife.iterate();
+			}
+			periods += gameOfLife.getCyclePeriod();
+			gameOfLife.close();
+		}
+		return periods;
+	}
+}
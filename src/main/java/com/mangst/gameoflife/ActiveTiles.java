@@ -0,0 +1,211 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * Divides a grid into rectangular tiles and keeps track of which tiles
+ * changed in the last generation. A tile only needs to be recalculated if it
+ * or one of its neighbors changed, because otherwise its next state is the
+ * same as its current state.
+ * <p>
+ * This relies on the fact that the game swaps between two grids: when a tile
+ * hasn't changed, both grids hold the same cells for that tile, so skipping
+ * it leaves the correct cells in the grid being written to.
+ * <p>
+ * On a torus (see {@link Grid.Topology#TORUS}), the tiles at opposite edges
+ * are neighbors.
+ * @author mangst
+ */
+class ActiveTiles {
+	/**
+	 * The number of rows in each tile.
+	 */
+	private final int tileHeight;
+
+	/**
+	 * The number of columns in each tile.
+	 */
+	private final int tileWidth;
+
+	/**
+	 * The number of rows in the grid.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private final int cols;
+
+	/**
+	 * The number of tile rows.
+	 */
+	private final int tileRows;
+
+	/**
+	 * The number of tile columns.
+	 */
+	private final int tileCols;
+
+	/**
+	 * True if the tiles at opposite edges are neighbors.
+	 */
+	private final boolean wrap;
+
+	/**
+	 * The tiles that changed in the last generation.
+	 */
+	private boolean changed[];
+
+	/**
+	 * The tiles that changed in the generation being calculated.
+	 */
+	private boolean changing[];
+
+	/**
+	 * Constructs a new tile tracker. All tiles start out as changed.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param tileHeight the number of rows in each tile
+	 * @param tileWidth the number of columns in each tile
+	 * @param wrap true if the tiles at opposite edges are neighbors (on a
+	 * torus), false if not
+	 */
+	public ActiveTiles(int rows, int cols, int tileHeight, int tileWidth, boolean wrap) {
+		this.wrap = wrap;
+		this.rows = rows;
+		this.cols = cols;
+		this.tileHeight = tileHeight;
+		this.tileWidth = tileWidth;
+		tileRows = (rows + tileHeight - 1) / tileHeight;
+		tileCols = (cols + tileWidth - 1) / tileWidth;
+		changed = new boolean[tileRows * tileCols];
+		changing = new boolean[tileRows * tileCols];
+		markAll();
+	}
+
+	/**
+	 * Gets the number of tile rows.
+	 * @return the number of tile rows
+	 */
+	public int getTileRows() {
+		return tileRows;
+	}
+
+	/**
+	 * Gets the number of tile columns.
+	 * @return the number of tile columns
+	 */
+	public int getTileCols() {
+		return tileCols;
+	}
+
+	/**
+	 * Determines whether a tile needs to be recalculated.
+	 * @param tileRow the tile's row
+	 * @param tileCol the tile's column
+	 * @return true if the tile or one of its neighbors changed in the last
+	 * generation, false if not
+	 */
+	public boolean isActive(int tileRow, int tileCol) {
+		if (wrap) {
+			for (int i = tileRow - 1; i <= tileRow + 1; i++) {
+				int r = (i + tileRows) % tileRows;
+				for (int j = tileCol - 1; j <= tileCol + 1; j++) {
+					if (changed[r * tileCols + (j + tileCols) % tileCols]) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		int rowStart = Math.max(0, tileRow - 1);
+		int rowEnd = Math.min(tileRows - 1, tileRow + 1);
+		int colStart = Math.max(0, tileCol - 1);
+		int colEnd = Math.min(tileCols - 1, tileCol + 1);
+		for (int i = rowStart; i <= rowEnd; i++) {
+			for (int j = colStart; j <= colEnd; j++) {
+				if (changed[i * tileCols + j]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records whether a tile changed in the generation being calculated.
+	 * @param tileRow the tile's row
+	 * @param tileCol the tile's column
+	 * @param changed true if the tile changed, false if not
+	 */
+	public void setChanged(int tileRow, int tileCol, boolean changed) {
+		changing[tileRow * tileCols + tileCol] = changed;
+	}
+
+	/**
+	 * Marks the tile that contains the given cell as changed in the
+	 * generation being calculated (used when a cell is toggled outside of
+	 * the normal rules).
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 */
+	public void markCell(int row, int col) {
+		changing[(row / tileHeight) * tileCols + (col / tileWidth)] = true;
+	}
+
+	/**
+	 * Marks every tile as changed, so that they are all recalculated in the
+	 * next generation.
+	 */
+	public void markAll() {
+		Arrays.fill(changed, true);
+	}
+
+	/**
+	 * Finishes the generation being calculated.
+	 */
+	public void advance() {
+		boolean temp[] = changed;
+		changed = changing;
+		changing = temp;
+		Arrays.fill(changing, false);
+	}
+
+	/**
+	 * Gets the first row of a tile row.
+	 * @param tileRow the tile row
+	 * @return the first row (inclusive)
+	 */
+	public int rowStart(int tileRow) {
+		return tileRow * tileHeight;
+	}
+
+	/**
+	 * Gets the last row of a tile row.
+	 * @param tileRow the tile row
+	 * @return the last row (exclusive)
+	 */
+	public int rowEnd(int tileRow) {
+		return Math.min(rows, (tileRow + 1) * tileHeight);
+	}
+
+	/**
+	 * Gets the first column of a tile column.
+	 * @param tileCol the tile column
+	 * @return the first column (inclusive)
+	 */
+	public int colStart(int tileCol) {
+		return tileCol * tileWidth;
+	}
+
+	/**
+	 * Gets the last column of a tile column.
+	 * @param tileCol the tile column
+	 * @return the last column (exclusive)
+	 */
+	public int colEnd(int tileCol) {
+		return Math.min(cols, (tileCol + 1) * tileWidth);
+	}
+}
@@ -138,6 +138,40 @@ public class Arguments {
 		return Integer.valueOf(value);
 	}
 
+	/**
+	 * Gets the value of a long integer argument.
+	 * @param shortArg the short version of the argument (example: "h" for "-h")
+	 * @param longArg the long version of the argument (example: "help" for
+	 * "--help")
+	 * @throws NumberFormatException if it can't parse the value into a number
+	 * @return the argument's value or null if it has no value (example:
+	 * 10000000000 is returned for the argument "--bytes=10000000000")
+	 */
+	public Long valueLong(String shortArg, String longArg) {
+		return valueLong(shortArg, longArg, null);
+	}
+
+	/**
+	 * Gets the value of a long integer argument.
+	 * @param shortArg the short version of the argument (example: "h" for "-h")
+	 * @param longArg the long version of the argument (example: "help" for
+	 * "--help")
+	 * @param defaultValue the value to return if the argument has no value
+	 * @throws NumberFormatException if it can't parse the value into a number
+	 * @return the argument's value or defaultValue if it has no value (example:
+	 * 10000000000 is returned for the argument "--bytes=10000000000")
+	 */
+	public Long valueLong(String shortArg, String longArg, Long defaultValue) {
+		String value = value(shortArg, longArg);
+
+		if (value == null) {
+			return defaultValue;
+		} else if (value.isEmpty()) {
+			return 0L;
+		}
+		return Long.valueOf(value);
+	}
+
 	/**
 	 * Gets the value of a floating-point argument.
 	 * @param shortArg the short version of the argument (example: "h" for "-h")
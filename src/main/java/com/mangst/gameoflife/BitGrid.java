@@ -0,0 +1,546 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * A grid that packs 64 cells into each long. This uses 1/8 of the memory of
+ * {@link Grid} and lets the next state be calculated 64 cells at a time with
+ * bitwise adder logic instead of counting each cell's neighbors one by one.
+ * <p>
+ * Bit N of a word holds the cell in column (64 * word) + N. A dead row is
+ * kept above and below the grid to simplify calculations, just like in
+ * {@link Grid}. The unused bits at the end of each row are always 0. On a
+ * torus (see {@link Grid.Topology#TORUS}), the rows at the opposite edge are
+ * read in place of the dead rows, and the words at the left and right edges of
+ * each row are calculated separately, with the columns at the opposite edge as
+ * their neighbors.
+ * @author mangst
+ */
+public class BitGrid extends Grid {
+	/**
+	 * The number of longs in each row.
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * The mask of the bits in the last word of each row that are inside the
+	 * grid.
+	 */
+	private final long lastWordMask;
+
+	/**
+	 * The cells, row by row (including the dead rows above and below the
+	 * grid).
+	 */
+	private final long words[];
+
+	/**
+	 * Calculates the next state of each row.
+	 */
+	private RowKernel kernel = RowKernel.SCALAR;
+
+	/**
+	 * Constructs a new bit-packed grid.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 */
+	public BitGrid(int rows, int cols) {
+		super(rows, cols, false);
+		wordsPerRow = wordsPerRow(cols);
+		lastWordMask = lastWordMask(cols);
+		words = new long[(rows + 2) * wordsPerRow];
+	}
+
+	@Override
+	public Grid newGrid(int rows, int cols) {
+		BitGrid grid = new BitGrid(rows, cols);
+		grid.kernel = kernel;
+		grid.setRule(getRule());
+		grid.setTopology(getTopology());
+		return grid;
+	}
+
+	/**
+	 * Gets the kernel that calculates the next state of each row.
+	 * @return the kernel
+	 */
+	public RowKernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Sets the kernel that calculates the next state of each row. Grids
+	 * created with {@link #newGrid} use the same kernel.
+	 * @param kernel the kernel (defaults to {@link RowKernel#SCALAR})
+	 */
+	public void setKernel(RowKernel kernel) {
+		if (kernel == null) {
+			throw new IllegalArgumentException("Kernel cannot be null.");
+		}
+		this.kernel = kernel;
+	}
+
+	@Override
+	public boolean isAlive(int row, int col) {
+		return (words[(row + 1) * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+	}
+
+	@Override
+	public void setAlive(int row, int col, boolean alive) {
+		int index = (row + 1) * wordsPerRow + (col >>> 6);
+		if (alive) {
+			words[index] |= 1L << col;
+		} else {
+			words[index] &= ~(1L << col);
+		}
+	}
+
+	@Override
+	public int countAlive(int rowStart, int rowEnd, int colStart, int colEnd) {
+		int count = 0;
+		for (int i = rowStart; i < rowEnd; i++) {
+			count += countAlive(words, (i + 1) * wordsPerRow, colStart, colEnd);
+		}
+		return count;
+	}
+
+	@Override
+	public void setRow(int row, long cells[]) {
+		int offset = (row + 1) * wordsPerRow;
+		System.arraycopy(cells, 0, words, offset, wordsPerRow);
+		words[offset + wordsPerRow - 1] &= lastWordMask;
+	}
+
+	@Override
+	public int getAliveSurrounding(int row, int col) {
+		if (getTopology() == Topology.TORUS) {
+			return getAliveSurroundingWrapped(row, col);
+		}
+
+		int count = 0;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				if ((i != row || j != col) && j >= 0 && j < getCols() && isAlive(i, j)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public boolean computeNext(Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		if (!(next instanceof BitGrid) || colStart >= colEnd) {
+			return super.computeNext(next, rowStart, rowEnd, colStart, colEnd);
+		}
+
+		BitGrid n = (BitGrid) next;
+		Rule rule = getRule();
+		boolean torus = (getTopology() == Topology.TORUS);
+		int rows = getRows();
+		int cols = getCols();
+
+		//on a torus, the edge words are calculated separately (see wrapRow)
+		int innerStart = torus ? innerStart(colStart) : colStart;
+		int innerEnd = torus ? innerEnd(colStart, colEnd, cols) : colEnd;
+
+		boolean changed = false;
+		for (int i = rowStart; i < rowEnd; i++) {
+			int offset = (i + 1) * wordsPerRow;
+			int above = offset - wordsPerRow;
+			int below = offset + wordsPerRow;
+			if (torus) {
+				//the rows at the opposite edge take the place of the dead rows
+				if (i == 0) above = rows * wordsPerRow;
+				if (i == rows - 1) below = wordsPerRow;
+			}
+
+			if (innerStart < innerEnd) {
+				changed |= kernel.nextRow(words, above, offset, below, n.words, offset, wordsPerRow, lastWordMask, innerStart, innerEnd, rule);
+			}
+			if (torus) {
+				changed |= wrapRow(words, above, offset, below, n.words, offset, wordsPerRow, cols, colStart, colEnd, rule);
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public int getColumnAlignment() {
+		return 64;
+	}
+
+	/**
+	 * Gets 64 of the cells in a row.
+	 * @param row the row
+	 * @param word the index of the long within the row (the long holds
+	 * columns 64*word to 64*word+63)
+	 * @return the cells (bit N holds column 64*word+N)
+	 */
+	long getWord(int row, int word) {
+		return words[(row + 1) * wordsPerRow + word];
+	}
+
+	/**
+	 * Copies part of a row into an array.
+	 * @param row the row
+	 * @param wordStart the first word to copy (inclusive)
+	 * @param wordEnd the last word to copy (exclusive)
+	 * @param dest the array to copy to
+	 * @param offset the index to copy to
+	 */
+	void getWords(int row, int wordStart, int wordEnd, long dest[], int offset) {
+		System.arraycopy(words, (row + 1) * wordsPerRow + wordStart, dest, offset, wordEnd - wordStart);
+	}
+
+	/**
+	 * Copies an array into part of a row. The unused bits at the end of the
+	 * row must be 0.
+	 * @param row the row
+	 * @param wordStart the first word to copy to (inclusive)
+	 * @param wordEnd the last word to copy to (exclusive)
+	 * @param src the array to copy from
+	 * @param offset the index to copy from
+	 */
+	void setWords(int row, int wordStart, int wordEnd, long src[], int offset) {
+		System.arraycopy(src, offset, words, (row + 1) * wordsPerRow + wordStart, wordEnd - wordStart);
+	}
+
+	/**
+	 * Packs one row of any kind of grid into longs, in the same layout as the
+	 * rows of a bit-packed grid.
+	 * @param grid the grid
+	 * @param row the row (rows outside of the grid are dead)
+	 * @param dest the array to pack the row into (it must hold exactly one
+	 * long for every 64 columns)
+	 */
+	static void packRow(Grid grid, int row, long dest[]) {
+		int wordsPerRow = dest.length;
+		if (row >= 0 && row < grid.getRows()) {
+			if (grid instanceof BitGrid) {
+				((BitGrid) grid).getWords(row, 0, wordsPerRow, dest, 0);
+				return;
+			}
+			if (grid instanceof OffHeapGrid) {
+				((OffHeapGrid) grid).getWords(row, 0, wordsPerRow, dest, 0);
+				return;
+			}
+		}
+
+		Arrays.fill(dest, 0);
+		if (row < 0 || row >= grid.getRows()) {
+			return;
+		}
+		for (int j = 0; j < grid.getCols(); j++) {
+			if (grid.isAlive(row, j)) {
+				dest[j >>> 6] |= 1L << j;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the next state of (part of) one row of a bit-packed grid.
+	 * @param src the array that holds the current state
+	 * @param above the index of the row above
+	 * @param row the index of the row
+	 * @param below the index of the row below
+	 * @param dest the array to write the next state to
+	 * @param out the index to write the row to
+	 * @param wordsPerRow the number of longs in each row
+	 * @param lastWordMask the mask of the bits in the last word of the row
+	 * that are inside the grid
+	 * @param colStart the first column to calculate (inclusive)
+	 * @param colEnd the last column to calculate (exclusive)
+	 * @param rule the rule
+	 * @return true if any of the cells changed state, false if not
+	 */
+	static boolean nextRow(long src[], int above, int row, int below, long dest[], int out, int wordsPerRow, long lastWordMask, int colStart, int colEnd, Rule rule) {
+		int wordStart = colStart >>> 6;
+		int wordEnd = (colEnd + 63) >>> 6;
+
+		//the words to the left of the current word
+		long aPrev = (wordStart == 0) ? 0 : src[above + wordStart - 1];
+		long bPrev = (wordStart == 0) ? 0 : src[row + wordStart - 1];
+		long cPrev = (wordStart == 0) ? 0 : src[below + wordStart - 1];
+
+		//the current word
+		long a = src[above + wordStart];
+		long b = src[row + wordStart];
+		long c = src[below + wordStart];
+
+		long changed = 0;
+		for (int w = wordStart; w < wordEnd; w++) {
+			//the words to the right of the current word
+			boolean last = (w == wordsPerRow - 1);
+			long aNext = last ? 0 : src[above + w + 1];
+			long bNext = last ? 0 : src[row + w + 1];
+			long cNext = last ? 0 : src[below + w + 1];
+
+			long result = nextWord(aPrev, a, aNext, bPrev, b, bNext, cPrev, c, cNext, rule);
+			if (last) {
+				result &= lastWordMask;
+			}
+
+			//only touch the columns inside of the region
+			long mask = -1L;
+			if (w == wordStart) {
+				mask &= -1L << colStart;
+			}
+			if (w == wordEnd - 1 && (colEnd & 63) != 0) {
+				mask &= -1L >>> (64 - (colEnd & 63));
+			}
+			if (mask == -1L) {
+				dest[out + w] = result;
+			} else {
+				dest[out + w] = (dest[out + w] & ~mask) | (result & mask);
+			}
+			changed |= (result ^ b) & mask;
+
+			aPrev = a;
+			bPrev = b;
+			cPrev = c;
+			a = aNext;
+			b = bNext;
+			c = cNext;
+		}
+		return changed != 0;
+	}
+
+	/**
+	 * Gets the first column of a region that isn't in one of the edge words
+	 * that are calculated by {@link #wrapRow} on a torus.
+	 * @param colStart the first column of the region (inclusive)
+	 * @return the first column to calculate with the row kernel (inclusive)
+	 */
+	static int innerStart(int colStart) {
+		return (colStart == 0) ? 64 : colStart;
+	}
+
+	/**
+	 * Gets the last column of a region that isn't in one of the edge words
+	 * that are calculated by {@link #wrapRow} on a torus.
+	 * @param colStart the first column of the region (inclusive)
+	 * @param colEnd the last column of the region (exclusive)
+	 * @param cols the number of columns in the grid
+	 * @return the last column to calculate with the row kernel (exclusive,
+	 * this may be less than {@link #innerStart} if the region only holds edge
+	 * words)
+	 */
+	static int innerEnd(int colStart, int colEnd, int cols) {
+		return (colEnd == cols) ? ((cols - 1) >>> 6) << 6 : colEnd;
+	}
+
+	/**
+	 * Calculates the words at the left and right edges of (part of) one row
+	 * of a bit-packed grid on a torus, so that the cells at the edges have the
+	 * cells at the opposite edge as their neighbors. The rest of the row is
+	 * calculated by the row kernel (see {@link #innerStart} and
+	 * {@link #innerEnd}). Only the edge words that are inside of the region are
+	 * calculated.
+	 * @param src the array that holds the current state
+	 * @param above the index of the row above
+	 * @param row the index of the row
+	 * @param below the index of the row below
+	 * @param dest the array to write the next state to
+	 * @param out the index to write the row to
+	 * @param wordsPerRow the number of longs in each row
+	 * @param cols the number of columns in the grid
+	 * @param colStart the first column of the region (inclusive)
+	 * @param colEnd the last column of the region (exclusive)
+	 * @param rule the rule
+	 * @return true if any of the cells in the edge words changed state, false
+	 * if not
+	 */
+	static boolean wrapRow(long src[], int above, int row, int below, long dest[], int out, int wordsPerRow, int cols, int colStart, int colEnd, Rule rule) {
+		int last = wordsPerRow - 1;
+		long changed = 0;
+		if (colStart == 0) {
+			long result = wrapWord(src, above, row, below, wordsPerRow, cols, 0, rule);
+			dest[out] = result;
+			changed |= result ^ src[row];
+		}
+		if (colEnd == cols && last > 0) {
+			long result = wrapWord(src, above, row, below, wordsPerRow, cols, last, rule);
+			dest[out + last] = result;
+			changed |= result ^ src[row + last];
+		}
+		return changed != 0;
+	}
+
+	/**
+	 * Calculates the next state of the first or last word of a row on a
+	 * torus. The last column is placed just to the left of the first word,
+	 * and the first column is placed just past the last column.
+	 * @param src the array that holds the current state
+	 * @param above the index of the row above
+	 * @param row the index of the row
+	 * @param below the index of the row below
+	 * @param wordsPerRow the number of longs in each row
+	 * @param cols the number of columns in the grid
+	 * @param w the word (the first or last word of the row)
+	 * @param rule the rule
+	 * @return the next state of the cells in the word
+	 */
+	private static long wrapWord(long src[], int above, int row, int below, int wordsPerRow, int cols, int w, Rule rule) {
+		int last = wordsPerRow - 1;
+		long a = src[above + w];
+		long b = src[row + w];
+		long c = src[below + w];
+
+		long aPrev, bPrev, cPrev;
+		if (w == 0) {
+			//bit 63 of the word to the left is the last column
+			int lastBit = (cols - 1) & 63;
+			aPrev = (src[above + last] >>> lastBit) << 63;
+			bPrev = (src[row + last] >>> lastBit) << 63;
+			cPrev = (src[below + last] >>> lastBit) << 63;
+		} else {
+			aPrev = src[above + w - 1];
+			bPrev = src[row + w - 1];
+			cPrev = src[below + w - 1];
+		}
+
+		long aNext, bNext, cNext;
+		if (w == last) {
+			long aFirst = src[above] & 1;
+			long bFirst = src[row] & 1;
+			long cFirst = src[below] & 1;
+			int end = cols & 63;
+			if (end == 0) {
+				//bit 0 of the word to the right is the first column
+				aNext = aFirst;
+				bNext = bFirst;
+				cNext = cFirst;
+			} else {
+				//the first unused bit is the first column (it's masked out of the result)
+				a |= aFirst << end;
+				b |= bFirst << end;
+				c |= cFirst << end;
+				aNext = bNext = cNext = 0;
+			}
+		} else {
+			aNext = src[above + w + 1];
+			bNext = src[row + w + 1];
+			cNext = src[below + w + 1];
+		}
+
+		long result = nextWord(aPrev, a, aNext, bPrev, b, bNext, cPrev, c, cNext, rule);
+		return (w == last) ? result & lastWordMask(cols) : result;
+	}
+
+	/**
+	 * Calculates the next state of 64 cells at once. Each of the 8 neighbors
+	 * of every cell is lined up with the cell by shifting the surrounding
+	 * words, then the neighbors are added up by {@link #nextCells}.
+	 * @param aPrev the word to the left of the word above
+	 * @param a the word above
+	 * @param aNext the word to the right of the word above
+	 * @param bPrev the word to the left
+	 * @param b the word holding the cells
+	 * @param bNext the word to the right
+	 * @param cPrev the word to the left of the word below
+	 * @param c the word below
+	 * @param cNext the word to the right of the word below
+	 * @param rule the rule
+	 * @return the next state of the cells in the word
+	 */
+	static long nextWord(long aPrev, long a, long aNext, long bPrev, long b, long bNext, long cPrev, long c, long cNext, Rule rule) {
+		//line up the neighbors to the west and east of each cell
+		long aW = (a << 1) | (aPrev >>> 63);
+		long aE = (a >>> 1) | (aNext << 63);
+		long bW = (b << 1) | (bPrev >>> 63);
+		long bE = (b >>> 1) | (bNext << 63);
+		long cW = (c << 1) | (cPrev >>> 63);
+		long cE = (c >>> 1) | (cNext << 63);
+
+		return nextCells(aW, a, aE, bW, b, bE, cW, c, cE, rule);
+	}
+
+	/**
+	 * Calculates the next state of 64 cells at once, given the 8 neighbors of
+	 * every cell lined up in the same bit positions as the cells. The
+	 * neighbors are added together with full adders so that each bit position
+	 * ends up with its own 4-bit neighbor count, and the counts are looked up
+	 * in the rule (see {@link Rule#next}). The bits don't have to be cells of
+	 * the same row: {@link Ensemble} uses this for cells of 64 different
+	 * boards.
+	 * @param aW the neighbors to the northwest
+	 * @param a the neighbors to the north
+	 * @param aE the neighbors to the northeast
+	 * @param bW the neighbors to the west
+	 * @param b the cells
+	 * @param bE the neighbors to the east
+	 * @param cW the neighbors to the southwest
+	 * @param c the neighbors to the south
+	 * @param cE the neighbors to the southeast
+	 * @param rule the rule
+	 * @return the next state of the cells
+	 */
+	static long nextCells(long aW, long a, long aE, long bW, long b, long bE, long cW, long c, long cE, Rule rule) {
+		//add up each row of neighbors (each sum is 0-3, or 0-2 for the middle row)
+		long aSum = aW ^ a ^ aE;
+		long aCarry = (aW & a) | (aE & (aW ^ a));
+		long bSum = bW ^ bE;
+		long bCarry = bW & bE;
+		long cSum = cW ^ c ^ cE;
+		long cCarry = (cW & c) | (cE & (cW ^ c));
+
+		//add the rows together
+		long ones = aSum ^ bSum ^ cSum;
+		long onesCarry = (aSum & bSum) | (cSum & (aSum ^ bSum));
+		long twos = aCarry ^ bCarry ^ cCarry;
+		long twosCarry = (aCarry & bCarry) | (cCarry & (aCarry ^ bCarry));
+		long fours = twosCarry ^ (twos & onesCarry);
+		long eights = twosCarry & twos & onesCarry;
+		twos ^= onesCarry;
+
+		return rule.next(b, ones, twos, fours, eights);
+	}
+
+	/**
+	 * Gets the number of longs needed to hold a row.
+	 * @param cols the number of columns
+	 * @return the number of longs
+	 */
+	static int wordsPerRow(int cols) {
+		return Math.max(1, (cols + 63) >>> 6);
+	}
+
+	/**
+	 * Counts the live cells in (part of) one row of a bit-packed grid.
+	 * @param words the array that holds the grid
+	 * @param offset the index of the row
+	 * @param colStart the first column (inclusive)
+	 * @param colEnd the last column (exclusive)
+	 * @return the number of live cells
+	 */
+	static int countAlive(long words[], int offset, int colStart, int colEnd) {
+		if (colStart >= colEnd) {
+			return 0;
+		}
+
+		int wordStart = colStart >>> 6;
+		int wordEnd = (colEnd - 1) >>> 6;
+		long first = -1L << colStart;
+		long last = -1L >>> (63 - ((colEnd - 1) & 63));
+		if (wordStart == wordEnd) {
+			return Long.bitCount(words[offset + wordStart] & first & last);
+		}
+
+		int count = Long.bitCount(words[offset + wordStart] & first);
+		for (int w = wordStart + 1; w < wordEnd; w++) {
+			count += Long.bitCount(words[offset + w]);
+		}
+		return count + Long.bitCount(words[offset + wordEnd] & last);
+	}
+
+	/**
+	 * Gets the mask of the bits in the last word of a row that are inside of
+	 * the grid.
+	 * @param cols the number of columns
+	 * @return the mask
+	 */
+	static long lastWordMask(int cols) {
+		return ((cols & 63) == 0) ? -1L : (1L << cols) - 1;
+	}
+}
@@ -0,0 +1,364 @@
+package com.mangst.gameoflife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A snapshot of a game that can be saved to a file and restored later, so
+ * that long runs can be paused and resumed. Snapshots are taken with
+ * {@link GameOfLife#checkpoint} in between iterations. Taking a snapshot only
+ * copies the grid into a bit-packed grid, so the game can keep iterating
+ * while the snapshot is written out on another thread. The copy of an
+ * {@link OffHeapGrid} is kept off of the heap too, and the cells are streamed
+ * between the copy and the file one row at a time.
+ * <p>
+ * The file format is as follows (all numbers are big-endian):
+ * <ol>
+ * <li>The characters "GOLC" and the version number (int).</li>
+ * <li>Flags (byte). Bit 0 is set if the grid is compressed.</li>
+ * <li>The number of rows and columns (ints).</li>
+ * <li>The iteration count (long) and the amount of noise (int).</li>
+ * <li>The seed of the noise (long).</li>
+ * <li>The grid, with 64 cells packed into each long and each row starting on
+ * a new long (see {@link BitGrid}). If compressed, the grid is compressed with
+ * the DEFLATE algorithm.</li>
+ * </ol>
+ * Only the cells inside of the grid are saved, so cells that have moved
+ * outside of an unbounded grid (see {@link SparseGrid} and {@link HashLife})
+ * are lost.
+ * @author mangst
+ */
+public class Checkpoint {
+	/**
+	 * Identifies checkpoint files.
+	 */
+	private static final int MAGIC = ('G' << 24) | ('O' << 16) | ('L' << 8) | 'C';
+
+	/**
+	 * The version of the file format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Set in the flags if the grid is compressed.
+	 */
+	private static final int FLAG_COMPRESSED = 1;
+
+	/**
+	 * The number of rows in the grid.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private final int cols;
+
+	/**
+	 * The number of longs in each row.
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * The cells (a {@link BitGrid} or an {@link OffHeapGrid}).
+	 */
+	private final Grid cells;
+
+	/**
+	 * The number of iterations the game had run for.
+	 */
+	private final long iterationCount;
+
+	/**
+	 * The amount of noise.
+	 */
+	private final int noise;
+
+	/**
+	 * The seed of the noise.
+	 */
+	private final long seed;
+
+	/**
+	 * Takes a snapshot of a game.
+	 * @param grid the current grid
+	 * @param iterationCount the number of iterations the game has run for
+	 * @param noise the amount of noise
+	 * @param seed the seed of the noise
+	 */
+	Checkpoint(Grid grid, long iterationCount, int noise, long seed) {
+		rows = grid.getRows();
+		cols = grid.getCols();
+		wordsPerRow = BitGrid.wordsPerRow(cols);
+		//a copy of an off-heap grid stays off of the heap, in direct buffers so that a memory-mapped file isn't left behind by every checkpoint
+		cells = (grid instanceof OffHeapGrid) ? new OffHeapGrid(rows, cols) : newCells(rows, cols);
+		this.iterationCount = iterationCount;
+		this.noise = noise;
+		this.seed = seed;
+
+		long row[] = new long[wordsPerRow];
+		for (int i = 0; i < rows; i++) {
+			BitGrid.packRow(grid, i, row);
+			cells.setRow(i, row);
+		}
+	}
+
+	/**
+	 * Creates a checkpoint that was read from a file.
+	 * @param rows the number of rows
+	 * @param cols the number of columns
+	 * @param cells the cells
+	 * @param iterationCount the number of iterations the game had run for
+	 * @param noise the amount of noise
+	 * @param seed the seed of the noise
+	 */
+	private Checkpoint(int rows, int cols, Grid cells, long iterationCount, int noise, long seed) {
+		this.rows = rows;
+		this.cols = cols;
+		this.wordsPerRow = BitGrid.wordsPerRow(cols);
+		this.cells = cells;
+		this.iterationCount = iterationCount;
+		this.noise = noise;
+		this.seed = seed;
+	}
+
+	/**
+	 * Gets the number of rows in the grid.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns in the grid.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Gets the number of iterations the game had run for.
+	 * @return the number of iterations
+	 */
+	public long getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * Gets the number of random cells that were toggled every iteration.
+	 * @return the amount of noise
+	 */
+	public int getNoise() {
+		return noise;
+	}
+
+	/**
+	 * Copies the cells into a grid.
+	 * @param grid the grid (must be the same size)
+	 * @throws IllegalArgumentException if the grid is a different size
+	 */
+	public void copyTo(Grid grid) {
+		if (grid.getRows() != rows || grid.getCols() != cols) {
+			throw new IllegalArgumentException("Grid is " + grid.getRows() + "x" + grid.getCols() + ", but the checkpoint is " + rows + "x" + cols + ".");
+		}
+
+		long row[] = new long[wordsPerRow];
+		for (int i = 0; i < rows; i++) {
+			BitGrid.packRow(cells, i, row);
+			grid.setRow(i, row);
+		}
+	}
+
+	/**
+	 * Gets the seed of the noise (see {@link GameOfLife#setSeed}).
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Writes the checkpoint to a stream.
+	 * @param out the stream (it is not closed)
+	 * @param compress true to compress the grid, false not to
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	public void write(OutputStream out, boolean compress) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeByte(compress ? FLAG_COMPRESSED : 0);
+		data.writeInt(rows);
+		data.writeInt(cols);
+		data.writeLong(iterationCount);
+		data.writeInt(noise);
+		data.writeLong(seed);
+		data.flush();
+
+		if (compress) {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, 64 * 1024);
+				writeWords(deflaterOut);
+				deflaterOut.finish();
+			} finally {
+				deflater.end();
+			}
+		} else {
+			writeWords(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Saves the checkpoint to a file. The checkpoint is written to a temporary
+	 * file first and then moved into place, so the file always holds a
+	 * complete checkpoint, even if the program is stopped in the middle of
+	 * writing it.
+	 * @param file the file
+	 * @param compress true to compress the grid, false not to
+	 * @throws IOException if there's a problem writing to the file
+	 */
+	public void save(File file, boolean compress) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			write(out, compress);
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint from a stream.
+	 * @param in the stream (it is not closed)
+	 * @return the checkpoint
+	 * @throws IOException if there's a problem reading from the stream or if
+	 * it doesn't contain a checkpoint
+	 */
+	public static Checkpoint read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a checkpoint file.");
+		}
+		int version = data.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported checkpoint version: " + version);
+		}
+		int flags = data.readByte();
+		int rows = data.readInt();
+		int cols = data.readInt();
+		if (rows < 0 || cols < 0 || rows > Integer.MAX_VALUE - 2) {
+			throw new IOException("Invalid grid size: " + rows + "x" + cols);
+		}
+		long iterationCount = data.readLong();
+		int noise = data.readInt();
+		long seed = data.readLong();
+
+		Grid cells = newCells(rows, cols);
+		if ((flags & FLAG_COMPRESSED) != 0) {
+			readWords(new InflaterInputStream(in), cells);
+		} else {
+			readWords(in, cells);
+		}
+		return new Checkpoint(rows, cols, cells, iterationCount, noise, seed);
+	}
+
+	/**
+	 * Reads a checkpoint from a file.
+	 * @param file the file
+	 * @return the checkpoint
+	 * @throws IOException if there's a problem reading the file or if it
+	 * doesn't contain a checkpoint
+	 */
+	public static Checkpoint load(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates a grid to hold the cells of a checkpoint. The cells are kept on
+	 * the heap if they fit in an array and take up less than a quarter of the
+	 * heap, otherwise they are stored in direct buffers (see
+	 * {@link OffHeapGrid}).
+	 * @param rows the number of rows
+	 * @param cols the number of columns
+	 * @return the grid
+	 */
+	private static Grid newCells(int rows, int cols) {
+		long words = (rows + 2L) * BitGrid.wordsPerRow(cols);
+		if (words <= Integer.MAX_VALUE && words * 8 <= Runtime.getRuntime().maxMemory() / 4) {
+			return new BitGrid(rows, cols);
+		}
+		return new OffHeapGrid(rows, cols);
+	}
+
+	/**
+	 * Writes the cells to a stream, one row at a time.
+	 * @param out the stream
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	private void writeWords(OutputStream out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long row[] = new long[wordsPerRow];
+		for (int i = 0; i < rows; i++) {
+			BitGrid.packRow(cells, i, row);
+			for (long word : row) {
+				if (!buffer.hasRemaining()) {
+					out.write(buffer.array(), 0, buffer.position());
+					buffer.clear();
+				}
+				buffer.putLong(word);
+			}
+		}
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	/**
+	 * Reads the cells from a stream, one row at a time.
+	 * @param in the stream
+	 * @param cells the grid to read the cells into
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private static void readWords(InputStream in, Grid cells) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		buffer.limit(0);
+		long row[] = new long[BitGrid.wordsPerRow(cells.getCols())];
+		long remaining = (long) cells.getRows() * row.length;
+		for (int i = 0; i < cells.getRows(); i++) {
+			for (int j = 0; j < row.length; j++) {
+				if (!buffer.hasRemaining()) {
+					int count = (int) Math.min(buffer.capacity() / 8, remaining);
+					data.readFully(buffer.array(), 0, count * 8);
+					buffer.clear();
+					buffer.limit(count * 8);
+					remaining -= count;
+				}
+				row[j] = buffer.getLong();
+			}
+			cells.setRow(i, row);
+		}
+	}
+}
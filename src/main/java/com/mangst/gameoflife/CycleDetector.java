@@ -0,0 +1,295 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects when a game has settled into a still life or an oscillation, by
+ * remembering the hashes of the last few generations (see
+ * {@link GameOfLife#setMaxCyclePeriod}).
+ * <p>
+ * The hash of a grid is the XOR of a random 64-bit key for every live cell
+ * (Zobrist hashing), so it can be updated incrementally: every cell that is
+ * born or dies flips its key in or out of the hash. The worker threads
+ * calculate the change to the hash for each part of the grid right after they
+ * calculate its next state (see {@link #diff}), and parts that did not change
+ * are skipped. On bit-packed grids, each word of 64 cells is hashed as a whole
+ * instead (with its position mixed in), so a word that changed only costs two
+ * hashes, no matter how many of its cells changed.
+ * <p>
+ * If the hash of a generation is the same as the hash of the generation P
+ * generations before it, the game has entered a cycle of period P (a period
+ * of 1 is a still life, which includes an empty grid). The chance of two
+ * different grids having the same hash is about 1 in 2<sup>64</sup>.
+ * @author mangst
+ */
+class CycleDetector {
+	/**
+	 * The longest period that can be detected.
+	 */
+	private final int maxPeriod;
+
+	/**
+	 * The hashes of the last generations, indexed by generation modulo the
+	 * length of the array.
+	 */
+	private final long history[];
+
+	/**
+	 * The number of generations in the history.
+	 */
+	private int historySize;
+
+	/**
+	 * The hash of the current generation.
+	 */
+	private long hash;
+
+	/**
+	 * The changes to the hash that were made in the generation being
+	 * calculated.
+	 */
+	private final AtomicLong changes = new AtomicLong();
+
+	/**
+	 * The period of the cycle (0 if no cycle has been detected).
+	 */
+	private int period = 0;
+
+	/**
+	 * The generation that the cycle started at (-1 if no cycle has been
+	 * detected).
+	 */
+	private long start = -1;
+
+	/**
+	 * Constructs a new cycle detector.
+	 * @param maxPeriod the longest period to detect
+	 * @param grid the current grid
+	 * @param generation the current generation
+	 */
+	public CycleDetector(int maxPeriod, Grid grid, long generation) {
+		this.maxPeriod = maxPeriod;
+		history = new long[maxPeriod];
+		reset(grid, generation);
+	}
+
+	/**
+	 * Gets the longest period that can be detected.
+	 * @return the longest period
+	 */
+	public int getMaxPeriod() {
+		return maxPeriod;
+	}
+
+	/**
+	 * Gets the hash of the current generation.
+	 * @return the hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Gets the period of the cycle that was detected.
+	 * @return the period (1 for a still life) or 0 if no cycle has been
+	 * detected
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Gets the generation that the cycle started at (the first generation
+	 * whose grid was repeated).
+	 * @return the generation or -1 if no cycle has been detected
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Forgets the history and recalculates the hash from scratch. This must be
+	 * called whenever the grid is changed outside of the game's iterations.
+	 * @param grid the current grid
+	 * @param generation the current generation
+	 */
+	public void reset(Grid grid, long generation) {
+		hash = hash(grid);
+		changes.set(0);
+		period = 0;
+		start = -1;
+		historySize = 0;
+		record(generation);
+	}
+
+	/**
+	 * Adds changes to the hash of the generation being calculated. This is
+	 * called by the worker threads, so it's thread-safe.
+	 * @param diff the XOR of the keys of the cells that changed (see
+	 * {@link #diff} and {@link #key})
+	 */
+	public void changed(long diff) {
+		long current;
+		do {
+			current = changes.get();
+		} while (!changes.compareAndSet(current, current ^ diff));
+	}
+
+	/**
+	 * Finishes the generation that was being calculated and checks whether it
+	 * repeats one of the generations in the history.
+	 * @param generation the generation that was calculated
+	 * @param deterministic true if the generation was calculated from the
+	 * previous one by the rules alone, false if it was changed by noise (the
+	 * history is forgotten, because a repeated grid does not mean that the
+	 * game will keep repeating)
+	 */
+	public void endGeneration(long generation, boolean deterministic) {
+		hash ^= changes.getAndSet(0);
+
+		if (!deterministic) {
+			period = 0;
+			start = -1;
+			historySize = 0;
+		} else if (period == 0) {
+			for (int p = 1; p <= historySize; p++) {
+				if (history[(int) ((generation - p) % maxPeriod)] == hash) {
+					period = p;
+					start = generation - p;
+					break;
+				}
+			}
+		}
+
+		record(generation);
+	}
+
+	/**
+	 * Adds the current hash to the history.
+	 * @param generation the current generation
+	 */
+	private void record(long generation) {
+		history[(int) (generation % maxPeriod)] = hash;
+		historySize = Math.min(historySize + 1, maxPeriod);
+	}
+
+	/**
+	 * Calculates the hash of a grid.
+	 * @param grid the grid
+	 * @return the hash
+	 */
+	static long hash(Grid grid) {
+		int rows = grid.getRows();
+		int cols = grid.getCols();
+		long hash = 0;
+
+		if (grid instanceof BitGrid) {
+			BitGrid bitGrid = (BitGrid) grid;
+			int wordsPerRow = BitGrid.wordsPerRow(cols);
+			for (int i = 0; i < rows; i++) {
+				for (int w = 0; w < wordsPerRow; w++) {
+					hash ^= wordKey(bitGrid.getWord(i, w), (long) i * wordsPerRow + w);
+				}
+			}
+			return hash;
+		}
+
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (grid.isAlive(i, j)) {
+					hash ^= key((long) i * cols + j);
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Calculates the change to the hash between the current and next state of
+	 * part of a grid. On bit-packed grids, the part must start on a word
+	 * boundary (see {@link Grid#getColumnAlignment}).
+	 * @param current the current grid
+	 * @param next the next grid
+	 * @param rowStart the first row of the part (inclusive)
+	 * @param rowEnd the last row of the part (exclusive)
+	 * @param colStart the first column of the part (inclusive)
+	 * @param colEnd the last column of the part (exclusive)
+	 * @return the XOR of the keys of the cells that changed
+	 */
+	static long diff(Grid current, Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		int cols = current.getCols();
+		long diff = 0;
+
+		if (current instanceof BitGrid && next instanceof BitGrid) {
+			BitGrid c = (BitGrid) current;
+			BitGrid n = (BitGrid) next;
+			int wordsPerRow = BitGrid.wordsPerRow(cols);
+			int wordStart = colStart >>> 6;
+			int wordEnd = (colEnd + 63) >>> 6;
+			for (int i = rowStart; i < rowEnd; i++) {
+				long index = (long) i * wordsPerRow;
+				for (int w = wordStart; w < wordEnd; w++) {
+					long before = c.getWord(i, w);
+					long after = n.getWord(i, w);
+					if (before != after) {
+						diff ^= wordKey(before, index + w) ^ wordKey(after, index + w);
+					}
+				}
+			}
+			return diff;
+		}
+
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int j = colStart; j < colEnd; j++) {
+				if (current.isAlive(i, j) != next.isAlive(i, j)) {
+					diff ^= key((long) i * cols + j);
+				}
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Calculates the change to the hash caused by toggling a cell. Call this
+	 * after the cell has been toggled.
+	 * @param grid the grid
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return the change to the hash
+	 */
+	static long toggled(Grid grid, int row, int col) {
+		if (grid instanceof BitGrid) {
+			int wordsPerRow = BitGrid.wordsPerRow(grid.getCols());
+			int w = col >>> 6;
+			long after = ((BitGrid) grid).getWord(row, w);
+			long before = after ^ (1L << col);
+			long index = (long) row * wordsPerRow + w;
+			return wordKey(before, index) ^ wordKey(after, index);
+		}
+		return key((long) row * grid.getCols() + col);
+	}
+
+	/**
+	 * Gets the key of a cell.
+	 * @param cell the cell (row * cols + col)
+	 * @return the key
+	 */
+	static long key(long cell) {
+		//the finalizer of MurmurHash3, which turns consecutive numbers into unrelated ones (plus one so that cell 0 doesn't get a key of 0)
+		long k = (cell + 1) * 0x9E3779B97F4A7C15L;
+		k = (k ^ (k >>> 33)) * 0xFF51AFD7ED558CCDL;
+		k = (k ^ (k >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return k ^ (k >>> 33);
+	}
+
+	/**
+	 * Gets the key of a word of a bit-packed grid.
+	 * @param word the cells
+	 * @param index the position of the word (row * wordsPerRow + word)
+	 * @return the key (0 if all of the cells are dead, so that an empty grid
+	 * always has a hash of 0)
+	 */
+	private static long wordKey(long word, long index) {
+		return (word == 0) ? 0 : key(word ^ key(index));
+	}
+}
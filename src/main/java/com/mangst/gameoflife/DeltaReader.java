@@ -0,0 +1,194 @@
+package com.mangst.gameoflife;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays a stream that was written by {@link DeltaWriter}, one generation at
+ * a time.
+ * @author mangst
+ */
+public class DeltaReader implements Closeable {
+	/**
+	 * The stream to read from.
+	 */
+	private final InputStream in;
+
+	/**
+	 * The number of rows in the grid.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private final int cols;
+
+	/**
+	 * The generation of the last frame that was read (one less than the
+	 * starting generation if no frames have been read).
+	 */
+	private long generation;
+
+	/**
+	 * The number of births in the last frame that was read.
+	 */
+	private int births;
+
+	/**
+	 * The number of deaths in the last frame that was read.
+	 */
+	private int deaths;
+
+	/**
+	 * Creates a reader and reads the stream's header.
+	 * @param in the stream to read from
+	 * @throws IOException if there's a problem reading from the stream or if
+	 * it isn't a delta stream
+	 */
+	public DeltaReader(InputStream in) throws IOException {
+		this.in = new BufferedInputStream(in);
+		for (byte b : DeltaWriter.MAGIC) {
+			if (this.in.read() != b) {
+				throw new IOException("Not a delta stream.");
+			}
+		}
+		int version = this.in.read();
+		if (version != DeltaWriter.VERSION) {
+			throw new IOException("Unsupported delta stream version: " + version);
+		}
+		rows = (int) readVarint();
+		cols = (int) readVarint();
+		generation = readVarint() - 1;
+	}
+
+	/**
+	 * Gets the number of rows in the grid.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns in the grid.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Gets the generation of the last frame that was read.
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Gets the number of cells that were born in the last frame that was
+	 * read.
+	 * @return the number of births
+	 */
+	public int getBirths() {
+		return births;
+	}
+
+	/**
+	 * Gets the number of cells that died in the last frame that was read.
+	 * @return the number of deaths
+	 */
+	public int getDeaths() {
+		return deaths;
+	}
+
+	/**
+	 * Reads the next frame and applies it to a grid. The first frame holds
+	 * the starting grid, so the grid should be empty when the first frame is
+	 * read.
+	 * @param grid the grid (must be the same size as the stream's grid)
+	 * @return true if a frame was read, false if the end of the stream was
+	 * reached
+	 * @throws IOException if there's a problem reading from the stream or if
+	 * it ends in the middle of a frame
+	 */
+	public boolean next(Grid grid) throws IOException {
+		in.mark(1);
+		if (in.read() < 0) {
+			return false;
+		}
+		in.reset();
+
+		births = readCells(grid, true);
+		deaths = readCells(grid, false);
+		generation++;
+		return true;
+	}
+
+	/**
+	 * Reads frames until the grid reaches the given generation.
+	 * @param grid the grid
+	 * @param generation the generation
+	 * @return true if the generation was reached, false if the stream ended
+	 * first
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	public boolean advanceTo(Grid grid, long generation) throws IOException {
+		while (this.generation < generation) {
+			if (!next(grid)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * @throws IOException if there's a problem closing the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads a list of cells and sets their state.
+	 * @param grid the grid
+	 * @param alive the state to set the cells to
+	 * @return the number of cells
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private int readCells(Grid grid, boolean alive) throws IOException {
+		long count = readVarint();
+		long cell = 0;
+		for (long i = 0; i < count; i++) {
+			cell += readVarint();
+			grid.setAlive((int) (cell / cols), (int) (cell % cols), alive);
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 * @return the value
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Delta stream ended in the middle of a frame.");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint.");
+	}
+}
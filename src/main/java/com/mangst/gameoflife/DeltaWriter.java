@@ -0,0 +1,365 @@
+package com.mangst.gameoflife;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the cells that change each generation to a stream, instead of the
+ * whole grid. On a grid that is mostly stable, this is orders of magnitude
+ * smaller than writing out every cell. The stream can be replayed with
+ * {@link DeltaReader}. Attach a writer to a game with
+ * {@link GameOfLife#setDeltaWriter}.
+ * <p>
+ * The changes are found by the game's worker threads right after they
+ * calculate each part of the grid, while those cells are still in the cache.
+ * When tiles are used (see {@link GameOfLife#setTileSize}), tiles that did not
+ * change are skipped entirely.
+ * <p>
+ * The stream is made up of the following (numbers are unsigned LEB128
+ * varints unless otherwise noted):
+ * <ol>
+ * <li>The characters "GOLD" and the version number (byte).</li>
+ * <li>The number of rows and columns, and the generation the stream starts
+ * at.</li>
+ * <li>One frame per generation, the first holding the starting grid. Each
+ * frame holds the number of births followed by the births, then the number of
+ * deaths followed by the deaths. Each cell is stored as the distance from the
+ * previous cell in the list (or from 0 for the first cell), where cells are
+ * numbered row by row (row * cols + col).</li>
+ * </ol>
+ * @author mangst
+ */
+public class DeltaWriter implements Closeable {
+	/**
+	 * Identifies delta streams.
+	 */
+	static final byte MAGIC[] = { 'G', 'O', 'L', 'D' };
+
+	/**
+	 * The version of the stream format.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The stream to write to.
+	 */
+	private final OutputStream out;
+
+	/**
+	 * Buffers the bytes before they are written to the stream.
+	 */
+	private final byte buffer[] = new byte[64 * 1024];
+
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int length = 0;
+
+	/**
+	 * The number of columns in the grid (0 if the writer hasn't been started).
+	 */
+	private int cols = 0;
+
+	/**
+	 * The cells that were born this generation.
+	 */
+	private long births[] = new long[1024];
+
+	/**
+	 * The number of cells that were born this generation.
+	 */
+	private int birthCount = 0;
+
+	/**
+	 * The cells that died this generation.
+	 */
+	private long deaths[] = new long[1024];
+
+	/**
+	 * The number of cells that died this generation.
+	 */
+	private int deathCount = 0;
+
+	/**
+	 * The cells that were toggled by noise this generation.
+	 */
+	private long toggles[] = new long[16];
+
+	/**
+	 * The number of cells that were toggled by noise this generation.
+	 */
+	private int toggleCount = 0;
+
+	/**
+	 * Holds the changes that a thread finds in one part of the grid, before
+	 * they are added to the shared lists.
+	 */
+	private final ThreadLocal<long[]> scratch = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1024];
+		}
+	};
+
+	/**
+	 * Constructs a new delta writer.
+	 * @param out the stream to write to
+	 */
+	public DeltaWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the header and the starting grid.
+	 * @param grid the starting grid
+	 * @param generation the starting generation
+	 * @throws IOException if there's a problem writing to the stream
+	 * @throws IllegalStateException if the writer has already been started
+	 */
+	void start(Grid grid, long generation) throws IOException {
+		if (cols > 0) {
+			throw new IllegalStateException("Delta writer has already been started.");
+		}
+
+		for (byte b : MAGIC) {
+			writeByte(b);
+		}
+		writeByte(VERSION);
+		writeVarint(grid.getRows());
+		writeVarint(grid.getCols());
+		writeVarint(generation);
+		cols = Math.max(1, grid.getCols());
+
+		//the starting grid is written as births
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				if (grid.isAlive(i, j)) {
+					births = add(births, birthCount++, (long) i * cols + j);
+				}
+			}
+		}
+		writeFrame();
+	}
+
+	/**
+	 * Records the cells that changed in one part of the grid. This is called
+	 * by the worker threads, so it's thread-safe.
+	 * @param current the current grid
+	 * @param next the next grid
+	 * @param rowStart the first row of the part (inclusive)
+	 * @param rowEnd the last row of the part (exclusive)
+	 * @param colStart the first column of the part (inclusive)
+	 * @param colEnd the last column of the part (exclusive)
+	 */
+	void collect(Grid current, Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		//births are stored as positive numbers and deaths as negative numbers (offset by 1 so that cell 0 works)
+		long changes[] = scratch.get();
+		int count = 0;
+
+		if (current instanceof BitGrid && next instanceof BitGrid) {
+			BitGrid c = (BitGrid) current;
+			BitGrid n = (BitGrid) next;
+			int wordStart = colStart >>> 6;
+			int wordEnd = (colEnd + 63) >>> 6;
+			for (int i = rowStart; i < rowEnd; i++) {
+				for (int w = wordStart; w < wordEnd; w++) {
+					long mask = -1L;
+					if (w == wordStart) {
+						mask &= -1L << colStart;
+					}
+					if (w == wordEnd - 1 && (colEnd & 63) != 0) {
+						mask &= -1L >>> (64 - (colEnd & 63));
+					}
+
+					long nextWord = n.getWord(i, w);
+					long diff = (c.getWord(i, w) ^ nextWord) & mask;
+					while (diff != 0) {
+						int bit = Long.numberOfTrailingZeros(diff);
+						diff &= diff - 1;
+						long cell = (long) i * cols + (w << 6) + bit;
+						boolean alive = (nextWord & (1L << bit)) != 0;
+						changes = add(changes, count++, alive ? cell + 1 : -(cell + 1));
+					}
+				}
+			}
+		} else {
+			for (int i = rowStart; i < rowEnd; i++) {
+				for (int j = colStart; j < colEnd; j++) {
+					boolean alive = next.isAlive(i, j);
+					if (current.isAlive(i, j) != alive) {
+						long cell = (long) i * cols + j;
+						changes = add(changes, count++, alive ? cell + 1 : -(cell + 1));
+					}
+				}
+			}
+		}
+		scratch.set(changes);
+
+		if (count == 0) {
+			return;
+		}
+		synchronized (this) {
+			for (int k = 0; k < count; k++) {
+				long change = changes[k];
+				if (change > 0) {
+					births = add(births, birthCount++, change - 1);
+				} else {
+					deaths = add(deaths, deathCount++, -change - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records a cell that was toggled by noise.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 */
+	void toggled(int row, int col) {
+		toggles = add(toggles, toggleCount++, (long) row * cols + col);
+	}
+
+	/**
+	 * Writes the changes that were recorded this generation.
+	 * @param current the current grid
+	 * @param next the next grid (after the noise has been added)
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	void endGeneration(Grid current, Grid next) throws IOException {
+		if (toggleCount > 0) {
+			//a cell that was toggled by noise may have been toggled back, so check it again
+			Arrays.sort(toggles, 0, toggleCount);
+			birthCount = removeToggled(births, birthCount);
+			deathCount = removeToggled(deaths, deathCount);
+			long previous = -1;
+			for (int k = 0; k < toggleCount; k++) {
+				long cell = toggles[k];
+				if (cell == previous) {
+					continue;
+				}
+				previous = cell;
+
+				int row = (int) (cell / cols);
+				int col = (int) (cell % cols);
+				boolean alive = next.isAlive(row, col);
+				if (current.isAlive(row, col) != alive) {
+					if (alive) {
+						births = add(births, birthCount++, cell);
+					} else {
+						deaths = add(deaths, deathCount++, cell);
+					}
+				}
+			}
+			toggleCount = 0;
+		}
+
+		writeFrame();
+	}
+
+	/**
+	 * Writes any buffered bytes to the stream.
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	public void flush() throws IOException {
+		out.write(buffer, 0, length);
+		length = 0;
+		out.flush();
+	}
+
+	/**
+	 * Writes any buffered bytes and closes the stream.
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+	/**
+	 * Writes the births and deaths that were recorded and clears them.
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	private void writeFrame() throws IOException {
+		Arrays.sort(births, 0, birthCount);
+		Arrays.sort(deaths, 0, deathCount);
+		writeCells(births, birthCount);
+		writeCells(deaths, deathCount);
+		birthCount = 0;
+		deathCount = 0;
+	}
+
+	/**
+	 * Writes a sorted list of cells.
+	 * @param cells the cells
+	 * @param count the number of cells
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	private void writeCells(long cells[], int count) throws IOException {
+		writeVarint(count);
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			writeVarint(cells[i] - previous);
+			previous = cells[i];
+		}
+	}
+
+	/**
+	 * Removes the cells that were toggled by noise from a sorted list.
+	 * @param cells the cells
+	 * @param count the number of cells
+	 * @return the new number of cells
+	 */
+	private int removeToggled(long cells[], int count) {
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (Arrays.binarySearch(toggles, 0, toggleCount, cells[i]) < 0) {
+				cells[kept++] = cells[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Writes an unsigned varint.
+	 * @param value the value (must not be negative)
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+
+	/**
+	 * Writes a byte.
+	 * @param b the byte
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	private void writeByte(int b) throws IOException {
+		if (length == buffer.length) {
+			out.write(buffer, 0, length);
+			length = 0;
+		}
+		buffer[length++] = (byte) b;
+	}
+
+	/**
+	 * Adds a value to an array, growing the array if it's full.
+	 * @param array the array
+	 * @param index the index to add the value at
+	 * @param value the value
+	 * @return the array (or the grown array)
+	 */
+	private static long[] add(long array[], int index, long value) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, array.length * 2);
+		}
+		array[index] = value;
+		return array;
+	}
+}
@@ -0,0 +1,370 @@
+package com.mangst.gameoflife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the game across several processes, so that the size of the grid isn't
+ * limited by the memory and cores of one JVM. The grid is split into
+ * horizontal slabs, and each slab is calculated by a {@link SlabWorker} in its
+ * own JVM. Each generation, the workers only swap the rows along the edges of
+ * their slabs with their neighbors, and they do so while calculating the rest
+ * of their slabs.
+ * <p>
+ * The workers are started on the local host and talk to the coordinator (this
+ * class) and to each other over loopback TCP connections. The coordinator only
+ * holds the grid while it is being handed out to the workers, and while a view
+ * or a checkpoint is being put together (see {@link #getView},
+ * {@link #getGrid}, and {@link #checkpoint}).
+ * <p>
+ * Only bounded grids (see {@link Grid.Topology#BOUNDED}) are supported, and
+ * there is no noise.
+ * @author mangst
+ */
+public class DistributedGame implements AutoCloseable {
+	/**
+	 * The number of milliseconds to wait for a worker to stop.
+	 */
+	private static final int CLOSE_TIMEOUT = 10000;
+
+	/**
+	 * The number of rows in the grid.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private final int cols;
+
+	/**
+	 * The number of longs in each row.
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * The rule the game is played by.
+	 */
+	private final Rule rule;
+
+	/**
+	 * The first row of each slab, followed by the number of rows in the grid.
+	 */
+	private final int slabStart[];
+
+	/**
+	 * The worker processes.
+	 */
+	private final List<Process> processes = new ArrayList<Process>();
+
+	/**
+	 * The connections to the workers.
+	 */
+	private final List<Socket> sockets = new ArrayList<Socket>();
+
+	/**
+	 * Receives answers from the workers.
+	 */
+	private final DataInputStream in[];
+
+	/**
+	 * Sends commands to the workers.
+	 */
+	private final DataOutputStream out[];
+
+	/**
+	 * Converts rows to and from bytes.
+	 */
+	private final byte buffer[];
+
+	/**
+	 * The number of iterations that have been run.
+	 */
+	private long iterationCount;
+
+	/**
+	 * Starts the workers and hands the grid out to them.
+	 * @param grid the starting grid (only needed until this returns)
+	 * @param workers the number of worker processes to start
+	 * @throws IOException if a worker can't be started or set up
+	 */
+	public DistributedGame(Grid grid, int workers) throws IOException {
+		this(grid, 0, workers);
+	}
+
+	/**
+	 * Starts the workers and hands the grid out to them.
+	 * @param grid the starting grid (only needed until this returns)
+	 * @param iterationCount the number of iterations the grid has already run
+	 * for (such as when resuming from a {@link Checkpoint})
+	 * @param workers the number of worker processes to start
+	 * @throws IOException if a worker can't be started or set up
+	 */
+	public DistributedGame(Grid grid, long iterationCount, int workers) throws IOException {
+		if (grid instanceof SparseGrid) {
+			throw new IllegalArgumentException("An unbounded universe can't be split into slabs.");
+		}
+		if (grid.getTopology() != Grid.Topology.BOUNDED) {
+			throw new IllegalArgumentException("The grid can't wrap around when it's split across processes.");
+		}
+		if (workers < 1 || workers > grid.getRows()) {
+			throw new IllegalArgumentException("The number of workers must be between 1 and the number of rows.");
+		}
+
+		this.rows = grid.getRows();
+		this.cols = grid.getCols();
+		this.wordsPerRow = BitGrid.wordsPerRow(cols);
+		this.rule = grid.getRule();
+		this.iterationCount = iterationCount;
+		buffer = new byte[wordsPerRow * 8];
+		in = new DataInputStream[workers];
+		out = new DataOutputStream[workers];
+		slabStart = new int[workers + 1];
+		for (int i = 0; i <= workers; i++) {
+			slabStart[i] = (int) ((long) rows * i / workers);
+		}
+
+		//use the Vector API in the workers if it's being used here
+		RowKernel kernel = RowKernel.SCALAR;
+		if (grid instanceof BitGrid) kernel = ((BitGrid) grid).getKernel();
+		if (grid instanceof OffHeapGrid) kernel = ((OffHeapGrid) grid).getKernel();
+		boolean vector = (kernel != RowKernel.SCALAR);
+
+		ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+		try {
+			server.setSoTimeout(SlabWorker.CONNECT_TIMEOUT);
+			for (int i = 0; i < workers; i++) {
+				processes.add(startWorker(server.getLocalPort(), vector));
+			}
+
+			//the workers are given the slabs in the order they connect
+			int peerPorts[] = new int[workers];
+			for (int i = 0; i < workers; i++) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketTimeoutException e) {
+					throw new IOException("Only " + i + " of the " + workers + " workers started.");
+				}
+				sockets.add(socket);
+				socket.setTcpNoDelay(true);
+				in[i] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out[i] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				peerPorts[i] = in[i].readInt();
+			}
+
+			long row[] = new long[wordsPerRow];
+			for (int i = 0; i < workers; i++) {
+				out[i].writeInt(i);
+				out[i].writeInt(workers);
+				out[i].writeInt(slabStart[i + 1] - slabStart[i]);
+				out[i].writeInt(cols);
+				out[i].writeInt(rule.getBirth());
+				out[i].writeInt(rule.getSurvival());
+				out[i].writeBoolean(vector);
+				out[i].writeInt((i == 0) ? -1 : peerPorts[i - 1]);
+
+				//send the slab along with the rows on either side of it
+				for (int j = slabStart[i] - 1; j <= slabStart[i + 1]; j++) {
+					BitGrid.packRow(grid, j, row);
+					SlabWorker.writeWords(out[i], row, 0, wordsPerRow, buffer);
+				}
+				out[i].flush();
+			}
+
+			for (int i = 0; i < workers; i++) {
+				in[i].readByte();
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Moves the game forward.
+	 * @param generations the number of generations
+	 * @throws IOException if there's a problem talking to the workers
+	 */
+	public void iterate(long generations) throws IOException {
+		//the workers keep each other in step by swapping rows, so they don't need to hear from the coordinator in between generations
+		for (DataOutputStream o : out) {
+			o.writeByte(SlabWorker.ITERATE);
+			o.writeLong(generations);
+			o.flush();
+		}
+		for (DataInputStream i : in) {
+			i.readByte();
+		}
+		iterationCount += generations;
+	}
+
+	/**
+	 * Gathers some of the rows from the workers.
+	 * @param rowStart the first row (inclusive)
+	 * @param rowEnd the last row (exclusive)
+	 * @return the rows (row 0 of the returned grid is row rowStart)
+	 * @throws IOException if there's a problem talking to the workers
+	 */
+	public Grid getView(int rowStart, int rowEnd) throws IOException {
+		if (rowStart < 0 || rowEnd > rows || rowStart > rowEnd) {
+			throw new IllegalArgumentException("The rows must be between 0 and " + rows + ".");
+		}
+
+		BitGrid view = new BitGrid(rowEnd - rowStart, cols);
+		view.setRule(rule);
+
+		//ask all of the workers first, so they send their rows at the same time
+		for (int i = 0; i < out.length; i++) {
+			int start = Math.max(rowStart, slabStart[i]);
+			int end = Math.min(rowEnd, slabStart[i + 1]);
+			if (start < end) {
+				out[i].writeByte(SlabWorker.GET);
+				out[i].writeInt(start - slabStart[i]);
+				out[i].writeInt(end - slabStart[i]);
+				out[i].flush();
+			}
+		}
+
+		long row[] = new long[wordsPerRow];
+		for (int i = 0; i < in.length; i++) {
+			int start = Math.max(rowStart, slabStart[i]);
+			int end = Math.min(rowEnd, slabStart[i + 1]);
+			for (int j = start; j < end; j++) {
+				SlabWorker.readWords(in[i], row, 0, wordsPerRow, buffer);
+				view.setWords(j - rowStart, 0, wordsPerRow, row, 0);
+			}
+		}
+		return view;
+	}
+
+	/**
+	 * Gathers the whole grid from the workers.
+	 * @return the grid
+	 * @throws IOException if there's a problem talking to the workers
+	 */
+	public Grid getGrid() throws IOException {
+		return getView(0, rows);
+	}
+
+	/**
+	 * Takes a snapshot of the game, which can be resumed by a
+	 * {@link GameOfLife} or another distributed game. There is no noise, so the
+	 * seed and the amount of noise are saved as 0.
+	 * @return the snapshot
+	 * @throws IOException if there's a problem talking to the workers
+	 */
+	public Checkpoint checkpoint() throws IOException {
+		return new Checkpoint(getGrid(), iterationCount, 0, 0);
+	}
+
+	/**
+	 * Gets the number of iterations that have been run.
+	 * @return the number of iterations
+	 */
+	public long getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * Gets the number of worker processes.
+	 * @return the number of workers
+	 */
+	public int getWorkers() {
+		return in.length;
+	}
+
+	/**
+	 * Gets the number of rows in the grid.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns in the grid.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Stops the workers.
+	 */
+	@Override
+	public void close() {
+		for (int i = 0; i < out.length; i++) {
+			if (out[i] == null) continue;
+			try {
+				out[i].writeByte(SlabWorker.CLOSE);
+				out[i].flush();
+			} catch (IOException e) {
+				//the worker has already stopped
+			}
+		}
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+		for (Process process : processes) {
+			boolean interrupted = false;
+			try {
+				if (!process.waitFor(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					process.destroy();
+				}
+			} catch (InterruptedException e) {
+				process.destroy();
+				interrupted = true;
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		sockets.clear();
+		processes.clear();
+	}
+
+	/**
+	 * Starts a worker process, which runs the same Java installation and class
+	 * path as this one.
+	 * @param port the port the worker connects to
+	 * @param vector true if the worker should be able to use the Vector API
+	 * @return the process
+	 * @throws IOException if the process can't be started
+	 */
+	private static Process startWorker(int port, boolean vector) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if (vector) {
+			command.add("--add-modules");
+			command.add("jdk.incubator.vector");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SlabWorker.class.getName());
+		command.add(InetAddress.getLoopbackAddress().getHostAddress());
+		command.add(Integer.toString(port));
+
+		//the workers don't write to stdout, but their errors should be seen
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+}
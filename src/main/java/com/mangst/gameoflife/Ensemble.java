@@ -0,0 +1,664 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Plays 64 small, independent boards at once. Each cell is stored in a long
+ * whose bit N belongs to board N (its lane), so a single pass of bitwise adder
+ * logic (see {@link BitGrid#nextCells}) calculates the next state of the cell
+ * on all 64 boards. This is meant for searching through millions of random
+ * soups, where creating a {@link GameOfLife} and a {@link Grid} for every soup
+ * would cost more than playing it (see {@link SoupSearch}).
+ * <p>
+ * The cells are stored in an array with an extra cell around the edges, just
+ * like {@link Grid}. The edge cells are always dead, or on a torus (see
+ * {@link Grid.Topology#TORUS}), they are copied from the opposite edge before
+ * each generation.
+ * <p>
+ * The last generations are kept in a ring of arrays, so each board is checked
+ * for a still life or an oscillation by comparing it with the generations
+ * before it directly, instead of by hashing it. To keep that cheap, each
+ * generation gets a signature while it's being calculated: the parity of every
+ * row and every column of each board, which is one XOR per cell into a word
+ * per row and a word per column. A board is only compared cell by cell with an
+ * earlier generation if all of its parities match that generation's. All 64
+ * boards are compared at once, and the comparison stops as soon as every board
+ * being compared has a difference. Once a board settles into a cycle, its
+ * period, the generation the cycle started at, and its population and hash at
+ * the generation the cycle was found are kept, so the results of a board don't
+ * depend on how long the other boards in the ensemble take to settle.
+ * <p>
+ * Each board counts its own generations. Changing the cells of a board starts
+ * that board over from generation 0, while the others keep going, so a board
+ * that has settled can be given a new soup right away instead of waiting for
+ * the rest of the boards to settle.
+ * @author mangst
+ */
+public class Ensemble {
+	/**
+	 * The number of boards in an ensemble.
+	 */
+	public static final int LANES = 64;
+
+	/**
+	 * The number of rows in each board.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in each board.
+	 */
+	private final int cols;
+
+	/**
+	 * The number of longs in each row of the arrays (including the edge
+	 * cells).
+	 */
+	private final int stride;
+
+	/**
+	 * The longest period that can be detected.
+	 */
+	private final int maxPeriod;
+
+	/**
+	 * The last maxPeriod + 1 generations, indexed by generation modulo the
+	 * length of the array.
+	 */
+	private final long generations[][];
+
+	/**
+	 * The signature of each generation in the ring: the parity of each row of
+	 * each board, followed by the parity of each column.
+	 */
+	private final long signatures[][];
+
+	/**
+	 * True if the cells of the current generation were changed since its
+	 * signature was calculated.
+	 */
+	private boolean signatureStale = false;
+
+	/**
+	 * The index of the current generation in the ring.
+	 */
+	private int current = 0;
+
+	/**
+	 * The number of generations that have been calculated.
+	 */
+	private long generation = 0;
+
+	/**
+	 * The generation that each board was last changed at (its generation 0).
+	 */
+	private final long boardStart[] = new long[LANES];
+
+	/**
+	 * The lanes of the boards that were changed at each of the last
+	 * generations, indexed by generation modulo the length of the array.
+	 */
+	private final long changedAt[];
+
+	/**
+	 * The lanes of the boards that have been running for at least N
+	 * generations (indexed by N), which are the ones that can be compared with
+	 * the generation N generations ago.
+	 */
+	private final long aged[];
+
+	/**
+	 * The rule the boards are played by.
+	 */
+	private Rule rule = Rule.CONWAY;
+
+	/**
+	 * How the edges of the boards are connected.
+	 */
+	private Grid.Topology topology = Grid.Topology.BOUNDED;
+
+	/**
+	 * The lanes of the boards that haven't settled into a cycle yet.
+	 */
+	private long running = -1L;
+
+	/**
+	 * The period of each board's cycle (0 if it hasn't settled).
+	 */
+	private final int period[] = new int[LANES];
+
+	/**
+	 * The generation that each board's cycle started at.
+	 */
+	private final long cycleStart[] = new long[LANES];
+
+	/**
+	 * The population of each board when its cycle was found.
+	 */
+	private final int population[] = new int[LANES];
+
+	/**
+	 * The hash of each board when its cycle was found.
+	 */
+	private final long hash[] = new long[LANES];
+
+	/**
+	 * Constructs a new ensemble of empty boards.
+	 * @param rows the number of rows in each board
+	 * @param cols the number of columns in each board
+	 * @param maxPeriod the longest period of the cycles to detect
+	 */
+	public Ensemble(int rows, int cols, int maxPeriod) {
+		if (rows < 1 || cols < 1) {
+			throw new IllegalArgumentException("The boards must have at least one row and one column.");
+		}
+		if (maxPeriod < 1) {
+			throw new IllegalArgumentException("The longest period must be at least 1.");
+		}
+
+		this.rows = rows;
+		this.cols = cols;
+		this.stride = cols + 2;
+		this.maxPeriod = maxPeriod;
+		generations = new long[maxPeriod + 1][(rows + 2) * stride];
+		signatures = new long[maxPeriod + 1][rows + cols];
+		changedAt = new long[maxPeriod + 1];
+		aged = new long[maxPeriod + 1];
+		Arrays.fill(cycleStart, -1);
+		changedAt[0] = -1L;
+	}
+
+	/**
+	 * Gets the number of rows in each board.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns in each board.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Gets the longest period of the cycles that are detected.
+	 * @return the longest period
+	 */
+	public int getMaxPeriod() {
+		return maxPeriod;
+	}
+
+	/**
+	 * Gets the number of generations that have been calculated since a board
+	 * was last changed.
+	 * @param lane the board (0 to 63)
+	 * @return the number of generations
+	 */
+	public long getGeneration(int lane) {
+		return generation - boardStart[lane];
+	}
+
+	/**
+	 * Gets the rule the boards are played by.
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the boards are played by. This starts all of the boards
+	 * over from generation 0.
+	 * @param rule the rule
+	 */
+	public void setRule(Rule rule) {
+		if (rule == null) {
+			throw new IllegalArgumentException("The rule can't be null.");
+		}
+		this.rule = rule;
+		restart(-1L);
+	}
+
+	/**
+	 * Gets how the edges of the boards are connected.
+	 * @return the topology
+	 */
+	public Grid.Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * Sets how the edges of the boards are connected. This starts all of the
+	 * boards over from generation 0.
+	 * @param topology the topology
+	 */
+	public void setTopology(Grid.Topology topology) {
+		if (topology == null) {
+			throw new IllegalArgumentException("The topology can't be null.");
+		}
+		this.topology = topology;
+
+		//the edge cells of a bounded board must be dead
+		if (topology == Grid.Topology.BOUNDED) {
+			for (long cells[] : generations) {
+				clearEdges(cells);
+			}
+		}
+		restart(-1L);
+	}
+
+	/**
+	 * Determines whether a cell of a board is alive.
+	 * @param lane the board (0 to 63)
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return true if the cell is alive, false if not
+	 */
+	public boolean isAlive(int lane, int row, int col) {
+		return ((generations[current][index(row, col)] >>> lane) & 1) != 0;
+	}
+
+	/**
+	 * Sets the state of a cell of a board. This starts the board over from
+	 * generation 0.
+	 * @param lane the board (0 to 63)
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @param alive true to make the cell alive, false to make it dead
+	 */
+	public void setAlive(int lane, int row, int col, boolean alive) {
+		int index = index(row, col);
+		long cells[] = generations[current];
+		cells[index] = alive ? cells[index] | (1L << lane) : cells[index] & ~(1L << lane);
+		restart(1L << lane);
+	}
+
+	/**
+	 * Copies a grid onto a board. This starts the board over from generation
+	 * 0.
+	 * @param lane the board (0 to 63)
+	 * @param grid the grid (it must be the same size as the boards)
+	 */
+	public void setBoard(int lane, Grid grid) {
+		if (grid.getRows() != rows || grid.getCols() != cols) {
+			throw new IllegalArgumentException("The grid must have " + rows + " rows and " + cols + " columns.");
+		}
+
+		long cells[] = generations[current];
+		long bit = 1L << lane;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				int index = index(i, j);
+				cells[index] = grid.isAlive(i, j) ? cells[index] | bit : cells[index] & ~bit;
+			}
+		}
+		restart(bit);
+	}
+
+	/**
+	 * Copies a board into a new grid, so it can be looked at or played on its
+	 * own.
+	 * @param lane the board (0 to 63)
+	 * @return the grid (with the same rule and topology as the ensemble)
+	 */
+	public Grid getBoard(int lane) {
+		BitGrid grid = new BitGrid(rows, cols);
+		grid.setRule(rule);
+		grid.setTopology(topology);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (isAlive(lane, i, j)) {
+					grid.setAlive(i, j, true);
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Fills a board with a random soup. The same seed always makes the same
+	 * soup, so a soup can be recreated from its seed alone. This starts the
+	 * board over from generation 0.
+	 * @param lane the board (0 to 63)
+	 * @param seed the seed
+	 * @param aliveChance the chance that each cell starts out alive (between
+	 * 0 and 1)
+	 */
+	public void populate(int lane, long seed, double aliveChance) {
+		SplittableRandom random = new SplittableRandom(seed);
+		long cells[] = generations[current];
+		long bit = 1L << lane;
+		for (int i = 1; i <= rows; i++) {
+			int row = i * stride;
+			for (int j = row + 1; j <= row + cols; j++) {
+				cells[j] = (random.nextDouble() < aliveChance) ? cells[j] | bit : cells[j] & ~bit;
+			}
+		}
+		restart(bit);
+	}
+
+	/**
+	 * Kills every cell of every board. This starts all of the boards over from
+	 * generation 0.
+	 */
+	public void clear() {
+		Arrays.fill(generations[current], 0);
+		restart(-1L);
+	}
+
+	/**
+	 * Calculates the next generation of all of the boards, then checks which
+	 * of them have settled into a cycle.
+	 */
+	public void step() {
+		long src[] = generations[current];
+		int next = (current + 1) % generations.length;
+		long dest[] = generations[next];
+		if (topology == Grid.Topology.TORUS) {
+			wrapEdges(src);
+		}
+		if (signatureStale) {
+			sign(src, signatures[current]);
+			signatureStale = false;
+		}
+
+		Rule rule = this.rule;
+		long signature[] = signatures[next];
+		Arrays.fill(signature, rows, rows + cols, 0);
+		for (int i = 1; i <= rows; i++) {
+			int row = i * stride;
+			int above = row - stride;
+			int below = row + stride;
+			long parity = 0;
+
+			//slide a 3x3 window along the row, so each cell is only read once per row it's a neighbor in
+			long aW = src[above], a = src[above + 1];
+			long bW = src[row], b = src[row + 1];
+			long cW = src[below], c = src[below + 1];
+			for (int j = 1; j <= cols; j++) {
+				long aE = src[above + j + 1];
+				long bE = src[row + j + 1];
+				long cE = src[below + j + 1];
+				long cells = BitGrid.nextCells(aW, a, aE, bW, b, bE, cW, c, cE, rule);
+				dest[row + j] = cells;
+				parity ^= cells;
+				signature[rows + j - 1] ^= cells;
+				aW = a;
+				a = aE;
+				bW = b;
+				b = bE;
+				cW = c;
+				c = cE;
+			}
+			signature[i - 1] = parity;
+		}
+
+		current = next;
+		generation++;
+
+		//the boards that were changed N generations ago can now be compared with the generation N generations ago
+		for (int p = 1; p <= maxPeriod && p <= generation; p++) {
+			aged[p] |= changedAt[(int) ((generation - p) % changedAt.length)];
+		}
+		changedAt[(int) (generation % changedAt.length)] = 0;
+
+		detectCycles();
+	}
+
+	/**
+	 * Calculates generations until every board has either settled into a
+	 * cycle or been played for a number of generations.
+	 * @param maxGenerations the number of generations to stop a board at if
+	 * it hasn't settled
+	 * @return the lanes of the boards that have settled (bit N is set if
+	 * board N has settled)
+	 */
+	public long run(long maxGenerations) {
+		while (getRunning(maxGenerations) != 0) {
+			step();
+		}
+		return ~running;
+	}
+
+	/**
+	 * Gets the boards that haven't settled into a cycle yet.
+	 * @param maxGenerations the number of generations after which a board
+	 * that hasn't settled doesn't count as running anymore
+	 * @return the lanes of the boards (bit N is set if board N is still
+	 * running)
+	 */
+	public long getRunning(long maxGenerations) {
+		long lanes = running;
+		for (long r = running; r != 0; r &= r - 1) {
+			int lane = Long.numberOfTrailingZeros(r);
+			if (generation - boardStart[lane] >= maxGenerations) {
+				lanes &= ~(1L << lane);
+			}
+		}
+		return lanes;
+	}
+
+	/**
+	 * Determines whether a board has settled into a still life or an
+	 * oscillation.
+	 * @param lane the board (0 to 63)
+	 * @return true if the board has settled, false if not
+	 */
+	public boolean isSettled(int lane) {
+		return ((running >>> lane) & 1) == 0;
+	}
+
+	/**
+	 * Gets the period of the cycle that a board settled into.
+	 * @param lane the board (0 to 63)
+	 * @return the period (1 for a still life, which includes an empty board)
+	 * or 0 if the board hasn't settled
+	 */
+	public int getPeriod(int lane) {
+		return period[lane];
+	}
+
+	/**
+	 * Gets the generation that a board's cycle started at (the first
+	 * generation that was repeated, counted from when the board was last
+	 * changed).
+	 * @param lane the board (0 to 63)
+	 * @return the generation or -1 if the board hasn't settled
+	 */
+	public long getCycleStart(int lane) {
+		return cycleStart[lane];
+	}
+
+	/**
+	 * Gets the number of live cells on a board.
+	 * @param lane the board (0 to 63)
+	 * @return the number of live cells when the board's cycle was found, or
+	 * now if the board hasn't settled
+	 */
+	public int getPopulation(int lane) {
+		return isSettled(lane) ? population[lane] : countAlive(lane);
+	}
+
+	/**
+	 * Gets the hash of a board, which is the XOR of a random 64-bit key for
+	 * every live cell. This is the same hash that cycle detection (see
+	 * {@link GameOfLife#setMaxCyclePeriod}) gives a {@link Grid} that stores
+	 * each cell as a boolean. Cycle detection hashes bit-packed grids (such as
+	 * {@link BitGrid}) a word at a time instead, so their hashes are
+	 * different.
+	 * @param lane the board (0 to 63)
+	 * @return the hash of the board when its cycle was found, or now if the
+	 * board hasn't settled
+	 */
+	public long getHash(int lane) {
+		return isSettled(lane) ? hash[lane] : hash(lane);
+	}
+
+	/**
+	 * Compares the current generation with the generations before it, and
+	 * records the boards that have repeated themselves.
+	 */
+	private void detectCycles() {
+		long cells[] = generations[current];
+		long signature[] = signatures[current];
+		for (int p = 1; p <= maxPeriod && (running & aged[p]) != 0; p++) {
+			int ring = (current - p + generations.length) % generations.length;
+
+			//the boards that have already settled (or are too new) don't need to be compared
+			long candidates = running & aged[p];
+			long beforeSignature[] = signatures[ring];
+			for (int k = 0; k < signature.length && candidates != 0; k++) {
+				candidates &= ~(signature[k] ^ beforeSignature[k]);
+			}
+			if (candidates == 0) {
+				continue;
+			}
+
+			//the signatures match, so make sure the cells do too (stopping once all of the boards differ)
+			long before[] = generations[ring];
+			long differ = ~candidates;
+			for (int i = 1; i <= rows && differ != -1L; i++) {
+				int row = i * stride;
+				for (int j = row + 1; j <= row + cols; j++) {
+					differ |= cells[j] ^ before[j];
+				}
+			}
+
+			long repeated = ~differ;
+			while (repeated != 0) {
+				int lane = Long.numberOfTrailingZeros(repeated);
+				repeated &= repeated - 1;
+				period[lane] = p;
+				cycleStart[lane] = generation - p - boardStart[lane];
+				population[lane] = countAlive(lane);
+				hash[lane] = hash(lane);
+				running &= ~(1L << lane);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the signature of a generation.
+	 * @param cells the generation
+	 * @param signature the array to put the signature in
+	 */
+	private void sign(long cells[], long signature[]) {
+		Arrays.fill(signature, 0);
+		for (int i = 1; i <= rows; i++) {
+			int row = i * stride;
+			for (int j = 1; j <= cols; j++) {
+				signature[i - 1] ^= cells[row + j];
+				signature[rows + j - 1] ^= cells[row + j];
+			}
+		}
+	}
+
+	/**
+	 * Starts boards over from generation 0, forgetting whether they had
+	 * settled.
+	 * @param lanes the lanes of the boards (bit N is set for board N)
+	 */
+	private void restart(long lanes) {
+		running |= lanes;
+		for (long r = lanes; r != 0; r &= r - 1) {
+			int lane = Long.numberOfTrailingZeros(r);
+			boardStart[lane] = generation;
+			period[lane] = 0;
+			cycleStart[lane] = -1;
+			population[lane] = 0;
+			hash[lane] = 0;
+		}
+
+		//the generations before this one don't count for these boards anymore
+		for (int p = 0; p <= maxPeriod; p++) {
+			aged[p] &= ~lanes;
+			changedAt[p] &= ~lanes;
+		}
+		changedAt[(int) (generation % changedAt.length)] |= lanes;
+		signatureStale = true;
+	}
+
+	/**
+	 * Counts the live cells on a board.
+	 * @param lane the board (0 to 63)
+	 * @return the number of live cells
+	 */
+	private int countAlive(int lane) {
+		long cells[] = generations[current];
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				count += (int) (cells[index(i, j)] >>> lane) & 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Calculates the hash of a board.
+	 * @param lane the board (0 to 63)
+	 * @return the hash
+	 */
+	private long hash(int lane) {
+		long cells[] = generations[current];
+		long hash = 0;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (((cells[index(i, j)] >>> lane) & 1) != 0) {
+					hash ^= CycleDetector.key((long) i * cols + j);
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Copies the cells at each edge of the boards into the edge cells on the
+	 * opposite side.
+	 * @param cells the generation
+	 */
+	private void wrapEdges(long cells[]) {
+		for (int i = 1; i <= rows; i++) {
+			int row = i * stride;
+			cells[row] = cells[row + cols];
+			cells[row + cols + 1] = cells[row + 1];
+		}
+
+		//the corners come along with the rows, since the columns are already wrapped
+		System.arraycopy(cells, rows * stride, cells, 0, stride);
+		System.arraycopy(cells, stride, cells, (rows + 1) * stride, stride);
+	}
+
+	/**
+	 * Kills the edge cells.
+	 * @param cells the generation
+	 */
+	private void clearEdges(long cells[]) {
+		for (int i = 0; i < stride; i++) {
+			cells[i] = 0;
+			cells[(rows + 1) * stride + i] = 0;
+		}
+		for (int i = 1; i <= rows; i++) {
+			cells[i * stride] = 0;
+			cells[i * stride + cols + 1] = 0;
+		}
+	}
+
+	/**
+	 * Gets the index of a cell in the arrays.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return the index
+	 */
+	private int index(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) {
+			throw new IndexOutOfBoundsException("Cell (" + row + ", " + col + ") is outside of the boards.");
+		}
+		return (row + 1) * stride + col + 1;
+	}
+}
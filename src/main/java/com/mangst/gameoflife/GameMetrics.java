@@ -0,0 +1,209 @@
+package com.mangst.gameoflife;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the measurements of a game's generations into histograms, so that
+ * the time spent in each phase and how it changes over time can be watched
+ * through JMX (such as with JConsole). Add it to a game with
+ * {@link GameOfLife#addGenerationListener}, then call {@link #register}.
+ * <p>
+ * The game doesn't render the grid itself, so whatever renders it should
+ * report how long that took with {@link #renderCompleted}.
+ * @author mangst
+ */
+public class GameMetrics implements GenerationListener, GameMetricsMBean {
+	/**
+	 * The time it took to calculate each generation.
+	 */
+	private final Histogram compute = new Histogram();
+
+	/**
+	 * The time it took to add the noise to each generation.
+	 */
+	private final Histogram noise = new Histogram();
+
+	/**
+	 * The time it took to render each generation.
+	 */
+	private final Histogram render = new Histogram();
+
+	/**
+	 * The game's iteration count as of the last generation.
+	 */
+	private long iterationCount;
+
+	/**
+	 * The number of live cells as of the last generation.
+	 */
+	private long liveCells = -1;
+
+	/**
+	 * The total number of cells that were calculated.
+	 */
+	private long cellUpdates;
+
+	/**
+	 * The worker imbalance of the last generation.
+	 */
+	private double imbalance;
+
+	/**
+	 * The sum of the worker imbalances that are known.
+	 */
+	private double imbalanceTotal;
+
+	/**
+	 * The number of generations whose worker imbalance is known.
+	 */
+	private long imbalanceCount;
+
+	/**
+	 * The name this object is registered under (null if not registered).
+	 */
+	private ObjectName objectName;
+
+	@Override
+	public synchronized void generationCompleted(GenerationStats stats) {
+		compute.record(stats.getComputeNanos());
+		noise.record(stats.getNoiseNanos());
+		iterationCount = stats.getIteration();
+		liveCells = stats.getLiveCells();
+		cellUpdates += stats.getCells();
+
+		imbalance = stats.getImbalance();
+		if (imbalance > 0) {
+			imbalanceTotal += imbalance;
+			imbalanceCount++;
+		}
+	}
+
+	/**
+	 * Records how long it took to render the grid.
+	 * @param nanos the time in nanoseconds
+	 */
+	public synchronized void renderCompleted(long nanos) {
+		render.record(nanos);
+	}
+
+	/**
+	 * Registers this object with the platform MBean server, under the name
+	 * "com.mangst.gameoflife:type=GameMetrics,name=NAME".
+	 * @param name the name that tells this game apart from other games in the
+	 * same JVM
+	 * @throws JMException if the name is invalid or is already registered
+	 */
+	public void register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("com.mangst.gameoflife:type=GameMetrics,name=" + name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Unregisters this object from the platform MBean server, if it was
+	 * registered.
+	 * @throws JMException if there's a problem unregistering it
+	 */
+	public void unregister() throws JMException {
+		if (objectName == null) {
+			return;
+		}
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		objectName = null;
+	}
+
+	@Override
+	public synchronized long getGenerations() {
+		return compute.getCount();
+	}
+
+	@Override
+	public synchronized long getIterationCount() {
+		return iterationCount;
+	}
+
+	@Override
+	public synchronized long getLiveCells() {
+		return liveCells;
+	}
+
+	@Override
+	public synchronized double getCellUpdatesPerSecond() {
+		long nanos = compute.getSum();
+		return (nanos == 0) ? 0 : cellUpdates * 1e9 / nanos;
+	}
+
+	@Override
+	public synchronized double getComputeMillisMean() {
+		return compute.getMean() / 1e6;
+	}
+
+	@Override
+	public synchronized double getComputeMillisP50() {
+		return compute.getPercentile(50) / 1e6;
+	}
+
+	@Override
+	public synchronized double getComputeMillisP90() {
+		return compute.getPercentile(90) / 1e6;
+	}
+
+	@Override
+	public synchronized double getComputeMillisP99() {
+		return compute.getPercentile(99) / 1e6;
+	}
+
+	@Override
+	public synchronized double getComputeMillisMax() {
+		return compute.getMax() / 1e6;
+	}
+
+	@Override
+	public synchronized double getNoiseMillisMean() {
+		return noise.getMean() / 1e6;
+	}
+
+	@Override
+	public synchronized double getNoiseMillisP99() {
+		return noise.getPercentile(99) / 1e6;
+	}
+
+	@Override
+	public synchronized double getRenderMillisMean() {
+		return render.getMean() / 1e6;
+	}
+
+	@Override
+	public synchronized double getRenderMillisP99() {
+		return render.getPercentile(99) / 1e6;
+	}
+
+	@Override
+	public synchronized double getWorkerImbalance() {
+		return imbalance;
+	}
+
+	@Override
+	public synchronized double getWorkerImbalanceMean() {
+		return (imbalanceCount == 0) ? 0 : imbalanceTotal / imbalanceCount;
+	}
+
+	@Override
+	public synchronized void reset() {
+		compute.reset();
+		noise.reset();
+		render.reset();
+		cellUpdates = 0;
+		imbalance = 0;
+		imbalanceTotal = 0;
+		imbalanceCount = 0;
+	}
+}
@@ -0,0 +1,107 @@
+package com.mangst.gameoflife;
+
+/**
+ * The attributes and operations that {@link GameMetrics} exposes through JMX.
+ * All times are in milliseconds.
+ * @author mangst
+ */
+public interface GameMetricsMBean {
+	/**
+	 * Gets the number of generations that have been measured.
+	 * @return the number of generations
+	 */
+	long getGenerations();
+
+	/**
+	 * Gets the game's iteration count as of the last generation.
+	 * @return the iteration count
+	 */
+	long getIterationCount();
+
+	/**
+	 * Gets the number of live cells as of the last generation.
+	 * @return the number of live cells or -1 if it is not known
+	 */
+	long getLiveCells();
+
+	/**
+	 * Gets the number of cells that were calculated per second of compute
+	 * time, over all of the generations.
+	 * @return the cell updates per second
+	 */
+	double getCellUpdatesPerSecond();
+
+	/**
+	 * Gets the average time it took to calculate a generation.
+	 * @return the time
+	 */
+	double getComputeMillisMean();
+
+	/**
+	 * Gets the median time it took to calculate a generation.
+	 * @return the time
+	 */
+	double getComputeMillisP50();
+
+	/**
+	 * Gets the 90th percentile of the time it took to calculate a generation.
+	 * @return the time
+	 */
+	double getComputeMillisP90();
+
+	/**
+	 * Gets the 99th percentile of the time it took to calculate a generation.
+	 * @return the time
+	 */
+	double getComputeMillisP99();
+
+	/**
+	 * Gets the longest time it took to calculate a generation.
+	 * @return the time
+	 */
+	double getComputeMillisMax();
+
+	/**
+	 * Gets the average time it took to add the noise to a generation.
+	 * @return the time
+	 */
+	double getNoiseMillisMean();
+
+	/**
+	 * Gets the 99th percentile of the time it took to add the noise to a
+	 * generation.
+	 * @return the time
+	 */
+	double getNoiseMillisP99();
+
+	/**
+	 * Gets the average time it took to render the grid.
+	 * @return the time
+	 */
+	double getRenderMillisMean();
+
+	/**
+	 * Gets the 99th percentile of the time it took to render the grid.
+	 * @return the time
+	 */
+	double getRenderMillisP99();
+
+	/**
+	 * Gets how unevenly the work was divided up amongst the worker threads in
+	 * the last generation (see {@link GenerationStats#getImbalance}).
+	 * @return the imbalance or 0 if it is not known
+	 */
+	double getWorkerImbalance();
+
+	/**
+	 * Gets the average of how unevenly the work was divided up amongst the
+	 * worker threads (see {@link GenerationStats#getImbalance}).
+	 * @return the imbalance or 0 if it is not known
+	 */
+	double getWorkerImbalanceMean();
+
+	/**
+	 * Forgets all of the measurements.
+	 */
+	void reset();
+}
@@ -1,16 +1,33 @@
 package com.mangst.gameoflife;
 
-import java.io.FileReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
 
 /**
- * A concurrent implementation of The Game of Life.
+ * A concurrent implementation of The Game of Life. The game keeps a pool of
+ * worker threads alive between iterations, so it should be closed when it is
+ * no longer needed.
  * @author mangst
  */
-public class GameOfLife {
+public class GameOfLife implements AutoCloseable {
 	/**
 	 * Runs the game from the command line.
 	 * @param args the command line arguments
@@ -35,9 +52,65 @@ public class GameOfLife {
 			System.out.println("-t=N, --threads=N");
 			System.out.println("   The number of threads the game will use.");
 			System.out.println("   (defaults to the computer's number of cores)");
+			System.out.println("-p=MODE, --partition=MODE");
+			System.out.println("   How the rows of the grid are divided up amongst the threads. \"bands\" gives");
+			System.out.println("   each thread one contiguous band of rows, \"interleaved\" gives each thread");
+			System.out.println("   every Nth row.");
+			System.out.println("   (defaults to \"bands\")");
+			System.out.println("--blockCols=N");
+			System.out.println("   Splits each thread's band of rows into blocks that are N columns wide, so");
+			System.out.println("   that each block fits in the cache. Only used with \"--partition=bands\".");
+			System.out.println("   (defaults to 0--each band is calculated a full row at a time)");
+			System.out.println("--virtualThreads");
+			System.out.println("   Runs the threads (-t) as virtual threads instead of starting platform");
+			System.out.println("   threads. Requires Java 21 or later.");
+			System.out.println("--forkJoin");
+			System.out.println("   Calculates each iteration with fork/join work-stealing (using the common");
+			System.out.println("   pool) instead of giving each thread a fixed part of the grid.");
+			System.out.println("--tileSize=N");
+			System.out.println("   Splits the grid into NxN tiles and only recalculates the tiles that changed");
+			System.out.println("   (or had a neighbor that changed) in the last iteration.");
+			System.out.println("   (defaults to 0--every cell is recalculated every iteration)");
+			System.out.println("--temporalBlocking=K");
+			System.out.println("   Moves each part of a bit-packed grid (-b, --vector, --offHeap) K iterations");
+			System.out.println("   ahead at once while it is in the cache, so the grid is only read from and");
+			System.out.println("   written to memory once every K iterations. Only used when the output is");
+			System.out.println("   suppressed, --sleep is 0, and there is no noise. K can be 1 (off) to 64.");
+			System.out.println("   (defaults to 8)");
+			System.out.println("--distributed=N");
+			System.out.println("   Splits the grid into N horizontal slabs and calculates each slab in its own");
+			System.out.println("   JVM (with one thread) on this machine. Each iteration, the JVMs only swap");
+			System.out.println("   the rows along the edges of their slabs, over loopback TCP connections.");
+			System.out.println("   Cannot be used with --hashLife, --unbounded, --topology=torus, --noise,");
+			System.out.println("   --cycles, --stopOnCycle, --deltas, or --metrics.");
+			System.out.println("   (defaults to 0--the game runs in this JVM)");
+			System.out.println("--hashLife");
+			System.out.println("   Uses the HashLife algorithm, which can skip ahead billions of iterations at");
+			System.out.println("   a time. The grid becomes a window onto an unbounded universe, so cells that");
+			System.out.println("   move off the edge are not destroyed. If the output is suppressed and there");
+			System.out.println("   is no noise, the game jumps straight to the last iteration.");
+			System.out.println("--rule=RULE");
+			System.out.println("   The rule the game is played by, as a rulestring that lists the numbers of");
+			System.out.println("   live neighbors that a dead cell is born with (B) and that a live cell");
+			System.out.println("   survives with (S). Examples: \"B3/S23\" (Conway's Game of Life), \"B36/S23\"");
+			System.out.println("   (HighLife), \"B3678/S34678\" (Day & Night), \"B2/S\" (Seeds). Rules with B0");
+			System.out.println("   can't be used with --hashLife or --unbounded.");
+			System.out.println("   (defaults to the rule in the RLE pattern file if -g is specified, otherwise");
+			System.out.println("   \"B3/S23\")");
+			System.out.println("--topology=TOPOLOGY");
+			System.out.println("   How the edges of the grid are connected. \"bounded\" treats the cells outside");
+			System.out.println("   of the grid as dead, \"torus\" wraps the grid around so that cells that move");
+			System.out.println("   off one edge come back on the opposite edge. \"torus\" can't be used with");
+			System.out.println("   --hashLife or --unbounded.");
+			System.out.println("   (defaults to \"bounded\")");
 			System.out.println("-n=N, --noise=N");
 			System.out.println("   Chooses N cells at random each iteration and toggles their states.");
 			System.out.println("   (defaults to 0)");
+			System.out.println("--seed=N");
+			System.out.println("   The seed that chooses the starting cells (see -a) and the cells that are");
+			System.out.println("   toggled by the noise. Runs with the same seed choose the same cells, no");
+			System.out.println("   matter how many threads are used.");
+			System.out.println("   (defaults to a random seed, or the checkpoint's seed if --resume is used)");
 			System.out.println("-s=N, --sleep=N");
 			System.out.println("   The number of milliseconds the program will pause for before iterating to");
 			System.out.println("   the next grid state.");
@@ -47,36 +120,158 @@ public class GameOfLife {
 			System.out.println("   (defaults to infinite--the game will never end)");
 			System.out.println("-u, --suppressOutput");
 			System.out.println("   Use this flag to stop the board from being displayed every iteration.");
+			System.out.println("--renderEvery=N");
+			System.out.println("   Displays the board every N iterations instead of every iteration. The board");
+			System.out.println("   is displayed on another thread while the game keeps going, and if the");
+			System.out.println("   display can't keep up, the iterations it hasn't gotten to are skipped.");
+			System.out.println("   (defaults to 1)");
+			System.out.println("-b, --bitPacked");
+			System.out.println("   Stores the grid as packed bits (64 cells per long). Uses 1/8 of the memory");
+			System.out.println("   and calculates 64 cells at a time.");
+			System.out.println("--vector");
+			System.out.println("   Calculates several longs at a time with the Java Vector API (implies -b).");
+			System.out.println("   Requires Java 17 or later and the \"--add-modules jdk.incubator.vector\"");
+			System.out.println("   JVM option.");
+			System.out.println("--offHeap[=DIR]");
+			System.out.println("   Stores the grid as packed bits outside of the Java heap, so it can be larger");
+			System.out.println("   than the heap and is never scanned by the garbage collector. If a directory");
+			System.out.println("   is given, the grid is stored in memory-mapped files in that directory");
+			System.out.println("   instead, so it can even be larger than the computer's memory.");
+			System.out.println("--unbounded");
+			System.out.println("   Plays the game on an unbounded universe that only stores the areas that have");
+			System.out.println("   live cells. The grid size (-r, -c) is the part of the universe that is");
+			System.out.println("   displayed. Cells that move off the edge of the grid are not destroyed.");
 			System.out.println("-a=N, --startAlive=N");
 			System.out.println("   The percent chance each cell has of starting in the \"alive\" state.");
 			System.out.println("   (defaults to 0.25, unless -g is specified, in which case it is ignored)");
 			System.out.println("-g=FILE, --grid=FILE");
-			System.out.println("   Specify the starting grid state in a file. Each character in the text file");
-			System.out.println("   represents a cell. Alive cells are 'x', dead cells can be anything else.");
-			System.out.println("   If the specified grid size (-r, -c) is greater than the grid size in the");
-			System.out.println("   file, it will populate the upper-left corner of the grid. If it's less than");
-			System.out.println("   the grid size in the file, it will populate as much as it can.");
-			System.out.println("   Example:");
+			System.out.println("   Specify the starting grid state in a pattern file. The format is detected");
+			System.out.println("   automatically:");
+			System.out.println("   RLE (\"x = 3, y = 3\" header, \"b\" is dead, \"o\" is alive, \"$\" ends a row)");
+			System.out.println("   Plaintext (starts with a \"!\" comment, '.' is dead, 'O' is alive)");
+			System.out.println("   Life 1.06 (starts with \"#Life 1.06\", then one \"x y\" pair per live cell)");
+			System.out.println("   Text (anything else, 'x' is alive, anything else is dead)");
+			System.out.println("   If the pattern is smaller than the grid size (-r, -c), it will populate the");
+			System.out.println("   upper-left corner of the grid (see --gridRow and --gridCol). If it's larger,");
+			System.out.println("   it will populate as much as it can.");
+			System.out.println("   Text example:");
 			System.out.println("   x..x.");
 			System.out.println("   .xx..");
 			System.out.println("   ..x.x");
+			System.out.println("--gridRow=N, --gridCol=N");
+			System.out.println("   The row and column to place the top-left corner of the pattern at (or the");
+			System.out.println("   origin, for Life 1.06 patterns).");
+			System.out.println("   (defaults to 0)");
+			System.out.println("--checkpointEvery=N");
+			System.out.println("   Saves a checkpoint of the game every N iterations, so it can be resumed later");
+			System.out.println("   (see --resume). The checkpoint is written in the background while the game");
+			System.out.println("   keeps going.");
+			System.out.println("   (defaults to 0--no checkpoints are saved)");
+			System.out.println("--checkpointFile=FILE");
+			System.out.println("   The file to save the checkpoints to.");
+			System.out.println("   (defaults to \"gameoflife.checkpoint\")");
+			System.out.println("--resume=FILE");
+			System.out.println("   Resumes the game from a checkpoint. The grid size (-r, -c), iteration count,");
+			System.out.println("   and noise (unless -n is specified) are taken from the checkpoint. The other");
+			System.out.println("   arguments, such as -b and -t, must be specified again.");
+			System.out.println("--cycles=N");
+			System.out.println("   Detects when the grid settles into a still life or an oscillator with a");
+			System.out.println("   period of up to N iterations, and displays the period and the iteration it");
+			System.out.println("   started at when the game ends. Cannot be used with --hashLife or --unbounded.");
+			System.out.println("   (defaults to 0--cycles are not detected)");
+			System.out.println("--stopOnCycle");
+			System.out.println("   Stops the game as soon as a cycle is detected (see --cycles, which defaults");
+			System.out.println("   to 32 if this is specified).");
+			System.out.println("--deltas=FILE");
+			System.out.println("   Writes the cells that are born and die each iteration to a file, which is much");
+			System.out.println("   smaller than saving the whole grid. Cannot be used with --hashLife or");
+			System.out.println("   --unbounded.");
+			System.out.println("--metrics[=NAME]");
+			System.out.println("   Measures how long each iteration takes to calculate, add noise to, and");
+			System.out.println("   display, along with the number of live cells, the cell updates per second,");
+			System.out.println("   and how evenly the work is divided up amongst the threads. The measurements");
+			System.out.println("   can be watched through JMX (such as with JConsole) under");
+			System.out.println("   \"com.mangst.gameoflife:type=GameMetrics,name=NAME\", and a summary is");
+			System.out.println("   displayed when the game ends.");
+			System.out.println("   (NAME defaults to \"gameoflife\")");
 			System.out.println("-h, --help");
 			System.out.println("   Displays this help message.");
 			System.exit(0);
 		}
 
+		//resume from a checkpoint
+		String resumeFile = arguments.value(null, "resume");
+		Checkpoint resume = null;
+		if (resumeFile != null) {
+			try {
+				resume = Checkpoint.load(new File(resumeFile));
+			} catch (IOException e) {
+				argErrors.add("Problem reading the checkpoint file \"" + resumeFile + "\": " + e.getMessage());
+			}
+		}
+
 		//get the number of rows in the grid
-		Integer rows = arguments.valueInt("r", "rows");
-		if (rows == null) {
+		Integer rows = (resume == null) ? arguments.valueInt("r", "rows") : Integer.valueOf(resume.getRows());
+		if (rows == null && resumeFile == null) {
 			argErrors.add("Number of rows is required (example: \"--rows=50\").");
 		}
 
 		//get the number of columns in the grid
-		Integer cols = arguments.valueInt("c", "cols");
-		if (cols == null) {
+		Integer cols = (resume == null) ? arguments.valueInt("c", "cols") : Integer.valueOf(resume.getCols());
+		if (cols == null && resumeFile == null) {
 			argErrors.add("Number of columns is required (example: \"--cols=50\").");
 		}
 
+		//get how the rows are divided up amongst the threads
+		Partitioning partitioning = null;
+		String partitionValue = arguments.value("p", "partition", "bands");
+		try {
+			partitioning = Partitioning.valueOf(partitionValue.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			argErrors.add("Unknown partitioning mode \"" + partitionValue + "\" (must be \"bands\" or \"interleaved\").");
+		}
+
+		//get the rule the game is played by
+		Rule rule = null;
+		String ruleValue = arguments.value(null, "rule");
+		if (ruleValue != null) {
+			try {
+				rule = Rule.parse(ruleValue);
+			} catch (IllegalArgumentException e) {
+				argErrors.add(e.getMessage());
+			}
+		}
+
+		//get how the edges of the grid are connected
+		Grid.Topology topology = null;
+		String topologyValue = arguments.value(null, "topology", "bounded");
+		try {
+			topology = Grid.Topology.valueOf(topologyValue.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			argErrors.add("Unknown topology \"" + topologyValue + "\" (must be \"bounded\" or \"torus\").");
+		}
+
+		//get the number of generations to move each tile ahead at once
+		Integer temporalBlocking = arguments.valueInt(null, "temporalBlocking", 8);
+		if (temporalBlocking < 1 || temporalBlocking > TemporalBlock.MAX_GENERATIONS) {
+			argErrors.add("Temporal blocking must be between 1 and " + TemporalBlock.MAX_GENERATIONS + " generations (example: \"--temporalBlocking=8\").");
+		}
+
+		//get how often to display the board
+		Integer renderEvery = arguments.valueInt(null, "renderEvery", 1);
+		if (renderEvery < 1) {
+			argErrors.add("The board must be displayed every 1 or more iterations (example: \"--renderEvery=10\").");
+		}
+
+		//split the grid across several processes
+		Integer distributed = arguments.valueInt(null, "distributed", 0);
+		if (distributed < 0) {
+			argErrors.add("The number of processes can't be negative (example: \"--distributed=4\").");
+		}
+		if (distributed > 0 && (arguments.exists(null, "hashLife") || arguments.exists(null, "unbounded") || topology == Grid.Topology.TORUS || arguments.valueInt("n", "noise", 0) != 0 || arguments.exists(null, "cycles") || arguments.exists(null, "stopOnCycle") || arguments.exists(null, "deltas") || arguments.exists(null, "metrics"))) {
+			argErrors.add("--distributed can't be used with --hashLife, --unbounded, --topology=torus, --noise, --cycles, --stopOnCycle, --deltas, or --metrics.");
+		}
+
 		if (!argErrors.isEmpty()) {
 			for (String error : argErrors) {
 				System.err.println(error);
@@ -87,73 +282,465 @@ public class GameOfLife {
 		//get number of threads to spawn
 		Integer threads = arguments.valueInt("t", "threads", Runtime.getRuntime().availableProcessors());
 
+		//get the width of the column blocks
+		Integer blockCols = arguments.valueInt(null, "blockCols", 0);
+
+		//use virtual threads
+		boolean virtualThreads = arguments.exists(null, "virtualThreads");
+
+		//use fork/join
+		boolean forkJoin = arguments.exists(null, "forkJoin");
+
+		//get the size of the tiles used to skip unchanging parts of the grid
+		Integer tileSize = arguments.valueInt(null, "tileSize", 0);
+
+		//use the HashLife algorithm
+		boolean hashLife = arguments.exists(null, "hashLife");
+
 		//get the amount of noise
 		Integer noise = arguments.valueInt("n", "noise", 0);
 
+		//get the seed of the noise
+		Long seed = arguments.valueLong(null, "seed");
+
 		//get the number of ms to sleep between iterations
 		Integer sleep = arguments.valueInt("s", "sleep", 100);
 
 		//get the number max iterations
 		Integer iterations = arguments.valueInt("i", "iterations");
 
+		//save a checkpoint every N iterations
+		Integer checkpointEvery = arguments.valueInt(null, "checkpointEvery", 0);
+		String checkpointFile = arguments.value(null, "checkpointFile", "gameoflife.checkpoint");
+
+		//detect still lifes and oscillators
+		boolean stopOnCycle = arguments.exists(null, "stopOnCycle");
+		Integer maxCyclePeriod = arguments.valueInt(null, "cycles", stopOnCycle ? 32 : 0);
+
+		//write the changes made each iteration to a file
+		String deltasFile = arguments.value(null, "deltas");
+
+		//measure the iterations and expose the measurements through JMX
+		String metricsName = arguments.exists(null, "metrics") ? arguments.value(null, "metrics", "gameoflife") : null;
+
 		//do not display the board state
 		boolean suppressOutput = arguments.exists("u", "suppressOutput");
 
+		//store the grid as packed bits
+		boolean bitPacked = arguments.exists("b", "bitPacked");
+
+		//calculate the bit-packed grid with the Vector API
+		RowKernel kernel = RowKernel.SCALAR;
+		if (arguments.exists(null, "vector")) {
+			kernel = RowKernel.vector();
+			if (kernel == RowKernel.SCALAR) {
+				System.err.println("The Vector API is not available (requires Java 17 or later and \"--add-modules jdk.incubator.vector\"). Using the scalar kernel instead.");
+			}
+			bitPacked = true;
+		}
+
+		//store the grid outside of the heap (an empty string means direct buffers instead of files)
+		String offHeap = arguments.exists(null, "offHeap") ? arguments.value(null, "offHeap", "") : null;
+
+		//play on an unbounded universe
+		boolean unbounded = arguments.exists(null, "unbounded");
+
+		//create the grid
+		Grid starting = null;
+		try {
+			starting = newGrid(rows, cols, bitPacked, kernel, offHeap, unbounded);
+		} catch (UncheckedIOException e) {
+			System.err.println("Problem creating the memory-mapped grid in \"" + offHeap + "\": " + e.getCause().getMessage());
+			System.exit(1);
+		}
+
 		//construct GameOfLife object
 		GameOfLife gameOfLife;
 		String gridFile = arguments.value("g", "grid");
-		if (gridFile != null) {
+		if (resume != null) {
+			//continue where the checkpoint left off
+			gameOfLife = new GameOfLife(starting);
+			gameOfLife.restore(resume);
+		} else if (gridFile != null) {
 			//use the user's specified starting state
 
-			Grid starting = new Grid(rows, cols);
-			Scanner in = null;
+			Integer gridRow = arguments.valueInt(null, "gridRow", 0);
+			Integer gridCol = arguments.valueInt(null, "gridCol", 0);
+			PatternReader reader = null;
 			try {
-				in = new Scanner(new FileReader(gridFile));
-				for (int i = 0; i < rows && in.hasNextLine(); i++) {
-					String line = in.nextLine();
-					for (int j = 0; j < cols && j < line.length(); j++) {
-						boolean alive = line.charAt(j) == 'x';
-						starting.setAlive(i, j, alive);
+				reader = new PatternReader(new File(gridFile));
+				reader.read(starting, gridRow, gridCol);
+				if (rule == null && reader.getRule() != null) {
+					try {
+						rule = Rule.parse(reader.getRule());
+					} catch (IllegalArgumentException e) {
+						System.err.println("Ignoring the rule in the grid input file: " + e.getMessage());
 					}
 				}
 			} catch (IOException e) {
 				System.err.println("Problem reading the grid input file \"" + gridFile + "\": " + e.getMessage());
 				System.exit(1);
 			} finally {
-				in.close();
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						//ignore
+					}
+				}
 			}
 			gameOfLife = new GameOfLife(starting);
 		} else {
-			//populate all cells randomly
-
+			//populate all cells randomly (once the threads are set up)
+			gameOfLife = new GameOfLife(starting);
+		}
+		if (rule != null) {
+			try {
+				gameOfLife.setRule(rule);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+		}
+		if (topology != Grid.Topology.BOUNDED) {
+			try {
+				gameOfLife.setTopology(topology);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+		}
+		gameOfLife.setThreads(threads);
+		gameOfLife.setPartitioning(partitioning);
+		gameOfLife.setBlockCols(blockCols);
+		gameOfLife.setTileSize(tileSize);
+		gameOfLife.setTemporalBlocking(temporalBlocking);
+		if (forkJoin) gameOfLife.setForkJoinPool(ForkJoinPool.commonPool());
+		ExecutorService virtualThreadExecutor = null;
+		if (virtualThreads) {
+			try {
+				virtualThreadExecutor = WorkerPool.newVirtualThreadExecutor();
+				gameOfLife.setExecutor(virtualThreadExecutor);
+			} catch (UnsupportedOperationException e) {
+				System.err.println(e.getMessage() + " Using platform threads instead.");
+			}
+		}
+		if (resume == null || arguments.exists("n", "noise")) gameOfLife.setNoise(noise);
+		if (seed != null) gameOfLife.setSeed(seed);
+		if (resume == null && gridFile == null) {
 			//get the chance that a cell starts in the alive state
 			Double startAlive = arguments.valueDouble("a", "startAlive", 0.25);
 
-			gameOfLife = new GameOfLife(rows, cols, startAlive);
+			gameOfLife.populate(startAlive);
+		}
+		if (distributed > 0) {
+			//hand the starting grid out to the worker processes
+			Grid grid = gameOfLife.getGrid();
+			long iterationCount = gameOfLife.getIterationCount();
+			gameOfLife.close();
+			runDistributed(grid, iterationCount, distributed, iterations, sleep, suppressOutput, renderEvery, checkpointEvery, checkpointFile);
+			return;
+		}
+		try {
+			gameOfLife.setHashLife(hashLife);
+		} catch (IllegalStateException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		if (maxCyclePeriod > 0) {
+			try {
+				gameOfLife.setMaxCyclePeriod(maxCyclePeriod);
+			} catch (IllegalStateException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+			gameOfLife.setStopOnCycle(stopOnCycle);
+		}
+		DeltaWriter deltaWriter = null;
+		if (deltasFile != null) {
+			try {
+				deltaWriter = new DeltaWriter(new FileOutputStream(deltasFile));
+				gameOfLife.setDeltaWriter(deltaWriter);
+			} catch (IOException e) {
+				System.err.println("Problem writing to the deltas file \"" + deltasFile + "\": " + e.getMessage());
+				System.exit(1);
+			} catch (UncheckedIOException e) {
+				System.err.println("Problem writing to the deltas file \"" + deltasFile + "\": " + e.getCause().getMessage());
+				System.exit(1);
+			} catch (IllegalStateException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+		}
+
+		GameMetrics metrics = null;
+		if (metricsName != null) {
+			metrics = new GameMetrics();
+			gameOfLife.addGenerationListener(metrics);
+			try {
+				metrics.register(metricsName);
+			} catch (JMException e) {
+				System.err.println("Problem registering the metrics with JMX: " + e.getMessage());
+			}
 		}
-		gameOfLife.setThreads(threads);
-		gameOfLife.setNoise(noise);
 
 		//start the game
 		long start = System.currentTimeMillis();
-		if (!suppressOutput) System.out.println(rows + " " + cols);
-		while (iterations == null || gameOfLife.getIterationCount() < iterations) {
-			//output board
-			if (!suppressOutput) System.out.println(gameOfLife.getGrid());
+		CheckpointWriter checkpointWriter = (checkpointEvery > 0) ? new CheckpointWriter(new File(checkpointFile)) : null;
+		RenderPipeline pipeline = suppressOutput ? null : new RenderPipeline(new GridRenderer(new FileOutputStream(FileDescriptor.out).getChannel()), rows, cols);
+		if (pipeline != null) pipeline.setMetrics(metrics);
+		try {
+			if (!suppressOutput) {
+				System.out.println(rows + " " + cols);
+				System.out.flush();
+			}
+			if (hashLife && suppressOutput && iterations != null && gameOfLife.getNoise() == 0) {
+				//nothing to display in between, so jump straight to the end
+				gameOfLife.iterate(Math.max(0, iterations - gameOfLife.getIterationCount()));
+			}
+			while (iterations == null || gameOfLife.getIterationCount() < iterations) {
+				//output board (it's displayed on the render thread while the next iterations are calculated)
+				if (!suppressOutput && gameOfLife.getIterationCount() % renderEvery == 0) {
+					try {
+						pipeline.submit(gameOfLife.getGrid());
+					} catch (IOException e) {
+						System.err.println("Problem displaying the grid: " + e.getMessage());
+						System.exit(1);
+					}
+				}
 
-			//iterate game state
-			gameOfLife.iterate();
+				//iterate game state (several iterations at once if there's nothing to do in between, so temporal blocking can be used)
+				long steps = 1;
+				if (sleep == 0) {
+					steps = temporalBlocking;
+					if (!suppressOutput) steps = Math.min(steps, renderEvery - gameOfLife.getIterationCount() % renderEvery);
+					if (iterations != null) steps = Math.min(steps, iterations - gameOfLife.getIterationCount());
+					if (checkpointWriter != null) steps = Math.min(steps, checkpointEvery - gameOfLife.getIterationCount() % checkpointEvery);
+				}
+				gameOfLife.iterate(steps);
 
-			//sleep
-			try {
-				Thread.sleep(sleep);
-			} catch (InterruptedException e) {
+				//stop if the game won't change anymore
+				if (stopOnCycle && gameOfLife.getCyclePeriod() > 0) {
+					break;
+				}
+
+				//save a checkpoint (written in the background while the game keeps going)
+				if (checkpointWriter != null && gameOfLife.getIterationCount() % checkpointEvery == 0) {
+					checkpointWriter.save(gameOfLife.checkpoint());
+				}
+
+				//sleep
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+				}
+			}
+		} finally {
+			gameOfLife.close();
+			if (pipeline != null) {
+				try {
+					pipeline.close();
+				} catch (IOException e) {
+					System.err.println("Problem displaying the grid: " + e.getMessage());
+				}
+			}
+			if (checkpointWriter != null) checkpointWriter.close();
+			if (virtualThreadExecutor != null) virtualThreadExecutor.shutdown();
+			if (deltaWriter != null) {
+				try {
+					deltaWriter.close();
+				} catch (IOException e) {
+					System.err.println("Problem writing to the deltas file \"" + deltasFile + "\": " + e.getMessage());
+				}
+			}
+			if (metrics != null) {
+				try {
+					metrics.unregister();
+				} catch (JMException e) {
+					//ignore
+				}
 			}
 		}
 		long time = System.currentTimeMillis() - start;
+		if (gameOfLife.getCyclePeriod() == 1) {
+			System.out.println("The grid stopped changing at iteration " + gameOfLife.getCycleStart() + ".");
+		} else if (gameOfLife.getCyclePeriod() > 1) {
+			System.out.println("The grid entered a cycle of period " + gameOfLife.getCyclePeriod() + " at iteration " + gameOfLife.getCycleStart() + ".");
+		}
+		if (metrics != null) {
+			System.out.println(String.format("Compute: %.3fms mean, %.3fms p50, %.3fms p99, %.3fms max", metrics.getComputeMillisMean(), metrics.getComputeMillisP50(), metrics.getComputeMillisP99(), metrics.getComputeMillisMax()));
+			System.out.println(String.format("Noise: %.3fms mean, %.3fms p99", metrics.getNoiseMillisMean(), metrics.getNoiseMillisP99()));
+			if (!suppressOutput) {
+				System.out.println(String.format("Render: %.3fms mean, %.3fms p99 (%d displayed, %d skipped)", metrics.getRenderMillisMean(), metrics.getRenderMillisP99(), pipeline.getRendered(), pipeline.getDropped()));
+			}
+			if (metrics.getLiveCells() >= 0) {
+				System.out.println("Live cells: " + metrics.getLiveCells());
+			}
+			System.out.println(String.format("Cell updates per second: %.0f", metrics.getCellUpdatesPerSecond()));
+			if (metrics.getWorkerImbalanceMean() > 0) {
+				System.out.println(String.format("Worker imbalance: %.2f mean (slowest thread / average thread)", metrics.getWorkerImbalanceMean()));
+			}
+		}
 		System.out.println(time + "ms");
 	}
 
+	/**
+	 * Plays the game across several worker processes (see
+	 * {@link DistributedGame}).
+	 * @param grid the starting grid
+	 * @param iterationCount the number of iterations the grid has already run
+	 * for
+	 * @param workers the number of worker processes
+	 * @param iterations the number of iterations to perform (null to never
+	 * stop)
+	 * @param sleep the number of ms to sleep between iterations
+	 * @param suppressOutput true to not display the board state
+	 * @param renderEvery the number of iterations between displaying the
+	 * board state
+	 * @param checkpointEvery the number of iterations between checkpoints (0
+	 * for no checkpoints)
+	 * @param checkpointFile the file to save the checkpoints to
+	 */
+	private static void runDistributed(Grid grid, long iterationCount, int workers, Integer iterations, int sleep, boolean suppressOutput, int renderEvery, int checkpointEvery, String checkpointFile) {
+		long start = System.currentTimeMillis();
+		DistributedGame game = null;
+		CheckpointWriter checkpointWriter = (checkpointEvery > 0) ? new CheckpointWriter(new File(checkpointFile)) : null;
+		RenderPipeline pipeline = suppressOutput ? null : new RenderPipeline(new GridRenderer(new FileOutputStream(FileDescriptor.out).getChannel()), grid.getRows(), grid.getCols());
+		try {
+			game = new DistributedGame(grid, iterationCount, workers);
+			if (!suppressOutput) {
+				System.out.println(grid.getRows() + " " + grid.getCols());
+				System.out.flush();
+			}
+			while (iterations == null || game.getIterationCount() < iterations) {
+				//output board (gathered from the workers, then displayed on the render thread)
+				if (!suppressOutput && game.getIterationCount() % renderEvery == 0) {
+					Grid view = game.getGrid();
+					try {
+						pipeline.submit(view);
+					} catch (IOException e) {
+						System.err.println("Problem displaying the grid: " + e.getMessage());
+						System.exit(1);
+					}
+				}
+
+				//iterate game state (the workers can run on their own until there's something to do in between)
+				long steps = 1;
+				if (sleep == 0) {
+					steps = (iterations == null) ? 1000 : iterations - game.getIterationCount();
+					if (!suppressOutput) steps = Math.min(steps, renderEvery - game.getIterationCount() % renderEvery);
+					if (checkpointWriter != null) steps = Math.min(steps, checkpointEvery - game.getIterationCount() % checkpointEvery);
+				}
+				game.iterate(steps);
+
+				//save a checkpoint (written in the background while the game keeps going)
+				if (checkpointWriter != null && game.getIterationCount() % checkpointEvery == 0) {
+					checkpointWriter.save(game.checkpoint());
+				}
+
+				//sleep
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Problem talking to the worker processes: " + e.getMessage());
+			System.exit(1);
+		} finally {
+			if (game != null) game.close();
+			if (pipeline != null) {
+				try {
+					pipeline.close();
+				} catch (IOException e) {
+					System.err.println("Problem displaying the grid: " + e.getMessage());
+				}
+			}
+			if (checkpointWriter != null) checkpointWriter.close();
+		}
+		System.out.println((System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Creates the grid that the game will be played on.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param bitPacked true to store the grid as packed bits
+	 * @param kernel the kernel that calculates the bit-packed grid
+	 * @param offHeap the directory to store the grid in memory-mapped files,
+	 * an empty string to store the grid in direct buffers, or null to store it
+	 * on the heap
+	 * @param unbounded true to use an unbounded grid
+	 * @return the grid
+	 */
+	private static Grid newGrid(int rows, int cols, boolean bitPacked, RowKernel kernel, String offHeap, boolean unbounded) {
+		if (unbounded) {
+			return new SparseGrid(rows, cols);
+		}
+		if (offHeap != null) {
+			OffHeapGrid grid = offHeap.isEmpty() ? new OffHeapGrid(rows, cols) : new OffHeapGrid(rows, cols, new File(offHeap));
+			grid.setKernel(kernel);
+			return grid;
+		}
+		if (bitPacked) {
+			BitGrid grid = new BitGrid(rows, cols);
+			grid.setKernel(kernel);
+			return grid;
+		}
+		return new Grid(rows, cols);
+	}
+
+	/**
+	 * The ways in which the rows of the grid can be divided up amongst the
+	 * threads.
+	 */
+	public enum Partitioning {
+		/**
+		 * Each thread gets one contiguous band of rows, so each thread streams
+		 * through its own part of memory and only shares the rows at the edges
+		 * of its band with other threads.
+		 */
+		BANDS,
+
+		/**
+		 * Each thread gets every Nth row, where N is the number of threads.
+		 */
+		INTERLEAVED
+	}
+
+	/**
+	 * The height of the blocks that the grid is split into when using
+	 * fork/join without active tile tracking.
+	 */
+	private static final int FORK_JOIN_ROWS = 16;
+
+	/**
+	 * The width of the blocks that the grid is split into when using fork/join
+	 * without active tile tracking.
+	 */
+	private static final int FORK_JOIN_COLS = 256;
+
+	/**
+	 * The amount of noise at which the random cells are chosen and toggled by
+	 * the worker threads instead of the calling thread.
+	 */
+	private static final int PARALLEL_NOISE = 16 * 1024;
+
+	/**
+	 * The height of the tiles that are moved several generations ahead at
+	 * once (see {@link #setTemporalBlocking}).
+	 */
+	private static final int TEMPORAL_ROWS = 64;
+
+	/**
+	 * The width of the tiles that are moved several generations ahead at
+	 * once, in words (see {@link #setTemporalBlocking}).
+	 */
+	private static final int TEMPORAL_WORDS = 256;
+
 	/**
 	 * The number of iterations the game has run for.
 	 */
@@ -165,15 +752,140 @@ public class GameOfLife {
 	private int threads = Runtime.getRuntime().availableProcessors();
 
 	/**
-	 * The threads array.
+	 * How the rows are divided up amongst the threads.
+	 */
+	private Partitioning partitioning = Partitioning.BANDS;
+
+	/**
+	 * The width of the column blocks that each band is split into (0 to
+	 * calculate full rows).
+	 */
+	private int blockCols = 0;
+
+	/**
+	 * The size of the tiles used to skip over the parts of the grid that
+	 * aren't changing (0 to recalculate every cell every iteration).
+	 */
+	private int tileSize = 0;
+
+	/**
+	 * Keeps track of which parts of the grid need to be recalculated (null if
+	 * every cell is recalculated every iteration).
+	 */
+	private ActiveTiles activeTiles;
+
+	/**
+	 * The number of generations that {@link #iterate(long)} moves each tile
+	 * ahead at once (1 to calculate one generation at a time).
+	 */
+	private int temporalBlocking = 8;
+
+	/**
+	 * The scratch arrays of each worker thread that are used to move tiles
+	 * several generations ahead at once (null until they are needed).
+	 */
+	private TemporalBlock temporalBlocks[];
+
+	/**
+	 * The number of generations that the blocking task moves each tile ahead.
+	 */
+	private int blockGenerations;
+
+	/**
+	 * Moves the tiles several generations ahead at once.
+	 */
+	private final BlockTask blockTask = new BlockTask();
+
+	/**
+	 * The executor that the worker threads are borrowed from (null for the
+	 * game to start its own threads).
+	 */
+	private Executor executor;
+
+	/**
+	 * The fork/join pool that calculates the next game state (null to use the
+	 * game's own worker threads).
+	 */
+	private ForkJoinPool forkJoinPool;
+
+	/**
+	 * The HashLife universe that the game is played on (null if the game is
+	 * played on the grids).
+	 */
+	private HashLife hashLife;
+
+	/**
+	 * Set when the HashLife universe has changed since it was last copied into
+	 * the current grid.
+	 */
+	private boolean hashLifeChanged = false;
+
+	/**
+	 * The threads that calculate the next game state. Created the first time
+	 * the game iterates and kept alive until the game is closed or the number
+	 * of threads changes.
+	 */
+	private WorkerPool pool;
+
+	/**
+	 * Calculates the next game state.
 	 */
-	private LifeThread[] threadList = new LifeThread[threads];
+	private final LifeTask lifeTask = new LifeTask();
 
 	/**
 	 * The number of random cells to toggle every iteration.
 	 */
 	private int noise;
 
+	/**
+	 * Chooses the cells to toggle.
+	 */
+	private RandomCells randomCells = new RandomCells(new Random().nextLong());
+
+	/**
+	 * Toggles the cells chosen by the noise.
+	 */
+	private final NoiseTask noiseTask = new NoiseTask();
+
+	/**
+	 * Writes the cells that change each iteration (null if not used).
+	 */
+	private DeltaWriter deltaWriter;
+
+	/**
+	 * Detects when the game settles into a still life or oscillation (null if
+	 * not used).
+	 */
+	private CycleDetector cycleDetector;
+
+	/**
+	 * True to stop iterating once a cycle has been detected.
+	 */
+	private boolean stopOnCycle = false;
+
+	/**
+	 * Get notified every time a generation is calculated.
+	 */
+	private final List<GenerationListener> listeners = new CopyOnWriteArrayList<GenerationListener>();
+
+	/**
+	 * The number of live cells in the current grid (-1 if it isn't being
+	 * counted, which is when there are no listeners).
+	 */
+	private long liveCells = -1;
+
+	/**
+	 * The changes to the number of live cells that were made in the
+	 * generation being calculated.
+	 */
+	private final AtomicLong liveCellChanges = new AtomicLong();
+
+	/**
+	 * The time each worker thread spent calculating the generation being
+	 * calculated (null if it isn't being measured).
+	 */
+	private long workerNanos[];
+
 	/**
 	 * The current grid state.
 	 */
@@ -190,7 +902,36 @@ public class GameOfLife {
 	 */
 	public GameOfLife(Grid start) {
 		current = start;
-		next = new Grid(start.getRows(), start.getCols());
+		next = start.newGrid(start.getRows(), start.getCols());
+	}
+
+	/**
+	 * Constructs a new Game of Life, randomly populating the given grid.
+	 * @param start the grid to populate (this determines how the cells are
+	 * stored, see {@link BitGrid})
+	 * @param aliveChance the percent chance that each cell has of starting in
+	 * the "alive" state (0.0 to 1.0)
+	 */
+	public GameOfLife(Grid start, double aliveChance) {
+		this(start, aliveChance, new Random().nextLong());
+	}
+
+	/**
+	 * Constructs a new Game of Life, randomly populating the given grid. The
+	 * grid is populated on the calling thread (see {@link #populate} to use
+	 * the worker threads).
+	 * @param start the grid to populate (this determines how the cells are
+	 * stored, see {@link BitGrid})
+	 * @param aliveChance the percent chance that each cell has of starting in
+	 * the "alive" state (0.0 to 1.0)
+	 * @param seed the seed that chooses the starting cells and the noise (see
+	 * {@link #setSeed})
+	 */
+	public GameOfLife(Grid start, double aliveChance, long seed) {
+		this(start);
+		setSeed(seed);
+		randomCells.prepare(current.getRows(), current.getCols(), 0, -1);
+		new PopulateTask(aliveChance).run(0, 1);
 	}
 
 	/**
@@ -201,14 +942,7 @@ public class GameOfLife {
 	 * the "alive" state (0.0 to 1.0)
 	 */
 	public GameOfLife(int rows, int cols, double aliveChance) {
-		current = new Grid(rows, cols);
-		for (int i = 0; i < rows; i++) {
-			for (int j = 0; j < cols; j++) {
-				boolean alive = Math.random() < aliveChance;
-				current.setAlive(i, j, alive);
-			}
-		}
-		next = new Grid(rows, cols);
+		this(new Grid(rows, cols), aliveChance);
 	}
 
 	/**
@@ -235,56 +969,694 @@ public class GameOfLife {
 	 * @param threads the number of threads the game will use
 	 */
 	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1.");
+		}
+
+		if (pool != null && pool.getSize() != threads) {
+			//the pool will be re-created with the new size on the next iteration
+			pool.close();
+			pool = null;
+		}
 		this.threads = threads;
-		threadList = new LifeThread[threads];
 	}
 
 	/**
-	 * Gets the number of random cells whose state will be toggled every
-	 * iteration.
-	 * @return the number of random cells whose state will be toggled every
-	 * iteration
+	 * Gets how the rows of the grid are divided up amongst the threads.
+	 * Defaults to {@link Partitioning#BANDS}.
+	 * @return the partitioning mode
 	 */
-	public int getNoise() {
-		return noise;
+	public Partitioning getPartitioning() {
+		return partitioning;
 	}
 
 	/**
-	 * Sets the number of random cells whose state will be toggled every
-	 * iteration.
-	 * @param noise the number of random cells whose state will be toggled every
-	 * iteration
+	 * Sets how the rows of the grid are divided up amongst the threads.
+	 * Defaults to {@link Partitioning#BANDS}.
+	 * @param partitioning the partitioning mode
 	 */
-	public void setNoise(int noise) {
-		this.noise = noise;
+	public void setPartitioning(Partitioning partitioning) {
+		this.partitioning = partitioning;
 	}
 
 	/**
-	 * Gets the current grid.
-	 * @return the current grid
+	 * Gets the width of the column blocks that each thread's band of rows is
+	 * split into. Defaults to 0.
+	 * @return the block width or 0 if each band is calculated a full row at a
+	 * time
 	 */
-	public Grid getGrid() {
-		return current;
+	public int getBlockCols() {
+		return blockCols;
 	}
 
 	/**
-	 * Gets the number of iterations the game has run for.
-	 * @return the number of iterations the game has run for
+	 * Sets the width of the column blocks that each thread's band of rows is
+	 * split into, so that each block fits into the cache. Only used with
+	 * {@link Partitioning#BANDS}. The width is rounded up to the grid's column
+	 * alignment (see {@link Grid#getColumnAlignment}). Defaults to 0.
+	 * @param blockCols the block width or 0 to calculate a full row at a time
 	 */
-	public long getIterationCount() {
-		return iterationCount;
+	public void setBlockCols(int blockCols) {
+		if (blockCols < 0) {
+			throw new IllegalArgumentException("Block width cannot be negative.");
+		}
+		this.blockCols = blockCols;
+	}
+
+	/**
+	 * Gets the size of the tiles that are used to skip over the parts of the
+	 * grid that aren't changing.
+	 * @return the tile size or 0 if every cell is recalculated every iteration
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Splits the grid into square tiles and only recalculates the tiles that
+	 * changed, or had a neighbor that changed, in the last iteration. This
+	 * saves a lot of work on boards that have mostly settled down. The tile
+	 * width is rounded up to the grid's column alignment (see
+	 * {@link Grid#getColumnAlignment}), and each tile row is treated like a
+	 * row when dividing the work up amongst the threads. Defaults to 0.
+	 * <p>
+	 * Tiles can't be used with a {@link SparseGrid}.
+	 * <p>
+	 * If cells in the current grid are changed directly (through
+	 * {@link #getGrid}), this method must be called again so that every tile
+	 * is recalculated.
+	 * @param tileSize the tile size or 0 to recalculate every cell every
+	 * iteration
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize < 0) {
+			throw new IllegalArgumentException("Tile size cannot be negative.");
+		}
+		this.tileSize = tileSize;
+
+		if (tileSize == 0) {
+			activeTiles = null;
+			return;
+		}
+		if (current instanceof SparseGrid) {
+			throw new IllegalStateException("Sparse grids already skip the parts of the universe that are empty.");
+		}
+
+		int alignment = current.getColumnAlignment();
+		int tileWidth = (tileSize + alignment - 1) / alignment * alignment;
+		activeTiles = new ActiveTiles(current.getRows(), current.getCols(), tileSize, tileWidth, current.getTopology() == Grid.Topology.TORUS);
+	}
+
+	/**
+	 * Gets the number of generations that {@link #iterate(long)} moves each
+	 * part of the grid ahead at once (see {@link #setTemporalBlocking}).
+	 * @return the number of generations (1 if it is turned off)
+	 */
+	public int getTemporalBlocking() {
+		return temporalBlocking;
+	}
+
+	/**
+	 * Sets the number of generations that {@link #iterate(long)} moves each
+	 * part of the grid ahead at once. On large grids, calculating a generation
+	 * is limited by how fast the grid can be read from and written to memory,
+	 * not by the calculation itself. With temporal blocking, the grid is split
+	 * into tiles that fit in the cache, and each worker thread copies a tile
+	 * into a scratch buffer along with a halo of K cells around it, moves it K
+	 * generations ahead there, and writes back only the inside of the tile
+	 * (see {@link TemporalBlock}). The grids are only read and written once
+	 * every K generations, at the cost of calculating the halos (about K/64
+	 * extra work, since the tiles are 64 rows high).
+	 * <p>
+	 * It's only used for bit-packed grids ({@link BitGrid} and
+	 * {@link OffHeapGrid}) that don't wrap around (see {@link #setTopology}),
+	 * and only while none of the features that need every generation are
+	 * being used: noise, tiles (see {@link #setTileSize}), fork/join,
+	 * HashLife, deltas, cycle detection, or generation listeners. Otherwise,
+	 * the game moves forward one generation at a time. Defaults to 8.
+	 * @param generations the number of generations (1 to 64) or 1 to turn it
+	 * off
+	 * @throws IllegalArgumentException if the number of generations is out of
+	 * range
+	 */
+	public void setTemporalBlocking(int generations) {
+		if (generations < 1 || generations > TemporalBlock.MAX_GENERATIONS) {
+			throw new IllegalArgumentException("Temporal blocking must be between 1 and " + TemporalBlock.MAX_GENERATIONS + " generations.");
+		}
+		this.temporalBlocking = generations;
+	}
+
+	/**
+	 * Gets the executor that the game's worker threads are borrowed from.
+	 * @return the executor or null if the game starts its own threads
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor that the game's worker threads are borrowed from.
+	 * Instead of keeping its own threads alive, the game splits each
+	 * iteration into N parts (where N is the number of threads, see
+	 * {@link #setThreads}) and submits them to the executor. This lets many
+	 * games share the same threads, or use virtual threads (see
+	 * {@link WorkerPool#newVirtualThreadExecutor}). The executor is not shut
+	 * down when the game is closed. Defaults to null.
+	 * @param executor the executor or null for the game to start its own
+	 * threads
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+		if (pool != null) {
+			//the pool will be re-created on the next iteration
+			pool.close();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Gets the fork/join pool that is used to calculate the next game state.
+	 * @return the fork/join pool or null if the game uses its own worker
+	 * threads
+	 */
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * Sets the fork/join pool that is used to calculate the next game state.
+	 * Instead of giving each thread a fixed part of the grid, the grid is
+	 * recursively split into rectangles of tiles (see {@link #setTileSize})
+	 * that idle threads can steal. This keeps all of the threads busy when
+	 * some parts of the grid take longer than others, such as when most of the
+	 * tiles are inactive. Splitting stops once the pool has enough queued work
+	 * to keep its threads busy. When this is set, the game's own worker threads
+	 * and the number of threads (see {@link #setThreads}) are not used.
+	 * Defaults to null.
+	 * <p>
+	 * This is not used with a {@link SparseGrid}.
+	 * @param forkJoinPool the fork/join pool (such as
+	 * {@link ForkJoinPool#commonPool}) or null to use the game's own worker
+	 * threads
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+		if (forkJoinPool != null && pool != null) {
+			pool.close();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Gets the number of random cells whose state will be toggled every
+	 * iteration.
+	 * @return the number of random cells whose state will be toggled every
+	 * iteration
+	 */
+	public int getNoise() {
+		return noise;
+	}
+
+	/**
+	 * Sets the number of random cells whose state will be toggled every
+	 * iteration.
+	 * @param noise the number of random cells whose state will be toggled every
+	 * iteration
+	 */
+	public void setNoise(int noise) {
+		this.noise = noise;
+	}
+
+	/**
+	 * Gets the seed that chooses the cells that are toggled by the noise and
+	 * the cells that are alive when the grid is randomly populated. Defaults
+	 * to a random seed.
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return randomCells.getSeed();
+	}
+
+	/**
+	 * Sets the seed that chooses the cells that are toggled by the noise and
+	 * the cells that are alive when the grid is randomly populated (see
+	 * {@link #populate}). Games with the same seed choose the same cells, no
+	 * matter how many threads they use. Defaults to a random seed.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		randomCells = new RandomCells(seed);
+	}
+
+	/**
+	 * Gets the rule that the game is played by.
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return current.getRule();
+	}
+
+	/**
+	 * Sets the rule that the game is played by (see {@link Rule#parse}).
+	 * Defaults to the rule of the starting grid, which is normally
+	 * {@link Rule#CONWAY}.
+	 * @param rule the rule
+	 * @throws IllegalArgumentException if dead cells with no live neighbors
+	 * are born under the rule (see {@link Rule#hasB0}) and the game is played
+	 * on an unbounded universe (HashLife or an unbounded grid)
+	 */
+	public void setRule(Rule rule) {
+		getGrid();
+		if (rule.hasB0() && (hashLife != null || current instanceof SparseGrid)) {
+			throw new IllegalArgumentException("Rules with B0 can't be used on an unbounded universe.");
+		}
+
+		current.setRule(rule);
+		next.setRule(rule);
+		gridReplaced();
+	}
+
+	/**
+	 * Gets how the edges of the grid are connected.
+	 * @return the topology
+	 */
+	public Grid.Topology getTopology() {
+		return current.getTopology();
+	}
+
+	/**
+	 * Sets how the edges of the grid are connected. On a torus, cells that
+	 * move off one edge of the grid come back on the opposite edge. The
+	 * edges are handled once per generation by the worker threads as they
+	 * calculate the parts of the grid next to them (see
+	 * {@link Grid#setTopology}), so a torus is about as fast as a bounded
+	 * grid. Defaults to the topology of the starting grid, which is normally
+	 * {@link Grid.Topology#BOUNDED}.
+	 * @param topology the topology
+	 * @throws IllegalArgumentException if the topology is a torus and the game
+	 * is played on an unbounded universe (HashLife or an unbounded grid)
+	 */
+	public void setTopology(Grid.Topology topology) {
+		getGrid();
+		if (topology == Grid.Topology.TORUS && (hashLife != null || current instanceof SparseGrid)) {
+			throw new IllegalArgumentException("An unbounded universe can't wrap around.");
+		}
+
+		current.setTopology(topology);
+		next.setTopology(topology);
+		if (activeTiles != null) {
+			//the tiles at opposite edges may have become neighbors
+			setTileSize(tileSize);
+		}
+		gridReplaced();
+	}
+
+	/**
+	 * Gets the longest cycle period that the game looks for (see
+	 * {@link #setMaxCyclePeriod}).
+	 * @return the longest period or 0 if cycles aren't being detected
+	 */
+	public int getMaxCyclePeriod() {
+		return (cycleDetector == null) ? 0 : cycleDetector.getMaxPeriod();
+	}
+
+	/**
+	 * Sets the longest cycle period that the game looks for. The game keeps a
+	 * hash of each generation, which the worker threads update as they
+	 * calculate it, and compares it to the hashes of the last N generations.
+	 * When the game settles into a still life (period 1) or an oscillator
+	 * whose period is N or less, the period and the generation the cycle
+	 * started at are available from {@link #getCyclePeriod} and
+	 * {@link #getCycleStart}. Cycles are not detected in generations that
+	 * have noise. Cycles can't be detected while HashLife is being used or
+	 * when the grid is unbounded.
+	 * <p>
+	 * Changes made directly to the grid (through {@link #getGrid}) are not
+	 * included in the hash, so this method should be called again after
+	 * changing the grid. Defaults to 0.
+	 * @param maxPeriod the longest period to look for or 0 not to detect
+	 * cycles
+	 * @throws IllegalArgumentException if the period is negative
+	 * @throws IllegalStateException if HashLife is being used or the grid is
+	 * unbounded
+	 */
+	public void setMaxCyclePeriod(int maxPeriod) {
+		if (maxPeriod < 0) {
+			throw new IllegalArgumentException("Cycle period cannot be negative.");
+		}
+		if (maxPeriod == 0) {
+			cycleDetector = null;
+			return;
+		}
+		if (hashLife != null || current instanceof SparseGrid) {
+			throw new IllegalStateException("Cycles can't be detected while HashLife is used or when the grid is unbounded.");
+		}
+
+		cycleDetector = new CycleDetector(maxPeriod, current, iterationCount);
+	}
+
+	/**
+	 * Gets whether {@link #iterate(long)} stops early once a cycle has been
+	 * detected (see {@link #setMaxCyclePeriod}).
+	 * @return true if it stops early, false if not
+	 */
+	public boolean isStopOnCycle() {
+		return stopOnCycle;
+	}
+
+	/**
+	 * Sets whether {@link #iterate(long)} stops early once a cycle has been
+	 * detected (see {@link #setMaxCyclePeriod}). Defaults to false.
+	 * @param stopOnCycle true to stop early, false not to
+	 */
+	public void setStopOnCycle(boolean stopOnCycle) {
+		this.stopOnCycle = stopOnCycle;
+	}
+
+	/**
+	 * Gets the period of the cycle that the game has settled into (see
+	 * {@link #setMaxCyclePeriod}).
+	 * @return the period (1 for a still life) or 0 if no cycle has been
+	 * detected
+	 */
+	public int getCyclePeriod() {
+		return (cycleDetector == null) ? 0 : cycleDetector.getPeriod();
+	}
+
+	/**
+	 * Gets the iteration that the cycle the game has settled into started at
+	 * (see {@link #setMaxCyclePeriod}). This is the first iteration whose grid
+	 * was repeated.
+	 * @return the iteration or -1 if no cycle has been detected
+	 */
+	public long getCycleStart() {
+		return (cycleDetector == null) ? -1 : cycleDetector.getStart();
+	}
+
+	/**
+	 * Gets the hash of the current grid that is used to detect cycles (see
+	 * {@link CycleDetector}).
+	 * @return the hash or 0 if cycles aren't being detected
+	 */
+	long getGenerationHash() {
+		return (cycleDetector == null) ? 0 : cycleDetector.getHash();
+	}
+
+	/**
+	 * Adds a listener that is notified every time a generation is calculated
+	 * (see {@link GameMetrics}). While there are listeners, the game measures
+	 * how long each phase of the generation takes, how long each worker thread
+	 * takes, and how many cells are alive. The live cells are counted by the
+	 * worker threads as they go, and only in the parts of the grid that
+	 * changed. They aren't counted when HashLife is being used or the grid is
+	 * unbounded.
+	 * <p>
+	 * Listeners are not notified when HashLife jumps ahead several
+	 * generations at once (see {@link #iterate(long)}). Changes made directly
+	 * to the grid (through {@link #getGrid}) are not included in the live cell
+	 * count, so the listener should be added again after changing the grid.
+	 * @param listener the listener
+	 */
+	public void addGenerationListener(GenerationListener listener) {
+		listeners.add(listener);
+		countLiveCells();
+	}
+
+	/**
+	 * Removes a listener that was added with {@link #addGenerationListener}.
+	 * @param listener the listener
+	 */
+	public void removeGenerationListener(GenerationListener listener) {
+		listeners.remove(listener);
+		if (listeners.isEmpty()) {
+			liveCells = -1;
+		}
+	}
+
+	/**
+	 * Counts the live cells in the current grid from scratch, if there are
+	 * listeners that need them.
+	 */
+	private void countLiveCells() {
+		if (listeners.isEmpty() || hashLife != null || current instanceof SparseGrid) {
+			liveCells = -1;
+		} else {
+			liveCells = current.countAlive(0, current.getRows(), 0, current.getCols());
+		}
+		liveCellChanges.set(0);
+	}
+
+	/**
+	 * Gets the writer that the changes made each iteration are written to.
+	 * @return the delta writer or null if not set
+	 */
+	public DeltaWriter getDeltaWriter() {
+		return deltaWriter;
+	}
+
+	/**
+	 * Sets the writer that the cells that change each iteration are written
+	 * to. The current grid is written to it immediately, followed by the
+	 * births and deaths of each iteration. Deltas can't be written while
+	 * HashLife is being used or when the grid is unbounded.
+	 * @param deltaWriter the delta writer (it can only be attached to one game
+	 * once)
+	 * @throws IllegalStateException if HashLife is being used or the grid is
+	 * unbounded
+	 * @throws UncheckedIOException if there's a problem writing the current
+	 * grid
+	 */
+	public void setDeltaWriter(DeltaWriter deltaWriter) {
+		if (hashLife != null || current instanceof SparseGrid) {
+			throw new IllegalStateException("Deltas can't be written while HashLife is used or when the grid is unbounded.");
+		}
+
+		if (deltaWriter != null) {
+			try {
+				deltaWriter.start(current, iterationCount);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		this.deltaWriter = deltaWriter;
+	}
+
+	/**
+	 * Gets the current grid.
+	 * @return the current grid
+	 */
+	public Grid getGrid() {
+		if (hashLifeChanged) {
+			hashLife.copyTo(current);
+			hashLifeChanged = false;
+		}
+		return current;
+	}
+
+	/**
+	 * Gets the number of iterations the game has run for.
+	 * @return the number of iterations the game has run for
+	 */
+	public long getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * Determines whether the game is using the HashLife algorithm.
+	 * @return true if the game is using HashLife, false if not
+	 */
+	public boolean isHashLife() {
+		return hashLife != null;
+	}
+
+	/**
+	 * Sets whether the game uses the HashLife algorithm (see {@link HashLife})
+	 * instead of calculating every cell of the grid. HashLife can jump ahead
+	 * billions of iterations at a time when there is no noise (see
+	 * {@link #iterate(long)}). When there is noise, it moves forward one
+	 * iteration at a time.
+	 * <p>
+	 * HashLife plays the game on an unbounded universe, and the grid acts as
+	 * a window onto that universe. Cells that move out of the grid are not
+	 * destroyed like they normally are, and they may come back later.
+	 * <p>
+	 * While HashLife is being used, changes made directly to the grid (through
+	 * {@link #getGrid}) are ignored. Defaults to false.
+	 * @param hashLife true to use HashLife, false not to
+	 * @throws IllegalStateException if deltas are being written, cycles are
+	 * being detected, the rule has B0 (see {@link Rule#hasB0}), or the grid
+	 * wraps around (see {@link #setTopology})
+	 */
+	public void setHashLife(boolean hashLife) {
+		if (hashLife && deltaWriter != null) {
+			throw new IllegalStateException("HashLife can't be used while deltas are being written.");
+		}
+		if (hashLife && cycleDetector != null) {
+			throw new IllegalStateException("HashLife can't be used while cycles are being detected.");
+		}
+		if (hashLife && current.getRule().hasB0()) {
+			throw new IllegalStateException("HashLife can't be used with rules that have B0.");
+		}
+		if (hashLife && current.getTopology() == Grid.Topology.TORUS) {
+			throw new IllegalStateException("HashLife can't be used when the grid wraps around.");
+		}
+
+		if (hashLife && this.hashLife == null) {
+			this.hashLife = new HashLife(current.getRule());
+			this.hashLife.load(current);
+		} else if (!hashLife && this.hashLife != null) {
+			getGrid();
+			this.hashLife = null;
+			if (activeTiles != null) {
+				//the next grid is out of date
+				activeTiles.markAll();
+			}
+		}
+		countLiveCells();
+	}
+
+	/**
+	 * Takes a snapshot of the game that can be saved and restored later. Only
+	 * the current grid is copied, so the game can keep iterating while the
+	 * snapshot is being saved.
+	 * @return the snapshot
+	 */
+	public Checkpoint checkpoint() {
+		return new Checkpoint(getGrid(), iterationCount, noise, randomCells.getSeed());
+	}
+
+	/**
+	 * Restores the game to the state it was in when a snapshot was taken.
+	 * This includes the grid, the iteration count, the amount of noise, and
+	 * the seed of the noise.
+	 * @param checkpoint the snapshot
+	 * @throws IllegalArgumentException if the snapshot's grid is a different
+	 * size than the game's grid
+	 */
+	public void restore(Checkpoint checkpoint) {
+		getGrid();
+		checkpoint.copyTo(current);
+		iterationCount = checkpoint.getIterationCount();
+		noise = checkpoint.getNoise();
+		randomCells = new RandomCells(checkpoint.getSeed());
+		gridReplaced();
+	}
+
+	/**
+	 * Randomly populates the grid, replacing all of its cells. The work is
+	 * split across the worker threads (see {@link #setThreads}), and the
+	 * cells that are chosen only depend on the seed (see {@link #setSeed}), not
+	 * on the number of threads or on how the grid is stored.
+	 * @param aliveChance the percent chance that each cell has of being
+	 * alive (0.0 to 1.0)
+	 */
+	public void populate(double aliveChance) {
+		getGrid();
+		randomCells.prepare(current.getRows(), current.getCols(), 0, -1);
+		PopulateTask task = new PopulateTask(aliveChance);
+		if (current instanceof SparseGrid) {
+			//chunks are created as cells are set, which isn't thread-safe
+			task.run(0, 1);
+		} else {
+			if (pool == null) {
+				pool = new WorkerPool(threads, executor);
+			}
+			pool.run(task);
+		}
+		gridReplaced();
 	}
 
 	/**
-	 * Moves the game forward the given number of steps.
+	 * Brings everything that depends on the current grid up to date after
+	 * the grid has been replaced.
+	 */
+	private void gridReplaced() {
+		if (cycleDetector != null) {
+			cycleDetector.reset(current, iterationCount);
+		}
+		if (activeTiles != null) {
+			//the next grid is out of date
+			activeTiles.markAll();
+		}
+		if (hashLife != null) {
+			int maxNodes = hashLife.getMaxNodes();
+			hashLife = new HashLife(current.getRule());
+			hashLife.setMaxNodes(maxNodes);
+			hashLife.load(current);
+		}
+		countLiveCells();
+	}
+
+	/**
+	 * Moves the game forward the given number of steps. When HashLife is
+	 * being used and there is no noise, this is done in a handful of large
+	 * jumps instead of one step at a time (see {@link #setHashLife}). On
+	 * bit-packed grids with no noise, each part of the grid is moved several
+	 * steps ahead at once (see {@link #setTemporalBlocking}). It stops early if
+	 * the game has settled into a cycle and {@link #setStopOnCycle} is set.
 	 * @param numIterations the number of steps to move the game forward
 	 * @return the resulting grid state
 	 */
 	public Grid iterate(long numIterations) {
-		for (long i = 0; i < numIterations; i++) {
-			iterate();
+		if (hashLife != null && noise == 0) {
+			hashLife.advance(numIterations);
+			hashLifeChanged = true;
+			iterationCount += numIterations;
+			return getGrid();
 		}
-		return current;
+
+		long i = 0;
+		while (i < numIterations) {
+			if (stopOnCycle && getCyclePeriod() > 0) {
+				break;
+			}
+
+			int generations = (int) Math.min(temporalBlocking, numIterations - i);
+			if (generations > 1 && canBlock()) {
+				stepAhead(generations);
+				i += generations;
+			} else {
+				step();
+				i++;
+			}
+		}
+		return getGrid();
+	}
+
+	/**
+	 * Determines whether the grid can be moved several steps ahead at once
+	 * (see {@link #setTemporalBlocking}).
+	 * @return true if it can, false if not
+	 */
+	private boolean canBlock() {
+		return noise == 0 && current.getTopology() == Grid.Topology.BOUNDED && hashLife == null && forkJoinPool == null && activeTiles == null && deltaWriter == null && cycleDetector == null && listeners.isEmpty() && TemporalBlock.isSupported(current) && next.getClass() == current.getClass();
+	}
+
+	/**
+	 * Moves the game forward several steps at once, one tile at a time (see
+	 * {@link #setTemporalBlocking}).
+	 * @param generations the number of steps
+	 */
+	private void stepAhead(int generations) {
+		if (pool == null) {
+			pool = new WorkerPool(threads, executor);
+		}
+		if (temporalBlocks == null || temporalBlocks.length != pool.getSize()) {
+			temporalBlocks = new TemporalBlock[pool.getSize()];
+			for (int i = 0; i < temporalBlocks.length; i++) {
+				temporalBlocks[i] = new TemporalBlock();
+			}
+		}
+
+		blockGenerations = generations;
+		pool.run(blockTask);
+
+		//swap grids
+		Grid temp = current;
+		current = next;
+		next = temp;
+
+		iterationCount += generations;
 	}
 
 	/**
@@ -292,97 +1664,515 @@ public class GameOfLife {
 	 * @return the resulting grid state
 	 */
 	public Grid iterate() {
-		//decompose task
-		for (int i = 0; i < threadList.length; i++) {
-			threadList[i] = new LifeThread(i);
-		}
+		step();
+		return getGrid();
+	}
 
-		//start threads
-		for (LifeThread t : threadList) {
-			t.start();
-		}
+	/**
+	 * Moves the game forward one step.
+	 */
+	private void step() {
+		boolean measure = !listeners.isEmpty();
+		workerNanos = null;
+		long computeStart = System.nanoTime();
 
-		//wait for them to finish
-		for (LifeThread t : threadList) {
-			try {
-				t.join();
-			} catch (InterruptedException e) {
+		//calculate the next game state
+		if (hashLife != null) {
+			hashLife.advance(1);
+			hashLifeChanged = true;
+		} else if (forkJoinPool != null && !(current instanceof SparseGrid)) {
+			int alignment = current.getColumnAlignment();
+			int tileHeight = (activeTiles == null) ? FORK_JOIN_ROWS : tileSize;
+			int tileWidth = (activeTiles == null) ? FORK_JOIN_COLS : tileSize;
+			tileWidth = (tileWidth + alignment - 1) / alignment * alignment;
+			int tileRows = (current.getRows() + tileHeight - 1) / tileHeight;
+			int tileCols = (current.getCols() + tileWidth - 1) / tileWidth;
+			forkJoinPool.invoke(new TileAction(tileHeight, tileWidth, 0, tileRows, 0, tileCols));
+		} else {
+			if (pool == null) {
+				pool = new WorkerPool(threads, executor);
+			}
+			if (current instanceof SparseGrid) {
+				((SparseGrid) current).computeNext((SparseGrid) next, pool);
+			} else {
+				if (measure) {
+					workerNanos = new long[pool.getSize()];
+				}
+				pool.run(lifeTask);
 			}
 		}
 
 		//add noise (toggle random cells)
+		long noiseStart = System.nanoTime();
 		if (noise > 0) {
-			int changed[][] = new int[noise][2];
-			for (int i = 0; i < noise; i++) {
-				//find a random cell (that hasn't already been chosen this iteration)
-				boolean repeat;
-				int row, col;
-				do {
-					repeat = false;
-					row = (int) (Math.random() * current.getRows());
-					col = (int) (Math.random() * current.getCols());
-					for (int j = 0; j < i; j++){
-						if (changed[j][0] == row && changed[j][1] == col){
-							repeat = true;
-							break;
-						}
-					}
-				} while (repeat);
-				
-				boolean alive = next.isAlive(row, col);
-				next.setAlive(row, col, !alive);
-				changed[i][0] = row;
-				changed[i][1] = col;
+			randomCells.prepare(current.getRows(), current.getCols(), noise, iterationCount);
+			boolean parallel = noise >= PARALLEL_NOISE && pool != null && forkJoinPool == null && hashLife == null && deltaWriter == null && !(current instanceof SparseGrid);
+			if (parallel) {
+				pool.run(noiseTask);
+			} else {
+				for (int band = 0; band < randomCells.getBands(); band++) {
+					toggleBand(band);
+				}
 			}
 		}
+		long noiseEnd = System.nanoTime();
 
-		//swap grids
-		Grid temp = current;
-		current = next;
-		next = temp;
+		if (hashLife == null) {
+			if (activeTiles != null) {
+				activeTiles.advance();
+			}
+			if (deltaWriter != null) {
+				try {
+					deltaWriter.endGeneration(current, next);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			//swap grids
+			Grid temp = current;
+			current = next;
+			next = temp;
+		}
 
 		iterationCount++;
+		if (cycleDetector != null) {
+			cycleDetector.endGeneration(iterationCount, noise == 0);
+		}
+		if (liveCells >= 0) {
+			liveCells += liveCellChanges.getAndSet(0);
+		}
 
-		return current;
+		if (measure) {
+			long cells = (long) current.getRows() * current.getCols();
+			GenerationStats stats = new GenerationStats(iterationCount, noiseStart - computeStart, noiseEnd - noiseStart, liveCells, cells, (workerNanos == null) ? new long[0] : workerNanos);
+			for (GenerationListener listener : listeners) {
+				listener.generationCompleted(stats);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the next state of part of the grid, and records the cells
+	 * that changed if a delta writer is attached, a cycle detector is attached,
+	 * or live cells are being counted. Called by the worker threads.
+	 * @param rowStart the first row (inclusive)
+	 * @param rowEnd the last row (exclusive)
+	 * @param colStart the first column (inclusive)
+	 * @param colEnd the last column (exclusive)
+	 * @return true if any of the cells changed state, false if not
+	 */
+	private boolean computeNext(int rowStart, int rowEnd, int colStart, int colEnd) {
+		boolean changed = current.computeNext(next, rowStart, rowEnd, colStart, colEnd);
+		if (changed && deltaWriter != null) {
+			deltaWriter.collect(current, next, rowStart, rowEnd, colStart, colEnd);
+		}
+		if (changed && cycleDetector != null) {
+			cycleDetector.changed(CycleDetector.diff(current, next, rowStart, rowEnd, colStart, colEnd));
+		}
+		if (changed && liveCells >= 0) {
+			//the region is still in the cache, so counting it again is cheap
+			int born = next.countAlive(rowStart, rowEnd, colStart, colEnd) - current.countAlive(rowStart, rowEnd, colStart, colEnd);
+			if (born != 0) {
+				liveCellChanges.addAndGet(born);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Chooses the random cells in one band of the grid and toggles them.
+	 * @param band the band (see {@link RandomCells})
+	 */
+	private void toggleBand(int band) {
+		int count = randomCells.choose(band);
+		long cells[] = randomCells.getCells(band);
+		int cols = randomCells.getCols();
+		long hashChanges = 0;
+		long born = 0;
+		for (int i = 0; i < count; i++) {
+			int row = (int) (cells[i] / cols);
+			int col = (int) (cells[i] % cols);
+			toggle(row, col);
+			if (cycleDetector != null) {
+				hashChanges ^= CycleDetector.toggled(next, row, col);
+			}
+			if (liveCells >= 0) {
+				born += next.isAlive(row, col) ? 1 : -1;
+			}
+		}
+		if (cycleDetector != null) {
+			cycleDetector.changed(hashChanges);
+		}
+		if (born != 0) {
+			liveCellChanges.addAndGet(born);
+		}
+	}
+
+	/**
+	 * Toggles the state of a cell in the next game state.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 */
+	private void toggle(int row, int col) {
+		if (hashLife != null) {
+			boolean alive = hashLife.isAlive(row, col);
+			hashLife.setAlive(row, col, !alive);
+			return;
+		}
+
+		boolean alive = next.isAlive(row, col);
+		next.setAlive(row, col, !alive);
+		if (activeTiles != null) {
+			activeTiles.markCell(row, col);
+		}
+		if (deltaWriter != null) {
+			deltaWriter.toggled(row, col);
+		}
+	}
+
+	/**
+	 * Stops the game's worker threads. If the game is iterated again after
+	 * being closed, new threads will be started.
+	 */
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Saves checkpoints to a file on a background thread. Only one checkpoint
+	 * is written at a time. If the previous checkpoint is still being written
+	 * when the next one is saved, the game waits for it to finish.
+	 * @author mangst
+	 */
+	private static class CheckpointWriter implements AutoCloseable {
+		/**
+		 * The file to save the checkpoints to.
+		 */
+		private final File file;
+
+		/**
+		 * The thread that writes the checkpoints.
+		 */
+		private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "gameoflife-checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		/**
+		 * The checkpoint that is currently being written (null if none).
+		 */
+		private Future<?> writing;
+
+		/**
+		 * Constructs a new checkpoint writer.
+		 * @param file the file to save the checkpoints to
+		 */
+		public CheckpointWriter(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * Saves a checkpoint in the background.
+		 * @param checkpoint the checkpoint
+		 */
+		public void save(final Checkpoint checkpoint) {
+			waitForWrite();
+			writing = executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						checkpoint.save(file, true);
+					} catch (IOException e) {
+						System.err.println("Problem saving the checkpoint file \"" + file + "\": " + e.getMessage());
+					}
+				}
+			});
+		}
+
+		/**
+		 * Waits for the last checkpoint to be written, then stops the thread.
+		 */
+		@Override
+		public void close() {
+			waitForWrite();
+			executor.shutdown();
+		}
+
+		/**
+		 * Waits for the checkpoint that is currently being written to finish.
+		 */
+		private void waitForWrite() {
+			if (writing == null) {
+				return;
+			}
+
+			boolean interrupted = false;
+			while (true) {
+				try {
+					writing.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					System.err.println("Problem saving the checkpoint file \"" + file + "\": " + e.getCause());
+					break;
+				}
+			}
+			writing = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
-	 * The thread object that is used to calculate the next game state.
+	 * The task that is used to randomly populate the grid. Each worker takes
+	 * every Nth band of the grid (see {@link RandomCells}).
 	 * @author mangst
-	 * 
 	 */
-	private class LifeThread extends Thread {
+	private class PopulateTask implements WorkerPool.Task {
 		/**
-		 * This thread's number, used for determining which parts of the board
-		 * it must handle.
+		 * The chance that each cell has of being alive.
 		 */
-		private int num;
+		private final double aliveChance;
 
 		/**
-		 * Constructs a new life thread.
-		 * @param num the thread's number
+		 * Constructs a new populate task.
+		 * @param aliveChance the chance that each cell has of being alive
 		 */
-		public LifeThread(int num) {
-			this.num = num;
+		public PopulateTask(double aliveChance) {
+			this.aliveChance = aliveChance;
 		}
 
 		@Override
-		public void run() {
-			int row = num;
-			while (row < current.getRows()) {
-				for (int j = 0; j < current.getCols(); j++) {
-					//determine if the cell should be alive or dead next round
-					boolean alive = current.isAlive(row, j);
-					boolean nextAlive;
-					int surrounding = current.getAliveSurrounding(row, j);
-					if (alive) {
-						nextAlive = surrounding == 2 || surrounding == 3;
-					} else {
-						nextAlive = surrounding == 3;
+		public void run(int worker, int workers) {
+			for (int band = worker; band < randomCells.getBands(); band += workers) {
+				randomCells.populate(current, band, aliveChance);
+			}
+		}
+	}
+
+	/**
+	 * The task that is used to toggle the random cells when there is a lot of
+	 * noise. Each worker takes every Nth band of the grid (see
+	 * {@link RandomCells}), so the workers never toggle the same row.
+	 * @author mangst
+	 */
+	private class NoiseTask implements WorkerPool.Task {
+		@Override
+		public void run(int worker, int workers) {
+			for (int band = worker; band < randomCells.getBands(); band += workers) {
+				toggleBand(band);
+			}
+		}
+	}
+
+	/**
+	 * The task that is used to calculate the next game state. How the board
+	 * is divided up amongst the workers depends on the partitioning mode.
+	 * @author mangst
+	 */
+	private class LifeTask implements WorkerPool.Task {
+		@Override
+		public void run(int worker, int workers) {
+			long times[] = workerNanos;
+			if (times == null) {
+				compute(worker, workers);
+				return;
+			}
+
+			long start = System.nanoTime();
+			compute(worker, workers);
+			times[worker] = System.nanoTime() - start;
+		}
+
+		/**
+		 * Calculates the next state of this worker's part of the grid.
+		 * @param worker the worker's number
+		 * @param workers the total number of workers
+		 */
+		private void compute(int worker, int workers) {
+			if (activeTiles != null) {
+				runTiles(worker, workers);
+				return;
+			}
+
+			int rows = current.getRows();
+			int cols = current.getCols();
+
+			if (partitioning == Partitioning.INTERLEAVED) {
+				for (int row = worker; row < rows; row += workers) {
+					computeNext(row, row + 1, 0, cols);
+				}
+				return;
+			}
+
+			int rowStart = (int) ((long) rows * worker / workers);
+			int rowEnd = (int) ((long) rows * (worker + 1) / workers);
+			if (rowStart == rowEnd) {
+				return;
+			}
+
+			int blockWidth = cols;
+			if (blockCols > 0) {
+				int alignment = current.getColumnAlignment();
+				blockWidth = (blockCols + alignment - 1) / alignment * alignment;
+			}
+			for (int colStart = 0; colStart < cols; colStart += blockWidth) {
+				int colEnd = (int) Math.min(cols, (long) colStart + blockWidth);
+				computeNext(rowStart, rowEnd, colStart, colEnd);
+			}
+		}
+
+		/**
+		 * Calculates the next state of this worker's tiles, skipping the ones
+		 * that aren't active.
+		 * @param worker the worker's number
+		 * @param workers the total number of workers
+		 */
+		private void runTiles(int worker, int workers) {
+			int tileRows = activeTiles.getTileRows();
+			int tileRowStart, tileRowEnd, tileRowStep;
+			if (partitioning == Partitioning.INTERLEAVED) {
+				tileRowStart = worker;
+				tileRowEnd = tileRows;
+				tileRowStep = workers;
+			} else {
+				tileRowStart = (int) ((long) tileRows * worker / workers);
+				tileRowEnd = (int) ((long) tileRows * (worker + 1) / workers);
+				tileRowStep = 1;
+			}
+
+			for (int i = tileRowStart; i < tileRowEnd; i += tileRowStep) {
+				int rowStart = activeTiles.rowStart(i);
+				int rowEnd = activeTiles.rowEnd(i);
+				for (int j = 0; j < activeTiles.getTileCols(); j++) {
+					if (activeTiles.isActive(i, j)) {
+						boolean changed = computeNext(rowStart, rowEnd, activeTiles.colStart(j), activeTiles.colEnd(j));
+						activeTiles.setChanged(i, j, changed);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The task that is used to move the grid several generations ahead at
+	 * once (see {@link #setTemporalBlocking}). The rows of tiles are divided
+	 * up amongst the workers in the same way as the rows of the grid.
+	 * @author mangst
+	 */
+	private class BlockTask implements WorkerPool.Task {
+		@Override
+		public void run(int worker, int workers) {
+			int rows = current.getRows();
+			int wordsPerRow = BitGrid.wordsPerRow(current.getCols());
+			int tileRows = (rows + TEMPORAL_ROWS - 1) / TEMPORAL_ROWS;
+			int tileRowStart, tileRowEnd, tileRowStep;
+			if (partitioning == Partitioning.INTERLEAVED) {
+				tileRowStart = worker;
+				tileRowEnd = tileRows;
+				tileRowStep = workers;
+			} else {
+				tileRowStart = (int) ((long) tileRows * worker / workers);
+				tileRowEnd = (int) ((long) tileRows * (worker + 1) / workers);
+				tileRowStep = 1;
+			}
+
+			TemporalBlock block = temporalBlocks[worker];
+			for (int i = tileRowStart; i < tileRowEnd; i += tileRowStep) {
+				int rowStart = i * TEMPORAL_ROWS;
+				int rowEnd = Math.min(rows, rowStart + TEMPORAL_ROWS);
+				for (int wordStart = 0; wordStart < wordsPerRow; wordStart += TEMPORAL_WORDS) {
+					int wordEnd = Math.min(wordsPerRow, wordStart + TEMPORAL_WORDS);
+					block.advance(current, next, blockGenerations, rowStart, rowEnd, wordStart, wordEnd);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the next state of a rectangle of tiles using fork/join. If
+	 * the pool doesn't have much queued work, the rectangle is split in half
+	 * along its longer side so that idle threads can steal one of the halves.
+	 * Without active tile tracking, the grid is split into blocks of
+	 * {@link #FORK_JOIN_ROWS} rows by {@link #FORK_JOIN_COLS} columns.
+	 * @author mangst
+	 */
+	private class TileAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The size of each tile.
+		 */
+		private final int tileHeight, tileWidth;
+
+		/**
+		 * The rectangle of tiles that this action calculates.
+		 */
+		private final int tileRowStart, tileRowEnd, tileColStart, tileColEnd;
+
+		/**
+		 * Constructs a new tile action.
+		 * @param tileHeight the number of rows in each tile
+		 * @param tileWidth the number of columns in each tile
+		 * @param tileRowStart the first tile row (inclusive)
+		 * @param tileRowEnd the last tile row (exclusive)
+		 * @param tileColStart the first tile column (inclusive)
+		 * @param tileColEnd the last tile column (exclusive)
+		 */
+		public TileAction(int tileHeight, int tileWidth, int tileRowStart, int tileRowEnd, int tileColStart, int tileColEnd) {
+			this.tileHeight = tileHeight;
+			this.tileWidth = tileWidth;
+			this.tileRowStart = tileRowStart;
+			this.tileRowEnd = tileRowEnd;
+			this.tileColStart = tileColStart;
+			this.tileColEnd = tileColEnd;
+		}
+
+		@Override
+		protected void compute() {
+			int tileRows = tileRowEnd - tileRowStart;
+			int tileCols = tileColEnd - tileColStart;
+			if (tileRows * (long) tileCols > 1 && getSurplusQueuedTaskCount() <= 3) {
+				TileAction first, second;
+				if (tileRows >= tileCols) {
+					int mid = tileRowStart + tileRows / 2;
+					first = new TileAction(tileHeight, tileWidth, tileRowStart, mid, tileColStart, tileColEnd);
+					second = new TileAction(tileHeight, tileWidth, mid, tileRowEnd, tileColStart, tileColEnd);
+				} else {
+					int mid = tileColStart + tileCols / 2;
+					first = new TileAction(tileHeight, tileWidth, tileRowStart, tileRowEnd, tileColStart, mid);
+					second = new TileAction(tileHeight, tileWidth, tileRowStart, tileRowEnd, mid, tileColEnd);
+				}
+				invokeAll(first, second);
+				return;
+			}
+
+			int rows = current.getRows();
+			int cols = current.getCols();
+			for (int i = tileRowStart; i < tileRowEnd; i++) {
+				int rowStart = i * tileHeight;
+				int rowEnd = Math.min(rows, rowStart + tileHeight);
+				for (int j = tileColStart; j < tileColEnd; j++) {
+					int colStart = j * tileWidth;
+					int colEnd = (int) Math.min(cols, (long) colStart + tileWidth);
+					if (activeTiles == null) {
+						computeNext(rowStart, rowEnd, colStart, colEnd);
+					} else if (activeTiles.isActive(i, j)) {
+						boolean changed = computeNext(rowStart, rowEnd, colStart, colEnd);
+						activeTiles.setChanged(i, j, changed);
 					}
-					next.setAlive(row, j, nextAlive);
 				}
-				row += threads;
 			}
 		}
 	}
@@ -0,0 +1,17 @@
+package com.mangst.gameoflife;
+
+/**
+ * Gets notified every time a game finishes calculating a generation (see
+ * {@link GameOfLife#addGenerationListener}).
+ * @author mangst
+ */
+public interface GenerationListener {
+	/**
+	 * Called after a generation has been calculated, on the thread that
+	 * iterated the game. This should return quickly, because the game waits
+	 * for it before calculating the next generation.
+	 * @param stats the measurements that were taken while the generation was
+	 * calculated
+	 */
+	void generationCompleted(GenerationStats stats);
+}
@@ -0,0 +1,140 @@
+package com.mangst.gameoflife;
+
+/**
+ * The measurements that were taken while a game calculated one generation
+ * (see {@link GenerationListener}).
+ * @author mangst
+ */
+public class GenerationStats {
+	/**
+	 * The iteration count after the generation was calculated.
+	 */
+	private final long iteration;
+
+	/**
+	 * The time spent calculating the next state of the grid.
+	 */
+	private final long computeNanos;
+
+	/**
+	 * The time spent adding noise.
+	 */
+	private final long noiseNanos;
+
+	/**
+	 * The number of live cells (-1 if unknown).
+	 */
+	private final long liveCells;
+
+	/**
+	 * The number of cells in the grid.
+	 */
+	private final long cells;
+
+	/**
+	 * The time each worker thread spent calculating its part of the grid
+	 * (empty if unknown).
+	 */
+	private final long workerNanos[];
+
+	/**
+	 * Constructs new generation stats.
+	 * @param iteration the iteration count after the generation was calculated
+	 * @param computeNanos the time spent calculating the next state of the
+	 * grid
+	 * @param noiseNanos the time spent adding noise
+	 * @param liveCells the number of live cells or -1 if unknown
+	 * @param cells the number of cells in the grid
+	 * @param workerNanos the time each worker thread spent calculating its part
+	 * of the grid (empty if unknown)
+	 */
+	public GenerationStats(long iteration, long computeNanos, long noiseNanos, long liveCells, long cells, long workerNanos[]) {
+		this.iteration = iteration;
+		this.computeNanos = computeNanos;
+		this.noiseNanos = noiseNanos;
+		this.liveCells = liveCells;
+		this.cells = cells;
+		this.workerNanos = workerNanos;
+	}
+
+	/**
+	 * Gets the game's iteration count after the generation was calculated.
+	 * @return the iteration count
+	 */
+	public long getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * Gets the time spent calculating the next state of the grid, not
+	 * including the noise.
+	 * @return the time in nanoseconds
+	 */
+	public long getComputeNanos() {
+		return computeNanos;
+	}
+
+	/**
+	 * Gets the time spent choosing and toggling the noise cells.
+	 * @return the time in nanoseconds (0 if there is no noise)
+	 */
+	public long getNoiseNanos() {
+		return noiseNanos;
+	}
+
+	/**
+	 * Gets the number of live cells in the grid. This is counted by the worker
+	 * threads as they calculate the grid, so it only costs extra for the parts
+	 * of the grid that changed.
+	 * @return the number of live cells or -1 if it is not known (when HashLife
+	 * is being used or the grid is unbounded)
+	 */
+	public long getLiveCells() {
+		return liveCells;
+	}
+
+	/**
+	 * Gets the number of cells in the grid (the number of cell updates it
+	 * takes to calculate a generation).
+	 * @return the number of cells
+	 */
+	public long getCells() {
+		return cells;
+	}
+
+	/**
+	 * Gets the number of cells that were calculated per second.
+	 * @return the cell updates per second (0 if the time is unknown)
+	 */
+	public double getCellUpdatesPerSecond() {
+		return (computeNanos <= 0) ? 0 : cells * 1e9 / computeNanos;
+	}
+
+	/**
+	 * Gets the time each worker thread spent calculating its part of the grid.
+	 * @return the times in nanoseconds, indexed by worker (empty if they are
+	 * not known, such as when fork/join or HashLife is being used, or the grid
+	 * is unbounded)
+	 */
+	public long[] getWorkerNanos() {
+		return workerNanos.clone();
+	}
+
+	/**
+	 * Gets how unevenly the work was divided up amongst the worker threads.
+	 * This is the time of the slowest worker divided by the average time of
+	 * all the workers, so 1.0 means that the work was divided up perfectly and
+	 * 2.0 means that the slowest worker took twice as long as the average
+	 * (the other workers spent half of the generation waiting for it).
+	 * @return the imbalance or 0 if it is not known (see
+	 * {@link #getWorkerNanos})
+	 */
+	public double getImbalance() {
+		long max = 0, total = 0;
+		for (long nanos : workerNanos) {
+			max = Math.max(max, nanos);
+			total += nanos;
+		}
+		return (total == 0) ? 0 : (double) max * workerNanos.length / total;
+	}
+}
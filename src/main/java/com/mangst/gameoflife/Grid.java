@@ -1,22 +1,137 @@
 package com.mangst.gameoflife;
 
 /**
- * Represents the grid on which the Game of Life is played.
+ * Represents the grid on which the Game of Life is played. Each cell is
+ * stored as a boolean. Subclasses can store the cells in other ways (see
+ * {@link BitGrid}).
  * @author mangst
  */
 public class Grid {
 	/**
-	 * The grid of cells.
+	 * The ways in which the edges of a grid can be connected.
+	 */
+	public enum Topology {
+		/**
+		 * The cells outside of the grid are always dead.
+		 */
+		BOUNDED,
+
+		/**
+		 * The grid wraps around, so that the top edge touches the bottom
+		 * edge and the left edge touches the right edge (a torus).
+		 */
+		TORUS
+	}
+
+	/**
+	 * The number of rows in the grid.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private final int cols;
+
+	/**
+	 * The grid of cells (null if a subclass stores the cells itself).
 	 */
 	private boolean grid[][];
 
+	/**
+	 * The rule that decides the next state of each cell.
+	 */
+	private Rule rule = Rule.CONWAY;
+
+	/**
+	 * How the edges of the grid are connected.
+	 */
+	private Topology topology = Topology.BOUNDED;
+
 	/**
 	 * Constructs a new grid.
 	 * @param rows the number of rows in the grid
 	 * @param cols the number of columns in the grid
 	 */
 	public Grid(int rows, int cols) {
-		grid = new boolean[rows + 2][cols + 2]; //edge cells will always be dead to simplify calculations
+		this(rows, cols, true);
+	}
+
+	/**
+	 * Constructs a new grid.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param allocate true to allocate the boolean array that holds the cells,
+	 * false if the subclass stores the cells itself (it must then override
+	 * {@link #isAlive}, {@link #setAlive} and {@link #getAliveSurrounding})
+	 */
+	protected Grid(int rows, int cols, boolean allocate) {
+		this.rows = rows;
+		this.cols = cols;
+		if (allocate) {
+			grid = new boolean[rows + 2][cols + 2]; //edge cells are dead (or copies of the opposite edge on a torus) to simplify calculations
+		}
+	}
+
+	/**
+	 * Creates a new, empty grid that stores its cells the same way as this
+	 * one.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @return the new grid
+	 */
+	public Grid newGrid(int rows, int cols) {
+		Grid grid = new Grid(rows, cols);
+		grid.setRule(rule);
+		grid.setTopology(topology);
+		return grid;
+	}
+
+	/**
+	 * Gets the rule that decides the next state of each cell.
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Sets the rule that decides the next state of each cell. Grids created
+	 * with {@link #newGrid} use the same rule.
+	 * @param rule the rule (defaults to {@link Rule#CONWAY})
+	 */
+	public void setRule(Rule rule) {
+		if (rule == null) {
+			throw new IllegalArgumentException("Rule cannot be null.");
+		}
+		this.rule = rule;
+	}
+
+	/**
+	 * Gets how the edges of the grid are connected.
+	 * @return the topology
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * Sets how the edges of the grid are connected. Grids created with
+	 * {@link #newGrid} use the same topology.
+	 * <p>
+	 * On a torus, the dead cells around the edge of the grid become "ghost"
+	 * cells that hold copies of the cells on the opposite edge, so the
+	 * neighbors of the cells inside the grid are counted the same way as
+	 * before. {@link #computeNext} refreshes the ghost cells next to its
+	 * region before calculating it. Bit-packed grids read the rows at the
+	 * opposite edge directly instead (see {@link BitGrid}).
+	 * @param topology the topology (defaults to {@link Topology#BOUNDED})
+	 */
+	public void setTopology(Topology topology) {
+		if (topology == null) {
+			throw new IllegalArgumentException("Topology cannot be null.");
+		}
+		this.topology = topology;
 	}
 
 	/**
@@ -46,6 +161,21 @@ public class Grid {
 	 * @return the number of cells surrounding the given cell that are alive
 	 */
 	public int getAliveSurrounding(int row, int col) {
+		if (topology == Topology.TORUS && (row == 0 || col == 0 || row == rows - 1 || col == cols - 1)) {
+			//the ghost cells may be out of date
+			return getAliveSurroundingWrapped(row, col);
+		}
+		return countNeighbors(row, col);
+	}
+
+	/**
+	 * Determines how many cells surrounding the given cell are alive, reading
+	 * the edge cells around the grid as they are.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return the number of cells surrounding the given cell that are alive
+	 */
+	private int countNeighbors(int row, int col) {
 		int count = 0;
 
 		if (isAlive(row - 1, col - 1)) count++;
@@ -62,12 +192,160 @@ public class Grid {
 		return count;
 	}
 
+	/**
+	 * Determines how many cells surrounding the given cell are alive on a
+	 * torus, by wrapping the neighbors' coordinates around the edges of the
+	 * grid. This is slower than reading the ghost cells, so it's only used
+	 * when they aren't available.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return the number of cells surrounding the given cell that are alive
+	 */
+	int getAliveSurroundingWrapped(int row, int col) {
+		int count = 0;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				if ((i != row || j != col) && isAlive((i + rows) % rows, (j + cols) % cols)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Calculates the next state of a rectangular region of the grid and
+	 * stores it in another grid.
+	 * @param next the grid to store the next state in (must be the same size)
+	 * @param rowStart the first row of the region (inclusive)
+	 * @param rowEnd the last row of the region (exclusive)
+	 * @param colStart the first column of the region (inclusive)
+	 * @param colEnd the last column of the region (exclusive)
+	 * @return true if any of the cells in the region changed state, false if
+	 * not
+	 */
+	public boolean computeNext(Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		//subclasses that store the cells themselves count the neighbors their own way
+		boolean ghosts = (grid != null);
+		if (ghosts && topology == Topology.TORUS && rowStart < rowEnd && colStart < colEnd) {
+			wrapGhosts(rowStart, rowEnd, colStart, colEnd);
+		}
+
+		boolean changed = false;
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int j = colStart; j < colEnd; j++) {
+				//determine if the cell should be alive or dead next round
+				boolean alive = isAlive(i, j);
+				int neighbors = ghosts ? countNeighbors(i, j) : getAliveSurrounding(i, j);
+				boolean nextAlive = rule.nextState(alive, neighbors);
+				next.setAlive(i, j, nextAlive);
+				changed |= (alive != nextAlive);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Copies the cells on the opposite edges of the grid into the ghost cells
+	 * that a region reads its neighbors from (see {@link Topology#TORUS}).
+	 * Only the ghost cells next to the region are copied, so each worker
+	 * thread refreshes the ghost cells it needs. Regions that are next to
+	 * each other share some ghost cells, but they copy the same values into
+	 * them.
+	 * @param rowStart the first row of the region (inclusive)
+	 * @param rowEnd the last row of the region (exclusive)
+	 * @param colStart the first column of the region (inclusive)
+	 * @param colEnd the last column of the region (exclusive)
+	 */
+	private void wrapGhosts(int rowStart, int rowEnd, int colStart, int colEnd) {
+		//the region and its neighbors are rows rowStart to rowEnd + 1 and columns colStart to colEnd + 1 of the array
+		if (rowStart == 0) {
+			for (int j = colStart; j <= colEnd + 1; j++) {
+				grid[0][j] = grid[rows][wrap(j, cols)];
+			}
+		}
+		if (rowEnd == rows) {
+			for (int j = colStart; j <= colEnd + 1; j++) {
+				grid[rows + 1][j] = grid[1][wrap(j, cols)];
+			}
+		}
+		if (colStart == 0) {
+			for (int i = rowStart; i <= rowEnd + 1; i++) {
+				grid[i][0] = grid[wrap(i, rows)][cols];
+			}
+		}
+		if (colEnd == cols) {
+			for (int i = rowStart; i <= rowEnd + 1; i++) {
+				grid[i][cols + 1] = grid[wrap(i, rows)][1];
+			}
+		}
+	}
+
+	/**
+	 * Gets the index in the array of the cell that a ghost cell is a copy of.
+	 * @param index the index in the array (0 and size + 1 are ghost cells)
+	 * @param size the number of rows or columns in the grid
+	 * @return the index of the cell on the opposite edge, or the index itself
+	 * if it isn't a ghost cell
+	 */
+	private static int wrap(int index, int size) {
+		if (index == 0) {
+			return size;
+		}
+		if (index == size + 1) {
+			return 1;
+		}
+		return index;
+	}
+
+	/**
+	 * Counts the live cells in a rectangular region of the grid.
+	 * @param rowStart the first row of the region (inclusive)
+	 * @param rowEnd the last row of the region (exclusive)
+	 * @param colStart the first column of the region (inclusive)
+	 * @param colEnd the last column of the region (exclusive)
+	 * @return the number of live cells
+	 */
+	public int countAlive(int rowStart, int rowEnd, int colStart, int colEnd) {
+		int count = 0;
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int j = colStart; j < colEnd; j++) {
+				if (isAlive(i, j)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sets the state of every cell in a row.
+	 * @param row the row
+	 * @param cells the cells, packed into longs (bit N of long W holds
+	 * column 64*W+N, bits past the last column are ignored)
+	 */
+	public void setRow(int row, long cells[]) {
+		for (int j = 0; j < getCols(); j++) {
+			setAlive(row, j, (cells[j >>> 6] & (1L << j)) != 0);
+		}
+	}
+
+	/**
+	 * Gets the number of columns that the column boundaries of the regions
+	 * passed to {@link #computeNext} should be a multiple of, so that two
+	 * threads never write to the same unit of storage.
+	 * @return the column alignment
+	 */
+	public int getColumnAlignment() {
+		return 1;
+	}
+
 	/**
 	 * Gets the number of rows in the grid
 	 * @return the number of rows in the grid
 	 */
 	public int getRows() {
-		return grid.length - 2;
+		return rows;
 	}
 
 	/**
@@ -75,7 +353,7 @@ public class Grid {
 	 * @return the number of columns in the grid
 	 */
 	public int getCols() {
-		return grid[0].length - 2;
+		return cols;
 	}
 
 	@Override
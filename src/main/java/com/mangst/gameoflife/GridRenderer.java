@@ -0,0 +1,149 @@
+package com.mangst.gameoflife;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes grids to a channel as text, in the same format as
+ * {@link Grid#toString} ('x' for alive cells, a space for dead cells, and one
+ * line per row). The bytes of each row are written straight from the grid
+ * into a reusable direct buffer, so rendering does not create any objects.
+ * This makes it much faster than building a string and printing it when the
+ * grid is displayed every iteration.
+ * <p>
+ * Bit-packed grids (see {@link BitGrid}) are rendered 8 cells at a time by
+ * looking up the characters for each byte of the packed cells in a table.
+ * @author mangst
+ */
+public class GridRenderer {
+	/**
+	 * The default size of the buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The characters for every combination of 8 cells, packed into longs so
+	 * that they can be written with a single call. Byte N of each long holds
+	 * the character for bit N.
+	 */
+	private static final long CHARS[] = new long[256];
+	static {
+		for (int i = 0; i < CHARS.length; i++) {
+			long chars = 0;
+			for (int bit = 0; bit < 8; bit++) {
+				long c = ((i & (1 << bit)) != 0) ? 'x' : ' ';
+				chars |= c << (bit * 8);
+			}
+			CHARS[i] = chars;
+		}
+	}
+
+	/**
+	 * The channel to write to.
+	 */
+	private final WritableByteChannel channel;
+
+	/**
+	 * The line separator.
+	 */
+	private final byte newline[];
+
+	/**
+	 * The buffer that the rows are written to before being sent to the
+	 * channel.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Constructs a new renderer.
+	 * @param channel the channel to write to
+	 */
+	public GridRenderer(WritableByteChannel channel) {
+		this(channel, BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new renderer.
+	 * @param channel the channel to write to
+	 * @param bufferSize the size of the buffer (it is made larger if a row
+	 * does not fit into it)
+	 */
+	public GridRenderer(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		newline = System.getProperty("line.separator").getBytes(StandardCharsets.US_ASCII);
+		buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes a grid to the channel, followed by an empty line. This produces
+	 * the same output as passing the grid to {@link java.io.PrintStream#println(Object)}.
+	 * @param grid the grid
+	 * @throws IOException if there's a problem writing to the channel
+	 */
+	public void render(Grid grid) throws IOException {
+		int rows = grid.getRows();
+		int cols = grid.getCols();
+
+		//bit-packed rows are written 64 cells at a time, so round up
+		int rowBytes = ((cols + 63) & ~63) + newline.length;
+		if (buffer.capacity() < rowBytes) {
+			buffer = ByteBuffer.allocateDirect(rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		BitGrid bitGrid = (grid instanceof BitGrid) ? (BitGrid) grid : null;
+		for (int i = 0; i < rows; i++) {
+			if (buffer.remaining() < rowBytes) {
+				flush();
+			}
+
+			if (bitGrid == null) {
+				for (int j = 0; j < cols; j++) {
+					buffer.put(grid.isAlive(i, j) ? (byte) 'x' : (byte) ' ');
+				}
+			} else {
+				renderRow(bitGrid, i, cols);
+			}
+			buffer.put(newline);
+		}
+
+		if (buffer.remaining() < newline.length) {
+			flush();
+		}
+		buffer.put(newline);
+		flush();
+	}
+
+	/**
+	 * Writes a row of a bit-packed grid to the buffer.
+	 * @param grid the grid
+	 * @param row the row
+	 * @param cols the number of columns
+	 */
+	private void renderRow(BitGrid grid, int row, int cols) {
+		int start = buffer.position();
+		for (int col = 0; col < cols; col += 64) {
+			long word = grid.getWord(row, col >>> 6);
+			for (int shift = 0; shift < 64; shift += 8) {
+				buffer.putLong(CHARS[(int) (word >>> shift) & 0xff]);
+			}
+		}
+
+		//the unused bits at the end of the row were written as spaces, so back up over them
+		buffer.position(start + cols);
+	}
+
+	/**
+	 * Sends the contents of the buffer to the channel.
+	 * @throws IOException if there's a problem writing to the channel
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,873 @@
+package com.mangst.gameoflife;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * An implementation of Bill Gosper's HashLife algorithm. The universe is
+ * stored as a quadtree in which identical sub-trees are shared (every node is
+ * canonicalized through a hash table), and the result of advancing each node
+ * is memoized in the node itself. This makes it possible to jump a pattern
+ * forward by billions of generations.
+ * <p>
+ * Unlike {@link Grid}, the universe is unbounded: cells that move off of the
+ * edges of a grid are not destroyed. Coordinates can be any long value.
+ * <p>
+ * The hash table is emptied of the nodes that aren't being used (see
+ * {@link #collectGarbage}) when it holds too many nodes (see
+ * {@link #setMaxNodes}) or when the JVM reports that the heap is almost full
+ * after one of its garbage collections. This can happen in the middle of a
+ * step, so a single large jump can't run out of memory just because of the
+ * memoized results it creates along the way.
+ * @author mangst
+ */
+public class HashLife {
+	/**
+	 * A square block of cells. A node at level K is 2^K cells wide and is made
+	 * up of four nodes at level K-1. Level 0 nodes are single cells.
+	 * @author mangst
+	 */
+	private static class Node {
+		/**
+		 * The four quadrants (null for level 0 nodes).
+		 */
+		private final Node nw, ne, sw, se;
+
+		/**
+		 * The node's level.
+		 */
+		private final int level;
+
+		/**
+		 * The number of live cells in the node.
+		 */
+		private final long population;
+
+		/**
+		 * The node's unique ID (used for hashing).
+		 */
+		private final int id;
+
+		/**
+		 * The next node in the same hash table bucket.
+		 */
+		private Node chain;
+
+		/**
+		 * The memoized center of this node, advanced 2^resultStep generations.
+		 */
+		private Node result;
+
+		/**
+		 * The number of generations (as a power of 2) that the memoized result
+		 * has been advanced by.
+		 */
+		private int resultStep = -1;
+
+		/**
+		 * Creates a level 0 node.
+		 * @param alive true if the cell is alive, false if not
+		 * @param id the node's ID
+		 */
+		public Node(boolean alive, int id) {
+			nw = ne = sw = se = null;
+			level = 0;
+			population = alive ? 1 : 0;
+			this.id = id;
+		}
+
+		/**
+		 * Creates a node from its four quadrants.
+		 * @param nw the north-west quadrant
+		 * @param ne the north-east quadrant
+		 * @param sw the south-west quadrant
+		 * @param se the south-east quadrant
+		 * @param id the node's ID
+		 */
+		public Node(Node nw, Node ne, Node sw, Node se, int id) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			level = nw.level + 1;
+			population = nw.population + ne.population + sw.population + se.population;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * The table of 4x4 blocks for Conway's rule, which is shared by all of
+	 * the universes that use it (see {@link #next4x4Table}).
+	 */
+	private static final byte[] CONWAY_4X4 = next4x4Table(Rule.CONWAY);
+
+	/**
+	 * The rule that the universe is played by.
+	 */
+	private final Rule rule;
+
+	/**
+	 * The next state of the center 2x2 cells of every 4x4 block (see
+	 * {@link #next4x4Table}).
+	 */
+	private final byte[] next4x4;
+
+	/**
+	 * The level 0 nodes.
+	 */
+	private final Node dead, alive;
+
+	/**
+	 * The highest level the root can have, so that the width of the universe
+	 * (2^level) and the coordinates of its cells still fit in a long.
+	 */
+	private static final int MAX_LEVEL = 62;
+
+	/**
+	 * The largest power of 2 that can be done in a single step, since the
+	 * root must be 3 levels higher than the power (see {@link #step}).
+	 */
+	private static final int MAX_STEP = MAX_LEVEL - 3;
+
+	/**
+	 * The fraction of the heap that must still be in use after a garbage
+	 * collection of the JVM for the heap to count as almost full.
+	 */
+	private static final double LOW_MEMORY = 0.8;
+
+	/**
+	 * The number of times the JVM has reported that the heap was almost full
+	 * after a garbage collection (see {@link #watchMemory}).
+	 */
+	private static final AtomicLong lowMemoryEvents = new AtomicLong();
+
+	/**
+	 * True once the JVM's memory pools are being watched.
+	 */
+	private static boolean watchingMemory = false;
+
+	/**
+	 * The canonical empty node of each level.
+	 */
+	private Node empty[] = new Node[64];
+
+	/**
+	 * The hash table of canonical nodes.
+	 */
+	private Node table[] = new Node[1 << 16];
+
+	/**
+	 * The number of nodes in the hash table.
+	 */
+	private int size = 0;
+
+	/**
+	 * The ID to give to the next node that is created.
+	 */
+	private int nextId = 0;
+
+	/**
+	 * The number of nodes the hash table can hold before the nodes that are
+	 * no longer used are evicted.
+	 */
+	private int maxNodes;
+
+	/**
+	 * The number of nodes at which the hash table is next emptied. After it is
+	 * emptied, it's allowed to grow to at least twice the number of nodes that
+	 * were kept, so that a universe with more nodes in use than the maximum
+	 * still has room to calculate a step instead of emptying the table over
+	 * and over.
+	 */
+	private int collectAt;
+
+	/**
+	 * The number of low memory reports that have already been acted on (see
+	 * {@link #lowMemoryEvents}).
+	 */
+	private long lowMemoryHandled;
+
+	/**
+	 * The nodes of the step that is being calculated which aren't part of the
+	 * universe yet, so they must be kept when the hash table is emptied in
+	 * the middle of the step (see {@link #successor}).
+	 */
+	private Node working[] = new Node[64];
+
+	/**
+	 * The number of nodes in {@link #working}.
+	 */
+	private int workingSize = 0;
+
+	/**
+	 * The root of the quadtree.
+	 */
+	private Node root;
+
+	/**
+	 * The row of the root's top-left cell.
+	 */
+	private long originRow;
+
+	/**
+	 * The column of the root's top-left cell.
+	 */
+	private long originCol;
+
+	/**
+	 * The number of generations the universe has been advanced by.
+	 */
+	private long generation = 0;
+
+	/**
+	 * Constructs a new, empty universe that is played by Conway's rule.
+	 */
+	public HashLife() {
+		this(Rule.CONWAY);
+	}
+
+	/**
+	 * Constructs a new, empty universe.
+	 * @param rule the rule that the universe is played by
+	 * @throws IllegalArgumentException if dead cells with no live neighbors
+	 * are born under the rule (see {@link Rule#hasB0}), since the empty parts
+	 * of the universe would not stay empty
+	 */
+	public HashLife(Rule rule) {
+		if (rule.hasB0()) {
+			throw new IllegalArgumentException("Rules with B0 can't be used on an unbounded universe.");
+		}
+		this.rule = rule;
+		next4x4 = rule.equals(Rule.CONWAY) ? CONWAY_4X4 : next4x4Table(rule);
+
+		dead = new Node(false, nextId++);
+		alive = new Node(true, nextId++);
+		empty[0] = dead;
+
+		//about 100 bytes per node, leave half of the heap for everything else
+		long nodes = Runtime.getRuntime().maxMemory() / 200;
+		maxNodes = (int) Math.max(1 << 16, Math.min(nodes, 1 << 28));
+		collectAt = maxNodes;
+
+		watchMemory();
+		lowMemoryHandled = lowMemoryEvents.get();
+
+		root = emptyNode(3);
+		originRow = originCol = -4;
+	}
+
+	/**
+	 * Calculates the next state of the center 2x2 cells of every 4x4 block.
+	 * @param rule the rule
+	 * @return the table, indexed by the 4x4 block's cells (bit (4 * row) +
+	 * col), holding the center cells (bit (2 * (row - 1)) + (col - 1))
+	 */
+	private static byte[] next4x4Table(Rule rule) {
+		byte table[] = new byte[1 << 16];
+		for (int mask = 0; mask < table.length; mask++) {
+			int result = 0;
+			for (int row = 1; row <= 2; row++) {
+				for (int col = 1; col <= 2; col++) {
+					int surrounding = 0;
+					for (int i = row - 1; i <= row + 1; i++) {
+						for (int j = col - 1; j <= col + 1; j++) {
+							if ((i != row || j != col) && (mask & (1 << (4 * i + j))) != 0) {
+								surrounding++;
+							}
+						}
+					}
+
+					boolean alive = (mask & (1 << (4 * row + col))) != 0;
+					if (rule.nextState(alive, surrounding)) {
+						result |= 1 << (2 * (row - 1) + (col - 1));
+					}
+				}
+			}
+			table[mask] = (byte) result;
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the rule that the universe is played by.
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Gets the number of nodes the hash table can hold before the nodes that
+	 * are no longer being used are evicted. Defaults to a number based on the
+	 * maximum heap size.
+	 * @return the maximum number of nodes
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * Sets the number of nodes the hash table can hold before the nodes that
+	 * are no longer being used are evicted. Defaults to a number based on the
+	 * maximum heap size.
+	 * @param maxNodes the maximum number of nodes
+	 */
+	public void setMaxNodes(int maxNodes) {
+		this.maxNodes = maxNodes;
+		collectAt = maxNodes;
+	}
+
+	/**
+	 * Gets the number of nodes in the hash table.
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of generations the universe has been advanced by.
+	 * @return the number of generations
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Gets the number of live cells in the universe.
+	 * @return the number of live cells
+	 */
+	public long getPopulation() {
+		return root.population;
+	}
+
+	/**
+	 * Determines whether a cell is alive or dead.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return true if the cell is alive, false if not
+	 */
+	public boolean isAlive(long row, long col) {
+		long width = 1L << root.level;
+		long r = row - originRow;
+		long c = col - originCol;
+		if (r < 0 || c < 0 || r >= width || c >= width) {
+			return false;
+		}
+
+		Node node = root;
+		while (node.level > 0) {
+			if (node.population == 0) {
+				return false;
+			}
+			long half = 1L << (node.level - 1);
+			if (r < half) {
+				node = (c < half) ? node.nw : node.ne;
+			} else {
+				node = (c < half) ? node.sw : node.se;
+				r -= half;
+			}
+			if (c >= half) {
+				c -= half;
+			}
+		}
+		return node == alive;
+	}
+
+	/**
+	 * Marks a cell as being alive or dead.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @param alive true to mark the cell as alive, false to mark it as dead
+	 * @throws IllegalStateException if the cell is too far away from the
+	 * rest of the universe for its coordinates to fit in a long
+	 */
+	public void setAlive(long row, long col, boolean alive) {
+		while (row < originRow || col < originCol || row - originRow >= (1L << root.level) || col - originCol >= (1L << root.level)) {
+			expand();
+		}
+		root = setAlive(root, row - originRow, col - originCol, alive);
+	}
+
+	/**
+	 * Replaces a cell in a node.
+	 * @param node the node
+	 * @param row the cell's row, relative to the node
+	 * @param col the cell's column, relative to the node
+	 * @param alive true to mark the cell as alive, false to mark it as dead
+	 * @return the new node
+	 */
+	private Node setAlive(Node node, long row, long col, boolean alive) {
+		if (node.level == 0) {
+			return alive ? this.alive : dead;
+		}
+
+		long half = 1L << (node.level - 1);
+		Node nw = node.nw, ne = node.ne, sw = node.sw, se = node.se;
+		if (row < half) {
+			if (col < half) {
+				nw = setAlive(nw, row, col, alive);
+			} else {
+				ne = setAlive(ne, row, col - half, alive);
+			}
+		} else {
+			if (col < half) {
+				sw = setAlive(sw, row - half, col, alive);
+			} else {
+				se = setAlive(se, row - half, col - half, alive);
+			}
+		}
+		return join(nw, ne, sw, se);
+	}
+
+	/**
+	 * Replaces the contents of the universe with the cells of a grid. The
+	 * grid's top-left cell is placed at row 0, column 0.
+	 * @param grid the grid
+	 */
+	public void load(Grid grid) {
+		int level = 3;
+		while ((1L << level) < Math.max(grid.getRows(), grid.getCols())) {
+			level++;
+		}
+		root = build(grid, level, 0, 0);
+		originRow = originCol = 0;
+	}
+
+	/**
+	 * Builds a node from the cells of a grid.
+	 * @param grid the grid
+	 * @param level the level of the node
+	 * @param row the row of the node's top-left cell
+	 * @param col the column of the node's top-left cell
+	 * @return the node
+	 */
+	private Node build(Grid grid, int level, long row, long col) {
+		if (row >= grid.getRows() || col >= grid.getCols()) {
+			return emptyNode(level);
+		}
+		if (level == 0) {
+			return grid.isAlive((int) row, (int) col) ? alive : dead;
+		}
+
+		long half = 1L << (level - 1);
+		Node nw = build(grid, level - 1, row, col);
+		Node ne = build(grid, level - 1, row, col + half);
+		Node sw = build(grid, level - 1, row + half, col);
+		Node se = build(grid, level - 1, row + half, col + half);
+		return join(nw, ne, sw, se);
+	}
+
+	/**
+	 * Copies the cells of the universe into a grid. The grid's top-left cell
+	 * is taken from row 0, column 0. Any cells outside of the grid are
+	 * ignored.
+	 * @param grid the grid
+	 */
+	public void copyTo(Grid grid) {
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				grid.setAlive(i, j, false);
+			}
+		}
+		copyTo(root, grid, originRow, originCol);
+	}
+
+	/**
+	 * Copies the live cells of a node into a grid.
+	 * @param node the node
+	 * @param grid the grid
+	 * @param row the row of the node's top-left cell
+	 * @param col the column of the node's top-left cell
+	 */
+	private void copyTo(Node node, Grid grid, long row, long col) {
+		long width = 1L << node.level;
+		if (node.population == 0 || row >= grid.getRows() || col >= grid.getCols() || row + width <= 0 || col + width <= 0) {
+			return;
+		}
+		if (node.level == 0) {
+			grid.setAlive((int) row, (int) col, true);
+			return;
+		}
+
+		long half = width / 2;
+		copyTo(node.nw, grid, row, col);
+		copyTo(node.ne, grid, row, col + half);
+		copyTo(node.sw, grid, row + half, col);
+		copyTo(node.se, grid, row + half, col + half);
+	}
+
+	/**
+	 * Advances the universe by the given number of generations. The number is
+	 * broken up into powers of 2, and each power of 2 is done in a single
+	 * step. Powers above 2^59 are done as several steps of 2^59, which keeps
+	 * the universe small enough for its coordinates to fit in a long.
+	 * @param generations the number of generations to advance by
+	 * @throws IllegalStateException if the pattern grows too large for its
+	 * coordinates to fit in a long
+	 */
+	public void advance(long generations) {
+		if (generations < 0) {
+			throw new IllegalArgumentException("Cannot go back in time.");
+		}
+
+		for (int j = 0; j < MAX_STEP && generations >> j != 0; j++) {
+			if ((generations & (1L << j)) != 0) {
+				step(j);
+			}
+		}
+		for (long steps = generations >>> MAX_STEP; steps > 0; steps--) {
+			step(MAX_STEP);
+		}
+	}
+
+	/**
+	 * Advances the universe by 2^j generations.
+	 * @param j the power of 2
+	 */
+	private void step(int j) {
+		checkMemory();
+
+		//make sure that nothing can grow out of the part of the root that is returned
+		while (root.level < j + 3 || !isCentered()) {
+			expand();
+		}
+
+		long quarter = 1L << (root.level - 2);
+		root = successor(root, j);
+		originRow += quarter;
+		originCol += quarter;
+		generation += 1L << j;
+	}
+
+	/**
+	 * Determines whether all of the live cells are inside the center
+	 * 1/4-width square of the root.
+	 * @return true if they are, false if not
+	 */
+	private boolean isCentered() {
+		long population = root.nw.se.se.population + root.ne.sw.sw.population + root.sw.ne.ne.population + root.se.nw.nw.population;
+		return population == root.population;
+	}
+
+	/**
+	 * Doubles the width of the root, keeping its contents in the center.
+	 * @throws IllegalStateException if the root is already as large as it
+	 * can get
+	 */
+	private void expand() {
+		if (root.level >= MAX_LEVEL) {
+			throw new IllegalStateException("The universe can't grow any larger than 2^" + MAX_LEVEL + " cells across.");
+		}
+
+		Node e = emptyNode(root.level - 1);
+		Node nw = join(e, e, e, root.nw);
+		Node ne = join(e, e, root.ne, e);
+		Node sw = join(e, root.sw, e, e);
+		Node se = join(root.se, e, e, e);
+
+		long half = 1L << (root.level - 1);
+		originRow -= half;
+		originCol -= half;
+		root = join(nw, ne, sw, se);
+	}
+
+	/**
+	 * Calculates the center of a node, advanced by 2^j generations.
+	 * @param node the node (level 2 or higher)
+	 * @param j the power of 2 (if larger than the node's level minus 2, the
+	 * node's level minus 2 is used)
+	 * @return the center of the node, one level down
+	 */
+	private Node successor(Node node, int j) {
+		if (node.population == 0) {
+			return node.nw;
+		}
+
+		int step = Math.min(j, node.level - 2);
+		if (node.resultStep == step) {
+			return node.result;
+		}
+
+		//the node and the results below must survive the hash table being emptied by the calls below
+		int mark = workingSize;
+		work(node);
+		checkMemory();
+
+		Node result;
+		if (node.level == 2) {
+			result = next4x4(node);
+		} else {
+			Node nw = node.nw, ne = node.ne, sw = node.sw, se = node.se;
+			Node c1 = work(successor(nw, step));
+			Node c2 = work(successor(join(nw.ne, ne.nw, nw.se, ne.sw), step));
+			Node c3 = work(successor(ne, step));
+			Node c4 = work(successor(join(nw.sw, nw.se, sw.nw, sw.ne), step));
+			Node c5 = work(successor(join(nw.se, ne.sw, sw.ne, se.nw), step));
+			Node c6 = work(successor(join(ne.sw, ne.se, se.nw, se.ne), step));
+			Node c7 = work(successor(sw, step));
+			Node c8 = work(successor(join(sw.ne, se.nw, sw.se, se.sw), step));
+			Node c9 = work(successor(se, step));
+
+			if (step < node.level - 2) {
+				//the sub-nodes are already advanced far enough, just take their centers
+				result = join( //
+						join(c1.se, c2.sw, c4.ne, c5.nw), //
+						join(c2.se, c3.sw, c5.ne, c6.nw), //
+						join(c4.se, c5.sw, c7.ne, c8.nw), //
+						join(c5.se, c6.sw, c8.ne, c9.nw));
+			} else {
+				//advance the sub-nodes a second time
+				Node r1 = work(successor(join(c1, c2, c4, c5), step));
+				Node r2 = work(successor(join(c2, c3, c5, c6), step));
+				Node r3 = work(successor(join(c4, c5, c7, c8), step));
+				Node r4 = successor(join(c5, c6, c8, c9), step);
+				result = join(r1, r2, r3, r4);
+			}
+		}
+
+		Arrays.fill(working, mark, workingSize, null);
+		workingSize = mark;
+		node.result = result;
+		node.resultStep = step;
+		return result;
+	}
+
+	/**
+	 * Marks a node as being used by the step that is being calculated (see
+	 * {@link #working}).
+	 * @param node the node
+	 * @return the node
+	 */
+	private Node work(Node node) {
+		if (workingSize == working.length) {
+			working = Arrays.copyOf(working, working.length * 2);
+		}
+		working[workingSize++] = node;
+		return node;
+	}
+
+	/**
+	 * Empties the hash table if it holds too many nodes or if the JVM has
+	 * reported that the heap is almost full since it was last emptied.
+	 */
+	private void checkMemory() {
+		if (size > collectAt || lowMemoryEvents.get() != lowMemoryHandled) {
+			collectGarbage();
+		}
+	}
+
+	/**
+	 * Calculates the next state of the center 2x2 cells of a 4x4 node.
+	 * @param node the level 2 node
+	 * @return the center of the node, advanced one generation
+	 */
+	private Node next4x4(Node node) {
+		int mask = 0;
+		Node quadrants[] = { node.nw, node.ne, node.sw, node.se };
+		for (int q = 0; q < 4; q++) {
+			Node quadrant = quadrants[q];
+			int row = (q / 2) * 2;
+			int col = (q % 2) * 2;
+			mask |= (int) quadrant.nw.population << (4 * row + col);
+			mask |= (int) quadrant.ne.population << (4 * row + col + 1);
+			mask |= (int) quadrant.sw.population << (4 * (row + 1) + col);
+			mask |= (int) quadrant.se.population << (4 * (row + 1) + col + 1);
+		}
+
+		int result = next4x4[mask];
+		return join(cell(result, 0), cell(result, 1), cell(result, 2), cell(result, 3));
+	}
+
+	/**
+	 * Gets the level 0 node for a bit.
+	 * @param bits the bits
+	 * @param bit the bit to check
+	 * @return the level 0 node
+	 */
+	private Node cell(int bits, int bit) {
+		return ((bits & (1 << bit)) != 0) ? alive : dead;
+	}
+
+	/**
+	 * Gets the canonical empty node of a level.
+	 * @param level the level
+	 * @return the empty node
+	 */
+	private Node emptyNode(int level) {
+		Node node = empty[level];
+		if (node == null) {
+			Node e = emptyNode(level - 1);
+			node = join(e, e, e, e);
+			empty[level] = node;
+		}
+		return node;
+	}
+
+	/**
+	 * Gets the canonical node that is made up of the given quadrants.
+	 * @param nw the north-west quadrant
+	 * @param ne the north-east quadrant
+	 * @param sw the south-west quadrant
+	 * @param se the south-east quadrant
+	 * @return the canonical node
+	 */
+	private Node join(Node nw, Node ne, Node sw, Node se) {
+		int hash = hash(nw, ne, sw, se);
+		int index = hash & (table.length - 1);
+		for (Node node = table[index]; node != null; node = node.chain) {
+			if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) {
+				return node;
+			}
+		}
+
+		Node node = new Node(nw, ne, sw, se, nextId++);
+		insert(node, index);
+		return node;
+	}
+
+	/**
+	 * Adds a node to the hash table.
+	 * @param node the node
+	 * @param index the node's bucket
+	 */
+	private void insert(Node node, int index) {
+		node.chain = table[index];
+		table[index] = node;
+		size++;
+
+		if (size > table.length * 3 / 4 && table.length < (1 << 30)) {
+			rehash(table.length * 2);
+		}
+	}
+
+	/**
+	 * Moves all the nodes to a hash table of a different size.
+	 * @param length the new number of buckets
+	 */
+	private void rehash(int length) {
+		Node old[] = table;
+		table = new Node[length];
+		for (Node head : old) {
+			Node node = head;
+			while (node != null) {
+				Node chain = node.chain;
+				int index = hash(node.nw, node.ne, node.sw, node.se) & (length - 1);
+				node.chain = table[index];
+				table[index] = node;
+				node = chain;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the hash of a node.
+	 * @param nw the north-west quadrant
+	 * @param ne the north-east quadrant
+	 * @param sw the south-west quadrant
+	 * @param se the south-east quadrant
+	 * @return the hash
+	 */
+	private static int hash(Node nw, Node ne, Node sw, Node se) {
+		int h = nw.id;
+		h = h * 0x9E3779B1 + ne.id;
+		h = h * 0x9E3779B1 + sw.id;
+		h = h * 0x9E3779B1 + se.id;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Asks the JVM to report when the heap is still almost full after one of
+	 * its garbage collections (see {@link #lowMemoryEvents}). The heap in use
+	 * is only measured after a garbage collection of the JVM, so the nodes
+	 * that were just evicted from a hash table don't count as being used.
+	 */
+	private static synchronized void watchMemory() {
+		if (watchingMemory) {
+			return;
+		}
+		watchingMemory = true;
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		if (!(memory instanceof NotificationEmitter)) {
+			return;
+		}
+
+		//only the pools that hold long-lived objects (the young generation pools don't support usage thresholds)
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			long max = pool.getUsage().getMax();
+			if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported() && max > 0 && pool.getCollectionUsageThreshold() == 0) {
+				pool.setCollectionUsageThreshold((long) (max * LOW_MEMORY));
+			}
+		}
+
+		((NotificationEmitter) memory).addNotificationListener(new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+					lowMemoryEvents.incrementAndGet();
+				}
+			}
+		}, null, null);
+	}
+
+	/**
+	 * Evicts all nodes from the hash table that aren't part of the current
+	 * universe (or of the step that is being calculated), and forgets all
+	 * memoized results (which would otherwise keep the evicted nodes in
+	 * memory).
+	 */
+	public void collectGarbage() {
+		lowMemoryHandled = lowMemoryEvents.get();
+
+		//let go of the old table first, so the JVM can reclaim it to make room for the new one
+		int length = table.length;
+		table = null;
+		table = new Node[length];
+		size = 0;
+		empty = new Node[empty.length];
+		empty[0] = dead;
+		keep(root);
+		for (int i = 0; i < workingSize; i++) {
+			keep(working[i]);
+		}
+		collectAt = (int) Math.min(Integer.MAX_VALUE, Math.max(maxNodes, 2L * size));
+	}
+
+	/**
+	 * Adds a node and all of its descendants back into the hash table.
+	 * @param node the node
+	 */
+	private void keep(Node node) {
+		if (node.level == 0) {
+			return;
+		}
+
+		int index = hash(node.nw, node.ne, node.sw, node.se) & (table.length - 1);
+		for (Node n = table[index]; n != null; n = n.chain) {
+			if (n == node) {
+				return;
+			}
+		}
+
+		keep(node.nw);
+		keep(node.ne);
+		keep(node.sw);
+		keep(node.se);
+		node.result = null;
+		node.resultStep = -1;
+		insert(node, hash(node.nw, node.ne, node.sw, node.se) & (table.length - 1));
+		if (node.population == 0 && empty[node.level] == null) {
+			empty[node.level] = node;
+		}
+	}
+}
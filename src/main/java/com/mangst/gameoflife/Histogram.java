@@ -0,0 +1,153 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often values of different sizes occur, so that percentiles can
+ * be calculated without keeping every value. Each power of two is split into
+ * 8 buckets, so a percentile is within 12.5% of the actual value, and the
+ * histogram takes the same (small) amount of memory no matter how many values
+ * are recorded.
+ * @author mangst
+ */
+class Histogram {
+	/**
+	 * The number of bits that are used to choose the bucket within a power of
+	 * two.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The number of buckets within each power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of values in each bucket.
+	 */
+	private final long counts[] = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+
+	/**
+	 * The number of values.
+	 */
+	private long count;
+
+	/**
+	 * The sum of the values.
+	 */
+	private long sum;
+
+	/**
+	 * The largest value.
+	 */
+	private long max;
+
+	/**
+	 * Records a value.
+	 * @param value the value (negative values are recorded as 0)
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts[bucket(value)]++;
+		count++;
+		sum += value;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Gets the number of values that were recorded.
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the sum of the values.
+	 * @return the sum
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Gets the mean of the values.
+	 * @return the mean or 0 if no values were recorded
+	 */
+	public double getMean() {
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Gets the largest value.
+	 * @return the largest value or 0 if no values were recorded
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets a percentile of the values.
+	 * @param percentile the percentile (0.0 to 100.0)
+	 * @return the value (the middle of the bucket it falls in) or 0 if no
+	 * values were recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				long low = lowestValue(i);
+				long high = lowestValue(i + 1) - 1;
+				return Math.min(max, low + (high - low) / 2);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Removes all of the values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	/**
+	 * Gets the bucket that a value goes in.
+	 * @param value the value
+	 * @return the bucket
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		//the highest bit chooses the power of two, and the next bits choose the bucket within it
+		int highestBit = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Gets the lowest value that goes in a bucket.
+	 * @param bucket the bucket
+	 * @return the lowest value
+	 */
+	private static long lowestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = bucket % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket) << (highestBit - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,420 @@
+package com.mangst.gameoflife;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A bit-packed grid whose cells are stored outside of the Java heap, either
+ * in direct buffers or in memory-mapped files. The garbage collector never has
+ * to scan the cells, and a memory-mapped grid can be larger than the computer's
+ * memory, since the operating system pages it in and out of its file cache as
+ * needed.
+ * <p>
+ * The cells are packed the same way as in {@link BitGrid} (64 cells per long,
+ * with a dead row above and below the grid). A buffer can only hold 2GB, so
+ * the rows are spread out over as many buffers (segments) as needed. The next
+ * state is calculated by copying the rows into small scratch arrays and
+ * running a {@link RowKernel} on them.
+ * @author mangst
+ */
+public class OffHeapGrid extends Grid {
+	/**
+	 * The maximum size of each segment in bytes.
+	 */
+	private static final int SEGMENT_BYTES = 1 << 30;
+
+	/**
+	 * The number of longs in each row.
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * The mask of the bits in the last word of each row that are inside the
+	 * grid.
+	 */
+	private final long lastWordMask;
+
+	/**
+	 * The number of rows in each segment.
+	 */
+	private final int rowsPerSegment;
+
+	/**
+	 * The segments, each holding rowsPerSegment rows (including the dead rows
+	 * above and below the grid).
+	 */
+	private final LongBuffer segments[];
+
+	/**
+	 * The directory that holds the memory-mapped files (null if the cells are
+	 * stored in direct buffers).
+	 */
+	private final File directory;
+
+	/**
+	 * The maximum size of each segment in bytes.
+	 */
+	private final int segmentBytes;
+
+	/**
+	 * Calculates the next state of each row.
+	 */
+	private RowKernel kernel = RowKernel.SCALAR;
+
+	/**
+	 * Constructs a new grid that stores its cells in direct buffers. The
+	 * amount of direct memory the JVM can use is limited by the
+	 * "-XX:MaxDirectMemorySize" JVM option.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 */
+	public OffHeapGrid(int rows, int cols) {
+		this(rows, cols, null, SEGMENT_BYTES);
+	}
+
+	/**
+	 * Constructs a new grid that stores its cells in a memory-mapped file. The
+	 * file is created in the given directory and deleted when the JVM exits.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param directory the directory to create the file in
+	 * @throws UncheckedIOException if the file can't be created or mapped
+	 */
+	public OffHeapGrid(int rows, int cols, File directory) {
+		this(rows, cols, directory, SEGMENT_BYTES);
+	}
+
+	/**
+	 * Constructs a new grid.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param directory the directory to create the memory-mapped file in, or
+	 * null to use direct buffers
+	 * @param segmentBytes the maximum size of each segment in bytes (each
+	 * segment holds at least one row)
+	 * @throws UncheckedIOException if the file can't be created or mapped
+	 */
+	OffHeapGrid(int rows, int cols, File directory, int segmentBytes) {
+		super(rows, cols, false);
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		wordsPerRow = BitGrid.wordsPerRow(cols);
+		lastWordMask = BitGrid.lastWordMask(cols);
+
+		long rowBytes = wordsPerRow * 8L;
+		rowsPerSegment = (int) Math.max(1, segmentBytes / rowBytes);
+		int totalRows = rows + 2;
+		segments = new LongBuffer[(totalRows + rowsPerSegment - 1) / rowsPerSegment];
+
+		if (directory == null) {
+			for (int i = 0; i < segments.length; i++) {
+				int segmentRows = Math.min(rowsPerSegment, totalRows - i * rowsPerSegment);
+				segments[i] = ByteBuffer.allocateDirect((int) (segmentRows * rowBytes)).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+			return;
+		}
+
+		RandomAccessFile file = null;
+		try {
+			File f = File.createTempFile("gameoflife", ".grid", directory);
+			f.deleteOnExit();
+			file = new RandomAccessFile(f, "rw");
+			file.setLength(totalRows * rowBytes); //the new bytes are all 0 (dead)
+
+			//the mappings stay valid after the file is closed
+			FileChannel channel = file.getChannel();
+			for (int i = 0; i < segments.length; i++) {
+				int segmentRows = Math.min(rowsPerSegment, totalRows - i * rowsPerSegment);
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * rowsPerSegment * rowBytes, segmentRows * rowBytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	@Override
+	public Grid newGrid(int rows, int cols) {
+		OffHeapGrid grid = new OffHeapGrid(rows, cols, directory, segmentBytes);
+		grid.kernel = kernel;
+		grid.setRule(getRule());
+		grid.setTopology(getTopology());
+		return grid;
+	}
+
+	/**
+	 * Gets whether the cells are stored in a memory-mapped file.
+	 * @return true if the cells are stored in a memory-mapped file, false if
+	 * they are stored in direct buffers
+	 */
+	public boolean isMapped() {
+		return directory != null;
+	}
+
+	/**
+	 * Gets the number of segments the cells are spread out over.
+	 * @return the number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Gets the kernel that calculates the next state of each row.
+	 * @return the kernel
+	 */
+	public RowKernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Sets the kernel that calculates the next state of each row. Grids
+	 * created with {@link #newGrid} use the same kernel.
+	 * @param kernel the kernel (defaults to {@link RowKernel#SCALAR})
+	 */
+	public void setKernel(RowKernel kernel) {
+		if (kernel == null) {
+			throw new IllegalArgumentException("Kernel cannot be null.");
+		}
+		this.kernel = kernel;
+	}
+
+	@Override
+	public boolean isAlive(int row, int col) {
+		return (getWord(row + 1, col >>> 6) & (1L << col)) != 0;
+	}
+
+	@Override
+	public void setAlive(int row, int col, boolean alive) {
+		int r = row + 1;
+		int word = col >>> 6;
+		long value = getWord(r, word);
+		if (alive) {
+			value |= 1L << col;
+		} else {
+			value &= ~(1L << col);
+		}
+		setWord(r, word, value);
+	}
+
+	@Override
+	public int countAlive(int rowStart, int rowEnd, int colStart, int colEnd) {
+		if (colStart >= colEnd) {
+			return 0;
+		}
+
+		int wordStart = colStart >>> 6;
+		int wordEnd = (colEnd - 1) >>> 6;
+		long first = -1L << colStart;
+		long last = -1L >>> (63 - ((colEnd - 1) & 63));
+		int count = 0;
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int w = wordStart; w <= wordEnd; w++) {
+				long word = getWord(i + 1, w);
+				if (w == wordStart) {
+					word &= first;
+				}
+				if (w == wordEnd) {
+					word &= last;
+				}
+				count += Long.bitCount(word);
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void setRow(int row, long cells[]) {
+		for (int w = 0; w < wordsPerRow - 1; w++) {
+			setWord(row + 1, w, cells[w]);
+		}
+		setWord(row + 1, wordsPerRow - 1, cells[wordsPerRow - 1] & lastWordMask);
+	}
+
+	@Override
+	public int getAliveSurrounding(int row, int col) {
+		if (getTopology() == Topology.TORUS) {
+			return getAliveSurroundingWrapped(row, col);
+		}
+
+		int count = 0;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				if ((i != row || j != col) && j >= 0 && j < getCols() && isAlive(i, j)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public boolean computeNext(Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		if (!(next instanceof OffHeapGrid) || colStart >= colEnd || rowStart >= rowEnd) {
+			return super.computeNext(next, rowStart, rowEnd, colStart, colEnd);
+		}
+
+		OffHeapGrid n = (OffHeapGrid) next;
+		int wordStart = colStart >>> 6;
+		int wordEnd = (colEnd + 63) >>> 6;
+
+		//the scratch rows also hold the words on either side of the region
+		boolean torus = (getTopology() == Topology.TORUS);
+		int first = Math.max(0, wordStart - 1);
+		int last = Math.min(wordsPerRow, wordEnd + 1);
+		if (torus && (colStart == 0 || colEnd == getCols())) {
+			//the edge words need the words at the opposite edge
+			first = 0;
+			last = wordsPerRow;
+		}
+		int len = last - first;
+		long scratch[] = new long[len * 4];
+		int out = len * 3;
+
+		//three rows rotate through the first three slots
+		readRow(sourceRow(rowStart, torus), first, last, scratch, (rowStart % 3) * len);
+		readRow(sourceRow(rowStart + 1, torus), first, last, scratch, ((rowStart + 1) % 3) * len);
+
+		//on a torus, the edge words are calculated separately (see BitGrid.wrapRow)
+		int innerStart = torus ? BitGrid.innerStart(colStart) : colStart;
+		int innerEnd = torus ? BitGrid.innerEnd(colStart, colEnd, getCols()) : colEnd;
+
+		Rule rule = getRule();
+		boolean changed = false;
+		for (int i = rowStart; i < rowEnd; i++) {
+			//"i" is the row above, since the rows are offset by the dead row
+			readRow(sourceRow(i + 2, torus), first, last, scratch, ((i + 2) % 3) * len);
+
+			//the edge words may only be partly overwritten
+			scratch[out + wordStart - first] = n.getWord(i + 1, wordStart);
+			scratch[out + wordEnd - 1 - first] = n.getWord(i + 1, wordEnd - 1);
+
+			int above = (i % 3) * len - first;
+			int row = ((i + 1) % 3) * len - first;
+			int below = ((i + 2) % 3) * len - first;
+			if (innerStart < innerEnd) {
+				changed |= kernel.nextRow(scratch, above, row, below, scratch, out - first, wordsPerRow, lastWordMask, innerStart, innerEnd, rule);
+			}
+			if (torus) {
+				changed |= BitGrid.wrapRow(scratch, above, row, below, scratch, out - first, wordsPerRow, getCols(), colStart, colEnd, rule);
+			}
+			n.writeRow(i + 1, wordStart, wordEnd, scratch, out + wordStart - first);
+		}
+		return changed;
+	}
+
+	@Override
+	public int getColumnAlignment() {
+		return 64;
+	}
+
+	/**
+	 * Copies part of a row into an array.
+	 * @param row the row
+	 * @param wordStart the first word to copy (inclusive)
+	 * @param wordEnd the last word to copy (exclusive)
+	 * @param dest the array to copy to
+	 * @param offset the index to copy to
+	 */
+	void getWords(int row, int wordStart, int wordEnd, long dest[], int offset) {
+		readRow(row + 1, wordStart, wordEnd, dest, offset);
+	}
+
+	/**
+	 * Copies an array into part of a row. The unused bits at the end of the
+	 * row must be 0.
+	 * @param row the row
+	 * @param wordStart the first word to copy to (inclusive)
+	 * @param wordEnd the last word to copy to (exclusive)
+	 * @param src the array to copy from
+	 * @param offset the index to copy from
+	 */
+	void setWords(int row, int wordStart, int wordEnd, long src[], int offset) {
+		writeRow(row + 1, wordStart, wordEnd, src, offset);
+	}
+
+	/**
+	 * Gets the row that is read in place of a row. On a torus, the rows at
+	 * the opposite edge are read in place of the dead rows.
+	 * @param r the row (including the dead row above the grid, so 0 is the
+	 * dead row)
+	 * @param torus true if the grid is a torus, false if not
+	 * @return the row to read
+	 */
+	private int sourceRow(int r, boolean torus) {
+		if (torus) {
+			if (r == 0) return getRows();
+			if (r == getRows() + 1) return 1;
+		}
+		return r;
+	}
+
+	/**
+	 * Gets a word.
+	 * @param r the row (including the dead row above the grid, so 0 is the
+	 * dead row)
+	 * @param word the word's index within the row
+	 * @return the word
+	 */
+	private long getWord(int r, int word) {
+		return segments[r / rowsPerSegment].get((r % rowsPerSegment) * wordsPerRow + word);
+	}
+
+	/**
+	 * Sets a word.
+	 * @param r the row (including the dead row above the grid, so 0 is the
+	 * dead row)
+	 * @param word the word's index within the row
+	 * @param value the word
+	 */
+	private void setWord(int r, int word, long value) {
+		segments[r / rowsPerSegment].put((r % rowsPerSegment) * wordsPerRow + word, value);
+	}
+
+	/**
+	 * Copies part of a row into an array.
+	 * @param r the row (including the dead row above the grid, so 0 is the
+	 * dead row)
+	 * @param wordStart the first word to copy (inclusive)
+	 * @param wordEnd the last word to copy (exclusive)
+	 * @param dest the array to copy to
+	 * @param offset the index to copy to
+	 */
+	private void readRow(int r, int wordStart, int wordEnd, long dest[], int offset) {
+		LongBuffer segment = segments[r / rowsPerSegment];
+		int base = (r % rowsPerSegment) * wordsPerRow;
+		for (int w = wordStart; w < wordEnd; w++) {
+			dest[offset++] = segment.get(base + w);
+		}
+	}
+
+	/**
+	 * Copies an array into part of a row.
+	 * @param r the row (including the dead row above the grid, so 0 is the
+	 * dead row)
+	 * @param wordStart the first word to copy to (inclusive)
+	 * @param wordEnd the last word to copy to (exclusive)
+	 * @param src the array to copy from
+	 * @param offset the index to copy from
+	 */
+	private void writeRow(int r, int wordStart, int wordEnd, long src[], int offset) {
+		LongBuffer segment = segments[r / rowsPerSegment];
+		int base = (r % rowsPerSegment) * wordsPerRow;
+		for (int w = wordStart; w < wordEnd; w++) {
+			segment.put(base + w, src[offset++]);
+		}
+	}
+}
@@ -0,0 +1,580 @@
+package com.mangst.gameoflife;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads pattern files into a {@link Grid}. The format of the file is detected
+ * automatically from its first few lines. The following formats are
+ * supported:
+ * <ul>
+ * <li><b>RLE</b> - run-length encoded, the format most patterns are shared
+ * in. Starts with a header line such as "x = 3, y = 3, rule = B3/S23".</li>
+ * <li><b>Plaintext</b> - one character per cell ('O' is alive, '.' is dead).
+ * Starts with a "!" comment line.</li>
+ * <li><b>Life 1.06</b> - the coordinates of each live cell ("x y"), one cell
+ * per line. Starts with "#Life 1.06".</li>
+ * <li><b>Text</b> - one character per cell ('x' is alive, anything else is
+ * dead). Used if the file is in none of the other formats.</li>
+ * </ul>
+ * The file is parsed as it is read through a fixed-size buffer, so even
+ * patterns that are hundreds of megabytes in size can be loaded without
+ * holding the file in memory. Only the live cells are written to the grid, so
+ * the grid should be empty. Cells that fall outside of the grid are ignored.
+ * @author mangst
+ */
+public class PatternReader implements Closeable {
+	/**
+	 * The pattern file formats.
+	 */
+	public enum Format {
+		/**
+		 * Run-length encoded.
+		 */
+		RLE,
+
+		/**
+		 * One character per cell ('O' is alive, '.' is dead).
+		 */
+		PLAINTEXT,
+
+		/**
+		 * The coordinates of each live cell.
+		 */
+		LIFE_106,
+
+		/**
+		 * One character per cell ('x' is alive, anything else is dead).
+		 */
+		TEXT
+	}
+
+	/**
+	 * The default size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Matches the header line of an RLE file.
+	 */
+	private static final Pattern RLE_HEADER = Pattern.compile("x\\s*=\\s*(\\d+)\\s*,\\s*y\\s*=\\s*(\\d+)(\\s*,\\s*rule\\s*=\\s*(\\S+))?.*");
+
+	/**
+	 * Matches the start of the header line of an RLE file.
+	 */
+	private static final Pattern RLE_HEADER_START = Pattern.compile("\\s*x\\s*=.*");
+
+	/**
+	 * The stream to read from.
+	 */
+	private final InputStream in;
+
+	/**
+	 * The read buffer.
+	 */
+	private final byte buffer[];
+
+	/**
+	 * The position of the next byte in the buffer.
+	 */
+	private int pos = 0;
+
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int limit = 0;
+
+	/**
+	 * Set when the end of the stream has been reached.
+	 */
+	private boolean eof = false;
+
+	/**
+	 * The line that is currently being read (for error messages).
+	 */
+	private int line = 1;
+
+	/**
+	 * The format of the pattern.
+	 */
+	private final Format format;
+
+	/**
+	 * The width of the pattern (from the RLE header) or -1 if not known.
+	 */
+	private int width = -1;
+
+	/**
+	 * The height of the pattern (from the RLE header) or -1 if not known.
+	 */
+	private int height = -1;
+
+	/**
+	 * The rule the pattern is meant to run under (from the RLE header) or
+	 * null if not known.
+	 */
+	private String rule;
+
+	/**
+	 * Creates a reader for a pattern file.
+	 * @param file the file
+	 * @throws IOException if there's a problem reading the file
+	 */
+	public PatternReader(File file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	/**
+	 * Creates a reader for a pattern.
+	 * @param in the stream to read the pattern from
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	public PatternReader(InputStream in) throws IOException {
+		this(in, BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a reader for a pattern.
+	 * @param in the stream to read the pattern from
+	 * @param bufferSize the size of the read buffer
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	PatternReader(InputStream in, int bufferSize) throws IOException {
+		this.in = in;
+		buffer = new byte[bufferSize];
+		format = detectFormat();
+	}
+
+	/**
+	 * Gets the format of the pattern.
+	 * @return the format
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Gets the width of the pattern. Only RLE files store this.
+	 * @return the width or -1 if not known
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the height of the pattern. Only RLE files store this.
+	 * @return the height or -1 if not known
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the rule the pattern is meant to run under. Only RLE files store
+	 * this.
+	 * @return the rule (e.g. "B3/S23") or null if not known
+	 */
+	public String getRule() {
+		return rule;
+	}
+
+	/**
+	 * Reads the pattern into a grid. This can only be called once.
+	 * @param grid the grid
+	 * @param rowOffset the row to place the top of the pattern at (for Life
+	 * 1.06 files, the row to place the origin at)
+	 * @param colOffset the column to place the left of the pattern at (for
+	 * Life 1.06 files, the column to place the origin at)
+	 * @return the number of live cells that were placed in the grid
+	 * @throws IOException if there's a problem reading the pattern or if it
+	 * is malformed
+	 */
+	public long read(Grid grid, int rowOffset, int colOffset) throws IOException {
+		switch (format) {
+		case RLE:
+			return readRle(grid, rowOffset, colOffset);
+		case LIFE_106:
+			return readLife106(grid, rowOffset, colOffset);
+		case PLAINTEXT:
+			return readCharacters(grid, rowOffset, colOffset, 'O', '*');
+		default:
+			return readCharacters(grid, rowOffset, colOffset, 'x', 'x');
+		}
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * @throws IOException if there's a problem closing the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Determines the format of the pattern by looking at the lines at the
+	 * beginning of the file. Header and comment lines are consumed, the first
+	 * line of cells is not.
+	 * @return the format
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private Format detectFormat() throws IOException {
+		boolean comments = false;
+		String l;
+		while ((l = peekLine()) != null) {
+			if (l.startsWith("#Life 1.06")) {
+				skipLine();
+				return Format.LIFE_106;
+			}
+			if (l.startsWith("!")) {
+				return Format.PLAINTEXT;
+			}
+			if (l.startsWith("#")) {
+				//RLE comment
+				skipLine();
+				comments = true;
+				continue;
+			}
+
+			if (RLE_HEADER_START.matcher(l).matches()) {
+				//the peeked line may have been cut off
+				String header = readLine().trim();
+				Matcher m = RLE_HEADER.matcher(header);
+				if (!m.matches()) {
+					throw new IOException("Invalid RLE header on line " + (line - 1) + ": " + header);
+				}
+				width = Integer.parseInt(m.group(1));
+				height = Integer.parseInt(m.group(2));
+				rule = m.group(4);
+				return Format.RLE;
+			}
+			break;
+		}
+
+		//RLE files are allowed to leave out the header
+		return comments ? Format.RLE : Format.TEXT;
+	}
+
+	/**
+	 * Reads an RLE pattern.
+	 * @param grid the grid
+	 * @param rowOffset the row to place the top of the pattern at
+	 * @param colOffset the column to place the left of the pattern at
+	 * @return the number of live cells that were placed in the grid
+	 * @throws IOException if there's a problem reading the pattern or if it
+	 * is malformed
+	 */
+	private long readRle(Grid grid, int rowOffset, int colOffset) throws IOException {
+		long alive = 0;
+		long row = rowOffset, col = colOffset;
+		long count = 0;
+		int c;
+		while ((c = read()) >= 0) {
+			if (c >= '0' && c <= '9') {
+				count = count * 10 + (c - '0');
+				if (count > Integer.MAX_VALUE) {
+					throw new IOException("Run count too large on line " + line + ".");
+				}
+				continue;
+			}
+
+			long run = (count == 0) ? 1 : count;
+			switch (c) {
+			case ' ':
+			case '\t':
+			case '\r':
+				continue;
+			case '\n':
+				line++;
+				continue;
+			case '#':
+				skipLine();
+				continue;
+			case '!':
+				return alive;
+			case '$':
+				row += run;
+				col = colOffset;
+				if (row >= grid.getRows()) {
+					//the rest of the pattern is below the grid
+					return alive;
+				}
+				break;
+			case 'b':
+			case '.':
+				col += run;
+				break;
+			default:
+				if (!Character.isLetter(c)) {
+					throw new IOException("Unexpected character '" + (char) c + "' on line " + line + ".");
+				}
+
+				//"o" (and any other state in a multi-state pattern) is alive
+				alive += setAlive(grid, row, col, run);
+				col += run;
+				break;
+			}
+			count = 0;
+		}
+		return alive;
+	}
+
+	/**
+	 * Reads a Life 1.06 pattern.
+	 * @param grid the grid
+	 * @param rowOffset the row to place the origin at
+	 * @param colOffset the column to place the origin at
+	 * @return the number of live cells that were placed in the grid
+	 * @throws IOException if there's a problem reading the pattern or if it
+	 * is malformed
+	 */
+	private long readLife106(Grid grid, int rowOffset, int colOffset) throws IOException {
+		long alive = 0;
+		int c;
+		while ((c = skipSpaces()) >= 0) {
+			if (c == '\n') {
+				read();
+				line++;
+				continue;
+			}
+			if (c == '#') {
+				skipLine();
+				continue;
+			}
+
+			long x = readLong();
+			c = skipSpaces();
+			if (c == '\n' || c < 0) {
+				throw new IOException("Missing y coordinate on line " + line + ".");
+			}
+			long y = readLong();
+			alive += setAlive(grid, y + rowOffset, x + colOffset, 1);
+		}
+		return alive;
+	}
+
+	/**
+	 * Reads a pattern that has one character per cell.
+	 * @param grid the grid
+	 * @param rowOffset the row to place the top of the pattern at
+	 * @param colOffset the column to place the left of the pattern at
+	 * @param alive1 a character that represents a live cell
+	 * @param alive2 another character that represents a live cell
+	 * @return the number of live cells that were placed in the grid
+	 * @throws IOException if there's a problem reading the pattern
+	 */
+	private long readCharacters(Grid grid, int rowOffset, int colOffset, char alive1, char alive2) throws IOException {
+		long alive = 0;
+		long row = rowOffset, col = colOffset;
+		boolean lineStart = true;
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '\n') {
+				line++;
+				row++;
+				col = colOffset;
+				lineStart = true;
+				if (row >= grid.getRows()) {
+					//the rest of the pattern is below the grid
+					break;
+				}
+				continue;
+			}
+			if (c == '\r') {
+				continue;
+			}
+			if (lineStart && c == '!' && format == Format.PLAINTEXT) {
+				//comment
+				skipLine();
+				continue;
+			}
+
+			lineStart = false;
+			if (c == alive1 || c == alive2) {
+				alive += setAlive(grid, row, col, 1);
+			}
+			col++;
+		}
+		return alive;
+	}
+
+	/**
+	 * Brings a run of cells to life, ignoring the cells that are outside of
+	 * the grid.
+	 * @param grid the grid
+	 * @param row the row
+	 * @param col the column of the first cell
+	 * @param run the number of cells
+	 * @return the number of cells that were inside of the grid
+	 */
+	private static long setAlive(Grid grid, long row, long col, long run) {
+		if (row < 0 || row >= grid.getRows()) {
+			return 0;
+		}
+		if (col >= grid.getCols() || col + run <= 0) {
+			return 0;
+		}
+
+		//only cast once the columns are clamped, so far-off columns don't wrap around into the grid
+		int start = (int) Math.max(0, col);
+		int end = (int) Math.min(grid.getCols(), col + run);
+		for (int j = start; j < end; j++) {
+			grid.setAlive((int) row, j, true);
+		}
+		return Math.max(0, end - start);
+	}
+
+	/**
+	 * Reads the next byte.
+	 * @return the byte or -1 if the end of the stream has been reached
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private int read() throws IOException {
+		if (pos == limit) {
+			if (eof) {
+				return -1;
+			}
+			int read = in.read(buffer, 0, buffer.length);
+			if (read <= 0) {
+				eof = true;
+				return -1;
+			}
+			pos = 0;
+			limit = read;
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	/**
+	 * Skips past any spaces and tabs, stopping at the next newline or other
+	 * character (the character is not consumed).
+	 * @return the next character or -1 if the end of the stream has been
+	 * reached
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private int skipSpaces() throws IOException {
+		int c;
+		while ((c = read()) == ' ' || c == '\t' || c == '\r') {
+		}
+		if (c >= 0) {
+			pos--;
+		}
+		return c;
+	}
+
+	/**
+	 * Reads an integer.
+	 * @return the integer
+	 * @throws IOException if there's a problem reading from the stream, if
+	 * the next characters aren't an integer, or if the integer doesn't fit in
+	 * a long
+	 */
+	private long readLong() throws IOException {
+		int c = read();
+		boolean negative = (c == '-');
+		if (negative || c == '+') {
+			c = read();
+		}
+		if (c < '0' || c > '9') {
+			throw new IOException("Expected a number on line " + line + ".");
+		}
+
+		long value = 0;
+		while (c >= '0' && c <= '9') {
+			int digit = c - '0';
+			if (value > (Long.MAX_VALUE - digit) / 10) {
+				throw new IOException("Number too large on line " + line + ".");
+			}
+			value = value * 10 + digit;
+			c = read();
+		}
+		if (c >= 0) {
+			pos--;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skips to the beginning of the next line.
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private void skipLine() throws IOException {
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '\n') {
+				line++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the rest of the current line.
+	 * @return the line (without the newline)
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '\n') {
+				line++;
+				break;
+			}
+			if (c != '\r') {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the next line without consuming it. Lines that don't fit in the
+	 * buffer are cut off.
+	 * @return the line (without the newline) or null if the end of the stream
+	 * has been reached
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	private String peekLine() throws IOException {
+		while (true) {
+			for (int i = pos; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					return toString(pos, i);
+				}
+			}
+			if (eof || limit - pos == buffer.length) {
+				return (pos == limit) ? null : toString(pos, limit);
+			}
+
+			//move what's left to the start of the buffer and fill the rest
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read <= 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		}
+	}
+
+	/**
+	 * Converts part of the buffer to a string.
+	 * @param start the start index (inclusive)
+	 * @param end the end index (exclusive)
+	 * @return the string (without a trailing carriage return)
+	 */
+	private String toString(int start, int end) {
+		if (end > start && buffer[end - 1] == '\r') {
+			end--;
+		}
+		return new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+	}
+}
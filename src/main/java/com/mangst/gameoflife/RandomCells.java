@@ -0,0 +1,334 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses the random cells that are toggled by noise each generation (see
+ * {@link GameOfLife#setNoise}). The grid is divided into bands of rows, and
+ * each band gets its share of the noise and its own random number generator,
+ * which is split off of a generator that is seeded with the seed and the
+ * generation. This means that:
+ * <ul>
+ * <li>the bands can be chosen in parallel by different threads,</li>
+ * <li>the same seed always chooses the same cells, no matter how many threads
+ * are used or which generation the game was resumed at, and</li>
+ * <li>the only state that has to be saved is the seed.</li>
+ * </ul>
+ * Duplicate cells are rejected with a hash set that only ever holds the cells
+ * chosen in the band, so choosing N cells takes O(N) time instead of
+ * O(N&sup2;).
+ * <p>
+ * The starting grid is populated the same way, using the generators of
+ * generation -1 (see {@link #populate}).
+ * @author mangst
+ */
+class RandomCells {
+	/**
+	 * The maximum number of bands.
+	 */
+	private static final int MAX_BANDS = 64;
+
+	/**
+	 * Added to the seed for each generation (the golden ratio, which spreads
+	 * consecutive generations across all 64 bits).
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * The number of bits of precision of the chance that a cell starts out
+	 * alive.
+	 */
+	private static final int CHANCE_BITS = 16;
+
+	/**
+	 * The seed.
+	 */
+	private final long seed;
+
+	/**
+	 * The number of columns in the grid.
+	 */
+	private int cols;
+
+	/**
+	 * The number of bands in the current generation.
+	 */
+	private int bands;
+
+	/**
+	 * The first cell of each band (cells are numbered row by row). The last
+	 * element holds the total number of cells.
+	 */
+	private final long bandStart[] = new long[MAX_BANDS + 1];
+
+	/**
+	 * The number of cells to choose in each band.
+	 */
+	private final int counts[] = new int[MAX_BANDS];
+
+	/**
+	 * The random number generator of each band.
+	 */
+	private final SplittableRandom randoms[] = new SplittableRandom[MAX_BANDS];
+
+	/**
+	 * The cells that were chosen in each band.
+	 */
+	private final long cells[][] = new long[MAX_BANDS][];
+
+	/**
+	 * The hash set of each band, used to reject duplicates. Each slot holds a
+	 * cell plus one, so that 0 means the slot is empty.
+	 */
+	private final long sets[][] = new long[MAX_BANDS][];
+
+	/**
+	 * Constructs a new cell chooser.
+	 * @param seed the seed
+	 */
+	public RandomCells(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Gets the seed.
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Prepares to choose the cells for a generation. This must be called
+	 * (from a single thread) before {@link #choose} is called for each band.
+	 * @param rows the number of rows in the grid
+	 * @param cols the number of columns in the grid
+	 * @param amount the number of cells to choose (if there are fewer cells
+	 * in the grid, every cell is chosen)
+	 * @param generation the generation
+	 */
+	public void prepare(int rows, int cols, int amount, long generation) {
+		this.cols = cols;
+		bands = Math.min(rows, MAX_BANDS);
+		long total = (long) rows * cols;
+		amount = (int) Math.min(amount, total);
+
+		SplittableRandom random = new SplittableRandom(seed + generation * GOLDEN_GAMMA);
+		int previousShare = 0;
+		for (int band = 0; band < bands; band++) {
+			int rowStart = (int) ((long) rows * band / bands);
+			int rowEnd = (int) ((long) rows * (band + 1) / bands);
+			bandStart[band] = (long) rowStart * cols;
+			bandStart[band + 1] = (long) rowEnd * cols;
+
+			//each band's share is rounded down, with the rounding carried over to the next band so that the shares add up
+			int share = (int) (amount * bandStart[band + 1] / Math.max(1, total));
+			counts[band] = share - previousShare;
+			previousShare = share;
+			randoms[band] = random.split();
+		}
+	}
+
+	/**
+	 * Gets the number of bands in the current generation.
+	 * @return the number of bands
+	 */
+	public int getBands() {
+		return bands;
+	}
+
+	/**
+	 * Gets the number of columns in the grid.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Chooses the cells in a band. Different bands can be chosen by
+	 * different threads at the same time.
+	 * @param band the band
+	 * @return the number of cells that were chosen (see {@link #getCells})
+	 */
+	public int choose(int band) {
+		int count = counts[band];
+		long start = bandStart[band];
+		long size = bandStart[band + 1] - start;
+		if (cells[band] == null || cells[band].length < count) {
+			cells[band] = new long[Math.max(16, count)];
+		}
+		long chosen[] = cells[band];
+		if (count == 0) {
+			return 0;
+		}
+
+		//when most of the band is chosen, choose the cells that are left out instead, so that there are never too many duplicates
+		boolean invert = count > size / 2;
+		int picks = invert ? (int) (size - count) : count;
+
+		int capacity = Integer.highestOneBit(Math.max(8, picks * 2 - 1)) << 1;
+		if (sets[band] == null || sets[band].length < capacity) {
+			sets[band] = new long[capacity];
+		}
+		long set[] = sets[band];
+		int mask = capacity - 1;
+
+		SplittableRandom random = randoms[band];
+		int picked = 0;
+		while (picked < picks) {
+			long cell = start + random.nextLong(size);
+			if (add(set, mask, cell)) {
+				chosen[picked++] = cell;
+			}
+		}
+
+		if (invert) {
+			int n = 0;
+			for (long cell = start; cell < start + size; cell++) {
+				if (!contains(set, mask, cell)) {
+					chosen[n++] = cell;
+				}
+			}
+		}
+
+		//empty the set for the next generation (only the slots that were used)
+		if (invert) {
+			Arrays.fill(set, 0, capacity, 0);
+		} else {
+			for (int i = 0; i < picked; i++) {
+				remove(set, mask, chosen[i]);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Randomly populates the rows of a band. Call
+	 * {@link #prepare prepare(rows, cols, 0, -1)} first. Different bands can
+	 * be populated by different threads at the same time, as long as the grid
+	 * allows different rows to be written at the same time.
+	 * <p>
+	 * Instead of drawing one random number per cell, the cells are generated
+	 * 64 at a time: each bit of the chance (rounded to the nearest 1/65536)
+	 * either ANDs or ORs another random long into the word, which gives each
+	 * bit exactly that chance of being set. A chance of 0.25 only takes two
+	 * random longs per 64 cells.
+	 * @param grid the grid
+	 * @param band the band
+	 * @param aliveChance the chance that each cell has of being alive (0.0 to
+	 * 1.0)
+	 */
+	public void populate(Grid grid, int band, double aliveChance) {
+		if (cols == 0) {
+			return;
+		}
+
+		int chance = (int) Math.round(Math.max(0.0, Math.min(1.0, aliveChance)) * (1 << CHANCE_BITS));
+		int lowestBit = Integer.numberOfTrailingZeros(chance);
+		SplittableRandom random = randoms[band];
+		long row[] = new long[BitGrid.wordsPerRow(cols)];
+		int rowStart = (int) (bandStart[band] / cols);
+		int rowEnd = (int) (bandStart[band + 1] / cols);
+		for (int i = rowStart; i < rowEnd; i++) {
+			for (int w = 0; w < row.length; w++) {
+				long word;
+				if (chance == 0) {
+					word = 0;
+				} else if (chance == 1 << CHANCE_BITS) {
+					word = -1L;
+				} else {
+					//go from the lowest set bit of the chance to the highest: a 1 bit halves the chance of a 0, a 0 bit halves the chance of a 1
+					word = random.nextLong();
+					for (int bit = lowestBit + 1; bit < CHANCE_BITS; bit++) {
+						if ((chance & (1 << bit)) != 0) {
+							word |= random.nextLong();
+						} else {
+							word &= random.nextLong();
+						}
+					}
+				}
+				row[w] = word;
+			}
+			grid.setRow(i, row);
+		}
+	}
+
+	/**
+	 * Gets the cells that were chosen in a band. Cells are numbered row by
+	 * row (row * cols + col).
+	 * @param band the band
+	 * @return the cells (only the first N are valid, where N is the value
+	 * returned by {@link #choose})
+	 */
+	public long[] getCells(int band) {
+		return cells[band];
+	}
+
+	/**
+	 * Adds a cell to a hash set.
+	 * @param set the hash set
+	 * @param mask the size of the set minus one
+	 * @param cell the cell
+	 * @return true if the cell was added, false if it was already in the set
+	 */
+	private static boolean add(long set[], int mask, long cell) {
+		long value = cell + 1;
+		int i = hash(cell) & mask;
+		while (set[i] != 0) {
+			if (set[i] == value) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		set[i] = value;
+		return true;
+	}
+
+	/**
+	 * Determines whether a hash set contains a cell.
+	 * @param set the hash set
+	 * @param mask the size of the set minus one
+	 * @param cell the cell
+	 * @return true if the set contains the cell, false if not
+	 */
+	private static boolean contains(long set[], int mask, long cell) {
+		long value = cell + 1;
+		int i = hash(cell) & mask;
+		while (set[i] != 0) {
+			if (set[i] == value) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Empties the slot of a cell that is in a hash set. It keeps looking past
+	 * empty slots, because cells that collided with this one may have already
+	 * been removed.
+	 * @param set the hash set
+	 * @param mask the size of the set minus one
+	 * @param cell the cell
+	 */
+	private static void remove(long set[], int mask, long cell) {
+		long value = cell + 1;
+		int i = hash(cell) & mask;
+		while (set[i] != value) {
+			i = (i + 1) & mask;
+		}
+		set[i] = 0;
+	}
+
+	/**
+	 * Mixes the bits of a cell number.
+	 * @param cell the cell
+	 * @return the hash
+	 */
+	private static int hash(long cell) {
+		long h = cell * GOLDEN_GAMMA;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,257 @@
+package com.mangst.gameoflife;
+
+import java.io.IOException;
+
+/**
+ * Renders generations on a thread of its own, so that the game can calculate
+ * the next generation while the last one is being displayed. Each generation
+ * that is submitted is copied into a bit-packed snapshot (see {@link BitGrid}),
+ * which the game can't change, and handed to the render thread.
+ * <p>
+ * The snapshots are triple-buffered: the game fills one buffer, the render
+ * thread displays another, and the third holds the newest generation that is
+ * waiting to be displayed. When a new generation is submitted before the
+ * render thread has picked up the waiting one, the waiting one is dropped
+ * instead of making the game wait for the renderer. So a slow terminal makes
+ * the display skip generations, but it never slows down the game.
+ * @author mangst
+ */
+public class RenderPipeline implements AutoCloseable {
+	/**
+	 * Displays the snapshots.
+	 */
+	private final GridRenderer renderer;
+
+	/**
+	 * The three snapshots.
+	 */
+	private final BitGrid buffers[];
+
+	/**
+	 * Packs the rows of grids that aren't bit-packed.
+	 */
+	private final long row[];
+
+	/**
+	 * The snapshot that the game fills (only used by the game's thread).
+	 */
+	private int back = 0;
+
+	/**
+	 * The snapshot that is waiting to be displayed, or the free snapshot if
+	 * there is none waiting (guarded by this).
+	 */
+	private int middle = 1;
+
+	/**
+	 * The snapshot that is being displayed (only used by the render thread,
+	 * except while swapping).
+	 */
+	private int front = 2;
+
+	/**
+	 * True if the middle snapshot is waiting to be displayed (guarded by
+	 * this).
+	 */
+	private boolean fresh;
+
+	/**
+	 * True once the pipeline has been closed (guarded by this).
+	 */
+	private boolean closed;
+
+	/**
+	 * The number of generations that have been displayed (guarded by this).
+	 */
+	private long rendered;
+
+	/**
+	 * The number of generations that were dropped because the render thread
+	 * was busy (guarded by this).
+	 */
+	private long dropped;
+
+	/**
+	 * The problem that stopped the render thread (guarded by this).
+	 */
+	private IOException error;
+
+	/**
+	 * Records how long each generation took to render (null if not
+	 * measured).
+	 */
+	private volatile GameMetrics metrics;
+
+	/**
+	 * The render thread.
+	 */
+	private final Renderer thread = new Renderer();
+
+	/**
+	 * Starts the render thread.
+	 * @param renderer displays the generations
+	 * @param rows the number of rows in the grids that will be submitted
+	 * @param cols the number of columns in the grids that will be submitted
+	 */
+	public RenderPipeline(GridRenderer renderer, int rows, int cols) {
+		this.renderer = renderer;
+		buffers = new BitGrid[] { new BitGrid(rows, cols), new BitGrid(rows, cols), new BitGrid(rows, cols) };
+		row = new long[BitGrid.wordsPerRow(cols)];
+		thread.start();
+	}
+
+	/**
+	 * Sets what the render times are reported to.
+	 * @param metrics the metrics, or null to not measure the render times
+	 */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Hands a generation to the render thread. This copies the grid, so the
+	 * grid can be changed as soon as this returns. This never waits for the
+	 * render thread: if the last generation that was submitted hasn't been
+	 * picked up yet, it is dropped.
+	 * @param grid the generation
+	 * @throws IOException if the render thread stopped because of a problem
+	 * writing to the renderer's channel
+	 */
+	public void submit(Grid grid) throws IOException {
+		BitGrid snapshot = buffers[back];
+		if (grid.getRows() != snapshot.getRows() || grid.getCols() != snapshot.getCols()) {
+			throw new IllegalArgumentException("The grid must have " + snapshot.getRows() + " rows and " + snapshot.getCols() + " columns.");
+		}
+
+		//the back snapshot only belongs to this thread, so it's filled in without holding the lock
+		for (int i = 0; i < grid.getRows(); i++) {
+			BitGrid.packRow(grid, i, row);
+			snapshot.setWords(i, 0, row.length, row, 0);
+		}
+
+		synchronized (this) {
+			if (error != null) {
+				throw error;
+			}
+			if (closed) {
+				throw new IllegalStateException("The pipeline has been closed.");
+			}
+
+			int temp = middle;
+			middle = back;
+			back = temp;
+			if (fresh) {
+				dropped++;
+			}
+			fresh = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the number of generations that have been displayed.
+	 * @return the number of generations
+	 */
+	public synchronized long getRendered() {
+		return rendered;
+	}
+
+	/**
+	 * Gets the number of generations that were dropped because the render
+	 * thread was still busy with an earlier one.
+	 * @return the number of generations
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Displays the last generation that was submitted (if it hasn't been
+	 * displayed yet) and stops the render thread. Does nothing if the
+	 * pipeline is already closed.
+	 * @throws IOException if there was a problem writing to the renderer's
+	 * channel
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (this) {
+			if (error != null) {
+				IOException e = error;
+				error = null;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * The thread that displays the snapshots.
+	 * @author mangst
+	 */
+	private class Renderer extends Thread {
+		/**
+		 * Constructs a new render thread.
+		 */
+		public Renderer() {
+			super("gameoflife-render");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				//take the newest generation (the one before it was dropped if this thread was too slow)
+				synchronized (RenderPipeline.this) {
+					while (!fresh && !closed) {
+						try {
+							RenderPipeline.this.wait();
+						} catch (InterruptedException e) {
+							//keep waiting until there's something to render or the pipeline is closed
+						}
+					}
+					if (!fresh) {
+						return;
+					}
+
+					int temp = middle;
+					middle = front;
+					front = temp;
+					fresh = false;
+				}
+
+				try {
+					long start = System.nanoTime();
+					renderer.render(buffers[front]);
+					GameMetrics m = metrics;
+					if (m != null) m.renderCompleted(System.nanoTime() - start);
+				} catch (IOException e) {
+					synchronized (RenderPipeline.this) {
+						error = e;
+					}
+					return;
+				}
+
+				synchronized (RenderPipeline.this) {
+					rendered++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.mangst.gameoflife;
+
+/**
+ * Calculates the next state of the rows of a {@link BitGrid}. The default
+ * kernel works on one long at a time. A kernel that uses the Java Vector API
+ * to work on several longs at a time is also available on JVMs that support
+ * it (see {@link #vector}).
+ * @author mangst
+ */
+public interface RowKernel {
+	/**
+	 * The kernel that works on one long at a time.
+	 */
+	RowKernel SCALAR = new RowKernel() {
+		@Override
+		public boolean nextRow(long src[], int above, int row, int below, long dest[], int out, int wordsPerRow, long lastWordMask, int colStart, int colEnd, Rule rule) {
+			return BitGrid.nextRow(src, above, row, below, dest, out, wordsPerRow, lastWordMask, colStart, colEnd, rule);
+		}
+
+		@Override
+		public String toString() {
+			return "scalar";
+		}
+	};
+
+	/**
+	 * Calculates the next state of (part of) one row of a bit-packed grid.
+	 * @param src the array that holds the current state
+	 * @param above the index of the row above
+	 * @param row the index of the row
+	 * @param below the index of the row below
+	 * @param dest the array to write the next state to
+	 * @param out the index to write the row to
+	 * @param wordsPerRow the number of longs in each row
+	 * @param lastWordMask the mask of the bits in the last word of the row
+	 * that are inside the grid
+	 * @param colStart the first column to calculate (inclusive)
+	 * @param colEnd the last column to calculate (exclusive)
+	 * @param rule the rule
+	 * @return true if any of the cells changed state, false if not
+	 */
+	boolean nextRow(long src[], int above, int row, int below, long dest[], int out, int wordsPerRow, long lastWordMask, int colStart, int colEnd, Rule rule);
+
+	/**
+	 * Gets the kernel that uses the Java Vector API (the
+	 * jdk.incubator.vector module) to calculate as many longs at once as the
+	 * CPU's preferred vector size allows. The JVM must be started with
+	 * "--add-modules jdk.incubator.vector". If the module is not available,
+	 * the scalar kernel is returned instead.
+	 * @return the kernel
+	 */
+	static RowKernel vector() {
+		try {
+			//the class is only compiled on JDK 17 or later (see the "vector" profile in the POM)
+			return (RowKernel) Class.forName("com.mangst.gameoflife.VectorRowKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			//the class wasn't compiled
+			return SCALAR;
+		} catch (LinkageError e) {
+			//the module isn't loaded
+			return SCALAR;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package com.mangst.gameoflife;
+
+/**
+ * A Life-like rule, which decides whether each cell is alive in the next
+ * generation from whether it's alive now and how many of its 8 neighbors are
+ * alive. Rules are written as rulestrings such as "B3/S23" (Conway's Game of
+ * Life), which means that a dead cell is born if it has 3 live neighbors, and
+ * a live cell survives if it has 2 or 3 live neighbors.
+ * <p>
+ * The rule is compiled into lookup tables, so that applying it never
+ * branches. {@link #nextState} looks a cell up in a bitmask of the 18 possible
+ * states. {@link #next} works on 64 cells at once whose neighbor counts have
+ * been added up into bit planes (see {@link BitGrid#nextWord}). It looks each
+ * cell up in a 9-entry table of all-zero or all-one masks by selecting
+ * between pairs of entries with each bit of the count, from the lowest bit to
+ * the highest. Conway's rule is simple enough to be written as a handful of
+ * bitwise operations instead, which is used when the rule is B3/S23.
+ * @author mangst
+ */
+public final class Rule {
+	/**
+	 * Conway's Game of Life (B3/S23).
+	 */
+	public static final Rule CONWAY = new Rule(1 << 3, (1 << 2) | (1 << 3));
+
+	/**
+	 * The neighbor counts that a dead cell is born with (bit N is set if a
+	 * dead cell with N live neighbors is born).
+	 */
+	private final int birth;
+
+	/**
+	 * The neighbor counts that a live cell survives with (bit N is set if a
+	 * live cell with N live neighbors survives).
+	 */
+	private final int survival;
+
+	/**
+	 * True if this is Conway's rule.
+	 */
+	private final boolean conway;
+
+	/**
+	 * The next state of every cell state, indexed by the number of live
+	 * neighbors plus 9 if the cell is alive.
+	 */
+	private final int table;
+
+	/**
+	 * The bit-sliced tables of dead and live cells.
+	 */
+	private final SlicedTable dead, alive;
+
+	/**
+	 * Constructs a new rule.
+	 * @param birth the neighbor counts that a dead cell is born with (bit N is
+	 * set if a dead cell with N live neighbors is born)
+	 * @param survival the neighbor counts that a live cell survives with (bit
+	 * N is set if a live cell with N live neighbors survives)
+	 * @throws IllegalArgumentException if a mask has bits above bit 8 set
+	 */
+	public Rule(int birth, int survival) {
+		if ((birth & ~0x1FF) != 0 || (survival & ~0x1FF) != 0) {
+			throw new IllegalArgumentException("A cell can only have 0 to 8 live neighbors.");
+		}
+
+		this.birth = birth;
+		this.survival = survival;
+		conway = (birth == 1 << 3 && survival == ((1 << 2) | (1 << 3)));
+		table = birth | (survival << 9);
+		dead = new SlicedTable(birth);
+		alive = new SlicedTable(survival);
+	}
+
+	/**
+	 * Parses a rulestring. Both the B/S notation ("B3/S23", "b36/s23",
+	 * "S23/B3", "B3S23") and the older S/B notation ("23/3", survival counts
+	 * first) are accepted.
+	 * @param rulestring the rulestring
+	 * @return the rule
+	 * @throws IllegalArgumentException if the rulestring is invalid
+	 */
+	public static Rule parse(String rulestring) {
+		String s = rulestring.trim().toUpperCase();
+		int birth = 0, survival = 0;
+
+		if (s.indexOf('B') < 0 && s.indexOf('S') < 0) {
+			//S/B notation
+			int slash = s.indexOf('/');
+			if (slash < 0) {
+				throw invalid(rulestring);
+			}
+			survival = parseCounts(s.substring(0, slash), rulestring);
+			birth = parseCounts(s.substring(slash + 1), rulestring);
+			return new Rule(birth, survival);
+		}
+
+		boolean seenBirth = false, seenSurvival = false;
+		int i = 0;
+		while (i < s.length()) {
+			char letter = s.charAt(i++);
+			int start = i;
+			while (i < s.length() && Character.isDigit(s.charAt(i))) {
+				i++;
+			}
+			int counts = parseCounts(s.substring(start, i), rulestring);
+
+			if (letter == 'B' && !seenBirth) {
+				birth = counts;
+				seenBirth = true;
+			} else if (letter == 'S' && !seenSurvival) {
+				survival = counts;
+				seenSurvival = true;
+			} else {
+				throw invalid(rulestring);
+			}
+
+			if (i < s.length() && s.charAt(i) == '/') {
+				i++;
+				if (i == s.length()) {
+					throw invalid(rulestring);
+				}
+			}
+		}
+		if (!seenBirth || !seenSurvival) {
+			throw invalid(rulestring);
+		}
+		return new Rule(birth, survival);
+	}
+
+	/**
+	 * Parses the neighbor counts of a rulestring.
+	 * @param digits the counts (for example, "23")
+	 * @param rulestring the whole rulestring (for the error message)
+	 * @return the counts as a bitmask
+	 * @throws IllegalArgumentException if one of the counts is invalid
+	 */
+	private static int parseCounts(String digits, String rulestring) {
+		int counts = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			int count = digits.charAt(i) - '0';
+			if (count < 0 || count > 8) {
+				throw invalid(rulestring);
+			}
+			counts |= 1 << count;
+		}
+		return counts;
+	}
+
+	/**
+	 * Creates the exception that is thrown when a rulestring is invalid.
+	 * @param rulestring the rulestring
+	 * @return the exception
+	 */
+	private static IllegalArgumentException invalid(String rulestring) {
+		return new IllegalArgumentException("Invalid rule \"" + rulestring + "\" (example: \"B3/S23\").");
+	}
+
+	/**
+	 * Gets the neighbor counts that a dead cell is born with.
+	 * @return the counts (bit N is set if a dead cell with N live neighbors is
+	 * born)
+	 */
+	public int getBirth() {
+		return birth;
+	}
+
+	/**
+	 * Gets the neighbor counts that a live cell survives with.
+	 * @return the counts (bit N is set if a live cell with N live neighbors
+	 * survives)
+	 */
+	public int getSurvival() {
+		return survival;
+	}
+
+	/**
+	 * Determines whether dead cells with no live neighbors are born. Under
+	 * such a rule, an empty universe doesn't stay empty, so it can't be used
+	 * on an unbounded universe.
+	 * @return true if dead cells with no live neighbors are born, false if not
+	 */
+	public boolean hasB0() {
+		return (birth & 1) != 0;
+	}
+
+	/**
+	 * Determines whether this is Conway's rule (B3/S23).
+	 * @return true if this is Conway's rule, false if not
+	 */
+	boolean isConway() {
+		return conway;
+	}
+
+	/**
+	 * Calculates the next state of a cell.
+	 * @param alive true if the cell is alive, false if not
+	 * @param neighbors the number of live neighbors (0 to 8)
+	 * @return true if the cell will be alive, false if not
+	 */
+	public boolean nextState(boolean alive, int neighbors) {
+		return ((table >>> (neighbors + (alive ? 9 : 0))) & 1) != 0;
+	}
+
+	/**
+	 * Calculates the next state of 64 cells at once, given the bit planes of
+	 * their neighbor counts (see {@link BitGrid#nextWord}).
+	 * @param cells the cells
+	 * @param ones bit 0 of each cell's neighbor count
+	 * @param twos bit 1 of each cell's neighbor count
+	 * @param fours bit 2 of each cell's neighbor count
+	 * @param eights bit 3 of each cell's neighbor count
+	 * @return the next state of the cells
+	 */
+	long next(long cells, long ones, long twos, long fours, long eights) {
+		if (conway) {
+			//alive if there are 3 neighbors, or 2 neighbors and the cell is alive
+			return ~eights & ~fours & twos & (ones | cells);
+		}
+
+		long d = dead.lookUp(ones, twos, fours, eights);
+		long a = alive.lookUp(ones, twos, fours, eights);
+		return d ^ (cells & (d ^ a));
+	}
+
+	/**
+	 * Gets the entry of the bit-sliced table of a cell state.
+	 * @param alive true for the table of live cells, false for dead cells
+	 * @param neighbors the number of live neighbors (0 to 8)
+	 * @return all ones if the cell will be alive, 0 if not
+	 */
+	long mask(boolean alive, int neighbors) {
+		return nextState(alive, neighbors) ? -1L : 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof Rule)) return false;
+		Rule other = (Rule) obj;
+		return birth == other.birth && survival == other.survival;
+	}
+
+	@Override
+	public int hashCode() {
+		return table;
+	}
+
+	/**
+	 * Gets the rule's rulestring in B/S notation.
+	 * @return the rulestring (for example, "B3/S23")
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("B");
+		for (int i = 0; i <= 8; i++) {
+			if ((birth & (1 << i)) != 0) sb.append(i);
+		}
+		sb.append("/S");
+		for (int i = 0; i <= 8; i++) {
+			if ((survival & (1 << i)) != 0) sb.append(i);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A 9-entry table that is looked up 64 cells at a time. Each entry is a
+	 * mask of all ones or all zeros. The table is looked up by selecting
+	 * between pairs of entries with the ones bit of the neighbor count, then
+	 * between pairs of those with the twos bit, then with the fours bit. A
+	 * count of 8 has the eights bit set and the other bits clear, so it is
+	 * patched in last.
+	 * @author mangst
+	 */
+	private static class SlicedTable {
+		/**
+		 * The entries for the even counts below 8.
+		 */
+		private final long entry0, entry2, entry4, entry6;
+
+		/**
+		 * The differences between the entries for each even count and the
+		 * odd count after it.
+		 */
+		private final long diff01, diff23, diff45, diff67;
+
+		/**
+		 * The difference between the entries for 0 and 8.
+		 */
+		private final long diff08;
+
+		/**
+		 * Constructs a new table.
+		 * @param counts the counts that make the cell alive (bit N is set if
+		 * a cell with N live neighbors will be alive)
+		 */
+		public SlicedTable(int counts) {
+			long entries[] = new long[9];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = ((counts & (1 << i)) != 0) ? -1L : 0;
+			}
+
+			entry0 = entries[0];
+			entry2 = entries[2];
+			entry4 = entries[4];
+			entry6 = entries[6];
+			diff01 = entries[0] ^ entries[1];
+			diff23 = entries[2] ^ entries[3];
+			diff45 = entries[4] ^ entries[5];
+			diff67 = entries[6] ^ entries[7];
+			diff08 = entries[0] ^ entries[8];
+		}
+
+		/**
+		 * Looks up 64 cells at once.
+		 * @param ones bit 0 of each cell's neighbor count
+		 * @param twos bit 1 of each cell's neighbor count
+		 * @param fours bit 2 of each cell's neighbor count
+		 * @param eights bit 3 of each cell's neighbor count
+		 * @return the entries
+		 */
+		public long lookUp(long ones, long twos, long fours, long eights) {
+			long count01 = entry0 ^ (ones & diff01);
+			long count23 = entry2 ^ (ones & diff23);
+			long count45 = entry4 ^ (ones & diff45);
+			long count67 = entry6 ^ (ones & diff67);
+			long count03 = count01 ^ (twos & (count01 ^ count23));
+			long count47 = count45 ^ (twos & (count45 ^ count67));
+			long count07 = count03 ^ (fours & (count03 ^ count47));
+			return count07 ^ (eights & diff08);
+		}
+	}
+}
@@ -0,0 +1,391 @@
+package com.mangst.gameoflife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Calculates one horizontal slab of a grid in its own process, as part of a
+ * {@link DistributedGame}. The worker is started by the coordinator and
+ * connects back to it with the address that is passed on the command line.
+ * <p>
+ * The slab is stored in a {@link BitGrid} with one extra row above and below
+ * it (the halo), which hold the boundary rows of the neighboring slabs. Each
+ * generation, the worker calculates its own boundary rows first and sends them
+ * to its neighbors in the background while it calculates the rest of the slab.
+ * Then it reads its neighbors' boundary rows into the halo of the next
+ * generation. The first and last slabs have no neighbor on one side, so that
+ * part of the halo is always dead, just like the dead rows around a grid.
+ * <p>
+ * Rows are sent as their packed longs (see {@link BitGrid}), and all numbers
+ * are big-endian.
+ * @author mangst
+ */
+public class SlabWorker {
+	/**
+	 * The command that calculates the next generations. It is followed by the
+	 * number of generations (long), and answered with a byte once they are
+	 * done.
+	 */
+	static final byte ITERATE = 1;
+
+	/**
+	 * The command that sends back some of the slab's rows. It is followed by
+	 * the first (inclusive) and last (exclusive) row within the slab (ints).
+	 */
+	static final byte GET = 2;
+
+	/**
+	 * The command that stops the worker.
+	 */
+	static final byte CLOSE = 3;
+
+	/**
+	 * The number of milliseconds to wait for a neighbor to connect.
+	 */
+	static final int CONNECT_TIMEOUT = 60000;
+
+	/**
+	 * The number of rows in the slab.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in the slab.
+	 */
+	private final int cols;
+
+	/**
+	 * The number of longs in each row.
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * The slab's current state (including the halo).
+	 */
+	private BitGrid current;
+
+	/**
+	 * The slab's next state (including the halo).
+	 */
+	private BitGrid next;
+
+	/**
+	 * Receives commands from the coordinator.
+	 */
+	private final DataInputStream in;
+
+	/**
+	 * Answers the coordinator.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * The connection to the slab above (null if this is the first slab).
+	 */
+	private final Socket upper;
+
+	/**
+	 * The connection to the slab below (null if this is the last slab).
+	 */
+	private final Socket lower;
+
+	/**
+	 * Receives rows from the slab above (null if this is the first slab).
+	 */
+	private final DataInputStream upperIn;
+
+	/**
+	 * Sends rows to the slab above (null if this is the first slab).
+	 */
+	private final DataOutputStream upperOut;
+
+	/**
+	 * Receives rows from the slab below (null if this is the last slab).
+	 */
+	private final DataInputStream lowerIn;
+
+	/**
+	 * Sends rows to the slab below (null if this is the last slab).
+	 */
+	private final DataOutputStream lowerOut;
+
+	/**
+	 * The first row of the next generation, which is sent to the slab above.
+	 */
+	private final long firstRow[];
+
+	/**
+	 * The last row of the next generation, which is sent to the slab below.
+	 */
+	private final long lastRow[];
+
+	/**
+	 * The row that is being received from a neighbor.
+	 */
+	private final long haloRow[];
+
+	/**
+	 * Converts the rows to bytes on the main thread.
+	 */
+	private final byte buffer[];
+
+	/**
+	 * Converts the rows to bytes on the sending thread.
+	 */
+	private final byte sendBuffer[];
+
+	/**
+	 * Sends the boundary rows while the rest of the slab is calculated.
+	 */
+	private final ExecutorService sender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "gameoflife-halo");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Sends the boundary rows to the neighbors.
+	 */
+	private final Runnable sendRows = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				if (upperOut != null) {
+					writeWords(upperOut, firstRow, 0, wordsPerRow, sendBuffer);
+					upperOut.flush();
+				}
+				if (lowerOut != null) {
+					writeWords(lowerOut, lastRow, 0, wordsPerRow, sendBuffer);
+					lowerOut.flush();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	};
+
+	/**
+	 * Sets up the worker. This reads the slab from the coordinator and
+	 * connects to the neighboring workers.
+	 * @param coordinator the connection to the coordinator
+	 * @throws IOException if there's a problem talking to the coordinator or
+	 * the neighbors
+	 */
+	SlabWorker(Socket coordinator) throws IOException {
+		coordinator.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(coordinator.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(coordinator.getOutputStream()));
+
+		//tell the coordinator where the slab below can connect to
+		ServerSocket peers = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			out.writeInt(peers.getLocalPort());
+			out.flush();
+
+			int index = in.readInt();
+			int workers = in.readInt();
+			rows = in.readInt();
+			cols = in.readInt();
+			Rule rule = new Rule(in.readInt(), in.readInt());
+			boolean vector = in.readBoolean();
+			int upperPort = in.readInt();
+
+			wordsPerRow = BitGrid.wordsPerRow(cols);
+			firstRow = new long[wordsPerRow];
+			lastRow = new long[wordsPerRow];
+			haloRow = new long[wordsPerRow];
+			buffer = new byte[wordsPerRow * 8];
+			sendBuffer = new byte[wordsPerRow * 8];
+
+			current = new BitGrid(rows + 2, cols);
+			current.setRule(rule);
+			if (vector) current.setKernel(RowKernel.vector());
+			next = (BitGrid) current.newGrid(rows + 2, cols);
+
+			//read the slab and its halo
+			for (int i = 0; i < rows + 2; i++) {
+				readWords(in, haloRow, 0, wordsPerRow, buffer);
+				current.setWords(i, 0, wordsPerRow, haloRow, 0);
+			}
+
+			//connect to the slab above, then wait for the slab below to connect
+			upper = (upperPort < 0) ? null : new Socket(InetAddress.getLoopbackAddress(), upperPort);
+			if (index < workers - 1) {
+				peers.setSoTimeout(CONNECT_TIMEOUT);
+				lower = peers.accept();
+			} else {
+				lower = null;
+			}
+		} finally {
+			peers.close();
+		}
+
+		if (upper != null) {
+			upper.setTcpNoDelay(true);
+			upperIn = new DataInputStream(new BufferedInputStream(upper.getInputStream()));
+			upperOut = new DataOutputStream(new BufferedOutputStream(upper.getOutputStream()));
+		} else {
+			upperIn = null;
+			upperOut = null;
+		}
+		if (lower != null) {
+			lower.setTcpNoDelay(true);
+			lowerIn = new DataInputStream(new BufferedInputStream(lower.getInputStream()));
+			lowerOut = new DataOutputStream(new BufferedOutputStream(lower.getOutputStream()));
+		} else {
+			lowerIn = null;
+			lowerOut = null;
+		}
+
+		//let the coordinator know that the worker is ready
+		out.writeByte(0);
+		out.flush();
+	}
+
+	/**
+	 * Carries out the coordinator's commands until it closes the worker.
+	 * @throws IOException if there's a problem talking to the coordinator or
+	 * the neighbors
+	 */
+	void run() throws IOException {
+		try {
+			while (true) {
+				byte command = in.readByte();
+				if (command == ITERATE) {
+					long generations = in.readLong();
+					for (long i = 0; i < generations; i++) {
+						step();
+					}
+					out.writeByte(0);
+					out.flush();
+				} else if (command == GET) {
+					int rowStart = in.readInt();
+					int rowEnd = in.readInt();
+					for (int i = rowStart; i < rowEnd; i++) {
+						current.getWords(i + 1, 0, wordsPerRow, haloRow, 0);
+						writeWords(out, haloRow, 0, wordsPerRow, buffer);
+					}
+					out.flush();
+				} else if (command == CLOSE) {
+					break;
+				} else {
+					throw new IOException("Unknown command " + command + ".");
+				}
+			}
+		} finally {
+			sender.shutdown();
+			if (upper != null) upper.close();
+			if (lower != null) lower.close();
+		}
+	}
+
+	/**
+	 * Calculates the next generation of the slab and swaps boundary rows with
+	 * the neighbors.
+	 * @throws IOException if there's a problem talking to the neighbors
+	 */
+	private void step() throws IOException {
+		//calculate the boundary rows first, so they can be sent while the rest is calculated
+		current.computeNext(next, 1, 2, 0, cols);
+		if (rows > 1) current.computeNext(next, rows, rows + 1, 0, cols);
+		next.getWords(1, 0, wordsPerRow, firstRow, 0);
+		next.getWords(rows, 0, wordsPerRow, lastRow, 0);
+		Future<?> sending = sender.submit(sendRows);
+
+		//calculate the interior
+		if (rows > 2) current.computeNext(next, 2, rows, 0, cols);
+
+		//the neighbors' boundary rows become the halo of the next generation
+		if (upperIn != null) {
+			readWords(upperIn, haloRow, 0, wordsPerRow, buffer);
+			next.setWords(0, 0, wordsPerRow, haloRow, 0);
+		}
+		if (lowerIn != null) {
+			readWords(lowerIn, haloRow, 0, wordsPerRow, buffer);
+			next.setWords(rows + 1, 0, wordsPerRow, haloRow, 0);
+		}
+
+		//the boundary rows can't be overwritten until they have been sent
+		try {
+			sending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+
+		BitGrid temp = current;
+		current = next;
+		next = temp;
+	}
+
+	/**
+	 * Writes longs to a stream.
+	 * @param out the stream
+	 * @param words the longs
+	 * @param offset the index of the first long
+	 * @param length the number of longs
+	 * @param buffer holds the bytes (must hold at least 8 * length bytes)
+	 * @throws IOException if there's a problem writing to the stream
+	 */
+	static void writeWords(DataOutputStream out, long words[], int offset, int length, byte buffer[]) throws IOException {
+		ByteBuffer.wrap(buffer).asLongBuffer().put(words, offset, length);
+		out.write(buffer, 0, length * 8);
+	}
+
+	/**
+	 * Reads longs from a stream.
+	 * @param in the stream
+	 * @param words the array to read the longs into
+	 * @param offset the index of the first long
+	 * @param length the number of longs
+	 * @param buffer holds the bytes (must hold at least 8 * length bytes)
+	 * @throws IOException if there's a problem reading from the stream
+	 */
+	static void readWords(DataInputStream in, long words[], int offset, int length, byte buffer[]) throws IOException {
+		in.readFully(buffer, 0, length * 8);
+		ByteBuffer.wrap(buffer).asLongBuffer().get(words, offset, length);
+	}
+
+	/**
+	 * Starts a worker.
+	 * @param args the host and port of the coordinator
+	 * @throws IOException if there's a problem talking to the coordinator or
+	 * the neighbors
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: SlabWorker HOST PORT");
+			System.err.println("Workers are started by the coordinator (see DistributedGame).");
+			System.exit(1);
+		}
+
+		Socket coordinator = new Socket(args[0], Integer.parseInt(args[1]));
+		try {
+			new SlabWorker(coordinator).run();
+		} finally {
+			coordinator.close();
+		}
+	}
+}
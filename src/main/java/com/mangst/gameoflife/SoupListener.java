@@ -0,0 +1,21 @@
+package com.mangst.gameoflife;
+
+/**
+ * Gets notified of the outcome of every soup in a search (see
+ * {@link SoupSearch#search}).
+ * @author mangst
+ */
+public interface SoupListener {
+	/**
+	 * Called once the soup has settled into a cycle or reached the maximum
+	 * number of generations. This is called on the search's worker threads,
+	 * so it must be thread-safe, and it should return quickly.
+	 * @param seed the seed the soup was made with (see
+	 * {@link Ensemble#populate})
+	 * @param ensemble the ensemble the soup was played in, which can be asked
+	 * for the soup's period, population, and hash (it's reused for the next
+	 * batch of soups once this returns)
+	 * @param lane the soup's lane in the ensemble
+	 */
+	void soupFinished(long seed, Ensemble ensemble, int lane);
+}
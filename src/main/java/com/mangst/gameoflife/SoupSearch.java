@@ -0,0 +1,233 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays a large number of random soups, 64 at a time in an {@link Ensemble},
+ * and reports how each one ended up. Each thread of a {@link WorkerPool} plays
+ * its own ensemble, and as soon as a soup in one of its lanes settles (or
+ * reaches the maximum number of generations), the thread takes the next soup
+ * that hasn't been played yet and puts it in that lane. So the lanes never sit
+ * idle waiting for the slowest soup, and a thread that gets soups that settle
+ * quickly simply plays more of them.
+ * <p>
+ * Soup N of a search is made with the seed firstSeed + N, so any soup can be
+ * recreated from its seed with {@link Ensemble#populate} and then played on
+ * its own (see {@link Ensemble#getBoard}).
+ * @author mangst
+ */
+public class SoupSearch implements AutoCloseable {
+	/**
+	 * The number of rows in each soup.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns in each soup.
+	 */
+	private final int cols;
+
+	/**
+	 * The threads that play the soups.
+	 */
+	private final WorkerPool pool;
+
+	/**
+	 * The rule the soups are played by.
+	 */
+	private Rule rule = Rule.CONWAY;
+
+	/**
+	 * How the edges of the soups are connected.
+	 */
+	private Grid.Topology topology = Grid.Topology.BOUNDED;
+
+	/**
+	 * The chance that each cell starts out alive.
+	 */
+	private double aliveChance = 0.5;
+
+	/**
+	 * The number of generations a soup is played for if it doesn't settle.
+	 */
+	private long maxGenerations = 10000;
+
+	/**
+	 * The longest period of the cycles to detect.
+	 */
+	private int maxPeriod = 16;
+
+	/**
+	 * Constructs a new search.
+	 * @param rows the number of rows in each soup
+	 * @param cols the number of columns in each soup
+	 * @param threads the number of threads to play the soups on
+	 */
+	public SoupSearch(int rows, int cols, int threads) {
+		if (rows < 1 || cols < 1) {
+			throw new IllegalArgumentException("The soups must have at least one row and one column.");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		pool = new WorkerPool(threads);
+	}
+
+	/**
+	 * Gets the rule the soups are played by.
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the soups are played by.
+	 * @param rule the rule
+	 */
+	public void setRule(Rule rule) {
+		if (rule == null) {
+			throw new IllegalArgumentException("The rule can't be null.");
+		}
+		this.rule = rule;
+	}
+
+	/**
+	 * Gets how the edges of the soups are connected.
+	 * @return the topology
+	 */
+	public Grid.Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * Sets how the edges of the soups are connected.
+	 * @param topology the topology
+	 */
+	public void setTopology(Grid.Topology topology) {
+		if (topology == null) {
+			throw new IllegalArgumentException("The topology can't be null.");
+		}
+		this.topology = topology;
+	}
+
+	/**
+	 * Gets the chance that each cell starts out alive.
+	 * @return the chance (between 0 and 1)
+	 */
+	public double getAliveChance() {
+		return aliveChance;
+	}
+
+	/**
+	 * Sets the chance that each cell starts out alive.
+	 * @param aliveChance the chance (between 0 and 1)
+	 */
+	public void setAliveChance(double aliveChance) {
+		if (aliveChance < 0 || aliveChance > 1) {
+			throw new IllegalArgumentException("The chance must be between 0 and 1.");
+		}
+		this.aliveChance = aliveChance;
+	}
+
+	/**
+	 * Gets the number of generations a soup is played for if it doesn't
+	 * settle.
+	 * @return the number of generations
+	 */
+	public long getMaxGenerations() {
+		return maxGenerations;
+	}
+
+	/**
+	 * Sets the number of generations a soup is played for if it doesn't
+	 * settle.
+	 * @param maxGenerations the number of generations
+	 */
+	public void setMaxGenerations(long maxGenerations) {
+		if (maxGenerations < 0) {
+			throw new IllegalArgumentException("The number of generations can't be negative.");
+		}
+		this.maxGenerations = maxGenerations;
+	}
+
+	/**
+	 * Gets the longest period of the cycles to detect.
+	 * @return the longest period
+	 */
+	public int getMaxPeriod() {
+		return maxPeriod;
+	}
+
+	/**
+	 * Sets the longest period of the cycles to detect. Oscillators with longer
+	 * periods are played until the maximum number of generations.
+	 * @param maxPeriod the longest period
+	 */
+	public void setMaxPeriod(int maxPeriod) {
+		if (maxPeriod < 1) {
+			throw new IllegalArgumentException("The longest period must be at least 1.");
+		}
+		this.maxPeriod = maxPeriod;
+	}
+
+	/**
+	 * Plays a range of soups and reports each one to a listener. This returns
+	 * once every soup has been reported.
+	 * @param firstSeed the seed of the first soup
+	 * @param soups the number of soups
+	 * @param listener gets the outcome of each soup
+	 */
+	public void search(final long firstSeed, final long soups, final SoupListener listener) {
+		final AtomicLong nextSoup = new AtomicLong();
+		pool.run(new WorkerPool.Task() {
+			@Override
+			public void run(int worker, int workers) {
+				Ensemble ensemble = new Ensemble(rows, cols, maxPeriod);
+				ensemble.setRule(rule);
+				ensemble.setTopology(topology);
+
+				//the seed of the soup in each lane
+				long seeds[] = new long[Ensemble.LANES];
+
+				//the lanes that hold a soup that hasn't been reported yet
+				long playing = 0;
+				for (int lane = 0; lane < Ensemble.LANES; lane++) {
+					long soup = nextSoup.getAndIncrement();
+					if (soup >= soups) break;
+					seeds[lane] = firstSeed + soup;
+					ensemble.populate(lane, seeds[lane], aliveChance);
+					playing |= 1L << lane;
+				}
+
+				while (playing != 0) {
+					//a soup that finishes is replaced with the next one right away, so the lanes never wait for the slowest soup
+					long finished = playing & ~ensemble.getRunning(maxGenerations);
+					for (; finished != 0; finished &= finished - 1) {
+						int lane = Long.numberOfTrailingZeros(finished);
+						listener.soupFinished(seeds[lane], ensemble, lane);
+
+						long soup = nextSoup.getAndIncrement();
+						if (soup < soups) {
+							seeds[lane] = firstSeed + soup;
+							ensemble.populate(lane, seeds[lane], aliveChance);
+						} else {
+							playing &= ~(1L << lane);
+						}
+					}
+
+					if (playing != 0) {
+						ensemble.step();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	@Override
+	public void close() {
+		pool.close();
+	}
+}
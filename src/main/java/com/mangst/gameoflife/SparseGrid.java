@@ -0,0 +1,545 @@
+package com.mangst.gameoflife;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An unbounded grid that only stores the parts of the universe that have
+ * live cells in them. The universe is divided into 64x64 chunks, which are
+ * kept in a hash table keyed by the chunk's coordinates. A chunk is created
+ * when cells come to life in it and is dropped when all of its cells die, so
+ * memory use depends on the number of live cells, not on how far apart they
+ * are.
+ * <p>
+ * The number of rows and columns passed into the constructor define a window
+ * onto the universe, which starts at row 0, column 0. The window is what gets
+ * displayed and what noise is applied to, but cells can live anywhere (see
+ * {@link #isAlive(long, long)} and {@link #setAlive(long, long, boolean)}).
+ * @author mangst
+ */
+public class SparseGrid extends Grid {
+	/**
+	 * The width and height of a chunk, in cells.
+	 */
+	private static final int CHUNK_SIZE = 64;
+
+	/**
+	 * The cells of a chunk that doesn't exist.
+	 */
+	private static final long EMPTY[] = new long[CHUNK_SIZE];
+
+	/**
+	 * A 64x64 block of cells. Each row is stored in one long, with bit N
+	 * holding column N.
+	 * @author mangst
+	 */
+	private static class Chunk {
+		/**
+		 * The chunk's row (the row of its top-left cell divided by 64).
+		 */
+		private long row;
+
+		/**
+		 * The chunk's column (the column of its top-left cell divided by 64).
+		 */
+		private long col;
+
+		/**
+		 * The cells.
+		 */
+		private final long cells[] = new long[CHUNK_SIZE];
+
+		/**
+		 * The next chunk in the same hash table bucket.
+		 */
+		private Chunk chain;
+
+		/**
+		 * Determines whether all of the chunk's cells are dead.
+		 * @return true if all the cells are dead, false if not
+		 */
+		public boolean isEmpty() {
+			for (long row : cells) {
+				if (row != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The hash table of chunks.
+	 */
+	private Chunk table[] = new Chunk[64];
+
+	/**
+	 * The number of chunks in the hash table.
+	 */
+	private int size = 0;
+
+	/**
+	 * Chunks that are no longer being used, kept so they can be reused.
+	 */
+	private final List<Chunk> free = new ArrayList<Chunk>();
+
+	/**
+	 * Constructs a new sparse grid.
+	 * @param rows the number of rows in the window
+	 * @param cols the number of columns in the window
+	 */
+	public SparseGrid(int rows, int cols) {
+		super(rows, cols, false);
+	}
+
+	@Override
+	public Grid newGrid(int rows, int cols) {
+		SparseGrid grid = new SparseGrid(rows, cols);
+		grid.setRule(getRule());
+		return grid;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalArgumentException if dead cells with no live neighbors
+	 * are born under the rule (see {@link Rule#hasB0}), since the empty parts
+	 * of the universe would not stay empty
+	 */
+	@Override
+	public void setRule(Rule rule) {
+		if (rule != null && rule.hasB0()) {
+			throw new IllegalArgumentException("Rules with B0 can't be used on an unbounded universe.");
+		}
+		super.setRule(rule);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalArgumentException if the topology is a torus, since the
+	 * universe has no edges to wrap around
+	 */
+	@Override
+	public void setTopology(Topology topology) {
+		if (topology == Topology.TORUS) {
+			throw new IllegalArgumentException("An unbounded universe can't wrap around.");
+		}
+		super.setTopology(topology);
+	}
+
+	@Override
+	public boolean isAlive(int row, int col) {
+		return isAlive((long) row, (long) col);
+	}
+
+	/**
+	 * Determines whether a cell is alive or dead. The cell does not have to be
+	 * inside of the window.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @return true if the cell is alive, false if not
+	 */
+	public boolean isAlive(long row, long col) {
+		Chunk chunk = get(row >> 6, col >> 6);
+		return chunk != null && (chunk.cells[(int) (row & 63)] & (1L << col)) != 0;
+	}
+
+	@Override
+	public void setAlive(int row, int col, boolean alive) {
+		setAlive((long) row, (long) col, alive);
+	}
+
+	/**
+	 * Marks a cell as being alive or dead. The cell does not have to be inside
+	 * of the window.
+	 * @param row the cell's row
+	 * @param col the cell's column
+	 * @param alive true to mark the cell as alive, false to mark it as dead
+	 */
+	public void setAlive(long row, long col, boolean alive) {
+		Chunk chunk = get(row >> 6, col >> 6);
+		if (chunk == null) {
+			if (!alive) {
+				return;
+			}
+			chunk = put(row >> 6, col >> 6);
+		}
+
+		int r = (int) (row & 63);
+		if (alive) {
+			chunk.cells[r] |= 1L << col;
+		} else {
+			chunk.cells[r] &= ~(1L << col);
+		}
+	}
+
+	@Override
+	public int getAliveSurrounding(int row, int col) {
+		int count = 0;
+		for (long i = row - 1L; i <= row + 1L; i++) {
+			for (long j = col - 1L; j <= col + 1L; j++) {
+				if ((i != row || j != col) && isAlive(i, j)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The region is calculated one chunk-wide strip of each row at a time.
+	 * Only the cells inside of the region are calculated, so use
+	 * {@link #computeNext(SparseGrid, WorkerPool)} to calculate the whole
+	 * universe. If the next grid is also a sparse grid, regions must not be
+	 * calculated into it from more than one thread at a time, since its hash
+	 * table of chunks is not thread-safe.
+	 */
+	@Override
+	public boolean computeNext(Grid next, int rowStart, int rowEnd, int colStart, int colEnd) {
+		if (rowStart >= rowEnd || colStart >= colEnd) {
+			return false;
+		}
+
+		Rule rule = getRule();
+		SparseGrid sparse = (next instanceof SparseGrid) ? (SparseGrid) next : null;
+		long chunkColStart = colStart >> 6;
+		long chunkColEnd = (colEnd - 1L) >> 6;
+		boolean changed = false;
+		for (long row = rowStart; row < rowEnd; row++) {
+			for (long chunkCol = chunkColStart; chunkCol <= chunkColEnd; chunkCol++) {
+				//the columns of the chunk that are inside the region
+				long first = Math.max(colStart, chunkCol * CHUNK_SIZE);
+				long last = Math.min(colEnd, (chunkCol + 1) * CHUNK_SIZE);
+				long mask = (last - first == CHUNK_SIZE) ? -1L : ((1L << (last - first)) - 1) << first;
+
+				long cells = word(row, chunkCol);
+				long nextCells = BitGrid.nextWord(word(row - 1, chunkCol - 1), word(row - 1, chunkCol), word(row - 1, chunkCol + 1), word(row, chunkCol - 1), cells, word(row, chunkCol + 1), word(row + 1, chunkCol - 1), word(row + 1, chunkCol), word(row + 1, chunkCol + 1), rule);
+				changed |= ((cells ^ nextCells) & mask) != 0;
+
+				if (sparse != null) {
+					sparse.setWord(row, chunkCol, nextCells, mask);
+					continue;
+				}
+				for (long col = first; col < last; col++) {
+					next.setAlive((int) row, (int) col, (nextCells & (1L << col)) != 0);
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Gets the number of live cells in the universe.
+	 * @return the number of live cells
+	 */
+	public long getPopulation() {
+		long population = 0;
+		for (Chunk head : table) {
+			for (Chunk chunk = head; chunk != null; chunk = chunk.chain) {
+				for (long row : chunk.cells) {
+					population += Long.bitCount(row);
+				}
+			}
+		}
+		return population;
+	}
+
+	/**
+	 * Gets the number of chunks that are allocated.
+	 * @return the number of chunks
+	 */
+	public int getChunkCount() {
+		return size;
+	}
+
+	/**
+	 * Calculates the next state of the universe and stores it in another
+	 * sparse grid. Each worker in the pool calculates every Nth chunk.
+	 * @param next the grid to store the next state in (its contents are
+	 * replaced)
+	 * @param pool the workers
+	 */
+	public void computeNext(final SparseGrid next, WorkerPool pool) {
+		//allocate the empty chunks that cells could come to life in
+		final Chunk chunks[] = toArray();
+		for (Chunk chunk : chunks) {
+			allocateNeighbors(chunk);
+		}
+
+		final Chunk work[] = toArray();
+		final Chunk results[] = new Chunk[work.length];
+		next.clear();
+		for (int i = 0; i < results.length; i++) {
+			results[i] = next.allocate();
+		}
+
+		pool.run(new WorkerPool.Task() {
+			@Override
+			public void run(int worker, int workers) {
+				for (int i = worker; i < work.length; i += workers) {
+					computeNext(work[i], results[i]);
+				}
+			}
+		});
+
+		//keep the chunks that have live cells
+		for (int i = 0; i < results.length; i++) {
+			Chunk result = results[i];
+			if (result.isEmpty()) {
+				next.free.add(result);
+			} else {
+				result.row = work[i].row;
+				result.col = work[i].col;
+				next.insert(result);
+			}
+		}
+
+		//don't hold on to more spare chunks than are being used
+		if (next.free.size() > next.size) {
+			next.free.subList(next.size, next.free.size()).clear();
+		}
+	}
+
+	/**
+	 * Calculates the next state of a chunk.
+	 * @param chunk the chunk
+	 * @param result the chunk to store the next state in
+	 */
+	private void computeNext(Chunk chunk, Chunk result) {
+		long north[] = cells(chunk.row - 1, chunk.col);
+		long south[] = cells(chunk.row + 1, chunk.col);
+		long west[] = cells(chunk.row, chunk.col - 1);
+		long east[] = cells(chunk.row, chunk.col + 1);
+		long northWest[] = cells(chunk.row - 1, chunk.col - 1);
+		long northEast[] = cells(chunk.row - 1, chunk.col + 1);
+		long southWest[] = cells(chunk.row + 1, chunk.col - 1);
+		long southEast[] = cells(chunk.row + 1, chunk.col + 1);
+
+		Rule rule = getRule();
+		long cells[] = chunk.cells;
+		for (int r = 0; r < CHUNK_SIZE; r++) {
+			long aPrev, a, aNext, cPrev, c, cNext;
+			if (r == 0) {
+				aPrev = northWest[CHUNK_SIZE - 1];
+				a = north[CHUNK_SIZE - 1];
+				aNext = northEast[CHUNK_SIZE - 1];
+			} else {
+				aPrev = west[r - 1];
+				a = cells[r - 1];
+				aNext = east[r - 1];
+			}
+			if (r == CHUNK_SIZE - 1) {
+				cPrev = southWest[0];
+				c = south[0];
+				cNext = southEast[0];
+			} else {
+				cPrev = west[r + 1];
+				c = cells[r + 1];
+				cNext = east[r + 1];
+			}
+
+			result.cells[r] = BitGrid.nextWord(aPrev, a, aNext, west[r], cells[r], east[r], cPrev, c, cNext, rule);
+		}
+	}
+
+	/**
+	 * Makes sure that the chunks next to a chunk exist if any live cells are
+	 * touching them.
+	 * @param chunk the chunk
+	 */
+	private void allocateNeighbors(Chunk chunk) {
+		long cells[] = chunk.cells;
+		long westEdge = 0, eastEdge = 0;
+		for (long row : cells) {
+			westEdge |= row & 1;
+			eastEdge |= row >>> 63;
+		}
+		long top = cells[0];
+		long bottom = cells[CHUNK_SIZE - 1];
+
+		if (top != 0) {
+			allocate(chunk.row - 1, chunk.col);
+		}
+		if (bottom != 0) {
+			allocate(chunk.row + 1, chunk.col);
+		}
+		if (westEdge != 0) {
+			allocate(chunk.row, chunk.col - 1);
+		}
+		if (eastEdge != 0) {
+			allocate(chunk.row, chunk.col + 1);
+		}
+		if ((top & 1) != 0) {
+			allocate(chunk.row - 1, chunk.col - 1);
+		}
+		if ((top >>> 63) != 0) {
+			allocate(chunk.row - 1, chunk.col + 1);
+		}
+		if ((bottom & 1) != 0) {
+			allocate(chunk.row + 1, chunk.col - 1);
+		}
+		if ((bottom >>> 63) != 0) {
+			allocate(chunk.row + 1, chunk.col + 1);
+		}
+	}
+
+	/**
+	 * Creates an empty chunk if the chunk doesn't exist yet.
+	 * @param row the chunk's row
+	 * @param col the chunk's column
+	 */
+	private void allocate(long row, long col) {
+		if (get(row, col) == null) {
+			put(row, col);
+		}
+	}
+
+	/**
+	 * Gets the cells of one row of a chunk.
+	 * @param row the row
+	 * @param chunkCol the chunk's column
+	 * @return the cells (all dead if the chunk doesn't exist)
+	 */
+	private long word(long row, long chunkCol) {
+		Chunk chunk = get(row >> 6, chunkCol);
+		return (chunk == null) ? 0 : chunk.cells[(int) (row & 63)];
+	}
+
+	/**
+	 * Replaces some of the cells in one row of a chunk, creating the chunk if
+	 * any of the cells are alive.
+	 * @param row the row
+	 * @param chunkCol the chunk's column
+	 * @param cells the new cells
+	 * @param mask the cells to replace
+	 */
+	private void setWord(long row, long chunkCol, long cells, long mask) {
+		Chunk chunk = get(row >> 6, chunkCol);
+		if (chunk == null) {
+			if ((cells & mask) == 0) {
+				return;
+			}
+			chunk = put(row >> 6, chunkCol);
+		}
+
+		int r = (int) (row & 63);
+		chunk.cells[r] = (chunk.cells[r] & ~mask) | (cells & mask);
+	}
+
+	/**
+	 * Gets the cells of a chunk.
+	 * @param row the chunk's row
+	 * @param col the chunk's column
+	 * @return the cells (all dead if the chunk doesn't exist)
+	 */
+	private long[] cells(long row, long col) {
+		Chunk chunk = get(row, col);
+		return (chunk == null) ? EMPTY : chunk.cells;
+	}
+
+	/**
+	 * Gets a chunk from the hash table.
+	 * @param row the chunk's row
+	 * @param col the chunk's column
+	 * @return the chunk or null if it doesn't exist
+	 */
+	private Chunk get(long row, long col) {
+		for (Chunk chunk = table[index(row, col)]; chunk != null; chunk = chunk.chain) {
+			if (chunk.row == row && chunk.col == col) {
+				return chunk;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates an empty chunk and adds it to the hash table.
+	 * @param row the chunk's row
+	 * @param col the chunk's column
+	 * @return the chunk
+	 */
+	private Chunk put(long row, long col) {
+		Chunk chunk = allocate();
+		chunk.row = row;
+		chunk.col = col;
+		insert(chunk);
+		return chunk;
+	}
+
+	/**
+	 * Gets an empty chunk, reusing an old one if possible.
+	 * @return the chunk
+	 */
+	private Chunk allocate() {
+		if (free.isEmpty()) {
+			return new Chunk();
+		}
+		Chunk chunk = free.remove(free.size() - 1);
+		Arrays.fill(chunk.cells, 0);
+		return chunk;
+	}
+
+	/**
+	 * Adds a chunk to the hash table.
+	 * @param chunk the chunk
+	 */
+	private void insert(Chunk chunk) {
+		if (size >= table.length * 3 / 4) {
+			Chunk old[] = toArray();
+			table = new Chunk[table.length * 2];
+			for (Chunk c : old) {
+				int index = index(c.row, c.col);
+				c.chain = table[index];
+				table[index] = c;
+			}
+		}
+
+		int index = index(chunk.row, chunk.col);
+		chunk.chain = table[index];
+		table[index] = chunk;
+		size++;
+	}
+
+	/**
+	 * Removes all the chunks from the hash table, keeping them so they can be
+	 * reused.
+	 */
+	private void clear() {
+		for (int i = 0; i < table.length; i++) {
+			for (Chunk chunk = table[i]; chunk != null; chunk = chunk.chain) {
+				free.add(chunk);
+			}
+			table[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Gets all the chunks in the hash table.
+	 * @return the chunks
+	 */
+	private Chunk[] toArray() {
+		Chunk chunks[] = new Chunk[size];
+		int i = 0;
+		for (Chunk head : table) {
+			for (Chunk chunk = head; chunk != null; chunk = chunk.chain) {
+				chunks[i++] = chunk;
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Gets the hash table bucket of a chunk.
+	 * @param row the chunk's row
+	 * @param col the chunk's column
+	 * @return the bucket
+	 */
+	private int index(long row, long col) {
+		long h = row * 0x9E3779B97F4A7C15L + col;
+		h *= 0xC2B2AE3D27D4EB4FL;
+		return (int) (h >>> 32) & (table.length - 1);
+	}
+}
@@ -0,0 +1,143 @@
+package com.mangst.gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * Moves a tile of a bit-packed grid several generations ahead at once (see
+ * {@link GameOfLife#setTemporalBlocking}). The tile is copied into two small
+ * scratch arrays along with a halo of K cells around it, the scratch arrays
+ * are advanced K generations, and only the inside of the tile is copied back.
+ * This way, the grids are only read and written once every K generations
+ * instead of every generation, and the generations in between are calculated
+ * in the cache.
+ * <p>
+ * The cells outside of the scratch arrays are treated as dead, so the cells at
+ * the edge of the halo are wrong after the first generation. The wrong cells
+ * spread inwards one cell per generation, so after K generations they have
+ * just reached the edge of the tile. The halo is one word (64 cells) wide on
+ * the left and right, so K can be at most 64. Each generation, the rows of the
+ * halo whose cells will never be needed again are skipped.
+ * <p>
+ * Each worker thread has its own instance, since the scratch arrays are reused
+ * for every tile.
+ * @author mangst
+ */
+class TemporalBlock {
+	/**
+	 * The most generations that a tile can be moved ahead at once.
+	 */
+	public static final int MAX_GENERATIONS = 64;
+
+	/**
+	 * The scratch arrays, each holding the tile and its halo, with a dead row
+	 * above and below.
+	 */
+	private long src[] = new long[0], dest[] = new long[0];
+
+	/**
+	 * Determines whether a grid can be moved ahead in tiles.
+	 * @param grid the grid
+	 * @return true if it can, false if not
+	 */
+	public static boolean isSupported(Grid grid) {
+		return grid instanceof BitGrid || grid instanceof OffHeapGrid;
+	}
+
+	/**
+	 * Calculates the state of a tile several generations ahead.
+	 * @param current the current grid
+	 * @param next the grid to write the tile to (must be the same type as the
+	 * current grid)
+	 * @param generations the number of generations (1 to
+	 * {@link #MAX_GENERATIONS})
+	 * @param rowStart the first row of the tile (inclusive)
+	 * @param rowEnd the last row of the tile (exclusive)
+	 * @param wordStart the first word of the tile (inclusive, each row holds
+	 * 64 cells per word)
+	 * @param wordEnd the last word of the tile (exclusive)
+	 */
+	public void advance(Grid current, Grid next, int generations, int rowStart, int rowEnd, int wordStart, int wordEnd) {
+		int rows = current.getRows();
+		int wordsPerRow = BitGrid.wordsPerRow(current.getCols());
+		RowKernel kernel = (current instanceof BitGrid) ? ((BitGrid) current).getKernel() : ((OffHeapGrid) current).getKernel();
+		Rule rule = current.getRule();
+
+		//the halo, clipped to the grid (the cells outside of the grid are always dead, so they don't need one)
+		int haloRowStart = Math.max(0, rowStart - generations);
+		int haloRowEnd = Math.min(rows, rowEnd + generations);
+		int first = Math.max(0, wordStart - 1);
+		int last = Math.min(wordsPerRow, wordEnd + 1);
+		int len = last - first;
+		int height = haloRowEnd - haloRowStart;
+		int size = (height + 2) * len;
+		if (src.length < size) {
+			src = new long[size];
+			dest = new long[size];
+		}
+
+		//the dead rows
+		Arrays.fill(src, 0, len, 0);
+		Arrays.fill(src, (height + 1) * len, size, 0);
+		Arrays.fill(dest, 0, len, 0);
+		Arrays.fill(dest, (height + 1) * len, size, 0);
+
+		for (int i = haloRowStart; i < haloRowEnd; i++) {
+			getWords(current, i, first, last, src, (i - haloRowStart + 1) * len);
+		}
+
+		//the last word of the scratch rows is only the last word of the grid if the halo is clipped
+		long lastWordMask = (last == wordsPerRow) ? BitGrid.lastWordMask(current.getCols()) : -1L;
+		for (int g = 1; g <= generations; g++) {
+			//the rows of the halo that will still be needed after this generation
+			int reach = generations - g;
+			int from = Math.max(haloRowStart, rowStart - reach);
+			int to = Math.min(haloRowEnd, rowEnd + reach);
+			for (int i = from; i < to; i++) {
+				int r = (i - haloRowStart + 1) * len;
+				kernel.nextRow(src, r - len, r, r + len, dest, r, len, lastWordMask, 0, len * 64, rule);
+			}
+
+			long temp[] = src;
+			src = dest;
+			dest = temp;
+		}
+
+		for (int i = rowStart; i < rowEnd; i++) {
+			setWords(next, i, wordStart, wordEnd, src, (i - haloRowStart + 1) * len + wordStart - first);
+		}
+	}
+
+	/**
+	 * Copies part of a row of a bit-packed grid into an array.
+	 * @param grid the grid
+	 * @param row the row
+	 * @param wordStart the first word to copy (inclusive)
+	 * @param wordEnd the last word to copy (exclusive)
+	 * @param dest the array to copy to
+	 * @param offset the index to copy to
+	 */
+	private static void getWords(Grid grid, int row, int wordStart, int wordEnd, long dest[], int offset) {
+		if (grid instanceof BitGrid) {
+			((BitGrid) grid).getWords(row, wordStart, wordEnd, dest, offset);
+		} else {
+			((OffHeapGrid) grid).getWords(row, wordStart, wordEnd, dest, offset);
+		}
+	}
+
+	/**
+	 * Copies an array into part of a row of a bit-packed grid.
+	 * @param grid the grid
+	 * @param row the row
+	 * @param wordStart the first word to copy to (inclusive)
+	 * @param wordEnd the last word to copy to (exclusive)
+	 * @param src the array to copy from
+	 * @param offset the index to copy from
+	 */
+	private static void setWords(Grid grid, int row, int wordStart, int wordEnd, long src[], int offset) {
+		if (grid instanceof BitGrid) {
+			((BitGrid) grid).setWords(row, wordStart, wordEnd, src, offset);
+		} else {
+			((OffHeapGrid) grid).setWords(row, wordStart, wordEnd, src, offset);
+		}
+	}
+}
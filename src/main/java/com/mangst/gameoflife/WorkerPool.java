@@ -0,0 +1,315 @@
+package com.mangst.gameoflife;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed-size pool of long-lived threads that work on a task together. The
+ * threads are started once and then reused for every task, which avoids the
+ * cost of creating new threads every time the game iterates. The thread that
+ * calls {@link #run} does its share of the work too, so a pool of size N only
+ * starts N-1 threads.
+ * <p>
+ * Alternatively, the pool can borrow threads from an {@link Executor} instead
+ * of starting its own, so that many pools can share the same threads (or use
+ * virtual threads, see {@link #newVirtualThreadExecutor}).
+ * @author mangst
+ */
+public class WorkerPool implements AutoCloseable {
+	/**
+	 * A task that is divided up amongst the workers in the pool.
+	 * @author mangst
+	 */
+	public interface Task {
+		/**
+		 * Does this worker's share of the task.
+		 * @param worker the worker's number (0 to workers-1)
+		 * @param workers the total number of workers
+		 */
+		void run(int worker, int workers);
+	}
+
+	/**
+	 * The number of workers in the pool (including the calling thread).
+	 */
+	private final int size;
+
+	/**
+	 * The threads in the pool (empty if an executor is used).
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * The executor that runs the workers (null if the pool has its own
+	 * threads).
+	 */
+	private final Executor executor;
+
+	/**
+	 * Used to start the workers on a task and to wait for them to finish. Each
+	 * task takes two phases: one to start it and one to finish it.
+	 */
+	private final Phaser phaser;
+
+	/**
+	 * The task the workers are currently working on.
+	 */
+	private volatile Task task;
+
+	/**
+	 * Set when the pool is shut down.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * The first exception thrown by a worker during the current task.
+	 */
+	private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+	/**
+	 * Constructs a new worker pool.
+	 * @param size the number of workers (including the thread that calls
+	 * {@link #run})
+	 */
+	public WorkerPool(int size) {
+		this(size, null);
+	}
+
+	/**
+	 * Constructs a new worker pool that runs its workers on an executor
+	 * instead of starting its own threads. Each time a task is run, the
+	 * task is split into the given number of parts and submitted to the
+	 * executor. The calling thread runs any parts that the executor hasn't
+	 * started yet, so it's safe to run tasks from inside of the executor's
+	 * own threads.
+	 * @param size the number of parts to split each task into
+	 * @param executor the executor or null for the pool to start its own
+	 * threads
+	 */
+	public WorkerPool(int size, Executor executor) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1.");
+		}
+
+		this.size = size;
+		this.executor = executor;
+		if (executor != null) {
+			phaser = null;
+			workers = new Worker[0];
+			return;
+		}
+
+		phaser = new Phaser(size);
+		workers = new Worker[size - 1];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i + 1);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Gets the number of workers in the pool.
+	 * @return the number of workers (including the thread that calls
+	 * {@link #run})
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Runs a task on all the workers and waits for them to finish. The calling
+	 * thread acts as worker 0.
+	 * @param task the task to run
+	 * @throws IllegalStateException if the pool has been closed
+	 */
+	public void run(Task task) {
+		if (closed) {
+			throw new IllegalStateException("Worker pool has been closed.");
+		}
+
+		if (size == 1) {
+			task.run(0, 1);
+			return;
+		}
+
+		if (executor != null) {
+			runOnExecutor(task);
+			return;
+		}
+
+		this.task = task;
+		phaser.arriveAndAwaitAdvance(); //start
+		Throwable callerError = null;
+		try {
+			task.run(0, size);
+		} catch (Throwable e) {
+			callerError = e;
+		}
+		phaser.arriveAndAwaitAdvance(); //finish
+		this.task = null;
+
+		//always clear the workers' error, so it isn't thrown by the next run()
+		Throwable t = error.getAndSet(null);
+		if (callerError != null) {
+			if (t != null) {
+				callerError.addSuppressed(t);
+			}
+			t = callerError;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * Runs a task on the executor.
+	 * @param task the task to run
+	 */
+	private void runOnExecutor(final Task task) {
+		final AtomicInteger nextPart = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(size);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Runnable runner = new Runnable() {
+			@Override
+			public void run() {
+				int part;
+				while ((part = nextPart.getAndIncrement()) < size) {
+					try {
+						task.run(part, size);
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					} finally {
+						finished.countDown();
+					}
+				}
+			}
+		};
+
+		for (int i = 1; i < size; i++) {
+			executor.execute(runner);
+		}
+		runner.run();
+
+		//only the parts that other threads have already started are left
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable t = error.get();
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 * Virtual threads are cheap enough that a pool doesn't need to keep its
+	 * own threads around, so thousands of games can run at once. The caller
+	 * is responsible for shutting it down.
+	 * @return the executor
+	 * @throws UnsupportedOperationException if the JVM does not support
+	 * virtual threads (Java 21 or later is required)
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			//use reflection so that the project can still be built with older JDKs
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later.", e);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Virtual threads could not be created.", e);
+		}
+	}
+
+	/**
+	 * Stops all the threads in the pool. Does nothing if the pool is already
+	 * closed.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (size == 1 || executor != null) {
+			return;
+		}
+
+		//wake the workers up so they can see that the pool is closed
+		phaser.arriveAndDeregister();
+		for (Worker w : workers) {
+			try {
+				w.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * A thread in the pool.
+	 * @author mangst
+	 */
+	private class Worker extends Thread {
+		/**
+		 * This worker's number.
+		 */
+		private final int num;
+
+		/**
+		 * Constructs a new worker.
+		 * @param num the worker's number
+		 */
+		public Worker(int num) {
+			super("gameoflife-worker-" + num);
+			this.num = num;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				phaser.arriveAndAwaitAdvance(); //start
+				if (closed) {
+					phaser.arriveAndDeregister();
+					return;
+				}
+
+				try {
+					task.run(num, size);
+				} catch (Throwable t) {
+					error.compareAndSet(null, t);
+				}
+
+				phaser.arriveAndAwaitAdvance(); //finish
+			}
+		}
+	}
+}
@@ -111,6 +111,37 @@ public class ArgumentsTest {
 		Assert.assertEquals(expected, actual);
 	}
 
+	@Test
+	public void testValueLong() {
+		Arguments args = new Arguments(new String[] { "--bytes=10000000000", "-m=-5", "-e=", "-n" });
+		Long actual, expected;
+
+		//long arg with value
+		actual = args.valueLong("b", "bytes", 11L);
+		expected = 10000000000L;
+		Assert.assertEquals(expected, actual);
+
+		//short arg with value
+		actual = args.valueLong("m", "month", 11L);
+		expected = -5L;
+		Assert.assertEquals(expected, actual);
+
+		//non-existent arg with default value
+		actual = args.valueLong("f", "foo", 11L);
+		expected = 11L;
+		Assert.assertEquals(expected, actual);
+
+		//empty arg
+		actual = args.valueLong("e", "empty");
+		expected = 0L;
+		Assert.assertEquals(expected, actual);
+
+		//no value
+		actual = args.valueLong("n", "novalue");
+		expected = null;
+		Assert.assertEquals(expected, actual);
+	}
+
 	@Test
 	public void testValueDouble() {
 		Arguments args = new Arguments(new String[] { "--total=24.99", "-m=32.5", "-e=", "-n", "-abc=123.456" });
@@ -0,0 +1,210 @@
+package com.mangst.gameoflife;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the BitGrid class.
+ * @author mangst
+ */
+public class BitGridTest {
+	/**
+	 * The grid should start with all cells in the "dead" state.
+	 */
+	@Test
+	public void testAllDead() {
+		BitGrid grid = new BitGrid(10, 130);
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				Assert.assertFalse(grid.isAlive(i, j));
+			}
+		}
+	}
+
+	/**
+	 * Tests the getRows() and getCols() methods.
+	 */
+	@Test
+	public void testGetRowsGetCols() {
+		BitGrid grid = new BitGrid(10, 70);
+		Assert.assertEquals(10, grid.getRows());
+		Assert.assertEquals(70, grid.getCols());
+	}
+
+	/**
+	 * Tests the setAlive() and isAlive() methods on both sides of a word
+	 * boundary.
+	 */
+	@Test
+	public void testSetAliveIsAlive() {
+		BitGrid grid = new BitGrid(3, 130);
+
+		for (int col : new int[] { 0, 63, 64, 127, 128, 129 }) {
+			grid.setAlive(1, col, true);
+			Assert.assertTrue(grid.isAlive(1, col));
+			Assert.assertFalse(grid.isAlive(0, col));
+			Assert.assertFalse(grid.isAlive(2, col));
+
+			grid.setAlive(1, col, false);
+			Assert.assertFalse(grid.isAlive(1, col));
+		}
+	}
+
+	/**
+	 * Setting a whole row should give the same result as setting each cell,
+	 * and bits past the last column should be ignored.
+	 */
+	@Test
+	public void testSetRow() {
+		long cells[] = { 0x8000000000000001L, -1L, -1L };
+		Grid expected = new Grid(3, 130);
+		expected.setRow(1, cells);
+		BitGrid grid = new BitGrid(3, 130);
+		grid.setRow(1, cells);
+		GameOfLifeTest.assertGridEquals(expected, grid);
+		Assert.assertEquals(68, GameOfLifeTest.countAlive(grid));
+
+		//the bits past the last column would come back to life in the next iteration if they were stored
+		BitGrid next = new BitGrid(3, 130);
+		grid.computeNext(next, 0, 3, 0, 130);
+		Assert.assertFalse(next.isAlive(0, 129));
+	}
+
+	/**
+	 * Live cells should be counted correctly in regions that don't line up
+	 * with the words.
+	 */
+	@Test
+	public void testCountAlive() {
+		Grid expected = new Grid(5, 200);
+		BitGrid grid = new BitGrid(5, 200);
+		OffHeapGrid offHeap = new OffHeapGrid(5, 200);
+		for (int i = 0; i < 5; i++) {
+			for (int j = i; j < 200; j += 3) {
+				expected.setAlive(i, j, true);
+				grid.setAlive(i, j, true);
+				offHeap.setAlive(i, j, true);
+			}
+		}
+
+		int regions[][] = { { 0, 5, 0, 200 }, { 1, 4, 3, 61 }, { 0, 5, 63, 65 }, { 2, 3, 64, 128 }, { 0, 5, 70, 199 }, { 0, 5, 5, 5 } };
+		for (int region[] : regions) {
+			int count = expected.countAlive(region[0], region[1], region[2], region[3]);
+			Assert.assertEquals(count, grid.countAlive(region[0], region[1], region[2], region[3]));
+			Assert.assertEquals(count, offHeap.countAlive(region[0], region[1], region[2], region[3]));
+		}
+	}
+
+	/**
+	 * Test the getAliveSurrounding() method across a word boundary and at the
+	 * edges of the grid.
+	 */
+	@Test
+	public void testGetAliveSurrounding() {
+		BitGrid grid = new BitGrid(3, 128);
+		grid.setAlive(0, 63, true);
+		grid.setAlive(1, 63, true);
+		grid.setAlive(2, 64, true);
+		grid.setAlive(1, 127, true);
+
+		Assert.assertEquals(3, grid.getAliveSurrounding(1, 64));
+		Assert.assertEquals(2, grid.getAliveSurrounding(1, 63));
+		Assert.assertEquals(0, grid.getAliveSurrounding(1, 0));
+		Assert.assertEquals(1, grid.getAliveSurrounding(0, 127));
+		Assert.assertEquals(0, grid.getAliveSurrounding(0, 125));
+		Assert.assertEquals(1, grid.getAliveSurrounding(2, 127));
+	}
+
+	/**
+	 * The bit-packed calculation should produce the same results as the
+	 * regular grid, including regions that do not line up with word
+	 * boundaries.
+	 */
+	@Test
+	public void testComputeNext() {
+		Random random = new Random(42);
+		int rows = 37, cols = 150;
+		Grid expected = new Grid(rows, cols);
+		Grid actual = new BitGrid(rows, cols);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				boolean alive = random.nextBoolean();
+				expected.setAlive(i, j, alive);
+				actual.setAlive(i, j, alive);
+			}
+		}
+
+		Grid expectedNext = expected.newGrid(rows, cols);
+		Grid actualNext = actual.newGrid(rows, cols);
+		for (int generation = 0; generation < 10; generation++) {
+			expected.computeNext(expectedNext, 0, rows, 0, cols);
+
+			//calculate the bit grid in uneven regions
+			int[] colSplits = { 0, 5, 64, 100, 128, cols };
+			for (int k = 0; k < colSplits.length - 1; k++) {
+				actual.computeNext(actualNext, 0, 20, colSplits[k], colSplits[k + 1]);
+				actual.computeNext(actualNext, 20, rows, colSplits[k], colSplits[k + 1]);
+			}
+
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < cols; j++) {
+					Assert.assertEquals(expectedNext.isAlive(i, j), actualNext.isAlive(i, j));
+				}
+			}
+
+			Grid temp = expected;
+			expected = expectedNext;
+			expectedNext = temp;
+			temp = actual;
+			actual = actualNext;
+			actualNext = temp;
+		}
+	}
+
+	/**
+	 * The vector kernel should produce the same results as the scalar kernel,
+	 * for whole rows and for regions that only partly cover the vectors. If
+	 * the Vector API isn't available, the scalar kernel is compared against
+	 * itself.
+	 */
+	@Test
+	public void testVectorKernel() {
+		Random random = new Random(11);
+		int rows = 20, cols = 64 * 21 + 9;
+		BitGrid grid = new BitGrid(rows, cols);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				grid.setAlive(i, j, random.nextBoolean());
+			}
+		}
+
+		BitGrid expected = (BitGrid) grid.newGrid(rows, cols);
+		grid.computeNext(expected, 0, rows, 0, cols);
+
+		grid.setKernel(RowKernel.vector());
+		BitGrid actual = (BitGrid) grid.newGrid(rows, cols);
+		Assert.assertSame(grid.getKernel(), actual.getKernel());
+		int[] colSplits = { 0, 3, 64, 200, 640, 641, cols };
+		for (int k = 0; k < colSplits.length - 1; k++) {
+			grid.computeNext(actual, 0, rows, colSplits[k], colSplits[k + 1]);
+		}
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				Assert.assertEquals(expected.isAlive(i, j), actual.isAlive(i, j));
+			}
+		}
+
+		//an unchanged grid should be reported as unchanged
+		BitGrid still = new BitGrid(4, cols);
+		still.setKernel(RowKernel.vector());
+		for (int j = 0; j < cols - 1; j += 3) {
+			still.setAlive(1, j, true);
+			still.setAlive(1, j + 1, true);
+			still.setAlive(2, j, true);
+			still.setAlive(2, j + 1, true);
+		}
+		Assert.assertFalse(still.computeNext(still.newGrid(4, cols), 0, 4, 0, cols));
+	}
+}
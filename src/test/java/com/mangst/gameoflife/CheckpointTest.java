@@ -0,0 +1,173 @@
+package com.mangst.gameoflife;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the Checkpoint class.
+ * @author mangst
+ */
+public class CheckpointTest {
+	/**
+	 * Holds the checkpoint files.
+	 */
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * A restored game should continue exactly where the original game left
+	 * off, including the noise.
+	 */
+	@Test
+	public void testRestore() throws Exception {
+		assertRestore(new Grid(40, 70), new Grid(40, 70), false);
+		assertRestore(new BitGrid(40, 70), new BitGrid(40, 70), true);
+		assertRestore(new Grid(40, 70), new BitGrid(40, 70), true);
+	}
+
+	/**
+	 * Off-heap grids should be saved and restored too, and the snapshot
+	 * shouldn't change when the game keeps iterating before it's written.
+	 */
+	@Test
+	public void testRestoreOffHeap() throws Exception {
+		File directory = temp.newFolder("grids");
+		assertRestore(new OffHeapGrid(40, 70), new OffHeapGrid(40, 70), true);
+		assertRestore(new OffHeapGrid(40, 70, directory), new OffHeapGrid(40, 70, directory), false);
+		assertRestore(new OffHeapGrid(40, 70), new Grid(40, 70), true);
+
+		GameOfLife gameOfLife = new GameOfLife(new OffHeapGrid(30, 130), 0.5);
+		try {
+			Grid expected = GameOfLifeTest.copy(gameOfLife.getGrid());
+			Checkpoint checkpoint = gameOfLife.checkpoint();
+			gameOfLife.iterate(3);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			checkpoint.write(out, true);
+			Grid copy = new OffHeapGrid(30, 130);
+			Checkpoint.read(new ByteArrayInputStream(out.toByteArray())).copyTo(copy);
+			GameOfLifeTest.assertGridEquals(expected, copy);
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Compression should make a mostly empty grid much smaller.
+	 */
+	@Test
+	public void testCompress() throws Exception {
+		Grid grid = new BitGrid(512, 512);
+		grid.setAlive(100, 100, true);
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		Checkpoint checkpoint = gameOfLife.checkpoint();
+
+		ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+		checkpoint.write(uncompressed, false);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		checkpoint.write(compressed, true);
+		Assert.assertTrue(uncompressed.size() > 512 * 512 / 8);
+		Assert.assertTrue(compressed.size() < 2048);
+
+		Checkpoint read = Checkpoint.read(new ByteArrayInputStream(compressed.toByteArray()));
+		Grid copy = new Grid(512, 512);
+		read.copyTo(copy);
+		Assert.assertEquals(1, GameOfLifeTest.countAlive(copy));
+		Assert.assertTrue(copy.isAlive(100, 100));
+	}
+
+	/**
+	 * Tests saving to and loading from a file.
+	 */
+	@Test
+	public void testSaveLoad() throws Exception {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(30, 30), 0.5);
+		try {
+			gameOfLife.iterate(5);
+			File file = new File(temp.getRoot(), "game.checkpoint");
+			gameOfLife.checkpoint().save(file, true);
+			gameOfLife.checkpoint().save(file, true); //overwrite
+			Assert.assertFalse(new File(temp.getRoot(), "game.checkpoint.tmp").exists());
+
+			Checkpoint checkpoint = Checkpoint.load(file);
+			Assert.assertEquals(5, checkpoint.getIterationCount());
+			Grid copy = new Grid(30, 30);
+			checkpoint.copyTo(copy);
+			GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), copy);
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * A file that isn't a checkpoint should be rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadInvalid() throws Exception {
+		Checkpoint.read(new ByteArrayInputStream("x..x.\n.xx..".getBytes()));
+	}
+
+	/**
+	 * A checkpoint with a version this class doesn't know about should be
+	 * rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadUnsupportedVersion() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new GameOfLife(new Grid(10, 10)).checkpoint().write(out, false);
+		byte bytes[] = out.toByteArray();
+		bytes[7]++;
+		Checkpoint.read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * A checkpoint can't be restored into a grid of a different size.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRestoreWrongSize() {
+		Checkpoint checkpoint = new GameOfLife(new Grid(10, 10)).checkpoint();
+		new GameOfLife(new Grid(10, 11)).restore(checkpoint);
+	}
+
+	/**
+	 * Runs a game with noise, saves a checkpoint, and checks that a game
+	 * restored from the checkpoint produces the same results as the original.
+	 * @param start the grid of the original game
+	 * @param restored the grid of the restored game
+	 * @param compress true to compress the checkpoint
+	 */
+	private static void assertRestore(Grid start, Grid restored, boolean compress) throws IOException {
+		GameOfLife original = new GameOfLife(start, 0.3);
+		GameOfLife copy = new GameOfLife(restored);
+		try {
+			original.setNoise(7);
+			original.iterate(10);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			original.checkpoint().write(out, compress);
+			Checkpoint checkpoint = Checkpoint.read(new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertEquals(start.getRows(), checkpoint.getRows());
+			Assert.assertEquals(start.getCols(), checkpoint.getCols());
+			Assert.assertEquals(10, checkpoint.getIterationCount());
+			Assert.assertEquals(7, checkpoint.getNoise());
+
+			copy.setTileSize(8);
+			copy.restore(checkpoint);
+			Assert.assertEquals(10, copy.getIterationCount());
+			Assert.assertEquals(7, copy.getNoise());
+			GameOfLifeTest.assertGridEquals(original.getGrid(), copy.getGrid());
+
+			GameOfLifeTest.assertGridEquals(original.iterate(20), copy.iterate(20));
+		} finally {
+			original.close();
+			copy.close();
+		}
+	}
+}
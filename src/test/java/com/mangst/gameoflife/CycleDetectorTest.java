@@ -0,0 +1,177 @@
+package com.mangst.gameoflife;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the cycle detection of the GameOfLife class.
+ * @author mangst
+ */
+public class CycleDetectorTest {
+	/**
+	 * A still life should be detected as a cycle of period 1 that starts at
+	 * the iteration it formed.
+	 */
+	@Test
+	public void testStillLife() {
+		//a pre-block, which becomes a block after one iteration
+		Grid grid = new Grid(10, 10);
+		grid.setAlive(4, 4, true);
+		grid.setAlive(4, 5, true);
+		grid.setAlive(5, 4, true);
+
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		gameOfLife.setMaxCyclePeriod(4);
+		gameOfLife.iterate();
+		Assert.assertEquals(0, gameOfLife.getCyclePeriod());
+		Assert.assertEquals(-1, gameOfLife.getCycleStart());
+		gameOfLife.iterate();
+		Assert.assertEquals(1, gameOfLife.getCyclePeriod());
+		Assert.assertEquals(1, gameOfLife.getCycleStart());
+		gameOfLife.close();
+	}
+
+	/**
+	 * Oscillators should be detected, no matter how the grid is stored or
+	 * calculated.
+	 */
+	@Test
+	public void testOscillator() {
+		assertPentadecathlon(new Grid(30, 30), 0);
+		assertPentadecathlon(new BitGrid(30, 100), 0);
+		assertPentadecathlon(new BitGrid(30, 100), 8);
+		assertPentadecathlon(new Grid(30, 30), 4);
+		assertPentadecathlon(new OffHeapGrid(30, 30), 0);
+	}
+
+	/**
+	 * Oscillators whose period is longer than the maximum should not be
+	 * detected.
+	 */
+	@Test
+	public void testMaxPeriod() {
+		Grid grid = new Grid(30, 30);
+		addPentadecathlon(grid, 10, 10);
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		gameOfLife.setMaxCyclePeriod(14);
+		gameOfLife.iterate(100);
+		Assert.assertEquals(0, gameOfLife.getCyclePeriod());
+		gameOfLife.close();
+	}
+
+	/**
+	 * The game should stop iterating once a cycle is detected.
+	 */
+	@Test
+	public void testStopOnCycle() {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(20, 20));
+		gameOfLife.setMaxCyclePeriod(1);
+		gameOfLife.setStopOnCycle(true);
+		gameOfLife.iterate(1000);
+		Assert.assertEquals(1, gameOfLife.getIterationCount());
+		Assert.assertEquals(0, gameOfLife.getCycleStart());
+		gameOfLife.close();
+	}
+
+	/**
+	 * Cycles should not be detected in generations that have noise.
+	 */
+	@Test
+	public void testNoise() {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(40, 40));
+		try {
+			gameOfLife.setMaxCyclePeriod(1);
+			gameOfLife.setNoise(1);
+			gameOfLife.iterate(3);
+			Assert.assertEquals(0, gameOfLife.getCyclePeriod());
+
+			//the noise cells die out, leaving an empty grid
+			gameOfLife.setNoise(0);
+			gameOfLife.iterate(3);
+			Assert.assertEquals(1, gameOfLife.getCyclePeriod());
+			Assert.assertEquals(0, CycleDetector.hash(gameOfLife.getGrid()));
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * The hash should be updated correctly while the game iterates and noise
+	 * is added.
+	 */
+	@Test
+	public void testIncrementalHash() {
+		assertIncrementalHash(new Grid(33, 70), 0);
+		assertIncrementalHash(new BitGrid(33, 130), 0);
+		assertIncrementalHash(new BitGrid(33, 130), 8);
+	}
+
+	/**
+	 * Cycles can't be detected when HashLife is being used.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testHashLife() {
+		GameOfLife gameOfLife = new GameOfLife(new Grid(10, 10));
+		gameOfLife.setMaxCyclePeriod(2);
+		gameOfLife.setHashLife(true);
+	}
+
+	/**
+	 * Runs a pentadecathlon (period 15) and checks that the cycle is
+	 * detected.
+	 * @param grid the grid
+	 * @param tileSize the size of the tiles (0 for no tiles)
+	 */
+	private static void assertPentadecathlon(Grid grid, int tileSize) {
+		addPentadecathlon(grid, 10, 10);
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		try {
+			gameOfLife.setThreads(3);
+			gameOfLife.setTileSize(tileSize);
+			gameOfLife.iterate(5);
+			gameOfLife.setMaxCyclePeriod(20);
+			gameOfLife.iterate(14);
+			Assert.assertEquals(0, gameOfLife.getCyclePeriod());
+			gameOfLife.iterate();
+			Assert.assertEquals(15, gameOfLife.getCyclePeriod());
+			Assert.assertEquals(5, gameOfLife.getCycleStart());
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Runs a game with noise and checks that the incrementally updated hash
+	 * always matches the hash of the whole grid.
+	 * @param grid the grid
+	 * @param tileSize the size of the tiles (0 for no tiles)
+	 */
+	private static void assertIncrementalHash(Grid grid, int tileSize) {
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.3, 5);
+		try {
+			gameOfLife.setThreads(3);
+			gameOfLife.setTileSize(tileSize);
+			gameOfLife.setNoise(7);
+			gameOfLife.setMaxCyclePeriod(8);
+			for (int i = 0; i < 30; i++) {
+				Grid current = gameOfLife.iterate();
+				Assert.assertEquals(CycleDetector.hash(current), gameOfLife.getGenerationHash());
+			}
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Adds a pentadecathlon (a period 15 oscillator) to a grid.
+	 * @param grid the grid
+	 * @param row the row of the top of the pattern
+	 * @param col the column of the left of the pattern
+	 */
+	private static void addPentadecathlon(Grid grid, int row, int col) {
+		//a row of 10 cells is one of the phases of a pentadecathlon
+		for (int j = 0; j < 10; j++) {
+			grid.setAlive(row, col + j, true);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.mangst.gameoflife;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the DeltaWriter and DeltaReader classes.
+ * @author mangst
+ */
+public class DeltaWriterTest {
+	/**
+	 * Replaying the deltas should produce the same grid as the game did for
+	 * every iteration, including the noise.
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		assertReplay(new Grid(30, 50), 0);
+		assertReplay(new BitGrid(30, 50), 0);
+		assertReplay(new BitGrid(30, 130), 8);
+		assertReplay(new Grid(30, 50), 16);
+	}
+
+	/**
+	 * An oscillator on a mostly empty grid should take a tiny fraction of the
+	 * space of writing out the whole grid every iteration.
+	 */
+	@Test
+	public void testStable() throws Exception {
+		Grid grid = new BitGrid(256, 256);
+		//blinker
+		grid.setAlive(100, 100, true);
+		grid.setAlive(100, 101, true);
+		grid.setAlive(100, 102, true);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeltaWriter writer = new DeltaWriter(out);
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		try {
+			gameOfLife.setDeltaWriter(writer);
+			gameOfLife.iterate(100);
+		} finally {
+			gameOfLife.close();
+		}
+		writer.close();
+		//less than 1% of the size of the grids packed into bits
+		Assert.assertTrue(out.size() < 100 * (256 * 256 / 8) / 100);
+
+		DeltaReader reader = new DeltaReader(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals(256, reader.getRows());
+		Assert.assertEquals(256, reader.getCols());
+		Grid replay = new Grid(256, 256);
+		Assert.assertTrue(reader.next(replay));
+		Assert.assertEquals(3, reader.getBirths());
+		Assert.assertTrue(reader.next(replay));
+		Assert.assertEquals(2, reader.getBirths());
+		Assert.assertEquals(2, reader.getDeaths());
+		Assert.assertTrue(reader.advanceTo(replay, 100));
+		Assert.assertFalse(reader.next(replay));
+		GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), replay);
+	}
+
+	/**
+	 * A stream that isn't a delta stream should be rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadInvalid() throws Exception {
+		new DeltaReader(new ByteArrayInputStream("x..x.\n.xx..".getBytes()));
+	}
+
+	/**
+	 * Deltas can't be written while HashLife is being used.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testHashLife() {
+		GameOfLife gameOfLife = new GameOfLife(new Grid(10, 10));
+		gameOfLife.setDeltaWriter(new DeltaWriter(new ByteArrayOutputStream()));
+		gameOfLife.setHashLife(true);
+	}
+
+	/**
+	 * Runs a game that writes deltas, and checks that replaying the deltas
+	 * produces the same grids.
+	 * @param grid the starting grid
+	 * @param tileSize the size of the tiles (0 for no tiles)
+	 */
+	private static void assertReplay(Grid grid, int tileSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeltaWriter writer = new DeltaWriter(out);
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.3);
+		List<Grid> expected = new ArrayList<Grid>();
+		try {
+			gameOfLife.setThreads(3);
+			gameOfLife.setTileSize(tileSize);
+			gameOfLife.setNoise(5);
+			gameOfLife.iterate(3);
+			gameOfLife.setDeltaWriter(writer);
+			expected.add(GameOfLifeTest.copy(gameOfLife.getGrid()));
+			for (int i = 0; i < 20; i++) {
+				expected.add(GameOfLifeTest.copy(gameOfLife.iterate()));
+			}
+		} finally {
+			gameOfLife.close();
+		}
+		writer.close();
+
+		DeltaReader reader = new DeltaReader(new ByteArrayInputStream(out.toByteArray()));
+		Grid replay = new Grid(reader.getRows(), reader.getCols());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertTrue(reader.next(replay));
+			Assert.assertEquals(3 + i, reader.getGeneration());
+			GameOfLifeTest.assertGridEquals(expected.get(i), replay);
+		}
+		Assert.assertFalse(reader.next(replay));
+		reader.close();
+	}
+}
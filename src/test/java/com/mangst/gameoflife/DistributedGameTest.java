@@ -0,0 +1,149 @@
+package com.mangst.gameoflife;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the DistributedGame class. Each game starts real worker processes on
+ * the local host.
+ * @author mangst
+ */
+public class DistributedGameTest {
+	/**
+	 * The slabs should be calculated exactly like the whole grid, including
+	 * across the edges between slabs.
+	 */
+	@Test
+	public void testIterate() throws Exception {
+		assertIterate(new Grid(60, 130), null, 3);
+
+		//one row per slab, so every row is a boundary row
+		assertIterate(new BitGrid(4, 70), Rule.parse("B36/S23"), 4);
+	}
+
+	/**
+	 * A view should hold the rows it was asked for, even when they come from
+	 * several slabs.
+	 */
+	@Test
+	public void testGetView() throws Exception {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(30, 100), 0.4, 3);
+		DistributedGame game = new DistributedGame(gameOfLife.getGrid(), 3);
+		try {
+			Assert.assertEquals(3, game.getWorkers());
+			gameOfLife.iterate(5);
+			game.iterate(5);
+
+			Grid view = game.getView(8, 22);
+			Assert.assertEquals(14, view.getRows());
+			Assert.assertEquals(100, view.getCols());
+			for (int i = 0; i < view.getRows(); i++) {
+				for (int j = 0; j < view.getCols(); j++) {
+					Assert.assertEquals(gameOfLife.getGrid().isAlive(i + 8, j), view.isAlive(i, j));
+				}
+			}
+			Assert.assertEquals(0, game.getView(10, 10).getRows());
+		} finally {
+			game.close();
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * A checkpoint should let a local game continue where the distributed game
+	 * left off, and vice versa.
+	 */
+	@Test
+	public void testCheckpoint() throws Exception {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(40, 70), 0.3, 5);
+		DistributedGame game = new DistributedGame(gameOfLife.getGrid(), 2);
+		try {
+			game.iterate(7);
+			Checkpoint checkpoint = game.checkpoint();
+			Assert.assertEquals(7, checkpoint.getIterationCount());
+
+			gameOfLife.iterate(7);
+			GameOfLife restored = new GameOfLife(new BitGrid(40, 70));
+			restored.restore(checkpoint);
+			Assert.assertEquals(7, restored.getIterationCount());
+			GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), restored.getGrid());
+			restored.close();
+		} finally {
+			game.close();
+		}
+
+		game = new DistributedGame(gameOfLife.getGrid(), gameOfLife.getIterationCount(), 2);
+		try {
+			Assert.assertEquals(7, game.getIterationCount());
+			gameOfLife.iterate(3);
+			game.iterate(3);
+			Assert.assertEquals(10, game.getIterationCount());
+			GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), game.getGrid());
+		} finally {
+			game.close();
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Grids that can't be split into slabs should be rejected before any
+	 * workers are started.
+	 */
+	@Test
+	public void testInvalid() throws Exception {
+		Grid torus = new BitGrid(10, 10);
+		torus.setTopology(Grid.Topology.TORUS);
+		try {
+			new DistributedGame(torus, 2);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			new DistributedGame(new SparseGrid(10, 10), 2);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			new DistributedGame(new BitGrid(3, 10), 4);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			new DistributedGame(new BitGrid(3, 10), 0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Asserts that a distributed game matches a game played in this JVM.
+	 * @param grid the starting grid
+	 * @param rule the rule (null for the default)
+	 * @param workers the number of workers
+	 */
+	private static void assertIterate(Grid grid, Rule rule, int workers) throws Exception {
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.35, 1);
+		if (rule != null) gameOfLife.setRule(rule);
+		DistributedGame game = new DistributedGame(gameOfLife.getGrid(), workers);
+		try {
+			gameOfLife.iterate();
+			game.iterate(1);
+			GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), game.getGrid());
+
+			gameOfLife.iterate(20);
+			game.iterate(20);
+			Assert.assertEquals(21, game.getIterationCount());
+			GameOfLifeTest.assertGridEquals(gameOfLife.getGrid(), game.getGrid());
+		} finally {
+			game.close();
+			gameOfLife.close();
+		}
+	}
+}
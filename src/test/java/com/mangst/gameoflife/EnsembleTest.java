@@ -0,0 +1,236 @@
+package com.mangst.gameoflife;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the Ensemble class.
+ * @author mangst
+ */
+public class EnsembleTest {
+	/**
+	 * Every board should be calculated exactly like it would be on its own,
+	 * on bounded and wrapped boards and with other rules.
+	 */
+	@Test
+	public void testStep() {
+		assertStep(Grid.Topology.BOUNDED, Rule.CONWAY);
+		assertStep(Grid.Topology.TORUS, Rule.CONWAY);
+		assertStep(Grid.Topology.BOUNDED, Rule.parse("B36/S23"));
+	}
+
+	/**
+	 * Each board should report the same cycle as cycle detection on its own
+	 * game, along with its population and hash at the generation the cycle
+	 * was found.
+	 */
+	@Test
+	public void testCycles() {
+		Ensemble ensemble = new Ensemble(12, 12, 16);
+		for (int lane = 0; lane < Ensemble.LANES; lane++) {
+			ensemble.populate(lane, lane, 0.4);
+		}
+
+		//lane 0 is empty, lane 1 is a block, and lane 2 is a blinker
+		ensemble.clear();
+		ensemble.setAlive(1, 5, 5, true);
+		ensemble.setAlive(1, 5, 6, true);
+		ensemble.setAlive(1, 6, 5, true);
+		ensemble.setAlive(1, 6, 6, true);
+		ensemble.setAlive(2, 4, 5, true);
+		ensemble.setAlive(2, 5, 5, true);
+		ensemble.setAlive(2, 6, 5, true);
+		for (int lane = 3; lane < Ensemble.LANES; lane++) {
+			ensemble.populate(lane, lane, 0.4);
+		}
+
+		Grid boards[] = new Grid[Ensemble.LANES];
+		for (int lane = 0; lane < Ensemble.LANES; lane++) {
+			boards[lane] = GameOfLifeTest.copy(ensemble.getBoard(lane));
+		}
+
+		Assert.assertEquals(-1L, ensemble.run(10000));
+		Assert.assertEquals(1, ensemble.getPeriod(0));
+		Assert.assertEquals(0, ensemble.getCycleStart(0));
+		Assert.assertEquals(0, ensemble.getPopulation(0));
+		Assert.assertEquals(0, ensemble.getHash(0));
+		Assert.assertEquals(1, ensemble.getPeriod(1));
+		Assert.assertEquals(4, ensemble.getPopulation(1));
+		Assert.assertEquals(2, ensemble.getPeriod(2));
+		Assert.assertEquals(0, ensemble.getCycleStart(2));
+
+		for (int lane = 0; lane < Ensemble.LANES; lane++) {
+			GameOfLife gameOfLife = new GameOfLife(boards[lane]);
+			gameOfLife.setThreads(1);
+			gameOfLife.setMaxCyclePeriod(16);
+			while (gameOfLife.getCyclePeriod() == 0) {
+				gameOfLife.iterate();
+			}
+			Assert.assertTrue(ensemble.isSettled(lane));
+			Assert.assertEquals(gameOfLife.getCyclePeriod(), ensemble.getPeriod(lane));
+			Assert.assertEquals(gameOfLife.getCycleStart(), ensemble.getCycleStart(lane));
+			Assert.assertEquals(gameOfLife.getGrid().countAlive(0, 12, 0, 12), ensemble.getPopulation(lane));
+			Assert.assertEquals(CycleDetector.hash(gameOfLife.getGrid()), ensemble.getHash(lane));
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * The hash of a board should be the hash that cycle detection gives a
+	 * boolean grid, even when the board is played on a bit-packed grid, which
+	 * cycle detection hashes a word at a time.
+	 */
+	@Test
+	public void testHashBitGrid() {
+		Ensemble ensemble = new Ensemble(20, 70, 8);
+		ensemble.populate(0, 11, 0.4);
+		Grid board = ensemble.getBoard(0);
+		Assert.assertTrue(board instanceof BitGrid);
+		ensemble.run(10000);
+
+		GameOfLife gameOfLife = new GameOfLife(board);
+		gameOfLife.setThreads(1);
+		gameOfLife.setMaxCyclePeriod(8);
+		while (gameOfLife.getCyclePeriod() == 0) {
+			gameOfLife.iterate();
+		}
+		gameOfLife.close();
+
+		Grid grid = gameOfLife.getGrid();
+		Assert.assertTrue(grid instanceof BitGrid);
+		Assert.assertEquals(gameOfLife.getCyclePeriod(), ensemble.getPeriod(0));
+		Assert.assertEquals(gameOfLife.getCycleStart(), ensemble.getCycleStart(0));
+		Assert.assertEquals(CycleDetector.hash(GameOfLifeTest.copy(grid)), ensemble.getHash(0));
+	}
+
+	/**
+	 * Changing one board should start only that board over, even if it was
+	 * changed again within the longest period.
+	 */
+	@Test
+	public void testRestartBoard() {
+		Ensemble ensemble = new Ensemble(16, 16, 8);
+		for (int lane = 0; lane < Ensemble.LANES; lane++) {
+			ensemble.populate(lane, 100 + lane, 0.5);
+		}
+		for (int i = 0; i < 20; i++) {
+			ensemble.step();
+		}
+		ensemble.populate(5, 7, 0.5);
+		ensemble.step();
+		ensemble.step();
+		ensemble.populate(5, 7, 0.5);
+		Assert.assertEquals(0, ensemble.getGeneration(5));
+		Assert.assertEquals(22, ensemble.getGeneration(6));
+		Assert.assertFalse(ensemble.isSettled(5));
+		ensemble.run(10000);
+
+		Ensemble alone = new Ensemble(16, 16, 8);
+		alone.populate(0, 7, 0.5);
+		alone.run(10000);
+		Assert.assertEquals(alone.getPeriod(0), ensemble.getPeriod(5));
+		Assert.assertEquals(alone.getCycleStart(0), ensemble.getCycleStart(5));
+		Assert.assertEquals(alone.getPopulation(0), ensemble.getPopulation(5));
+		Assert.assertEquals(alone.getHash(0), ensemble.getHash(5));
+	}
+
+	/**
+	 * A board that doesn't settle should stop counting as running once it
+	 * reaches the maximum number of generations.
+	 */
+	@Test
+	public void testRun() {
+		//a glider on a torus never settles into a cycle of period 2 or less
+		Ensemble ensemble = new Ensemble(8, 8, 2);
+		ensemble.setTopology(Grid.Topology.TORUS);
+		ensemble.setAlive(0, 0, 1, true);
+		ensemble.setAlive(0, 1, 2, true);
+		ensemble.setAlive(0, 2, 0, true);
+		ensemble.setAlive(0, 2, 1, true);
+		ensemble.setAlive(0, 2, 2, true);
+
+		long settled = ensemble.run(50);
+		Assert.assertEquals(-2L, settled);
+		Assert.assertEquals(0, ensemble.getPeriod(0));
+		Assert.assertEquals(-1, ensemble.getCycleStart(0));
+		Assert.assertEquals(50, ensemble.getGeneration(0));
+		Assert.assertEquals(5, ensemble.getPopulation(0));
+		Assert.assertEquals(0, ensemble.getRunning(50));
+		Assert.assertEquals(1L, ensemble.getRunning(51));
+	}
+
+	/**
+	 * Invalid sizes and settings should be rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		try {
+			new Ensemble(0, 10, 1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			new Ensemble(10, 10, 0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		Ensemble ensemble = new Ensemble(10, 10, 1);
+		try {
+			ensemble.setBoard(0, new Grid(10, 11));
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			ensemble.setAlive(0, 10, 0, true);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Asserts that every board of an ensemble is calculated like a game on
+	 * its own.
+	 * @param topology how the edges are connected
+	 * @param rule the rule
+	 */
+	private static void assertStep(Grid.Topology topology, Rule rule) {
+		Ensemble ensemble = new Ensemble(10, 13, 4);
+		ensemble.setTopology(topology);
+		ensemble.setRule(rule);
+		GameOfLife games[] = new GameOfLife[Ensemble.LANES];
+		for (int lane = 0; lane < Ensemble.LANES; lane++) {
+			ensemble.populate(lane, lane, 0.3);
+			Grid board = GameOfLifeTest.copy(ensemble.getBoard(lane));
+			board.setTopology(topology);
+			board.setRule(rule);
+			games[lane] = new GameOfLife(board);
+			games[lane].setThreads(1);
+
+			//setBoard should give back the same board
+			Assert.assertEquals(board.toString(), GameOfLifeTest.copy(ensemble.getBoard(lane)).toString());
+		}
+
+		for (int i = 0; i < 30; i++) {
+			ensemble.step();
+			for (int lane = 0; lane < Ensemble.LANES; lane++) {
+				Grid grid = games[lane].iterate();
+				for (int row = 0; row < 10; row++) {
+					for (int col = 0; col < 13; col++) {
+						Assert.assertEquals(grid.isAlive(row, col), ensemble.isAlive(lane, row, col));
+					}
+				}
+			}
+		}
+
+		for (GameOfLife game : games) {
+			game.close();
+		}
+	}
+}
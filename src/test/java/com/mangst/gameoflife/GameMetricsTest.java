@@ -0,0 +1,212 @@
+package com.mangst.gameoflife;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the GameMetrics class and the measurements that the GameOfLife class
+ * sends to its listeners.
+ * @author mangst
+ */
+public class GameMetricsTest {
+	/**
+	 * The listeners should be notified once per generation.
+	 */
+	@Test
+	public void testListener() {
+		GameOfLife gameOfLife = new GameOfLife(new BitGrid(64, 200), 0.3, 1);
+		try {
+			gameOfLife.setThreads(3);
+			List<GenerationStats> generations = collect(gameOfLife);
+			gameOfLife.iterate(5);
+
+			Assert.assertEquals(5, generations.size());
+			for (int i = 0; i < generations.size(); i++) {
+				GenerationStats stats = generations.get(i);
+				Assert.assertEquals(i + 1, stats.getIteration());
+				Assert.assertEquals(64 * 200, stats.getCells());
+				Assert.assertTrue(stats.getComputeNanos() > 0);
+				Assert.assertEquals(3, stats.getWorkerNanos().length);
+				Assert.assertTrue(stats.getImbalance() >= 1.0);
+			}
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Removed listeners should not be notified.
+	 */
+	@Test
+	public void testRemoveListener() {
+		GameOfLife gameOfLife = new GameOfLife(new Grid(10, 10), 0.3, 1);
+		try {
+			GameMetrics metrics = new GameMetrics();
+			gameOfLife.addGenerationListener(metrics);
+			gameOfLife.iterate(2);
+			gameOfLife.removeGenerationListener(metrics);
+			gameOfLife.iterate(2);
+			Assert.assertEquals(2, metrics.getGenerations());
+			Assert.assertEquals(2, metrics.getIterationCount());
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * The live cell count that is kept by the worker threads should always
+	 * match the number of live cells in the grid, no matter how the grid is
+	 * stored or calculated.
+	 */
+	@Test
+	public void testLiveCells() {
+		assertLiveCells(new Grid(33, 70), 0, 0);
+		assertLiveCells(new Grid(33, 70), 8, 5);
+		assertLiveCells(new BitGrid(33, 130), 0, 5);
+		assertLiveCells(new BitGrid(33, 130), 8, 0);
+		assertLiveCells(new OffHeapGrid(33, 130), 0, 5);
+	}
+
+	/**
+	 * The live cells can't be counted when the grid is unbounded.
+	 */
+	@Test
+	public void testLiveCellsUnbounded() {
+		GameOfLife gameOfLife = new GameOfLife(new SparseGrid(20, 20), 0.3, 1);
+		try {
+			List<GenerationStats> generations = collect(gameOfLife);
+			gameOfLife.iterate(2);
+			Assert.assertEquals(-1, generations.get(1).getLiveCells());
+			Assert.assertEquals(0, generations.get(1).getWorkerNanos().length);
+			Assert.assertEquals(0, generations.get(1).getImbalance(), 0);
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * The imbalance should be the slowest worker's time divided by the
+	 * average time.
+	 */
+	@Test
+	public void testImbalance() {
+		Assert.assertEquals(1.0, new GenerationStats(1, 10, 0, 0, 100, new long[] { 5, 5, 5 }).getImbalance(), 0.0001);
+		Assert.assertEquals(2.0, new GenerationStats(1, 10, 0, 0, 100, new long[] { 2, 0 }).getImbalance(), 0.0001);
+		Assert.assertEquals(0.0, new GenerationStats(1, 10, 0, 0, 100, new long[0]).getImbalance(), 0.0001);
+		Assert.assertEquals(1e10, new GenerationStats(1, 10, 0, 0, 100, new long[0]).getCellUpdatesPerSecond(), 0.0001);
+	}
+
+	/**
+	 * The metrics should summarize the generations.
+	 */
+	@Test
+	public void testMetrics() {
+		GameMetrics metrics = new GameMetrics();
+		for (int i = 1; i <= 100; i++) {
+			metrics.generationCompleted(new GenerationStats(i, i * 1000000L, 1000000L, 42, 1000, new long[] { 1, 1 }));
+		}
+		metrics.renderCompleted(3000000L);
+
+		Assert.assertEquals(100, metrics.getGenerations());
+		Assert.assertEquals(100, metrics.getIterationCount());
+		Assert.assertEquals(42, metrics.getLiveCells());
+		Assert.assertEquals(50.5, metrics.getComputeMillisMean(), 0.0001);
+		Assert.assertEquals(100.0, metrics.getComputeMillisMax(), 0.0001);
+		assertWithin(50, metrics.getComputeMillisP50());
+		assertWithin(90, metrics.getComputeMillisP90());
+		assertWithin(99, metrics.getComputeMillisP99());
+		assertWithin(1, metrics.getNoiseMillisP99());
+		assertWithin(3, metrics.getRenderMillisMean());
+		Assert.assertEquals(1.0, metrics.getWorkerImbalanceMean(), 0.0001);
+
+		//100,000 cells in 5.05 seconds
+		Assert.assertEquals(100000 / 5.05, metrics.getCellUpdatesPerSecond(), 0.01);
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getGenerations());
+		Assert.assertEquals(0, metrics.getComputeMillisP99(), 0);
+	}
+
+	/**
+	 * The metrics should be readable through JMX.
+	 */
+	@Test
+	public void testRegister() throws Exception {
+		GameMetrics metrics = new GameMetrics();
+		metrics.generationCompleted(new GenerationStats(7, 1000000L, 0, 42, 1000, new long[0]));
+		metrics.register("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("com.mangst.gameoflife:type=GameMetrics,name=test");
+			Assert.assertEquals(7L, server.getAttribute(name, "IterationCount"));
+			Assert.assertEquals(42L, server.getAttribute(name, "LiveCells"));
+			server.invoke(name, "reset", null, null);
+			Assert.assertEquals(0L, server.getAttribute(name, "Generations"));
+		} finally {
+			metrics.unregister();
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("com.mangst.gameoflife:type=GameMetrics,name=test")));
+	}
+
+	/**
+	 * Runs a game with noise and checks that the live cell count always
+	 * matches the number of live cells in the grid.
+	 * @param grid the grid
+	 * @param tileSize the size of the tiles (0 for no tiles)
+	 * @param noise the amount of noise
+	 */
+	private static void assertLiveCells(Grid grid, int tileSize, int noise) {
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.3, 5);
+		try {
+			gameOfLife.setThreads(3);
+			gameOfLife.setTileSize(tileSize);
+			gameOfLife.setNoise(noise);
+			List<GenerationStats> generations = collect(gameOfLife);
+			for (int i = 0; i < 30; i++) {
+				Grid current = gameOfLife.iterate();
+				int expected = current.countAlive(0, current.getRows(), 0, current.getCols());
+				Assert.assertEquals(expected, generations.get(i).getLiveCells());
+			}
+
+			//replacing the grid should count the cells again
+			gameOfLife.populate(0.5);
+			gameOfLife.iterate();
+			Grid current = gameOfLife.getGrid();
+			Assert.assertEquals(current.countAlive(0, current.getRows(), 0, current.getCols()), generations.get(30).getLiveCells());
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Adds a listener to a game that collects the stats of every generation.
+	 * @param gameOfLife the game
+	 * @return the list the stats are added to
+	 */
+	private static List<GenerationStats> collect(GameOfLife gameOfLife) {
+		final List<GenerationStats> generations = new ArrayList<GenerationStats>();
+		gameOfLife.addGenerationListener(new GenerationListener() {
+			@Override
+			public void generationCompleted(GenerationStats stats) {
+				generations.add(stats);
+			}
+		});
+		return generations;
+	}
+
+	/**
+	 * Asserts that a percentile is within the precision of the histogram.
+	 * @param expected the expected value
+	 * @param actual the actual value
+	 */
+	private static void assertWithin(double expected, double actual) {
+		Assert.assertEquals(expected, actual, expected / 8);
+	}
+}
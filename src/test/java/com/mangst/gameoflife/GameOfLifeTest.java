@@ -1,5 +1,9 @@
 package com.mangst.gameoflife;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -180,6 +184,556 @@ public class GameOfLifeTest {
 		}
 	}
 
+	/**
+	 * A game played on a bit-packed grid should have the same results as one
+	 * played on a regular grid.
+	 */
+	@Test
+	public void testIterateBitGrid() {
+		GameOfLife expectedGame = new GameOfLife(50, 200, 0.3);
+		Grid start = new BitGrid(50, 200);
+		copy(expectedGame.getGrid(), start);
+		GameOfLife gameOfLife = new GameOfLife(start);
+		gameOfLife.setThreads(3);
+
+		try {
+			for (int i = 0; i < 20; i++) {
+				assertGridEquals(expectedGame.iterate(), gameOfLife.iterate());
+			}
+		} finally {
+			gameOfLife.close();
+			expectedGame.close();
+		}
+	}
+
+	/**
+	 * The partitioning mode and block width should not effect the output of
+	 * the program.
+	 */
+	@Test
+	public void testSetPartitioning() {
+		GameOfLife expectedGame = new GameOfLife(45, 150, 0.3);
+		expectedGame.setThreads(1);
+
+		GameOfLife interleaved = new GameOfLife(copy(expectedGame.getGrid()));
+		interleaved.setThreads(4);
+		interleaved.setPartitioning(GameOfLife.Partitioning.INTERLEAVED);
+
+		GameOfLife blocks = new GameOfLife(copy(expectedGame.getGrid()));
+		blocks.setThreads(4);
+		blocks.setBlockCols(16);
+
+		GameOfLife bitBlocks = new GameOfLife(copy(expectedGame.getGrid(), new BitGrid(45, 150)));
+		bitBlocks.setThreads(4);
+		bitBlocks.setBlockCols(16); //rounded up to 64
+
+		try {
+			for (int i = 0; i < 10; i++) {
+				Grid expected = expectedGame.iterate();
+				assertGridEquals(expected, interleaved.iterate());
+				assertGridEquals(expected, blocks.iterate());
+				assertGridEquals(expected, bitBlocks.iterate());
+			}
+		} finally {
+			expectedGame.close();
+			interleaved.close();
+			blocks.close();
+			bitBlocks.close();
+		}
+	}
+
+	/**
+	 * Skipping tiles that aren't changing should not effect the output of the
+	 * program, even with noise.
+	 */
+	@Test
+	public void testSetTileSize() {
+		GameOfLife expectedGame = new GameOfLife(70, 150, 0.1);
+
+		GameOfLife tiled = new GameOfLife(copy(expectedGame.getGrid()));
+		tiled.setThreads(3);
+		tiled.setTileSize(8);
+
+		GameOfLife bitTiled = new GameOfLife(copy(expectedGame.getGrid(), new BitGrid(70, 150)));
+		bitTiled.setThreads(3);
+		bitTiled.setPartitioning(GameOfLife.Partitioning.INTERLEAVED);
+		bitTiled.setTileSize(8);
+
+		try {
+			for (int i = 0; i < 100; i++) {
+				Grid expected = expectedGame.iterate();
+				assertGridEquals(expected, tiled.iterate());
+				assertGridEquals(expected, bitTiled.iterate());
+			}
+
+			//noise is random, so toggle the same cells in each game by hand
+			Grid grids[] = { expectedGame.getGrid(), tiled.getGrid(), bitTiled.getGrid() };
+			for (Grid grid : grids) {
+				grid.setAlive(35, 75, true);
+				grid.setAlive(35, 76, true);
+				grid.setAlive(35, 77, true);
+			}
+			tiled.setTileSize(8);
+			bitTiled.setTileSize(8);
+			for (int i = 0; i < 20; i++) {
+				Grid expected = expectedGame.iterate();
+				assertGridEquals(expected, tiled.iterate());
+				assertGridEquals(expected, bitTiled.iterate());
+			}
+		} finally {
+			expectedGame.close();
+			tiled.close();
+			bitTiled.close();
+		}
+	}
+
+	/**
+	 * Games with the same seed should toggle the same cells, no matter how
+	 * many threads they use or whether the cells are toggled in parallel.
+	 */
+	@Test
+	public void testSetSeed() {
+		GameOfLife single = new GameOfLife(new Grid(200, 200));
+		single.setThreads(1);
+		GameOfLife parallel = new GameOfLife(new BitGrid(200, 200));
+		parallel.setThreads(4);
+		try {
+			for (GameOfLife game : new GameOfLife[] { single, parallel }) {
+				game.setSeed(42);
+				game.setNoise(20000);
+			}
+
+			//the board is empty, so every live cell came from noise (and no cell was chosen twice)
+			Grid expected = single.iterate();
+			Assert.assertEquals(20000, countAlive(expected));
+			assertGridEquals(expected, parallel.iterate());
+
+			//more than half of the board
+			single.setNoise(30000);
+			parallel.setNoise(30000);
+			for (int i = 0; i < 5; i++) {
+				assertGridEquals(single.iterate(), parallel.iterate());
+			}
+
+			//more than the whole board
+			single.setNoise(100000);
+			parallel.setNoise(100000);
+			Grid before = copy(single.iterate(0));
+			Grid after = single.iterate();
+			assertGridEquals(after, parallel.iterate());
+			GameOfLife expectedGame = new GameOfLife(before);
+			Grid inverted = expectedGame.iterate();
+			for (int i = 0; i < 200; i++) {
+				for (int j = 0; j < 200; j++) {
+					Assert.assertEquals(!inverted.isAlive(i, j), after.isAlive(i, j));
+				}
+			}
+			expectedGame.close();
+		} finally {
+			single.close();
+			parallel.close();
+		}
+
+		//different seeds should choose different cells
+		GameOfLife a = new GameOfLife(new Grid(50, 50));
+		GameOfLife b = new GameOfLife(new Grid(50, 50));
+		a.setSeed(1);
+		b.setSeed(2);
+		a.setNoise(100);
+		b.setNoise(100);
+		Assert.assertEquals(1, a.getSeed());
+		Assert.assertFalse(a.iterate().toString().equals(b.iterate().toString()));
+		a.close();
+		b.close();
+	}
+
+	/**
+	 * Randomly populating a grid with the same seed should choose the same
+	 * cells, no matter how many threads are used or how the grid is stored.
+	 */
+	@Test
+	public void testPopulate() {
+		GameOfLife expectedGame = new GameOfLife(new Grid(150, 300), 0.3, 7);
+		Grid expected = expectedGame.getGrid();
+		int alive = countAlive(expected);
+		Assert.assertTrue(Math.abs(alive - 150 * 300 * 0.3) < 150 * 300 * 0.01);
+
+		GameOfLife bitGame = new GameOfLife(new BitGrid(150, 300));
+		bitGame.setThreads(4);
+		bitGame.setSeed(7);
+		bitGame.populate(0.3);
+		GameOfLife offHeapGame = new GameOfLife(new OffHeapGrid(150, 300));
+		offHeapGame.setThreads(3);
+		offHeapGame.setSeed(7);
+		offHeapGame.populate(0.3);
+		GameOfLife otherSeed = new GameOfLife(new Grid(150, 300), 0.3, 8);
+		try {
+			assertGridEquals(expected, bitGame.getGrid());
+			assertGridEquals(expected, offHeapGame.getGrid());
+			Assert.assertFalse(expected.toString().equals(otherSeed.getGrid().toString()));
+
+			//the chance can be 0 or 1
+			bitGame.populate(1.0);
+			Assert.assertEquals(150 * 300, countAlive(bitGame.getGrid()));
+			bitGame.populate(0.0);
+			Assert.assertEquals(0, countAlive(bitGame.getGrid()));
+		} finally {
+			expectedGame.close();
+			bitGame.close();
+			offHeapGame.close();
+			otherSeed.close();
+		}
+	}
+
+	/**
+	 * Noise should be applied to tiles that aren't changing.
+	 */
+	@Test
+	public void testSetTileSizeNoise() {
+		GameOfLife gameOfLife = new GameOfLife(new Grid(20, 20));
+		gameOfLife.setTileSize(4);
+		gameOfLife.setNoise(1);
+
+		//the board is empty, so the only live cell came from noise
+		Assert.assertEquals(1, countAlive(gameOfLife.iterate()));
+
+		//the cell should die in the next iterations
+		gameOfLife.setNoise(0);
+		Assert.assertEquals(0, countAlive(gameOfLife.iterate()));
+		Assert.assertEquals(0, countAlive(gameOfLife.iterate()));
+		gameOfLife.close();
+	}
+
+	/**
+	 * Many games sharing the same executor should have the same results as
+	 * games with their own threads.
+	 */
+	@Test
+	public void testSetExecutor() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		GameOfLife expectedGames[] = new GameOfLife[10];
+		GameOfLife games[] = new GameOfLife[10];
+		for (int i = 0; i < games.length; i++) {
+			expectedGames[i] = new GameOfLife(30, 30, 0.3);
+			games[i] = new GameOfLife(copy(expectedGames[i].getGrid()));
+			games[i].setExecutor(executor);
+		}
+		Assert.assertSame(executor, games[0].getExecutor());
+
+		try {
+			for (int generation = 0; generation < 10; generation++) {
+				for (int i = 0; i < games.length; i++) {
+					assertGridEquals(expectedGames[i].iterate(), games[i].iterate());
+				}
+			}
+		} finally {
+			for (int i = 0; i < games.length; i++) {
+				expectedGames[i].close();
+				games[i].close();
+			}
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Using fork/join should not effect the output of the program, with or
+	 * without active tile tracking.
+	 */
+	@Test
+	public void testSetForkJoinPool() {
+		GameOfLife expectedGame = new GameOfLife(100, 600, 0.2);
+
+		ForkJoinPool forkJoinPool = new ForkJoinPool(3);
+		GameOfLife forkJoin = new GameOfLife(copy(expectedGame.getGrid()));
+		forkJoin.setForkJoinPool(forkJoinPool);
+		Assert.assertSame(forkJoinPool, forkJoin.getForkJoinPool());
+
+		GameOfLife tiled = new GameOfLife(copy(expectedGame.getGrid(), new BitGrid(100, 600)));
+		tiled.setForkJoinPool(ForkJoinPool.commonPool());
+		tiled.setTileSize(16);
+
+		try {
+			for (int i = 0; i < 30; i++) {
+				Grid expected = expectedGame.iterate();
+				assertGridEquals(expected, forkJoin.iterate());
+				assertGridEquals(expected, tiled.iterate());
+			}
+
+			//switch back to the worker threads
+			forkJoin.setForkJoinPool(null);
+			assertGridEquals(expectedGame.iterate(), forkJoin.iterate());
+		} finally {
+			expectedGame.close();
+			forkJoin.close();
+			tiled.close();
+			forkJoinPool.shutdown();
+		}
+	}
+
+	/**
+	 * Using HashLife should not effect the output of the program when nothing
+	 * reaches the edges of the grid.
+	 */
+	@Test
+	public void testSetHashLife() {
+		Grid start = new Grid(200, 200);
+		GameOfLife random = new GameOfLife(20, 20, 0.4);
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < 20; j++) {
+				start.setAlive(i + 90, j + 90, random.getGrid().isAlive(i, j));
+			}
+		}
+
+		GameOfLife expectedGame = new GameOfLife(copy(start));
+		GameOfLife gameOfLife = new GameOfLife(start);
+		gameOfLife.setHashLife(true);
+		Assert.assertTrue(gameOfLife.isHashLife());
+
+		try {
+			assertGridEquals(expectedGame.iterate(), gameOfLife.iterate());
+			assertGridEquals(expectedGame.iterate(50), gameOfLife.iterate(50));
+			Assert.assertEquals(51, gameOfLife.getIterationCount());
+
+			//switching back should pick up where HashLife left off
+			gameOfLife.setHashLife(false);
+			assertGridEquals(expectedGame.iterate(10), gameOfLife.iterate(10));
+		} finally {
+			gameOfLife.close();
+			expectedGame.close();
+		}
+	}
+
+	/**
+	 * The number of threads should be able to change between iterations, and
+	 * the game should be able to keep iterating after it is closed.
+	 */
+	@Test
+	public void testSetThreadsAfterIterate() {
+		GameOfLife expectedGame = new GameOfLife(30, 40, 0.4);
+		expectedGame.setThreads(1);
+		GameOfLife gameOfLife = new GameOfLife(copy(expectedGame.getGrid()));
+		gameOfLife.setThreads(3);
+
+		try {
+			for (int threads = 1; threads <= 5; threads++) {
+				gameOfLife.setThreads(threads);
+				assertGridEquals(expectedGame.iterate(), gameOfLife.iterate());
+			}
+
+			gameOfLife.close();
+			assertGridEquals(expectedGame.iterate(), gameOfLife.iterate());
+		} finally {
+			gameOfLife.close();
+			expectedGame.close();
+		}
+	}
+
+	/**
+	 * Moving tiles several generations ahead at once should not effect the
+	 * output of the program, including at the edges of the grid and between
+	 * tiles.
+	 */
+	@Test
+	public void testSetTemporalBlocking() {
+		//several tiles across and down, with partial tiles at the edges
+		GameOfLife expectedGame = new GameOfLife(300, 2200, 0.3);
+		expectedGame.setThreads(1);
+		expectedGame.setTemporalBlocking(1);
+
+		GameOfLife bit = new GameOfLife(copy(expectedGame.getGrid(), new BitGrid(300, 2200)));
+		bit.setThreads(3);
+
+		BitGrid vectorGrid = new BitGrid(300, 2200);
+		vectorGrid.setKernel(RowKernel.vector());
+		GameOfLife vector = new GameOfLife(copy(expectedGame.getGrid(), vectorGrid));
+		vector.setThreads(2);
+		vector.setPartitioning(GameOfLife.Partitioning.INTERLEAVED);
+		vector.setTemporalBlocking(64);
+
+		GameOfLife offHeap = new GameOfLife(copy(expectedGame.getGrid(), new OffHeapGrid(300, 2200)));
+		offHeap.setThreads(2);
+		offHeap.setTemporalBlocking(5);
+
+		try {
+			int steps[] = { 13, 8, 1, 64, 3 };
+			for (int step : steps) {
+				Grid expected = expectedGame.iterate(step);
+				assertGridEquals(expected, bit.iterate(step));
+				assertGridEquals(expected, vector.iterate(step));
+				assertGridEquals(expected, offHeap.iterate(step));
+			}
+			Assert.assertEquals(89, bit.getIterationCount());
+		} finally {
+			expectedGame.close();
+			bit.close();
+			vector.close();
+			offHeap.close();
+		}
+
+		//narrower than a word, with a rule other than Conway's
+		expectedGame = new GameOfLife(40, 10, 0.4);
+		expectedGame.setRule(Rule.parse("B36/S23"));
+		expectedGame.setTemporalBlocking(1);
+		bit = new GameOfLife(copy(expectedGame.getGrid(), new BitGrid(40, 10)));
+		bit.setRule(Rule.parse("B36/S23"));
+		bit.setTemporalBlocking(20);
+		try {
+			assertGridEquals(expectedGame.iterate(50), bit.iterate(50));
+		} finally {
+			expectedGame.close();
+			bit.close();
+		}
+	}
+
+	/**
+	 * On a torus, every way of storing and dividing up the grid should give
+	 * the same output as wrapping each cell's neighbors around by hand.
+	 */
+	@Test
+	public void testSetTopology() {
+		int rows = 37, cols = 130;
+		GameOfLife random = new GameOfLife(rows, cols, 0.3);
+		Grid start = random.getGrid();
+		boolean expected[][] = new boolean[rows][cols];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				expected[i][j] = start.isAlive(i, j);
+			}
+		}
+
+		GameOfLife grid = new GameOfLife(copy(start));
+		grid.setThreads(3);
+		grid.setBlockCols(16);
+
+		GameOfLife bit = new GameOfLife(copy(start, new BitGrid(rows, cols)));
+		bit.setThreads(3);
+		bit.setPartitioning(GameOfLife.Partitioning.INTERLEAVED);
+
+		GameOfLife bitTiled = new GameOfLife(copy(start, new BitGrid(rows, cols)));
+		bitTiled.setThreads(2);
+		bitTiled.setTileSize(8);
+
+		BitGrid vectorGrid = new BitGrid(rows, cols);
+		vectorGrid.setKernel(RowKernel.vector());
+		GameOfLife vector = new GameOfLife(copy(start, vectorGrid));
+		vector.setForkJoinPool(ForkJoinPool.commonPool());
+
+		GameOfLife offHeap = new GameOfLife(copy(start, new OffHeapGrid(rows, cols)));
+		offHeap.setThreads(2);
+		offHeap.setBlockCols(64);
+
+		GameOfLife games[] = { grid, bit, bitTiled, vector, offHeap };
+		for (GameOfLife game : games) {
+			game.setTopology(Grid.Topology.TORUS);
+		}
+
+		try {
+			int steps[] = { 1, 1, 13, 5, 40 };
+			for (int step : steps) {
+				for (int s = 0; s < step; s++) {
+					expected = nextTorus(expected);
+				}
+				for (GameOfLife game : games) {
+					Grid actual = game.iterate(step);
+					for (int i = 0; i < rows; i++) {
+						for (int j = 0; j < cols; j++) {
+							Assert.assertEquals(expected[i][j], actual.isAlive(i, j));
+						}
+					}
+				}
+			}
+		} finally {
+			random.close();
+			for (GameOfLife game : games) {
+				game.close();
+			}
+		}
+
+		//a glider comes back to where it started
+		GameOfLife glider = new GameOfLife(new BitGrid(10, 70), 0.0);
+		glider.setTopology(Grid.Topology.TORUS);
+		Grid g = glider.getGrid();
+		g.setAlive(0, 1, true);
+		g.setAlive(1, 2, true);
+		g.setAlive(2, 0, true);
+		g.setAlive(2, 1, true);
+		g.setAlive(2, 2, true);
+		Grid before = copy(g);
+		try {
+			//it moves one cell down and across every 4 generations
+			assertGridEquals(before, glider.iterate(4 * 70));
+		} finally {
+			glider.close();
+		}
+	}
+
+	/**
+	 * Unbounded universes can't wrap around.
+	 */
+	@Test
+	public void testSetTopologyUnbounded() {
+		GameOfLife gameOfLife = new GameOfLife(new SparseGrid(10, 10), 0.0);
+		try {
+			gameOfLife.setTopology(Grid.Topology.TORUS);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		gameOfLife = new GameOfLife(10, 10);
+		gameOfLife.setTopology(Grid.Topology.TORUS);
+		try {
+			gameOfLife.setHashLife(true);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Calculates the next generation of a torus by wrapping each cell's
+	 * neighbors around the edges.
+	 * @param cells the cells
+	 * @return the next generation
+	 */
+	private static boolean[][] nextTorus(boolean cells[][]) {
+		int rows = cells.length;
+		int cols = cells[0].length;
+		boolean next[][] = new boolean[rows][cols];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				int neighbors = 0;
+				for (int di = -1; di <= 1; di++) {
+					for (int dj = -1; dj <= 1; dj++) {
+						if ((di != 0 || dj != 0) && cells[(i + di + rows) % rows][(j + dj + cols) % cols]) {
+							neighbors++;
+						}
+					}
+				}
+				next[i][j] = (neighbors == 3) || (neighbors == 2 && cells[i][j]);
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Temporal blocking can't move tiles more than 64 generations ahead.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetTemporalBlockingInvalid() {
+		GameOfLife gameOfLife = new GameOfLife(3, 3);
+		gameOfLife.setTemporalBlocking(65);
+	}
+
+	/**
+	 * The number of threads must be positive.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetThreadsInvalid() {
+		GameOfLife gameOfLife = new GameOfLife(3, 3);
+		gameOfLife.setThreads(0);
+	}
+
 	/**
 	 * Test initializing all cells in the grid to dead.
 	 */
@@ -207,4 +761,60 @@ public class GameOfLifeTest {
 			}
 		}
 	}
+
+	/**
+	 * Creates a copy of a grid that stores each cell as a boolean.
+	 * @param grid the grid to copy
+	 * @return the copy
+	 */
+	static Grid copy(Grid grid) {
+		return copy(grid, new Grid(grid.getRows(), grid.getCols()));
+	}
+
+	/**
+	 * Copies the cells of one grid into another.
+	 * @param grid the grid to copy
+	 * @param copy the grid to copy into
+	 * @return the copy
+	 */
+	private static Grid copy(Grid grid, Grid copy) {
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				copy.setAlive(i, j, grid.isAlive(i, j));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Asserts that two grids have the same cell states.
+	 * @param expected the expected grid
+	 * @param actual the actual grid
+	 */
+	static void assertGridEquals(Grid expected, Grid actual) {
+		Assert.assertEquals(expected.getRows(), actual.getRows());
+		Assert.assertEquals(expected.getCols(), actual.getCols());
+		for (int i = 0; i < expected.getRows(); i++) {
+			for (int j = 0; j < expected.getCols(); j++) {
+				Assert.assertEquals(expected.isAlive(i, j), actual.isAlive(i, j));
+			}
+		}
+	}
+
+	/**
+	 * Counts the number of live cells in a grid.
+	 * @param grid the grid
+	 * @return the number of live cells
+	 */
+	static int countAlive(Grid grid) {
+		int alive = 0;
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				if (grid.isAlive(i, j)) {
+					alive++;
+				}
+			}
+		}
+		return alive;
+	}
 }
@@ -0,0 +1,74 @@
+package com.mangst.gameoflife;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the GridRenderer class.
+ * @author mangst
+ */
+public class GridRendererTest {
+	/**
+	 * The renderer should produce the same output as printing the grid, for
+	 * both kinds of grids and for rows that do and don't fill a whole number
+	 * of longs.
+	 */
+	@Test
+	public void testRender() throws Exception {
+		for (int cols : new int[] { 1, 7, 64, 70, 130 }) {
+			assertRender(new Grid(9, cols));
+			assertRender(new BitGrid(9, cols));
+		}
+	}
+
+	/**
+	 * The renderer should be reusable, even when the buffer is too small to
+	 * hold a single row.
+	 */
+	@Test
+	public void testRenderSmallBuffer() throws Exception {
+		Grid grid = new BitGrid(20, 200);
+		populate(grid);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GridRenderer renderer = new GridRenderer(Channels.newChannel(out), 16);
+		String expected = grid.toString() + System.getProperty("line.separator");
+		for (int i = 0; i < 3; i++) {
+			renderer.render(grid);
+			Assert.assertEquals(expected, out.toString("US-ASCII"));
+			out.reset();
+		}
+	}
+
+	/**
+	 * Renders a random grid and compares the output to printing the grid.
+	 * @param grid the grid
+	 */
+	private static void assertRender(Grid grid) throws Exception {
+		populate(grid);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GridRenderer renderer = new GridRenderer(Channels.newChannel(out), 256);
+		renderer.render(grid);
+
+		String expected = grid.toString() + System.getProperty("line.separator");
+		Assert.assertEquals(expected, out.toString("US-ASCII"));
+	}
+
+	/**
+	 * Randomly populates a grid.
+	 * @param grid the grid
+	 */
+	private static void populate(Grid grid) {
+		Random random = new Random(grid.getCols());
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getCols(); j++) {
+				grid.setAlive(i, j, random.nextBoolean());
+			}
+		}
+	}
+}
@@ -92,4 +92,37 @@ public class GridTest {
 		grid.setAlive(1, 1, false);
 		Assert.assertFalse(grid.isAlive(1, 1));
 	}
+	
+	/**
+	 * On a torus, the neighbors of the cells at the edges wrap around to the
+	 * opposite edges.
+	 */
+	@Test
+	public void testTorus(){
+		Grid grids[] = { new Grid(6, 70), new BitGrid(6, 70), new BitGrid(6, 64), new OffHeapGrid(6, 70) };
+		for (Grid grid : grids){
+			int cols = grid.getCols();
+			grid.setTopology(Grid.Topology.TORUS);
+			grid.setAlive(0, 0, true);
+			grid.setAlive(5, cols - 1, true);
+			grid.setAlive(5, 0, true);
+			grid.setAlive(0, cols - 1, true);
+			
+			//each corner touches the other three
+			Assert.assertEquals(3, grid.getAliveSurrounding(0, 0));
+			Assert.assertEquals(3, grid.getAliveSurrounding(5, cols - 1));
+			Assert.assertEquals(2, grid.getAliveSurrounding(0, 1));
+			Assert.assertEquals(0, grid.getAliveSurrounding(2, 2));
+			
+			//a block that straddles the corners is a still life
+			Grid next = grid.newGrid(grid.getRows(), cols);
+			Assert.assertEquals(Grid.Topology.TORUS, next.getTopology());
+			Assert.assertFalse(grid.computeNext(next, 0, grid.getRows(), 0, cols));
+			for (int i = 0; i < grid.getRows(); i++){
+				for (int j = 0; j < cols; j++){
+					Assert.assertEquals(grid.isAlive(i, j), next.isAlive(i, j));
+				}
+			}
+		}
+	}
 }
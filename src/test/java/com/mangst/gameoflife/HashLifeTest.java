@@ -0,0 +1,252 @@
+package com.mangst.gameoflife;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the HashLife class.
+ * @author mangst
+ */
+public class HashLifeTest {
+	/**
+	 * Tests the setAlive() and isAlive() methods, including cells far away from
+	 * the origin.
+	 */
+	@Test
+	public void testSetAliveIsAlive() {
+		HashLife universe = new HashLife();
+		Assert.assertFalse(universe.isAlive(0, 0));
+
+		long coords[][] = { { 0, 0 }, { -1, -1 }, { 5, -3 }, { -1000000000000L, 77 }, { 123456789, 987654321 } };
+		for (long coord[] : coords) {
+			universe.setAlive(coord[0], coord[1], true);
+		}
+		for (long coord[] : coords) {
+			Assert.assertTrue(universe.isAlive(coord[0], coord[1]));
+		}
+		Assert.assertEquals(coords.length, universe.getPopulation());
+		Assert.assertFalse(universe.isAlive(1, 1));
+
+		universe.setAlive(-1, -1, false);
+		Assert.assertFalse(universe.isAlive(-1, -1));
+		Assert.assertEquals(coords.length - 1, universe.getPopulation());
+	}
+
+	/**
+	 * A glider should move one cell diagonally every 4 generations, no matter
+	 * how far it is advanced.
+	 */
+	@Test
+	public void testAdvanceGlider() {
+		/*
+		 * .x.
+		 * ..x
+		 * xxx
+		 */
+		HashLife universe = new HashLife();
+		universe.setAlive(0, 1, true);
+		universe.setAlive(1, 2, true);
+		universe.setAlive(2, 0, true);
+		universe.setAlive(2, 1, true);
+		universe.setAlive(2, 2, true);
+
+		long generations = 4L * 1000000000L;
+		universe.advance(generations);
+		Assert.assertEquals(generations, universe.getGeneration());
+		Assert.assertEquals(5, universe.getPopulation());
+
+		long offset = generations / 4;
+		Assert.assertTrue(universe.isAlive(offset, offset + 1));
+		Assert.assertTrue(universe.isAlive(offset + 1, offset + 2));
+		Assert.assertTrue(universe.isAlive(offset + 2, offset));
+		Assert.assertTrue(universe.isAlive(offset + 2, offset + 1));
+		Assert.assertTrue(universe.isAlive(offset + 2, offset + 2));
+	}
+
+	/**
+	 * Jumps too large to be done in a single step should be broken up, and a
+	 * pattern that grows too large for its coordinates to fit in a long should
+	 * be reported.
+	 */
+	@Test
+	public void testAdvanceMax() {
+		HashLife universe = new HashLife();
+		universe.setAlive(0, 0, true);
+		universe.setAlive(0, 1, true);
+		universe.setAlive(1, 0, true);
+		universe.setAlive(1, 1, true);
+
+		universe.advance(Long.MAX_VALUE);
+		Assert.assertEquals(Long.MAX_VALUE, universe.getGeneration());
+		Assert.assertEquals(4, universe.getPopulation());
+		Assert.assertTrue(universe.isAlive(0, 0));
+		Assert.assertTrue(universe.isAlive(1, 1));
+
+		universe = new HashLife();
+		universe.setAlive(0, 1, true);
+		universe.setAlive(1, 2, true);
+		universe.setAlive(2, 0, true);
+		universe.setAlive(2, 1, true);
+		universe.setAlive(2, 2, true);
+		try {
+			universe.advance(Long.MAX_VALUE);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * HashLife should produce the same results as the regular grid when
+	 * nothing reaches the edge of the grid, no matter how the generations are
+	 * broken up.
+	 */
+	@Test
+	public void testAdvance() {
+		Random random = new Random(7);
+		Grid grid = new BitGrid(300, 300);
+		for (int i = 130; i < 170; i++) {
+			for (int j = 130; j < 170; j++) {
+				grid.setAlive(i, j, random.nextBoolean());
+			}
+		}
+
+		HashLife universe = new HashLife();
+		universe.load(grid);
+
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		try {
+			Grid actual = new Grid(300, 300);
+			for (int generations : new int[] { 1, 3, 7, 16, 5, 64, 1 }) {
+				Grid expected = gameOfLife.iterate(generations);
+				universe.advance(generations);
+				universe.copyTo(actual);
+				for (int i = 0; i < expected.getRows(); i++) {
+					for (int j = 0; j < expected.getCols(); j++) {
+						Assert.assertEquals(expected.isAlive(i, j), actual.isAlive(i, j));
+					}
+				}
+			}
+		} finally {
+			gameOfLife.close();
+		}
+	}
+
+	/**
+	 * Evicting nodes should not change the universe.
+	 */
+	@Test
+	public void testCollectGarbage() {
+		HashLife universe = new HashLife();
+
+		//R-pentomino
+		universe.setAlive(0, 1, true);
+		universe.setAlive(0, 2, true);
+		universe.setAlive(1, 0, true);
+		universe.setAlive(1, 1, true);
+		universe.setAlive(2, 1, true);
+
+		HashLife expected = new HashLife();
+		expected.setAlive(0, 1, true);
+		expected.setAlive(0, 2, true);
+		expected.setAlive(1, 0, true);
+		expected.setAlive(1, 1, true);
+		expected.setAlive(2, 1, true);
+
+		universe.setMaxNodes(1000);
+		for (int i = 0; i < 20; i++) {
+			universe.advance(100);
+			expected.advance(100);
+		}
+
+		int nodes = universe.getNodeCount();
+		universe.collectGarbage();
+		Assert.assertTrue(universe.getNodeCount() < nodes);
+
+		//the R-pentomino settles down at generation 1103 with 116 cells
+		Assert.assertEquals(116, universe.getPopulation());
+		Assert.assertEquals(expected.getPopulation(), universe.getPopulation());
+		for (int i = -100; i < 100; i++) {
+			for (int j = -100; j < 100; j++) {
+				Assert.assertEquals(expected.isAlive(i, j), universe.isAlive(i, j));
+			}
+		}
+	}
+
+	/**
+	 * When the hash table fills up in the middle of a large jump, it should be
+	 * emptied right away without changing the result.
+	 */
+	@Test
+	public void testCollectGarbageDuringStep() {
+		final int collections[] = { 0 };
+		HashLife universe = new HashLife() {
+			@Override
+			public void collectGarbage() {
+				collections[0]++;
+				super.collectGarbage();
+			}
+		};
+		HashLife expected = new HashLife();
+		Random random = new Random(11);
+		for (int i = 0; i < 64; i++) {
+			for (int j = 0; j < 64; j++) {
+				if (random.nextBoolean()) {
+					universe.setAlive(i, j, true);
+					expected.setAlive(i, j, true);
+				}
+			}
+		}
+
+		universe.setMaxNodes(2000);
+		universe.advance(256);
+		expected.advance(256);
+
+		Assert.assertTrue(collections[0] > 1);
+		Assert.assertEquals(expected.getPopulation(), universe.getPopulation());
+		for (int i = -100; i < 164; i++) {
+			for (int j = -100; j < 164; j++) {
+				Assert.assertEquals(expected.isAlive(i, j), universe.isAlive(i, j));
+			}
+		}
+	}
+
+	/**
+	 * When the universe needs more nodes than the maximum, the hash table
+	 * shouldn't be emptied again until enough new nodes have been created.
+	 */
+	@Test
+	public void testCollectGarbageGrowth() {
+		final int collections[] = { 0 };
+		HashLife universe = new HashLife() {
+			@Override
+			public void collectGarbage() {
+				collections[0]++;
+				super.collectGarbage();
+			}
+		};
+
+		//blocks scattered far apart, which share few nodes and never change
+		Random random = new Random(13);
+		for (int i = 0; i < 200; i++) {
+			long row = random.nextInt(1 << 12) * 4L;
+			long col = random.nextInt(1 << 12) * 4L;
+			universe.setAlive(row, col, true);
+			universe.setAlive(row, col + 1, true);
+			universe.setAlive(row + 1, col, true);
+			universe.setAlive(row + 1, col + 1, true);
+		}
+
+		universe.setMaxNodes(500);
+		for (int i = 0; i < 50; i++) {
+			universe.advance(1);
+		}
+		Assert.assertTrue(universe.getNodeCount() > 500);
+
+		//about once per step, instead of every time a node is calculated once the table is over the maximum
+		Assert.assertTrue(collections[0] < 100);
+		Assert.assertEquals(800, universe.getPopulation());
+	}
+}
@@ -0,0 +1,156 @@
+package com.mangst.gameoflife;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the OffHeapGrid class.
+ * @author mangst
+ */
+public class OffHeapGridTest {
+	/**
+	 * Holds the memory-mapped files.
+	 */
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	/**
+	 * Tests the setAlive() and isAlive() methods on both sides of word and
+	 * segment boundaries.
+	 */
+	@Test
+	public void testSetAliveIsAlive() {
+		//3 rows per segment
+		OffHeapGrid grid = new OffHeapGrid(10, 130, null, 3 * 3 * 8);
+		Assert.assertEquals(4, grid.getSegmentCount());
+		Assert.assertFalse(grid.isMapped());
+
+		for (int row = 0; row < grid.getRows(); row++) {
+			for (int col : new int[] { 0, 63, 64, 127, 128, 129 }) {
+				Assert.assertFalse(grid.isAlive(row, col));
+				grid.setAlive(row, col, true);
+				Assert.assertTrue(grid.isAlive(row, col));
+				if (row > 0) {
+					Assert.assertFalse(grid.isAlive(row - 1, col));
+				}
+				if (row < grid.getRows() - 1) {
+					Assert.assertFalse(grid.isAlive(row + 1, col));
+				}
+
+				grid.setAlive(row, col, false);
+				Assert.assertFalse(grid.isAlive(row, col));
+			}
+		}
+	}
+
+	/**
+	 * The off-heap calculation should produce the same results as the regular
+	 * grid, including regions that do not line up with word or segment
+	 * boundaries.
+	 */
+	@Test
+	public void testComputeNext() {
+		assertComputeNext(new OffHeapGrid(37, 150, null, 5 * 3 * 8));
+	}
+
+	/**
+	 * The vector kernel should work on the scratch rows (if the Vector API
+	 * isn't available, the scalar kernel is used).
+	 */
+	@Test
+	public void testComputeNextVector() {
+		OffHeapGrid grid = new OffHeapGrid(30, 64 * 12 + 5, null, 4 * 13 * 8);
+		grid.setKernel(RowKernel.vector());
+		assertComputeNext(grid);
+	}
+
+	/**
+	 * A memory-mapped grid should work the same way as a direct one.
+	 */
+	@Test
+	public void testComputeNextMapped() throws Exception {
+		File directory = temp.newFolder("grids");
+		OffHeapGrid grid = new OffHeapGrid(37, 150, directory, 5 * 3 * 8);
+		Assert.assertTrue(grid.isMapped());
+		Assert.assertEquals(1, directory.listFiles().length);
+
+		assertComputeNext(grid);
+		Assert.assertEquals(2, directory.listFiles().length);
+	}
+
+	/**
+	 * The game should accept an off-heap grid and produce the same results as
+	 * the bit-packed grid.
+	 */
+	@Test
+	public void testGameOfLife() {
+		Random random = new Random(3);
+		int rows = 100, cols = 200;
+		Grid expectedStart = new BitGrid(rows, cols);
+		Grid actualStart = new OffHeapGrid(rows, cols, null, 7 * 4 * 8);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				boolean alive = random.nextInt(4) == 0;
+				expectedStart.setAlive(i, j, alive);
+				actualStart.setAlive(i, j, alive);
+			}
+		}
+
+		GameOfLife expected = new GameOfLife(expectedStart);
+		GameOfLife actual = new GameOfLife(actualStart);
+		try {
+			actual.setThreads(3);
+			actual.setTileSize(32);
+			GameOfLifeTest.assertGridEquals(expected.iterate(50), actual.iterate(50));
+		} finally {
+			expected.close();
+			actual.close();
+		}
+	}
+
+	/**
+	 * Runs a random grid for several generations and compares the results to
+	 * the regular grid.
+	 * @param actual the grid to test
+	 */
+	private static void assertComputeNext(Grid actual) {
+		Random random = new Random(42);
+		int rows = actual.getRows(), cols = actual.getCols();
+		Grid expected = new Grid(rows, cols);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				boolean alive = random.nextBoolean();
+				expected.setAlive(i, j, alive);
+				actual.setAlive(i, j, alive);
+			}
+		}
+
+		Grid expectedNext = expected.newGrid(rows, cols);
+		Grid actualNext = actual.newGrid(rows, cols);
+		for (int generation = 0; generation < 10; generation++) {
+			boolean expectedChanged = expected.computeNext(expectedNext, 0, rows, 0, cols);
+
+			//calculate the grid in uneven regions
+			boolean actualChanged = false;
+			int[] colSplits = { 0, 5, 64, 100, 128, cols };
+			for (int k = 0; k < colSplits.length - 1; k++) {
+				actualChanged |= actual.computeNext(actualNext, 0, 13, colSplits[k], colSplits[k + 1]);
+				actualChanged |= actual.computeNext(actualNext, 13, rows, colSplits[k], colSplits[k + 1]);
+			}
+			Assert.assertEquals(expectedChanged, actualChanged);
+			GameOfLifeTest.assertGridEquals(expectedNext, actualNext);
+
+			Grid temp = expected;
+			expected = expectedNext;
+			expectedNext = temp;
+			temp = actual;
+			actual = actualNext;
+			actualNext = temp;
+		}
+	}
+}
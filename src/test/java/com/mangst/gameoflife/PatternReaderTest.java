@@ -0,0 +1,175 @@
+package com.mangst.gameoflife;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the PatternReader class.
+ * @author mangst
+ */
+public class PatternReaderTest {
+	/**
+	 * Tests reading an RLE file, including comments, run counts, multiple
+	 * line ends and runs that are split across lines.
+	 */
+	@Test
+	public void testRle() throws Exception {
+		//@formatter:off
+		String rle =
+		"#N Test\r\n" +
+		"#C A comment\n" +
+		"x = 7, y = 5, rule = B3/S23\n" +
+		"bo$2bo$3o2$\n" +
+		"2o\n" +
+		"3b2o!\n" +
+		"ignored";
+		//@formatter:on
+		PatternReader reader = reader(rle, 8);
+		Assert.assertEquals(PatternReader.Format.RLE, reader.getFormat());
+		Assert.assertEquals(7, reader.getWidth());
+		Assert.assertEquals(5, reader.getHeight());
+		Assert.assertEquals("B3/S23", reader.getRule());
+
+		Grid grid = new BitGrid(10, 10);
+		Assert.assertEquals(9, reader.read(grid, 1, 2));
+		assertGrid(grid, 1, 2, ".x.....", "..x....", "xxx....", ".......", "xx...xx");
+		Assert.assertEquals(9, GameOfLifeTest.countAlive(grid));
+	}
+
+	/**
+	 * Cells outside of the grid should be ignored.
+	 */
+	@Test
+	public void testRleClipped() throws Exception {
+		PatternReader reader = reader("x = 3, y = 3\nobo$3o$obo!", 64);
+		Grid grid = new Grid(2, 2);
+		Assert.assertEquals(1, reader.read(grid, 1, -1));
+		assertGrid(grid, 0, 0, "..", ".x");
+	}
+
+	/**
+	 * Tests reading a plaintext file.
+	 */
+	@Test
+	public void testPlaintext() throws Exception {
+		PatternReader reader = reader("!Name: Glider\n!\n.O.\n..O\r\nOOO\n", 64);
+		Assert.assertEquals(PatternReader.Format.PLAINTEXT, reader.getFormat());
+		Assert.assertNull(reader.getRule());
+
+		Grid grid = new Grid(5, 5);
+		Assert.assertEquals(5, reader.read(grid, 2, 0));
+		assertGrid(grid, 2, 0, ".x.", "..x", "xxx");
+	}
+
+	/**
+	 * Tests reading a Life 1.06 file with negative coordinates.
+	 */
+	@Test
+	public void testLife106() throws Exception {
+		PatternReader reader = reader("#Life 1.06\n0 -1\n1 0\n-1 1\n 0  1 \n1 1\n#comment\n1000 1000\n", 64);
+		Assert.assertEquals(PatternReader.Format.LIFE_106, reader.getFormat());
+
+		Grid grid = new Grid(5, 5);
+		Assert.assertEquals(5, reader.read(grid, 2, 2));
+		assertGrid(grid, 1, 1, ".x.", "..x", "xxx");
+	}
+
+	/**
+	 * Coordinates too large to fit in an int should be ignored instead of
+	 * wrapping around into the grid.
+	 */
+	@Test
+	public void testLife106FarOff() throws Exception {
+		PatternReader reader = reader("#Life 1.06\n2147483648 0\n4294967296 1\n-4294967296 2\n1 3\n", 64);
+		Grid grid = new Grid(5, 5);
+		Assert.assertEquals(1, reader.read(grid, 0, 0));
+		Assert.assertEquals(1, GameOfLifeTest.countAlive(grid));
+		Assert.assertTrue(grid.isAlive(3, 1));
+	}
+
+	/**
+	 * A coordinate too large to fit in a long should throw an exception
+	 * instead of wrapping around.
+	 */
+	@Test
+	public void testLife106Overflow() throws Exception {
+		PatternReader reader = reader("#Life 1.06\n0 0\n18446744073709551617 1\n", 64);
+		try {
+			reader.read(new Grid(5, 5), 0, 0);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("Number too large on line 3.", e.getMessage());
+		}
+	}
+
+	/**
+	 * A malformed Life 1.06 file should throw an exception.
+	 */
+	@Test(expected = IOException.class)
+	public void testLife106Malformed() throws Exception {
+		PatternReader reader = reader("#Life 1.06\n0 1\n2\n", 64);
+		reader.read(new Grid(5, 5), 0, 0);
+	}
+
+	/**
+	 * Tests reading the original text format.
+	 */
+	@Test
+	public void testText() throws Exception {
+		PatternReader reader = reader("x..x.\n.xx..\n..x.x", 64);
+		Assert.assertEquals(PatternReader.Format.TEXT, reader.getFormat());
+
+		Grid grid = new Grid(2, 4);
+		Assert.assertEquals(4, reader.read(grid, 0, 0));
+		assertGrid(grid, 0, 0, "x..x", ".xx.");
+	}
+
+	/**
+	 * Lines that are longer than the buffer should be read correctly.
+	 */
+	@Test
+	public void testLongLines() throws Exception {
+		StringBuilder sb = new StringBuilder("#C comment\nx = 300, y = 2\n");
+		for (int i = 0; i < 100; i++) {
+			sb.append("obo");
+		}
+		sb.append("$300o!");
+		PatternReader reader = reader(sb.toString(), 16);
+
+		Grid grid = new BitGrid(2, 300);
+		Assert.assertEquals(500, reader.read(grid, 0, 0));
+		for (int j = 0; j < 300; j++) {
+			Assert.assertEquals(j % 3 != 1, grid.isAlive(0, j));
+			Assert.assertTrue(grid.isAlive(1, j));
+		}
+	}
+
+	/**
+	 * Creates a reader.
+	 * @param pattern the pattern file
+	 * @param bufferSize the size of the read buffer
+	 * @return the reader
+	 */
+	private static PatternReader reader(String pattern, int bufferSize) throws IOException {
+		return new PatternReader(new ByteArrayInputStream(pattern.getBytes(StandardCharsets.US_ASCII)), bufferSize);
+	}
+
+	/**
+	 * Asserts the state of part of a grid.
+	 * @param grid the grid
+	 * @param row the top row of the part
+	 * @param col the left column of the part
+	 * @param expected the expected cells ('x' is alive)
+	 */
+	private static void assertGrid(Grid grid, int row, int col, String... expected) {
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length(); j++) {
+				Assert.assertEquals("(" + (row + i) + ", " + (col + j) + ")", expected[i].charAt(j) == 'x', grid.isAlive(row + i, col + j));
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.mangst.gameoflife;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the RenderPipeline class.
+ * @author mangst
+ */
+public class RenderPipelineTest {
+	/**
+	 * A generation should be displayed exactly like the renderer displays it,
+	 * for both kinds of grids.
+	 */
+	@Test
+	public void testSubmit() throws Exception {
+		assertSubmit(new Grid(9, 70));
+		assertSubmit(new BitGrid(9, 70));
+	}
+
+	/**
+	 * When the renderer is stuck, submitting should neither wait for it nor
+	 * be affected by changes made to the grid afterwards, and only the newest
+	 * generation should be displayed once the renderer catches up.
+	 */
+	@Test
+	public void testDropFrames() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BlockingChannel channel = new BlockingChannel(Channels.newChannel(out));
+		RenderPipeline pipeline = new RenderPipeline(new GridRenderer(channel), 5, 8);
+
+		//the render thread gets stuck on the first generation
+		Grid grid = new BitGrid(5, 8);
+		grid.setAlive(0, 0, true);
+		String first = grid.toString();
+		pipeline.submit(grid);
+		channel.started.await();
+
+		//these are submitted while the render thread is stuck, so all but the last are dropped
+		for (int i = 1; i < 5; i++) {
+			grid.setAlive(i, i, true);
+			pipeline.submit(grid);
+		}
+		String last = grid.toString();
+		grid.setAlive(4, 7, true);
+
+		channel.release.countDown();
+		pipeline.close();
+		String newline = System.getProperty("line.separator");
+		Assert.assertEquals(first + newline + last + newline, out.toString("US-ASCII"));
+		Assert.assertEquals(2, pipeline.getRendered());
+		Assert.assertEquals(3, pipeline.getDropped());
+	}
+
+	/**
+	 * A problem writing the output should be reported by the pipeline.
+	 */
+	@Test
+	public void testError() throws Exception {
+		RenderPipeline pipeline = new RenderPipeline(new GridRenderer(new WritableByteChannel() {
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				throw new IOException("broken");
+			}
+		}), 3, 3);
+		pipeline.submit(new Grid(3, 3));
+		try {
+			pipeline.close();
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("broken", e.getMessage());
+		}
+
+		try {
+			pipeline.submit(new Grid(4, 3));
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Submits a random grid and compares the output to printing the grid.
+	 * @param grid the grid
+	 */
+	private static void assertSubmit(Grid grid) throws Exception {
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.5, 3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RenderPipeline pipeline = new RenderPipeline(new GridRenderer(Channels.newChannel(out)), grid.getRows(), grid.getCols());
+		pipeline.submit(gameOfLife.getGrid());
+		pipeline.close();
+		gameOfLife.close();
+
+		Assert.assertEquals(gameOfLife.getGrid().toString() + System.getProperty("line.separator"), out.toString("US-ASCII"));
+		Assert.assertEquals(1, pipeline.getRendered());
+		Assert.assertEquals(0, pipeline.getDropped());
+	}
+
+	/**
+	 * A channel that blocks the first write until it is released.
+	 * @author mangst
+	 */
+	private static class BlockingChannel implements WritableByteChannel {
+		/**
+		 * The channel to write to once released.
+		 */
+		private final WritableByteChannel channel;
+
+		/**
+		 * Counted down when the first write starts.
+		 */
+		private final CountDownLatch started = new CountDownLatch(1);
+
+		/**
+		 * Counted down to let the writes through.
+		 */
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		/**
+		 * Constructs a new blocking channel.
+		 * @param channel the channel to write to once released
+		 */
+		public BlockingChannel(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return channel.write(src);
+		}
+	}
+}
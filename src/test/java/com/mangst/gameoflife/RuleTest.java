@@ -0,0 +1,201 @@
+package com.mangst.gameoflife;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the Rule class, and that every kind of grid plays by the rule it's
+ * given.
+ * @author mangst
+ */
+public class RuleTest {
+	/**
+	 * Rulestrings in the different notations should be parsed.
+	 */
+	@Test
+	public void testParse() {
+		Assert.assertEquals(Rule.CONWAY, Rule.parse("B3/S23"));
+		Assert.assertEquals(Rule.CONWAY, Rule.parse("b3/s23"));
+		Assert.assertEquals(Rule.CONWAY, Rule.parse("S23/B3"));
+		Assert.assertEquals(Rule.CONWAY, Rule.parse("B3S23"));
+		Assert.assertEquals(Rule.CONWAY, Rule.parse("23/3"));
+		Assert.assertEquals(Rule.CONWAY, Rule.parse(" B3/S23 "));
+
+		Rule highLife = Rule.parse("B36/S23");
+		Assert.assertEquals((1 << 3) | (1 << 6), highLife.getBirth());
+		Assert.assertEquals((1 << 2) | (1 << 3), highLife.getSurvival());
+		Assert.assertFalse(highLife.hasB0());
+
+		Rule seeds = Rule.parse("B2/S");
+		Assert.assertEquals(1 << 2, seeds.getBirth());
+		Assert.assertEquals(0, seeds.getSurvival());
+
+		Assert.assertTrue(Rule.parse("B0/S8").hasB0());
+	}
+
+	/**
+	 * Invalid rulestrings should be rejected.
+	 */
+	@Test
+	public void testParseInvalid() {
+		String invalid[] = { "", "B3", "S23", "B9/S23", "B3/S23/", "B3/B3", "X3/S23", "B3/S2a", "23" };
+		for (String rulestring : invalid) {
+			try {
+				Rule.parse(rulestring);
+				Assert.fail(rulestring);
+			} catch (IllegalArgumentException e) {
+				//expected
+			}
+		}
+	}
+
+	/**
+	 * The rulestring should be written in B/S notation.
+	 */
+	@Test
+	public void testToString() {
+		Assert.assertEquals("B3/S23", Rule.CONWAY.toString());
+		Assert.assertEquals("B3678/S34678", Rule.parse("S86437/B8763").toString());
+		Assert.assertEquals("B2/S", Rule.parse("B2/S").toString());
+	}
+
+	/**
+	 * Looking up 64 cells at once should give the same results as looking up
+	 * each cell, for every rule.
+	 */
+	@Test
+	public void testNext() {
+		Random random = new Random(1);
+		for (int r = 0; r < 200; r++) {
+			Rule rule = (r == 0) ? Rule.CONWAY : new Rule(random.nextInt(512), random.nextInt(512));
+
+			//every combination of cell state and neighbor count, packed into the bit planes
+			long cells = 0, ones = 0, twos = 0, fours = 0, eights = 0;
+			for (int bit = 0; bit < 18; bit++) {
+				int neighbors = bit % 9;
+				if (bit >= 9) cells |= 1L << bit;
+				if ((neighbors & 1) != 0) ones |= 1L << bit;
+				if ((neighbors & 2) != 0) twos |= 1L << bit;
+				if ((neighbors & 4) != 0) fours |= 1L << bit;
+				if ((neighbors & 8) != 0) eights |= 1L << bit;
+			}
+
+			long next = rule.next(cells, ones, twos, fours, eights);
+			for (int bit = 0; bit < 18; bit++) {
+				boolean expected = rule.nextState(bit >= 9, bit % 9);
+				Assert.assertEquals(rule + " " + bit, expected, (next & (1L << bit)) != 0);
+			}
+		}
+	}
+
+	/**
+	 * Every kind of bounded grid should play by the rule.
+	 */
+	@Test
+	public void testBoundedGrids() {
+		String rules[] = { "B36/S23", "B3678/S34678", "B2/S", "B0/S8", "B1357/S1357", "B012345678/S" };
+		for (String rulestring : rules) {
+			Rule rule = Rule.parse(rulestring);
+			Grid expected = run(new Grid(40, 150), rule);
+			GameOfLifeTest.assertGridEquals(expected, run(new BitGrid(40, 150), rule));
+			GameOfLifeTest.assertGridEquals(expected, run(new OffHeapGrid(40, 150), rule));
+
+			BitGrid vector = new BitGrid(40, 150);
+			vector.setKernel(RowKernel.vector());
+			GameOfLifeTest.assertGridEquals(expected, run(vector, rule));
+
+			OffHeapGrid offHeapVector = new OffHeapGrid(40, 150);
+			offHeapVector.setKernel(RowKernel.vector());
+			GameOfLifeTest.assertGridEquals(expected, run(offHeapVector, rule));
+		}
+	}
+
+	/**
+	 * The unbounded universes should play by the rule.
+	 */
+	@Test
+	public void testUnbounded() {
+		String rules[] = { "B36/S23", "B3678/S34678", "B2/S" };
+		for (String rulestring : rules) {
+			Rule rule = Rule.parse(rulestring);
+
+			GameOfLife sparse = new GameOfLife(new SparseGrid(40, 40), 0.3, 7);
+			sparse.setRule(rule);
+			sparse.setThreads(2);
+			sparse.iterate(10);
+
+			GameOfLife hashLife = new GameOfLife(new Grid(40, 40), 0.3, 7);
+			hashLife.setRule(rule);
+			hashLife.setHashLife(true);
+			hashLife.iterate(10);
+
+			GameOfLifeTest.assertGridEquals(hashLife.getGrid(), sparse.getGrid());
+			sparse.close();
+			hashLife.close();
+		}
+	}
+
+	/**
+	 * Rules with B0 can't be used on an unbounded universe.
+	 */
+	@Test
+	public void testB0Unbounded() {
+		Rule rule = Rule.parse("B0/S8");
+		try {
+			new GameOfLife(new SparseGrid(10, 10)).setRule(rule);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		GameOfLife gameOfLife = new GameOfLife(new Grid(10, 10));
+		gameOfLife.setRule(rule);
+		try {
+			gameOfLife.setHashLife(true);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * HighLife's replicator should copy itself.
+	 */
+	@Test
+	public void testHighLifeReplicator() {
+		Grid grid = new BitGrid(64, 64);
+		int cells[][] = { { 0, 2 }, { 0, 3 }, { 0, 4 }, { 1, 1 }, { 1, 4 }, { 2, 0 }, { 2, 4 }, { 3, 0 }, { 3, 3 }, { 4, 0 }, { 4, 1 }, { 4, 2 } };
+		for (int cell[] : cells) {
+			grid.setAlive(30 + cell[0], 30 + cell[1], true);
+		}
+
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		gameOfLife.setRule(Rule.parse("B36/S23"));
+		Assert.assertEquals("B36/S23", gameOfLife.getRule().toString());
+		gameOfLife.iterate(12);
+		Grid result = gameOfLife.getGrid();
+		gameOfLife.close();
+
+		//after 12 generations, there are two copies of the replicator
+		Assert.assertEquals(2 * cells.length, GameOfLifeTest.countAlive(result));
+	}
+
+	/**
+	 * Runs a random grid for a few iterations under a rule.
+	 * @param grid the grid
+	 * @param rule the rule
+	 * @return the resulting grid
+	 */
+	private static Grid run(Grid grid, Rule rule) {
+		GameOfLife gameOfLife = new GameOfLife(grid, 0.3, 3);
+		try {
+			gameOfLife.setRule(rule);
+			gameOfLife.setThreads(3);
+			return gameOfLife.iterate(8);
+		} finally {
+			gameOfLife.close();
+		}
+	}
+}
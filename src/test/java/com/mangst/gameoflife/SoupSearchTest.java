@@ -0,0 +1,112 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the SoupSearch class.
+ * @author mangst
+ */
+public class SoupSearchTest {
+	/**
+	 * Every soup should be reported exactly once, with the same outcome as
+	 * playing it on its own, no matter how many threads play them.
+	 */
+	@Test
+	public void testSearch() {
+		assertSearch(1, 150);
+		assertSearch(3, 150);
+		assertSearch(2, 10);
+	}
+
+	/**
+	 * Soups that don't settle should be reported once they reach the maximum
+	 * number of generations.
+	 */
+	@Test
+	public void testMaxGenerations() {
+		SoupSearch search = new SoupSearch(16, 16, 1);
+		search.setMaxGenerations(5);
+		final ConcurrentHashMap<Long, Long> generations = new ConcurrentHashMap<Long, Long>();
+		search.search(0, 100, new SoupListener() {
+			@Override
+			public void soupFinished(long seed, Ensemble ensemble, int lane) {
+				generations.put(seed, ensemble.getGeneration(lane));
+			}
+		});
+		search.close();
+
+		Assert.assertEquals(100, generations.size());
+		for (long generation : generations.values()) {
+			Assert.assertTrue(generation <= 5);
+		}
+	}
+
+	/**
+	 * Invalid settings should be rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		SoupSearch search = new SoupSearch(8, 8, 1);
+		try {
+			search.setAliveChance(1.5);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			search.setMaxPeriod(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+
+		try {
+			search.setRule(null);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		search.close();
+
+		try {
+			new SoupSearch(0, 8, 1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Searches a range of soups and compares each outcome to playing the soup
+	 * in an ensemble of its own.
+	 * @param threads the number of threads
+	 * @param soups the number of soups
+	 */
+	private static void assertSearch(int threads, int soups) {
+		SoupSearch search = new SoupSearch(16, 16, threads);
+		search.setMaxPeriod(8);
+		search.setAliveChance(0.4);
+		final ConcurrentHashMap<Long, long[]> results = new ConcurrentHashMap<Long, long[]>();
+		search.search(1000, soups, new SoupListener() {
+			@Override
+			public void soupFinished(long seed, Ensemble ensemble, int lane) {
+				long result[] = { ensemble.getPeriod(lane), ensemble.getCycleStart(lane), ensemble.getPopulation(lane), ensemble.getHash(lane) };
+				Assert.assertNull(results.put(seed, result));
+			}
+		});
+		search.close();
+
+		Assert.assertEquals(soups, results.size());
+		for (long seed = 1000; seed < 1000 + soups; seed++) {
+			Ensemble ensemble = new Ensemble(16, 16, 8);
+			ensemble.populate(0, seed, 0.4);
+			ensemble.run(10000);
+			long expected[] = { ensemble.getPeriod(0), ensemble.getCycleStart(0), ensemble.getPopulation(0), ensemble.getHash(0) };
+			Assert.assertArrayEquals(expected, results.get(seed));
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.mangst.gameoflife;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the SparseGrid class.
+ * @author mangst
+ */
+public class SparseGridTest {
+	/**
+	 * Tests the setAlive() and isAlive() methods, including cells outside of
+	 * the window.
+	 */
+	@Test
+	public void testSetAliveIsAlive() {
+		SparseGrid grid = new SparseGrid(10, 10);
+		Assert.assertEquals(10, grid.getRows());
+		Assert.assertEquals(10, grid.getCols());
+		Assert.assertEquals(0, grid.getChunkCount());
+
+		long coords[][] = { { 0, 0 }, { -1, -1 }, { 63, 64 }, { -5000000000L, 3000000000L } };
+		for (long coord[] : coords) {
+			grid.setAlive(coord[0], coord[1], true);
+		}
+		for (long coord[] : coords) {
+			Assert.assertTrue(grid.isAlive(coord[0], coord[1]));
+		}
+		Assert.assertTrue(grid.isAlive(-1, -1));
+		Assert.assertFalse(grid.isAlive(1, 1));
+		Assert.assertEquals(coords.length, grid.getPopulation());
+		Assert.assertEquals(coords.length, grid.getChunkCount());
+
+		grid.setAlive(-1, -1, false);
+		Assert.assertFalse(grid.isAlive(-1, -1));
+		Assert.assertEquals(coords.length - 1, grid.getPopulation());
+	}
+
+	/**
+	 * Test the getAliveSurrounding() method across chunk boundaries.
+	 */
+	@Test
+	public void testGetAliveSurrounding() {
+		SparseGrid grid = new SparseGrid(10, 10);
+		grid.setAlive(-1, -1, true);
+		grid.setAlive(-1, 0, true);
+		grid.setAlive(0, -1, true);
+		Assert.assertEquals(3, grid.getAliveSurrounding(0, 0));
+		Assert.assertEquals(2, grid.getAliveSurrounding(-1, -1));
+	}
+
+	/**
+	 * A sparse grid should produce the same results as a bounded grid when
+	 * nothing reaches the edge of the bounded grid.
+	 */
+	@Test
+	public void testComputeNext() {
+		Random random = new Random(3);
+		Grid expected = new BitGrid(400, 400);
+		SparseGrid actual = new SparseGrid(400, 400);
+		for (int i = 170; i < 230; i++) {
+			for (int j = 170; j < 230; j++) {
+				boolean alive = random.nextBoolean();
+				expected.setAlive(i, j, alive);
+				actual.setAlive(i, j, alive);
+			}
+		}
+
+		Grid expectedNext = expected.newGrid(400, 400);
+		SparseGrid actualNext = new SparseGrid(400, 400);
+		WorkerPool pool = new WorkerPool(3);
+		try {
+			for (int generation = 0; generation < 100; generation++) {
+				expected.computeNext(expectedNext, 0, 400, 0, 400);
+				actual.computeNext(actualNext, pool);
+
+				Grid temp = expected;
+				expected = expectedNext;
+				expectedNext = temp;
+				SparseGrid sparseTemp = actual;
+				actual = actualNext;
+				actualNext = sparseTemp;
+			}
+		} finally {
+			pool.close();
+		}
+
+		long population = 0;
+		for (int i = 0; i < 400; i++) {
+			for (int j = 0; j < 400; j++) {
+				Assert.assertEquals(expected.isAlive(i, j), actual.isAlive(i, j));
+				if (expected.isAlive(i, j)) {
+					population++;
+				}
+			}
+		}
+		Assert.assertEquals(population, actual.getPopulation());
+	}
+
+	/**
+	 * Calculating regions of a sparse grid should give the same results as
+	 * calculating the whole universe, whether the next state is stored in a
+	 * sparse grid or in another kind of grid.
+	 */
+	@Test
+	public void testComputeNextRegion() {
+		Random random = new Random(5);
+		SparseGrid grid = new SparseGrid(150, 150);
+		for (int i = -10; i < 160; i++) {
+			for (int j = -10; j < 160; j++) {
+				grid.setAlive(i, j, random.nextInt(3) == 0);
+			}
+		}
+
+		SparseGrid expected = new SparseGrid(150, 150);
+		WorkerPool pool = new WorkerPool(1);
+		grid.computeNext(expected, pool);
+		pool.close();
+
+		//regions that start and end in the middle of chunks
+		int bounds[] = { 0, 37, 64, 100, 128, 150 };
+		Grid nexts[] = { new SparseGrid(150, 150), new BitGrid(150, 150), new Grid(150, 150) };
+		for (Grid next : nexts) {
+			boolean changed = false;
+			for (int i = 0; i + 1 < bounds.length; i++) {
+				for (int j = 0; j + 1 < bounds.length; j++) {
+					changed |= grid.computeNext(next, bounds[i], bounds[i + 1], bounds[j], bounds[j + 1]);
+				}
+			}
+			Assert.assertTrue(changed);
+			for (int i = 0; i < 150; i++) {
+				for (int j = 0; j < 150; j++) {
+					Assert.assertEquals(expected.isAlive(i, j), next.isAlive(i, j));
+				}
+			}
+		}
+
+		//a region with no changes
+		SparseGrid empty = new SparseGrid(150, 150);
+		Assert.assertFalse(empty.computeNext(new SparseGrid(150, 150), 0, 150, 0, 150));
+		Assert.assertEquals(0, empty.getChunkCount());
+	}
+
+	/**
+	 * A glider should travel across chunks without being destroyed, and the
+	 * chunks it leaves behind should be freed.
+	 */
+	@Test
+	public void testGlider() {
+		/*
+		 * .x.
+		 * ..x
+		 * xxx
+		 */
+		SparseGrid grid = new SparseGrid(10, 10);
+		grid.setAlive(0, 1, true);
+		grid.setAlive(1, 2, true);
+		grid.setAlive(2, 0, true);
+		grid.setAlive(2, 1, true);
+		grid.setAlive(2, 2, true);
+
+		GameOfLife gameOfLife = new GameOfLife(grid);
+		gameOfLife.setThreads(2);
+		try {
+			gameOfLife.iterate(4000);
+		} finally {
+			gameOfLife.close();
+		}
+
+		SparseGrid result = (SparseGrid) gameOfLife.getGrid();
+		Assert.assertEquals(5, result.getPopulation());
+		Assert.assertTrue(result.getChunkCount() <= 4);
+		Assert.assertTrue(result.isAlive(1000, 1001));
+		Assert.assertTrue(result.isAlive(1001, 1002));
+		Assert.assertTrue(result.isAlive(1002, 1000));
+		Assert.assertTrue(result.isAlive(1002, 1001));
+		Assert.assertTrue(result.isAlive(1002, 1002));
+	}
+}
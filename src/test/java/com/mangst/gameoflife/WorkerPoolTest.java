@@ -0,0 +1,187 @@
+package com.mangst.gameoflife;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the WorkerPool class.
+ * @author mangst
+ */
+public class WorkerPoolTest {
+	/**
+	 * Every worker should run the task exactly once each time the task is
+	 * run.
+	 */
+	@Test
+	public void testRun() {
+		final AtomicIntegerArray counts = new AtomicIntegerArray(4);
+		WorkerPool pool = new WorkerPool(4);
+		try {
+			WorkerPool.Task task = new WorkerPool.Task() {
+				@Override
+				public void run(int worker, int workers) {
+					Assert.assertEquals(4, workers);
+					counts.incrementAndGet(worker);
+				}
+			};
+			for (int i = 0; i < 100; i++) {
+				pool.run(task);
+			}
+		} finally {
+			pool.close();
+		}
+
+		for (int i = 0; i < counts.length(); i++) {
+			Assert.assertEquals(100, counts.get(i));
+		}
+	}
+
+	/**
+	 * An exception thrown by a worker should be re-thrown by run().
+	 */
+	@Test
+	public void testRunException() {
+		WorkerPool pool = new WorkerPool(3);
+		try {
+			pool.run(new WorkerPool.Task() {
+				@Override
+				public void run(int worker, int workers) {
+					if (worker == 2) {
+						throw new IllegalStateException("worker 2");
+					}
+				}
+			});
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("worker 2", e.getMessage());
+		}
+
+		//the pool should still be usable
+		final AtomicIntegerArray counts = new AtomicIntegerArray(3);
+		pool.run(new WorkerPool.Task() {
+			@Override
+			public void run(int worker, int workers) {
+				counts.incrementAndGet(worker);
+			}
+		});
+		pool.close();
+		for (int i = 0; i < counts.length(); i++) {
+			Assert.assertEquals(1, counts.get(i));
+		}
+	}
+
+	/**
+	 * When the calling thread and a worker both throw an exception, the
+	 * worker's exception should be attached to the caller's, and not be
+	 * thrown by the next run().
+	 */
+	@Test
+	public void testRunExceptionCaller() {
+		WorkerPool pool = new WorkerPool(3);
+		try {
+			pool.run(new WorkerPool.Task() {
+				@Override
+				public void run(int worker, int workers) {
+					if (worker == 0) {
+						throw new IllegalStateException("worker 0");
+					}
+					if (worker == 2) {
+						throw new IllegalArgumentException("worker 2");
+					}
+				}
+			});
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("worker 0", e.getMessage());
+			Assert.assertEquals(1, e.getSuppressed().length);
+			Assert.assertEquals("worker 2", e.getSuppressed()[0].getMessage());
+		}
+
+		//the worker's exception should not leak into the next run
+		pool.run(new WorkerPool.Task() {
+			@Override
+			public void run(int worker, int workers) {
+			}
+		});
+		pool.close();
+	}
+
+	/**
+	 * A closed pool should not accept any more tasks.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testClose() {
+		WorkerPool pool = new WorkerPool(2);
+		pool.close();
+		pool.close(); //closing twice should do nothing
+		pool.run(new WorkerPool.Task() {
+			@Override
+			public void run(int worker, int workers) {
+			}
+		});
+	}
+
+	/**
+	 * Every part of the task should run exactly once when an executor is
+	 * used, even if the executor has fewer threads than the pool has parts.
+	 */
+	@Test
+	public void testRunExecutor() {
+		final AtomicIntegerArray counts = new AtomicIntegerArray(5);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		WorkerPool pool = new WorkerPool(5, executor);
+		try {
+			WorkerPool.Task task = new WorkerPool.Task() {
+				@Override
+				public void run(int worker, int workers) {
+					Assert.assertEquals(5, workers);
+					counts.incrementAndGet(worker);
+				}
+			};
+			for (int i = 0; i < 100; i++) {
+				pool.run(task);
+			}
+		} finally {
+			pool.close();
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < counts.length(); i++) {
+			Assert.assertEquals(100, counts.get(i));
+		}
+	}
+
+	/**
+	 * Running a task from inside of the executor's only thread should not
+	 * deadlock.
+	 */
+	@Test(timeout = 10000)
+	public void testRunExecutorNested() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final AtomicIntegerArray counts = new AtomicIntegerArray(4);
+		try {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					WorkerPool pool = new WorkerPool(4, executor);
+					pool.run(new WorkerPool.Task() {
+						@Override
+						public void run(int worker, int workers) {
+							counts.incrementAndGet(worker);
+						}
+					});
+				}
+			}).get();
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < counts.length(); i++) {
+			Assert.assertEquals(1, counts.get(i));
+		}
+	}
+}
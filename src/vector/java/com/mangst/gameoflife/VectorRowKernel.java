@@ -0,0 +1,240 @@
+package com.mangst.gameoflife;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A kernel that uses the Java Vector API to calculate the next state of
+ * several longs at once, as many as fit into the CPU's preferred vector size
+ * (4 with AVX2, 8 with AVX-512). It uses the same adder logic and rule lookup
+ * as {@link BitGrid#nextWord}. The words to the left and right of each word are
+ * read with unaligned loads one word before and after it, so only the words
+ * at the edges of the row (and of the region) are left to the scalar kernel.
+ * <p>
+ * This class is only compiled on JDK 17 or later, and the JVM must be started
+ * with "--add-modules jdk.incubator.vector". Use {@link RowKernel#vector} to
+ * get an instance.
+ * @author mangst
+ */
+public class VectorRowKernel implements RowKernel {
+	/**
+	 * The vector shape preferred by the CPU.
+	 */
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	/**
+	 * The bit-sliced tables of the last rule that wasn't Conway's (null if
+	 * none). Kernels are shared by all of the worker threads, so this is
+	 * replaced instead of being modified.
+	 */
+	private volatile SlicedTables tables;
+
+	@Override
+	public boolean nextRow(long src[], int above, int row, int below, long dest[], int out, int wordsPerRow, long lastWordMask, int colStart, int colEnd, Rule rule) {
+		//only whole words that have a word on both sides of them can be vectorized
+		int lanes = SPECIES.length();
+		int vectorStart = Math.max(1, (colStart + 63) >>> 6);
+		int vectorEnd = Math.min(wordsPerRow - 1, colEnd >>> 6);
+		int count = (vectorEnd > vectorStart) ? (vectorEnd - vectorStart) / lanes * lanes : 0;
+		if (count == 0) {
+			return BitGrid.nextRow(src, above, row, below, dest, out, wordsPerRow, lastWordMask, colStart, colEnd, rule);
+		}
+		vectorEnd = vectorStart + count;
+
+		boolean changed = false;
+		int split = vectorStart << 6;
+		if (colStart < split) {
+			changed |= BitGrid.nextRow(src, above, row, below, dest, out, wordsPerRow, lastWordMask, colStart, split, rule);
+		}
+
+		boolean conway = rule.isConway();
+		SlicedTables tables = null;
+		if (!conway) {
+			tables = this.tables;
+			if (tables == null || !tables.rule.equals(rule)) {
+				tables = new SlicedTables(rule);
+				this.tables = tables;
+			}
+		}
+
+		LongVector diff = LongVector.zero(SPECIES);
+		for (int w = vectorStart; w < vectorEnd; w += lanes) {
+			LongVector aPrev = LongVector.fromArray(SPECIES, src, above + w - 1);
+			LongVector a = LongVector.fromArray(SPECIES, src, above + w);
+			LongVector aNext = LongVector.fromArray(SPECIES, src, above + w + 1);
+			LongVector bPrev = LongVector.fromArray(SPECIES, src, row + w - 1);
+			LongVector b = LongVector.fromArray(SPECIES, src, row + w);
+			LongVector bNext = LongVector.fromArray(SPECIES, src, row + w + 1);
+			LongVector cPrev = LongVector.fromArray(SPECIES, src, below + w - 1);
+			LongVector c = LongVector.fromArray(SPECIES, src, below + w);
+			LongVector cNext = LongVector.fromArray(SPECIES, src, below + w + 1);
+
+			//line up the neighbors to the west and east of each cell
+			LongVector aW = west(a, aPrev);
+			LongVector aE = east(a, aNext);
+			LongVector bW = west(b, bPrev);
+			LongVector bE = east(b, bNext);
+			LongVector cW = west(c, cPrev);
+			LongVector cE = east(c, cNext);
+
+			//add up each row of neighbors
+			LongVector aSum = aW.lanewise(VectorOperators.XOR, a).lanewise(VectorOperators.XOR, aE);
+			LongVector aCarry = aW.and(a).or(aE.and(aW.lanewise(VectorOperators.XOR, a)));
+			LongVector bSum = bW.lanewise(VectorOperators.XOR, bE);
+			LongVector bCarry = bW.and(bE);
+			LongVector cSum = cW.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, cE);
+			LongVector cCarry = cW.and(c).or(cE.and(cW.lanewise(VectorOperators.XOR, c)));
+
+			//add the rows together
+			LongVector ones = aSum.lanewise(VectorOperators.XOR, bSum).lanewise(VectorOperators.XOR, cSum);
+			LongVector onesCarry = aSum.and(bSum).or(cSum.and(aSum.lanewise(VectorOperators.XOR, bSum)));
+			LongVector twos = aCarry.lanewise(VectorOperators.XOR, bCarry).lanewise(VectorOperators.XOR, cCarry);
+			LongVector twosCarry = aCarry.and(bCarry).or(cCarry.and(aCarry.lanewise(VectorOperators.XOR, bCarry)));
+			LongVector fours = twosCarry.lanewise(VectorOperators.XOR, twos.and(onesCarry));
+			LongVector eights = twosCarry.and(twos).and(onesCarry);
+			twos = twos.lanewise(VectorOperators.XOR, onesCarry);
+
+			LongVector result;
+			if (conway) {
+				//alive if there are 3 neighbors, or 2 neighbors and the cell is alive
+				result = twos.and(ones.or(b)).lanewise(VectorOperators.AND_NOT, eights.or(fours));
+			} else {
+				LongVector dead = tables.dead.lookUp(ones, twos, fours, eights);
+				LongVector alive = tables.alive.lookUp(ones, twos, fours, eights);
+				result = select(b, dead, alive);
+			}
+			result.intoArray(dest, out + w);
+			diff = diff.or(result.lanewise(VectorOperators.XOR, b));
+		}
+		changed |= diff.reduceLanes(VectorOperators.OR) != 0;
+
+		split = vectorEnd << 6;
+		if (split < colEnd) {
+			changed |= BitGrid.nextRow(src, above, row, below, dest, out, wordsPerRow, lastWordMask, split, colEnd, rule);
+		}
+		return changed;
+	}
+
+	/**
+	 * Chooses between two vectors bit by bit.
+	 * @param bits the bits that choose
+	 * @param clear the bits to choose where the choosing bit is 0
+	 * @param set the bits to choose where the choosing bit is 1
+	 * @return the chosen bits
+	 */
+	private static LongVector select(LongVector bits, LongVector clear, LongVector set) {
+		return clear.lanewise(VectorOperators.XOR, bits.and(clear.lanewise(VectorOperators.XOR, set)));
+	}
+
+	/**
+	 * Lines up the neighbors to the west of each cell.
+	 * @param words the words holding the cells
+	 * @param prev the words to the left
+	 * @return the neighbors
+	 */
+	private static LongVector west(LongVector words, LongVector prev) {
+		return words.lanewise(VectorOperators.LSHL, 1).or(prev.lanewise(VectorOperators.LSHR, 63));
+	}
+
+	/**
+	 * Lines up the neighbors to the east of each cell.
+	 * @param words the words holding the cells
+	 * @param next the words to the right
+	 * @return the neighbors
+	 */
+	private static LongVector east(LongVector words, LongVector next) {
+		return words.lanewise(VectorOperators.LSHR, 1).or(next.lanewise(VectorOperators.LSHL, 63));
+	}
+
+	@Override
+	public String toString() {
+		return "vector (" + SPECIES.length() + " x 64 bits)";
+	}
+
+	/**
+	 * The bit-sliced tables of a rule's dead and live cells (see
+	 * {@link Rule#next}).
+	 * @author mangst
+	 */
+	private static class SlicedTables {
+		/**
+		 * The rule.
+		 */
+		private final Rule rule;
+
+		/**
+		 * The tables of the dead and live cells.
+		 */
+		private final SlicedTable dead, alive;
+
+		/**
+		 * Constructs the tables of a rule.
+		 * @param rule the rule
+		 */
+		public SlicedTables(Rule rule) {
+			this.rule = rule;
+			dead = new SlicedTable(rule, false);
+			alive = new SlicedTable(rule, true);
+		}
+	}
+
+	/**
+	 * A 9-entry table that is looked up a vector at a time, in the same way
+	 * as the rule's own table.
+	 * @author mangst
+	 */
+	private static class SlicedTable {
+		/**
+		 * The entries for the even counts below 8.
+		 */
+		private final LongVector entry0, entry2, entry4, entry6;
+
+		/**
+		 * The differences between the entries for each even count and the
+		 * odd count after it.
+		 */
+		private final LongVector diff01, diff23, diff45, diff67;
+
+		/**
+		 * The difference between the entries for 0 and 8.
+		 */
+		private final LongVector diff08;
+
+		/**
+		 * Constructs a new table.
+		 * @param rule the rule
+		 * @param alive true for the table of live cells, false for dead cells
+		 */
+		public SlicedTable(Rule rule, boolean alive) {
+			entry0 = LongVector.broadcast(SPECIES, rule.mask(alive, 0));
+			entry2 = LongVector.broadcast(SPECIES, rule.mask(alive, 2));
+			entry4 = LongVector.broadcast(SPECIES, rule.mask(alive, 4));
+			entry6 = LongVector.broadcast(SPECIES, rule.mask(alive, 6));
+			diff01 = LongVector.broadcast(SPECIES, rule.mask(alive, 0) ^ rule.mask(alive, 1));
+			diff23 = LongVector.broadcast(SPECIES, rule.mask(alive, 2) ^ rule.mask(alive, 3));
+			diff45 = LongVector.broadcast(SPECIES, rule.mask(alive, 4) ^ rule.mask(alive, 5));
+			diff67 = LongVector.broadcast(SPECIES, rule.mask(alive, 6) ^ rule.mask(alive, 7));
+			diff08 = LongVector.broadcast(SPECIES, rule.mask(alive, 0) ^ rule.mask(alive, 8));
+		}
+
+		/**
+		 * Looks up a vector of cells.
+		 * @param ones bit 0 of each cell's neighbor count
+		 * @param twos bit 1 of each cell's neighbor count
+		 * @param fours bit 2 of each cell's neighbor count
+		 * @param eights bit 3 of each cell's neighbor count
+		 * @return the entries
+		 */
+		public LongVector lookUp(LongVector ones, LongVector twos, LongVector fours, LongVector eights) {
+			LongVector count01 = entry0.lanewise(VectorOperators.XOR, ones.and(diff01));
+			LongVector count23 = entry2.lanewise(VectorOperators.XOR, ones.and(diff23));
+			LongVector count45 = entry4.lanewise(VectorOperators.XOR, ones.and(diff45));
+			LongVector count67 = entry6.lanewise(VectorOperators.XOR, ones.and(diff67));
+			LongVector count03 = select(twos, count01, count23);
+			LongVector count47 = select(twos, count45, count67);
+			LongVector count07 = select(fours, count03, count47);
+			return count07.lanewise(VectorOperators.XOR, eights.and(diff08));
+		}
+	}
+}